@@ -24,6 +24,20 @@ package org.jboss.pnc.buildagent.api;
 public class Constants {
     public static final String HTTP_PATH = "/";
     public static final String RUNNING_PROCESSES = "/processes";
+    public static final String SINKS = "/sinks";
+    /**
+     * GET {@link #OUTPUT_STREAM_PATH}/{context} follows the output of the running process, as chunked text or as
+     * server-sent events when the client accepts {@link #EVENT_STREAM_CONTENT_TYPE}. The output starts from the
+     * {@link #OUTPUT_OFFSET_PARAMETER} offset, from the {@link #OUTPUT_TAIL_PARAMETER} last lines or from the oldest
+     * kept byte.
+     */
+    public static final String OUTPUT_STREAM_PATH = "/output";
+    public static final String OUTPUT_TAIL_PARAMETER = "tail";
+    public static final String EVENT_STREAM_CONTENT_TYPE = "text/event-stream";
+    /**
+     * Response header of the output stream with the offset of its first byte.
+     */
+    public static final String OUTPUT_OFFSET_HEADER = "Build-Agent-Output-Offset";
     public static final String SOCKET_PATH = "/socket";
     public static final String SERVLET_PATH = "/servlet";
     public static final String TERM_PATH = "/term";
@@ -32,8 +46,45 @@ public class Constants {
     public static final String TERM_PATH_SILENT = "/silent";
     public static final String PROCESS_UPDATES_PATH = "/process-status-updates";
 
+    /**
+     * Query parameter of the binary term connection, the output is sent from the given byte offset. Each binary frame
+     * of such connection starts with the offset of its first output byte, {@link #OUTPUT_OFFSET_LENGTH} bytes big
+     * endian.
+     */
+    public static final String OUTPUT_OFFSET_PARAMETER = "from";
+    public static final int OUTPUT_OFFSET_LENGTH = 8;
+    /**
+     * Close code of the resumed connection when the output cannot be resumed, eg. the context is no longer known or
+     * the offset is after the end of its output.
+     */
+    public static final int OUTPUT_OFFSET_REJECTED_CLOSE_CODE = 4410;
+
     public static final String HTTP_INVOKER_PATH = "/http-invoker";
     public static final String HTTP_INVOKER_FULL_PATH = SERVLET_PATH + HTTP_INVOKER_PATH;
+    /**
+     * GET {@link #HTTP_INVOKER_FULL_PATH}/output-tree/{sessionId} returns the Merkle tree of the session output.
+     */
+    public static final String HTTP_INVOKER_OUTPUT_TREE_PATH = "/output-tree";
+    /**
+     * GET {@link #HTTP_INVOKER_FULL_PATH}/sessions/{sessionId} returns the state of the session.
+     */
+    public static final String HTTP_INVOKER_SESSIONS_PATH = "/sessions";
+    /**
+     * GET {@link #HTTP_INVOKER_FULL_PATH}/output/{sessionId} follows the output of the running session as chunked text,
+     * starting with the kept tail of the output. The response ends when the session completes.
+     */
+    public static final String HTTP_INVOKER_OUTPUT_PATH = "/output";
+
+    /**
+     * Heartbeat header with the state of the http invoked session, eg. QUEUED while the command waits for admission.
+     */
+    public static final String SESSION_STATE_HEADER = "Build-Agent-Session-State";
+
+    /**
+     * Tag of the completion event when the file log does not keep all the output (eg. the rotation removed some
+     * segments), the uploaded log does not match the output checksum then.
+     */
+    public static final String LOG_TRUNCATED_TAG = "log-truncated";
 
     public static final String FILE_UPLOAD_PATH = SERVLET_PATH + "/upload";
     public static final String FILE_DOWNLOAD_PATH = SERVLET_PATH + "/download";
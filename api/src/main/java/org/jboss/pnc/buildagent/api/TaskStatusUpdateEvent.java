@@ -18,6 +18,7 @@
 
 package org.jboss.pnc.buildagent.api;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
@@ -26,6 +27,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:matejonnet@gmail.com">Matej Lazar</a>
@@ -38,9 +44,36 @@ public class TaskStatusUpdateEvent implements Serializable {
   private final String taskId;
   private final Status newStatus;
   private final String outputChecksum;
+
+  /**
+   * Algorithm of the {@link #outputChecksum}, eg. MD5, SHA-256, CRC32C or XXH64. Missing on the events of the clients
+   * computing MD5 only.
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private final String outputChecksumAlgorithm;
+
+  /**
+   * Root of the Merkle tree of the output, the leaf hashes are served by the http invoker.
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private final String outputTreeRoot;
+
   private final String message;
   private final Object context;
 
+  /**
+   * Tags added by the log rules matching the output, plus {@link Constants#LOG_TRUNCATED_TAG} when the file log does
+   * not keep all the output.
+   */
+  @JsonInclude(JsonInclude.Include.NON_EMPTY)
+  private final Set<String> tags;
+
+  /**
+   * Number of output lines matched by the log rules, by the rule name.
+   */
+  @JsonInclude(JsonInclude.Include.NON_EMPTY)
+  private final Map<String, Long> counters;
+
   @Deprecated
   private final Status oldStatus;
 
@@ -51,7 +84,11 @@ public class TaskStatusUpdateEvent implements Serializable {
     this.newStatus = newStatus;
     this.context = context;
     this.outputChecksum = outputChecksum;
+    this.outputChecksumAlgorithm = null;
+    this.outputTreeRoot = null;
     this.message = "";
+    this.tags = Collections.emptySet();
+    this.counters = Collections.emptyMap();
   }
 
   @Deprecated
@@ -61,16 +98,24 @@ public class TaskStatusUpdateEvent implements Serializable {
     this.newStatus = newStatus;
     this.context = context;
     this.outputChecksum = "";
+    this.outputChecksumAlgorithm = null;
+    this.outputTreeRoot = null;
     this.message = "";
+    this.tags = Collections.emptySet();
+    this.counters = Collections.emptyMap();
   }
 
   private TaskStatusUpdateEvent(Builder builder) {
     taskId = builder.taskId;
     newStatus = builder.newStatus;
     outputChecksum = builder.outputChecksum;
+    outputChecksumAlgorithm = builder.outputChecksumAlgorithm;
+    outputTreeRoot = builder.outputTreeRoot;
     message = builder.message;
     oldStatus = builder.oldStatus;
     context = builder.context;
+    tags = Collections.unmodifiableSet(new LinkedHashSet<>(builder.tags));
+    counters = Collections.unmodifiableMap(new LinkedHashMap<>(builder.counters));
   }
 
   public static Builder newBuilder() {
@@ -82,9 +127,13 @@ public class TaskStatusUpdateEvent implements Serializable {
     builder.taskId = copy.getTaskId();
     builder.newStatus = copy.getNewStatus();
     builder.outputChecksum = copy.getOutputChecksum();
+    builder.outputChecksumAlgorithm = copy.getOutputChecksumAlgorithm();
+    builder.outputTreeRoot = copy.getOutputTreeRoot();
     builder.message = copy.getMessage();
     builder.oldStatus = copy.getOldStatus();
     builder.context = copy.getContext();
+    builder.tags = copy.getTags();
+    builder.counters = copy.getCounters();
     return builder;
   }
 
@@ -109,10 +158,26 @@ public class TaskStatusUpdateEvent implements Serializable {
     return outputChecksum;
   }
 
+  public String getOutputChecksumAlgorithm() {
+    return outputChecksumAlgorithm;
+  }
+
+  public String getOutputTreeRoot() {
+    return outputTreeRoot;
+  }
+
   public String getMessage() {
     return message;
   }
 
+  public Set<String> getTags() {
+    return tags;
+  }
+
+  public Map<String, Long> getCounters() {
+    return counters;
+  }
+
   public String toString() {
     ObjectMapper mapper = new ObjectMapper();
     try {
@@ -132,12 +197,20 @@ public class TaskStatusUpdateEvent implements Serializable {
 
     private String outputChecksum;
 
+    private String outputChecksumAlgorithm;
+
+    private String outputTreeRoot;
+
     private String message;
 
     private Status oldStatus;
 
     private Object context;
 
+    private Set<String> tags = Collections.emptySet();
+
+    private Map<String, Long> counters = Collections.emptyMap();
+
     private Builder() {
     }
 
@@ -156,6 +229,16 @@ public class TaskStatusUpdateEvent implements Serializable {
       return this;
     }
 
+    public Builder outputChecksumAlgorithm(String outputChecksumAlgorithm) {
+      this.outputChecksumAlgorithm = outputChecksumAlgorithm;
+      return this;
+    }
+
+    public Builder outputTreeRoot(String outputTreeRoot) {
+      this.outputTreeRoot = outputTreeRoot;
+      return this;
+    }
+
     public Builder message(String message) {
       this.message = message;
       return this;
@@ -166,6 +249,16 @@ public class TaskStatusUpdateEvent implements Serializable {
       return this;
     }
 
+    public Builder tags(Set<String> tags) {
+      this.tags = tags == null ? Collections.emptySet() : tags;
+      return this;
+    }
+
+    public Builder counters(Map<String, Long> counters) {
+      this.counters = counters == null ? Collections.emptyMap() : counters;
+      return this;
+    }
+
     @Deprecated
     public Builder oldStatus(Status oldStatus) {
       this.oldStatus = oldStatus;
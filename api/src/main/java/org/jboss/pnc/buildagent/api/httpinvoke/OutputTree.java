@@ -0,0 +1,121 @@
+package org.jboss.pnc.buildagent.api.httpinvoke;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Merkle tree of the session output. The log stores compare their copy leaf by leaf and re-fetch only the ranges
+ * that differ, leaf i covers the output bytes [i * leafSize, min((i + 1) * leafSize, length)).
+ */
+@JsonDeserialize(builder = OutputTree.Builder.class)
+public class OutputTree {
+
+    private final String sessionId;
+
+    /**
+     * Hash of the leaves and the nodes: leaf = H(0x00 || data), node = H(0x01 || left || right), the last node of
+     * a level with an odd number of nodes is promoted.
+     */
+    private final String algorithm;
+
+    private final int leafSize;
+
+    private final long length;
+
+    private final String root;
+
+    private final List<String> leaves;
+
+    private OutputTree(Builder builder) {
+        sessionId = builder.sessionId;
+        algorithm = builder.algorithm;
+        leafSize = builder.leafSize;
+        length = builder.length;
+        root = builder.root;
+        leaves = builder.leaves;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getLeafSize() {
+        return leafSize;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public String getRoot() {
+        return root;
+    }
+
+    public List<String> getLeaves() {
+        return leaves;
+    }
+
+    @JsonPOJOBuilder(withPrefix = "")
+    public static final class Builder {
+
+        private String sessionId;
+
+        private String algorithm;
+
+        private int leafSize;
+
+        private long length;
+
+        private String root;
+
+        private List<String> leaves = Collections.emptyList();
+
+        private Builder() {
+        }
+
+        public Builder sessionId(String sessionId) {
+            this.sessionId = sessionId;
+            return this;
+        }
+
+        public Builder algorithm(String algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        public Builder leafSize(int leafSize) {
+            this.leafSize = leafSize;
+            return this;
+        }
+
+        public Builder length(long length) {
+            this.length = length;
+            return this;
+        }
+
+        public Builder root(String root) {
+            this.root = root;
+            return this;
+        }
+
+        public Builder leaves(List<String> leaves) {
+            this.leaves = leaves == null ? Collections.emptyList() : leaves;
+            return this;
+        }
+
+        public OutputTree build() {
+            return new OutputTree(this);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.jboss.pnc.buildagent.api.httpinvoke;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import org.jboss.pnc.buildagent.api.Status;
+
+/**
+ * State of a http invoked session, available also for some time after the session completes.
+ */
+@JsonDeserialize(builder = SessionInfo.Builder.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SessionInfo {
+
+    private final String sessionId;
+
+    /**
+     * QUEUED, RUNNING, COMPLETING or DONE.
+     */
+    private final String state;
+
+    /**
+     * Reported completion status, set when the session is DONE.
+     */
+    private final Status status;
+
+    private final String outputChecksum;
+
+    private final String outputTreeRoot;
+
+    /**
+     * Epoch millis.
+     */
+    private final long created;
+
+    /**
+     * Epoch millis, 0 until the session is DONE.
+     */
+    private final long completed;
+
+    private SessionInfo(Builder builder) {
+        sessionId = builder.sessionId;
+        state = builder.state;
+        status = builder.status;
+        outputChecksum = builder.outputChecksum;
+        outputTreeRoot = builder.outputTreeRoot;
+        created = builder.created;
+        completed = builder.completed;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getOutputChecksum() {
+        return outputChecksum;
+    }
+
+    public String getOutputTreeRoot() {
+        return outputTreeRoot;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    @JsonPOJOBuilder(withPrefix = "")
+    public static final class Builder {
+
+        private String sessionId;
+
+        private String state;
+
+        private Status status;
+
+        private String outputChecksum;
+
+        private String outputTreeRoot;
+
+        private long created;
+
+        private long completed;
+
+        private Builder() {
+        }
+
+        public Builder sessionId(String sessionId) {
+            this.sessionId = sessionId;
+            return this;
+        }
+
+        public Builder state(String state) {
+            this.state = state;
+            return this;
+        }
+
+        public Builder status(Status status) {
+            this.status = status;
+            return this;
+        }
+
+        public Builder outputChecksum(String outputChecksum) {
+            this.outputChecksum = outputChecksum;
+            return this;
+        }
+
+        public Builder outputTreeRoot(String outputTreeRoot) {
+            this.outputTreeRoot = outputTreeRoot;
+            return this;
+        }
+
+        public Builder created(long created) {
+            this.created = created;
+            return this;
+        }
+
+        public Builder completed(long completed) {
+            this.completed = completed;
+            return this;
+        }
+
+        public SessionInfo build() {
+            return new SessionInfo(this);
+        }
+    }
+}
@@ -1,9 +1,49 @@
 package org.jboss.pnc.buildagent.api.logging;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
+ * Formats the process output lines for the log sinks.
+ *
+ * Only {@link #format(String)} has to be implemented, the byte and batch methods delegate to it. Formatters which
+ * produce bytes (or can format multiple lines at once more cheaply) should override them to skip the intermediate
+ * strings.
+ *
  * @author <a href="mailto:matejonnet@gmail.com">Matej Lazar</a>
  */
 public interface LogFormatter {
 
     String format(String message);
+
+    /**
+     * Writes the formatted message to the stream as UTF-8.
+     */
+    default void formatTo(OutputStream out, CharSequence message) throws IOException {
+        out.write(format(message.toString()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the formatted message to the buffer as UTF-8.
+     *
+     * @throws java.nio.BufferOverflowException when there is not enough space in the buffer
+     */
+    default void formatTo(ByteBuffer buffer, CharSequence message) {
+        buffer.put(format(message.toString()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the formatted messages in the same order
+     */
+    default List<String> formatAll(List<? extends CharSequence> messages) {
+        List<String> formatted = new ArrayList<>(messages.size());
+        for (CharSequence message : messages) {
+            formatted.add(format(message.toString()));
+        }
+        return formatted;
+    }
 }
@@ -21,6 +21,7 @@ package org.jboss.pnc.buildagent.client;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jboss.pnc.buildagent.api.Constants;
 import org.jboss.pnc.buildagent.api.ResponseMode;
 import org.jboss.pnc.buildagent.api.TaskStatusUpdateEvent;
 import org.jboss.pnc.buildagent.api.httpinvoke.RetryConfig;
@@ -31,12 +32,14 @@ import org.slf4j.LoggerFactory;
 import javax.websocket.ClientEndpointConfig;
 import javax.websocket.CloseReason;
 import javax.websocket.ContainerProvider;
+import javax.websocket.DeploymentException;
 import javax.websocket.SendHandler;
 import javax.websocket.SendResult;
 import javax.websocket.Session;
 import javax.websocket.WebSocketContainer;
 import java.io.IOException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
@@ -68,8 +71,21 @@ public class BuildAgentSocketClient extends BuildAgentClientBase implements Buil
     private final ResponseMode responseMode;
     private final boolean readOnly;
 
+    /**
+     * The binary output connection is resumed from {@link #outputOffset} when it drops.
+     */
+    private final boolean resumable;
+
+    /**
+     * Offset of the next output byte.
+     */
+    private volatile long outputOffset;
+
+    private String termBaseUrl;
+    private Optional<Consumer<String>> responseDataConsumer;
+
     private RemoteEndpoint statusUpdatesEndpoint;
-    private RemoteEndpoint commandExecutingEndpoint;
+    private volatile RemoteEndpoint commandExecutingEndpoint;
 
     private AtomicBoolean closed = new AtomicBoolean(false);
 
@@ -98,6 +114,9 @@ public class BuildAgentSocketClient extends BuildAgentClientBase implements Buil
         this.commandContext = formatCommandContext(commandContext);
         this.responseMode = responseMode;
         this.readOnly = readOnly;
+        this.resumable = false;
+        this.termBaseUrl = termBaseUrl;
+        this.responseDataConsumer = responseDataConsumer;
 
         Consumer<TaskStatusUpdateEvent> onStatusUpdateInternal = (event) -> {
             onStatusUpdate.accept(event);
@@ -120,12 +139,14 @@ public class BuildAgentSocketClient extends BuildAgentClientBase implements Buil
         this.commandContext = formatCommandContext(configuration.getCommandContext());
         this.responseMode = configuration.getResponseMode();
         this.readOnly = configuration.isReadOnly();
+        this.resumable = configuration.isResumable() && ResponseMode.BINARY.equals(responseMode);
+        this.termBaseUrl = configuration.getTermBaseUrl();
+        this.responseDataConsumer = responseDataConsumer;
 
         Consumer<TaskStatusUpdateEvent> onStatusUpdateInternal = (event) -> {
             onStatusUpdate.accept(event);
         };
 
-        String termBaseUrl = configuration.getTermBaseUrl();
         statusUpdatesEndpoint = connectStatusListenerClient(termBaseUrl, onStatusUpdateInternal);
         commandExecutingEndpoint = connectCommandExecutingClient(termBaseUrl, responseDataConsumer);
     }
@@ -149,12 +170,14 @@ public class BuildAgentSocketClient extends BuildAgentClientBase implements Buil
         this.commandContext = formatCommandContext(configuration.getCommandContext());
         this.responseMode = configuration.getResponseMode();
         this.readOnly = configuration.isReadOnly();
+        this.resumable = configuration.isResumable() && ResponseMode.BINARY.equals(responseMode);
+        this.termBaseUrl = configuration.getTermBaseUrl();
+        this.responseDataConsumer = responseDataConsumer;
 
         Consumer<TaskStatusUpdateEvent> onStatusUpdateInternal = (event) -> {
             onStatusUpdate.accept(event);
         };
 
-        String termBaseUrl = configuration.getTermBaseUrl();
         statusUpdatesEndpoint = connectStatusListenerClient(termBaseUrl, onStatusUpdateInternal);
         commandExecutingEndpoint = connectCommandExecutingClient(termBaseUrl, responseDataConsumer);
     }
@@ -235,6 +258,13 @@ public class BuildAgentSocketClient extends BuildAgentClientBase implements Buil
         return commandContext;
     }
 
+    /**
+     * @return offset of the next output byte of the resumable connection
+     */
+    public long getOutputOffset() {
+        return outputOffset;
+    }
+
     private ByteBuffer prepareRemoteCommand(Object command) throws BuildAgentClientException {
         Map<String, Object> cmdJson = new HashMap<>();
         cmdJson.put("action", "read");
@@ -291,11 +321,22 @@ public class BuildAgentSocketClient extends BuildAgentClientBase implements Buil
     }
 
     private RemoteEndpoint connectCommandExecutingClient(String webSocketBaseUrl, Optional<Consumer<String>> responseDataConsumer) throws InterruptedException, TimeoutException {
+        try {
+            return openCommandExecutingClient(webSocketBaseUrl, responseDataConsumer);
+        } catch (DeploymentException | IOException | URISyntaxException e) {
+            throw new AssertionError("Failed to connect to remote client.", e);
+        }
+    }
 
-        RemoteEndpoint client = initializeDefault("commandExecuting");
+    private RemoteEndpoint openCommandExecutingClient(String webSocketBaseUrl, Optional<Consumer<String>> responseDataConsumer)
+            throws DeploymentException, IOException, URISyntaxException {
+
+        RemoteEndpoint client = initializeDefault("commandExecuting", resumable ? this::resumeCommandExecutingClient : null);
 
         if (ResponseMode.TEXT.equals(responseMode)) {
             registerTextResponseConsumer(responseDataConsumer, client);
+        } else if (resumable) {
+            registerResumableBinaryResponseConsumer(responseDataConsumer, client);
         } else if (ResponseMode.BINARY.equals(responseMode)) {
             registerBinaryResponseConsumer(responseDataConsumer, client);
         } else {
@@ -314,16 +355,40 @@ public class BuildAgentSocketClient extends BuildAgentClientBase implements Buil
             webSocketPath = stripEndingSlash(webSocketBaseUrl) + RemoteEndpoint.WEB_SOCKET_TERMINAL_SILENT_PATH;
         }
 
-        try {
-            String websocketUrl = webSocketPath + commandContext + appendReadOnly;
-            ClientEndpointConfig clientEndpointConfig = ClientEndpointConfig.Builder.create().build();
-            webSocketContainer.connectToServer(client, clientEndpointConfig, new URI(websocketUrl));
-        } catch (Exception e) {
-            throw new AssertionError("Failed to connect to remote client.", e);
-        }
+        String resumeFrom = resumable ? "?" + Constants.OUTPUT_OFFSET_PARAMETER + "=" + outputOffset : "";
+        String websocketUrl = webSocketPath + commandContext + appendReadOnly + resumeFrom;
+        ClientEndpointConfig clientEndpointConfig = ClientEndpointConfig.Builder.create().build();
+        webSocketContainer.connectToServer(client, clientEndpointConfig, new URI(websocketUrl));
         return client;
     }
 
+    /**
+     * Reconnects the dropped output connection, the agent sends the output from the offset after the last received
+     * byte.
+     */
+    private void resumeCommandExecutingClient() {
+        Thread resume = new Thread(() -> {
+            for (int attempt = 1; attempt <= retryConfig.getMaxRetries() && !closed.get(); attempt++) {
+                try {
+                    Thread.sleep(retryConfig.getWaitBeforeRetry());
+                    log.info("Resuming the output connection from offset {}, attempt {}.", outputOffset, attempt);
+                    commandExecutingEndpoint = openCommandExecutingClient(termBaseUrl, responseDataConsumer);
+                    return;
+                } catch (DeploymentException | IOException | URISyntaxException e) {
+                    log.warn("Cannot resume the output connection.", e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (!closed.get()) {
+                log.error("The output connection was not resumed after {} attempts.", retryConfig.getMaxRetries());
+            }
+        }, "resume-output" + commandContext);
+        resume.setDaemon(true);
+        resume.start();
+    }
+
     private String formatCommandContext(String commandContext) {
         if (commandContext != null && !commandContext.equals("")) {
             commandContext = "/" + commandContext;
@@ -343,6 +408,20 @@ public class BuildAgentSocketClient extends BuildAgentClientBase implements Buil
         client.onBinaryMessage(responseConsumer);
     }
 
+    private void registerResumableBinaryResponseConsumer(Optional<Consumer<String>> responseDataConsumer, RemoteEndpoint client) {
+        Consumer<byte[]> responseConsumer = (bytes) -> {
+            long offset = ByteBuffer.wrap(bytes).getLong();
+            if (offset != outputOffset) {
+                log.warn("Expected the output from offset {}, received from {}.", outputOffset, offset);
+            }
+            int length = bytes.length - Constants.OUTPUT_OFFSET_LENGTH;
+            outputOffset = offset + length;
+            String responseData = new String(bytes, Constants.OUTPUT_OFFSET_LENGTH, length, StandardCharsets.UTF_8);
+            responseDataConsumer.ifPresent((rdc) -> rdc.accept(responseData));
+        };
+        client.onBinaryMessage(responseConsumer);
+    }
+
     private void registerTextResponseConsumer(Optional<Consumer<String>> responseDataConsumer, RemoteEndpoint client) {
         Consumer<String> responseConsumer = (string) -> {
                 responseDataConsumer.ifPresent((rdc) -> rdc.accept(string));;
@@ -350,7 +429,27 @@ public class BuildAgentSocketClient extends BuildAgentClientBase implements Buil
         client.onStringMessage(responseConsumer);
     }
 
+    /**
+     * @return true when the connection was lost by a network failure or an error of the agent, the normal close (eg.
+     *         after the command completed) and the rejected resume are not retried
+     */
+    private static boolean isDropped(CloseReason closeReason) {
+        if (closeReason.getCloseCode().getCode() == Constants.OUTPUT_OFFSET_REJECTED_CLOSE_CODE) {
+            log.error("The agent cannot resume the output connection: {}", closeReason.getReasonPhrase());
+            return false;
+        }
+        return CloseReason.CloseCodes.CLOSED_ABNORMALLY.equals(closeReason.getCloseCode())
+                || CloseReason.CloseCodes.UNEXPECTED_CONDITION.equals(closeReason.getCloseCode());
+    }
+
     private RemoteEndpoint initializeDefault(String name) {
+        return initializeDefault(name, null);
+    }
+
+    /**
+     * @param onDropped called when the connection drops abnormally, see {@link #isDropped(CloseReason)}
+     */
+    private RemoteEndpoint initializeDefault(String name, Runnable onDropped) {
 
         Consumer<Session> onOpen = (session) -> {
             log.info("Client connection opened for {}.", name);
@@ -358,6 +457,9 @@ public class BuildAgentSocketClient extends BuildAgentClientBase implements Buil
 
         Consumer<CloseReason> onClose = (closeReason) -> {
             log.info("Client connection closed for {}. {}", name, closeReason);
+            if (onDropped != null && !closed.get() && isDropped(closeReason)) {
+                onDropped.run();
+            }
         };
 
         Consumer<Throwable> onError = (throwable) -> {
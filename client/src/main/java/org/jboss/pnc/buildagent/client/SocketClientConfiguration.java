@@ -11,6 +11,7 @@ public class SocketClientConfiguration extends ClientConfigurationBase {
     private ResponseMode responseMode;
     private boolean readOnly;
     private String commandContext;
+    private boolean resumable;
 
     private SocketClientConfiguration(Builder builder) {
         termBaseUrl = builder.termBaseUrl;
@@ -19,6 +20,7 @@ public class SocketClientConfiguration extends ClientConfigurationBase {
         livenessResponseTimeout = builder.livenessResponseTimeout;
         commandContext = builder.commandContext;
         retryConfig = builder.retryConfig;
+        resumable = builder.resumable;
     }
 
     public static Builder newBuilder() {
@@ -33,6 +35,7 @@ public class SocketClientConfiguration extends ClientConfigurationBase {
         builder.readOnly = copy.isReadOnly();
         builder.commandContext = copy.getCommandContext();
         builder.retryConfig = copy.getRetryConfig();
+        builder.resumable = copy.isResumable();
         return builder;
     }
 
@@ -48,6 +51,10 @@ public class SocketClientConfiguration extends ClientConfigurationBase {
         return commandContext;
     }
 
+    public boolean isResumable() {
+        return resumable;
+    }
+
     public static final class Builder {
         private String termBaseUrl;
         private Long livenessResponseTimeout = 30000L;
@@ -55,6 +62,7 @@ public class SocketClientConfiguration extends ClientConfigurationBase {
         private boolean readOnly = false;
         private String commandContext = "";
         public RetryConfig retryConfig = new RetryConfig(10, 500L);
+        private boolean resumable = false;
 
         private Builder() {
         }
@@ -89,6 +97,15 @@ public class SocketClientConfiguration extends ClientConfigurationBase {
             return this;
         }
 
+        /**
+         * The binary output connection is reconnected after it drops and the output continues from the last received
+         * byte. The retries are limited by the {@link #retryConfig(RetryConfig)}.
+         */
+        public Builder resumable(boolean resumable) {
+            this.resumable = resumable;
+            return this;
+        }
+
         public SocketClientConfiguration build() {
             return new SocketClientConfiguration(this);
         }
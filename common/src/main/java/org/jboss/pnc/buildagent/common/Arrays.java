@@ -1,22 +1,18 @@
 package org.jboss.pnc.buildagent.common;
 
 import java.nio.charset.Charset;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 public class Arrays {
 
+    /**
+     * For the pty output use {@link Utf8Encoder}, which does not allocate intermediate strings.
+     */
     public static byte[] charIntstoBytes(int[] ints, Charset charset) {
-        String string = IntStream.of(ints)
-                .mapToObj(i -> new String(Character.toChars(i)))
-                .collect(Collectors.joining());
-        return string.getBytes(charset);
+        return charIntsToString(ints).getBytes(charset);
     }
 
     public static String charIntsToString(int[] ints) {
-        return IntStream.of(ints)
-                .mapToObj(i -> new String(Character.toChars(i)))
-                .collect(Collectors.joining());
+        return new String(ints, 0, ints.length);
     }
 
     public static int[] bytesToInts(byte[] bytes) {
@@ -0,0 +1,13 @@
+package org.jboss.pnc.buildagent.common;
+
+/**
+ * Receives a line as a slice of a byte array, including the line terminator.
+ *
+ * The array is owned by the caller and it is reused, the slice is valid only during the call. Copy it if it has to be
+ * kept.
+ */
+@FunctionalInterface
+public interface ByteLineConsumer {
+
+    void accept(byte[] bytes, int offset, int length);
+}
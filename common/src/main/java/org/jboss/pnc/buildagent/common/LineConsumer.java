@@ -1,9 +1,5 @@
 package org.jboss.pnc.buildagent.common;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.util.function.Consumer;
@@ -11,17 +7,21 @@ import java.util.function.Consumer;
 /**
  * Consumer bytes and calls consumer when new line byte is appended.
  *
+ * Each appended array is scanned for LF, a line that is entirely in the array is passed on as a slice of it, without
+ * copying. Only a line that spans multiple arrays is collected in the internal (reusable) buffer.
+ *
  * @author <a href="mailto:matejonnet@gmail.opecom">Matej Lazar</a>
  */
 public class LineConsumer {
 
-    private static final Logger logger = LoggerFactory.getLogger(LineConsumer.class);
-
     private static final byte LF = 0xA;
-    private Consumer<String> lineConsumer;
-    private Charset charset;
+    private final ByteLineConsumer lineConsumer;
 
-    private ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+    /**
+     * The beginning of the line that has not been terminated yet.
+     */
+    private byte[] buffer = new byte[512];
+    private int buffered;
 
     /**
      *
@@ -30,40 +30,62 @@ public class LineConsumer {
      * @throws UnsupportedEncodingException
      */
     public LineConsumer(Consumer<String> onLine, Charset charset) throws UnsupportedEncodingException {
-        this.lineConsumer = onLine;
-        this.charset = charset;
         if (!Charset.availableCharsets().values().contains(charset)) {
             throw new UnsupportedEncodingException();
         }
+        this.lineConsumer = (bytes, offset, length) -> onLine.accept(new String(bytes, offset, length, charset));
+    }
+
+    /**
+     * @param onLine called with the line bytes, no String is created.
+     */
+    public LineConsumer(ByteLineConsumer onLine) {
+        this.lineConsumer = onLine;
     }
 
     public void append(byte[] bytes) {
-        for (byte b : bytes) {
-            buffer.write(b);
-            if (b == LF) {
-                try {
-                    lineConsumer.accept(buffer.toString(charset.name()));
-                } catch (UnsupportedEncodingException e) {
-                    //it must be supported, it's checked in the constructor
-                    logger.error("", e);
+        append(bytes, 0, bytes.length);
+    }
+
+    public void append(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        int lineStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] == LF) {
+                int lineEnd = i + 1;
+                if (buffered == 0) {
+                    lineConsumer.accept(bytes, lineStart, lineEnd - lineStart);
+                } else {
+                    bufferBytes(bytes, lineStart, lineEnd - lineStart);
+                    lineConsumer.accept(buffer, 0, buffered);
+                    buffered = 0;
                 }
-                buffer.reset();
+                lineStart = lineEnd;
             }
         }
+        if (lineStart < end) {
+            bufferBytes(bytes, lineStart, end - lineStart);
+        }
+    }
+
+    private void bufferBytes(byte[] bytes, int offset, int length) {
+        int required = buffered + length;
+        if (required > buffer.length) {
+            byte[] grown = new byte[Math.max(required, buffer.length * 2)];
+            System.arraycopy(buffer, 0, grown, 0, buffered);
+            buffer = grown;
+        }
+        System.arraycopy(bytes, offset, buffer, buffered, length);
+        buffered = required;
     }
 
     /**
      * Call onLine consumer with the remaining string in the buffer.
      */
     public void flush() {
-        try {
-            if (buffer.size() > 0) { //flush if there is something in the buffer
-                lineConsumer.accept(buffer.toString(charset.name()));
-            }
-        } catch (UnsupportedEncodingException e) {
-            //it must be supported, it's checked in the constructor
-            e.printStackTrace();
+        if (buffered > 0) { //flush if there is something in the buffer
+            lineConsumer.accept(buffer, 0, buffered);
         }
-        buffer.reset();
+        buffered = 0;
     }
 }
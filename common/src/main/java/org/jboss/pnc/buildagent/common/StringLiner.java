@@ -1,37 +1,119 @@
 package org.jboss.pnc.buildagent.common;
 
 /**
+ * Splits the appended text to lines, CR, LF and CRLF are line terminators.
+ *
+ * The text is kept in a growable ring buffer and the scan continues where the previous one stopped, so each character
+ * is looked at once, regardless of how long the line is. A CR at the end of the buffer terminates the line, a LF
+ * appended after it is treated as the rest of the CRLF.
+ *
+ * The class is not thread safe.
+ *
  * @author <a href="mailto:matejonnet@gmail.com">Matej Lazar</a>
  */
 public class StringLiner {
 
-    private final StringBuffer stringBuffer = new StringBuffer();
+    private char[] ring = new char[256];
+
+    /**
+     * Position of the first buffered char in the ring.
+     */
+    private int start;
+    private int size;
+
+    /**
+     * Number of chars from the start that are already known not to contain a line terminator.
+     */
+    private int scanned;
+
+    /**
+     * Last line was terminated by CR at the end of the buffer, skip the LF if it comes next.
+     */
+    private boolean skipLf;
 
     public void append(String string) {
-        stringBuffer.append(string);
+        int length = string.length();
+        ensureCapacity(size + length);
+        int end = (start + size) & (ring.length - 1);
+        int firstPart = Math.min(length, ring.length - end);
+        string.getChars(0, firstPart, ring, end);
+        string.getChars(firstPart, length, ring, 0);
+        size += length;
     }
 
-    public synchronized String nextLine() {
-        int nlLength;
-        int nlPosition = stringBuffer.indexOf("\r\n");
-        if (nlPosition > -1) {
-            nlLength = 2;
-        } else {
-            nlLength = 1;
-            nlPosition = stringBuffer.indexOf("\n");
-            if (nlPosition == -1) {
-                nlPosition = stringBuffer.indexOf("\r");
+    public String nextLine() {
+        if (skipLf && size > 0) {
+            if (charAt(0) == '\n') {
+                drop(1);
             }
+            skipLf = false;
         }
-        if (nlPosition > -1) {
-            String line = stringBuffer.substring(0, nlPosition);
-            stringBuffer.delete(0, nlPosition + nlLength);
-            return line;
+        for (int i = scanned; i < size; i++) {
+            char c = charAt(i);
+            if (c == '\n' || c == '\r') {
+                String line = substring(i);
+                int consumed = i + 1;
+                if (c == '\r') {
+                    if (i + 1 < size) {
+                        if (charAt(i + 1) == '\n') {
+                            consumed++;
+                        }
+                    } else {
+                        skipLf = true;
+                    }
+                }
+                drop(consumed);
+                return line;
+            }
         }
+        scanned = size;
         return null;
     }
 
-    public String currentlyBuffered(){
-        return stringBuffer.toString();
+    public String currentlyBuffered() {
+        return substring(size);
+    }
+
+    private char charAt(int index) {
+        return ring[(start + index) & (ring.length - 1)];
+    }
+
+    /**
+     * @return first length chars
+     */
+    private String substring(int length) {
+        int firstPart = Math.min(length, ring.length - start);
+        if (firstPart == length) {
+            return new String(ring, start, length);
+        }
+        char[] chars = new char[length];
+        System.arraycopy(ring, start, chars, 0, firstPart);
+        System.arraycopy(ring, 0, chars, firstPart, length - firstPart);
+        return new String(chars);
+    }
+
+    private void drop(int length) {
+        start = (start + length) & (ring.length - 1);
+        size -= length;
+        scanned = 0;
+    }
+
+    /**
+     * Keeps the capacity a power of two, so the position wraps with a mask.
+     */
+    private void ensureCapacity(int required) {
+        if (required <= ring.length) {
+            return;
+        }
+        int capacity = ring.length;
+        while (capacity < required) {
+            capacity <<= 1;
+        }
+        char[] grown = new char[capacity];
+        int firstPart = Math.min(size, ring.length - start);
+        System.arraycopy(ring, start, grown, 0, firstPart);
+        System.arraycopy(ring, 0, grown, firstPart, size - firstPart);
+        ring = grown;
+        start = 0;
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.common;
+
+/**
+ * Streaming encoder of code points (as produced by the pty) to UTF-8 bytes.
+ *
+ * Code points are written directly to a reusable buffer, there are no intermediate strings. A high surrogate at the
+ * end of the input is kept until the next call so the pair split across two chunks is encoded as a single character.
+ * Unpaired surrogates and invalid code points are replaced with '?', the same as {@link String#getBytes} does.
+ *
+ * The instance keeps state between the calls and it is not thread safe, use one instance per output stream.
+ */
+public class Utf8Encoder {
+
+    private static final byte REPLACEMENT = '?';
+
+    private static final int NO_PENDING = -1;
+
+    private byte[] buffer;
+
+    private int pendingHighSurrogate = NO_PENDING;
+
+    public Utf8Encoder() {
+        this(1024);
+    }
+
+    public Utf8Encoder(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * @return a new array containing the encoded code points, the internal buffer is not exposed so the result can be
+     *         safely passed to the asynchronous consumers.
+     */
+    public byte[] encode(int[] codePoints) {
+        return encode(codePoints, 0, codePoints.length);
+    }
+
+    public byte[] encode(int[] codePoints, int offset, int length) {
+        int written = encodeToBuffer(codePoints, offset, length);
+        return java.util.Arrays.copyOf(buffer, written);
+    }
+
+    /**
+     * Encode the code points to the internal buffer.
+     *
+     * @return number of bytes written, bytes are available via {@link #buffer()} until the next call.
+     */
+    public int encodeToBuffer(int[] codePoints, int offset, int length) {
+        // the worst case is 4 bytes per code point plus a replaced pending surrogate
+        ensureCapacity(length * 4 + 1);
+        byte[] buf = buffer;
+        int position = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int codePoint = codePoints[i];
+            if (pendingHighSurrogate != NO_PENDING) {
+                int high = pendingHighSurrogate;
+                pendingHighSurrogate = NO_PENDING;
+                if (codePoint >= Character.MIN_LOW_SURROGATE && codePoint <= Character.MAX_LOW_SURROGATE) {
+                    position = writeCodePoint(buf, position, Character.toCodePoint((char) high, (char) codePoint));
+                    continue;
+                }
+                buf[position++] = REPLACEMENT;
+            }
+            if (codePoint < 0x80 && codePoint >= 0) {
+                buf[position++] = (byte) codePoint;
+            } else if (codePoint >= Character.MIN_HIGH_SURROGATE && codePoint <= Character.MAX_HIGH_SURROGATE) {
+                pendingHighSurrogate = codePoint;
+            } else if (codePoint >= Character.MIN_LOW_SURROGATE && codePoint <= Character.MAX_LOW_SURROGATE) {
+                buf[position++] = REPLACEMENT;
+            } else {
+                position = writeCodePoint(buf, position, codePoint);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Complete the stream. A pending high surrogate, which won't get its pair anymore, is written as a replacement.
+     *
+     * @return remaining bytes, an empty array when there is nothing pending.
+     */
+    public byte[] flush() {
+        if (pendingHighSurrogate == NO_PENDING) {
+            return new byte[0];
+        }
+        pendingHighSurrogate = NO_PENDING;
+        return new byte[] { REPLACEMENT };
+    }
+
+    public boolean hasPending() {
+        return pendingHighSurrogate != NO_PENDING;
+    }
+
+    /**
+     * @return the internal buffer, valid data is in the range returned by the last {@link #encodeToBuffer} call.
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    private static int writeCodePoint(byte[] buf, int position, int codePoint) {
+        if (codePoint < 0x80 && codePoint >= 0) {
+            buf[position++] = (byte) codePoint;
+        } else if (codePoint < 0x800 && codePoint >= 0) {
+            buf[position++] = (byte) (0xC0 | (codePoint >> 6));
+            buf[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000 && codePoint >= 0) {
+            buf[position++] = (byte) (0xE0 | (codePoint >> 12));
+            buf[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buf[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint <= Character.MAX_CODE_POINT && codePoint >= 0) {
+            buf[position++] = (byte) (0xF0 | (codePoint >> 18));
+            buf[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buf[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buf[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            buf[position++] = REPLACEMENT;
+        }
+        return position;
+    }
+
+    private void ensureCapacity(int required) {
+        if (buffer.length < required) {
+            buffer = new byte[Math.max(required, buffer.length * 2)];
+        }
+    }
+}
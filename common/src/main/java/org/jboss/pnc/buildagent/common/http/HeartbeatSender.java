@@ -9,9 +9,11 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
 
 public class HeartbeatSender {
 
@@ -40,8 +42,16 @@ public class HeartbeatSender {
     }
 
     public Future<?> start(HeartbeatConfig heartbeatConfig) {
+        return start(heartbeatConfig, Collections::emptyList);
+    }
+
+    /**
+     * @param sessionHeaders headers describing the current state of the task, eg. that it is still queued, they are
+     *         read on each heartbeat
+     */
+    public Future<?> start(HeartbeatConfig heartbeatConfig, Supplier<List<Request.Header>> sessionHeaders) {
         return executor.scheduleAtFixedRate(
-                () -> sendHeartbeat(heartbeatConfig.getRequest()),
+                () -> sendHeartbeat(heartbeatConfig.getRequest(), sessionHeaders.get()),
                 0L,
                 heartbeatConfig.getDelay(),
                 heartbeatConfig.getDelayTimeUnit());
@@ -51,8 +61,8 @@ public class HeartbeatSender {
         heartBeatFuture.cancel(false);
     }
 
-    private void sendHeartbeat(Request heartbeatRequest) {
-        httpClient.invoke(addHeartbeatHttpHeader(heartbeatRequest), ByteBuffer.allocate(0), 0, 0L, -1L, 0, 0)
+    private void sendHeartbeat(Request heartbeatRequest, List<Request.Header> sessionHeaders) {
+        httpClient.invoke(addHeartbeatHttpHeader(heartbeatRequest, sessionHeaders), ByteBuffer.allocate(0), 0, 0L, -1L, 0, 0)
             .handle((response, throwable) -> {
                 if (throwable != null) {
                     logger.error("Cannot send heartbeat.", throwable);
@@ -63,9 +73,10 @@ public class HeartbeatSender {
             });
     }
 
-    private Request addHeartbeatHttpHeader(Request original) {
+    private Request addHeartbeatHttpHeader(Request original, List<Request.Header> sessionHeaders) {
 
         List<Request.Header> headers = new ArrayList<>(original.getHeaders());
+        headers.addAll(sessionHeaders);
         if (heartbeatHttpHeaderProvider != null) {
             logger.info("Adding additional http headers to heartbeat");
             headers.addAll(heartbeatHttpHeaderProvider.getHeaders());
@@ -0,0 +1,105 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014-2019 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.buildagent.common.security;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C (Castagnoli) of the output. Uses the intrinsic java.util.zip.CRC32C when the runtime has it (Java 9+),
+ * otherwise a table based implementation.
+ */
+public class Crc32c implements OutputDigest {
+
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    private final Checksum checksum;
+
+    public Crc32c() {
+        checksum = newChecksum();
+    }
+
+    private static Checksum newChecksum() {
+        try {
+            return (Checksum) Class.forName("java.util.zip.CRC32C").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return new TableCrc32c();
+        }
+    }
+
+    @Override
+    public void add(byte[] bytes) {
+        checksum.update(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public String digest() {
+        long value = checksum.getValue();
+        checksum.reset();
+        return CheckSum.format(new byte[] {
+                (byte) (value >>> 24),
+                (byte) (value >>> 16),
+                (byte) (value >>> 8),
+                (byte) value });
+    }
+
+    @Override
+    public DigestAlgorithm getAlgorithm() {
+        return DigestAlgorithm.CRC32C;
+    }
+
+    static class TableCrc32c implements Checksum {
+
+        private int crc = 0xFFFFFFFF;
+
+        @Override
+        public void update(int b) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+        }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+            int value = crc;
+            for (int i = offset; i < offset + length; i++) {
+                value = (value >>> 8) ^ TABLE[(value ^ bytes[i]) & 0xFF];
+            }
+            crc = value;
+        }
+
+        @Override
+        public long getValue() {
+            return (~crc) & 0xFFFFFFFFL;
+        }
+
+        @Override
+        public void reset() {
+            crc = 0xFFFFFFFF;
+        }
+    }
+}
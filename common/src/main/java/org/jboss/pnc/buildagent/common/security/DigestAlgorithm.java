@@ -0,0 +1,71 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014-2019 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.buildagent.common.security;
+
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Algorithms of the process output digest. MD5 is the default, it is the checksum the log storage expects.
+ */
+public enum DigestAlgorithm {
+
+    MD5("MD5"),
+    SHA_256("SHA-256"),
+    CRC32C("CRC32C"),
+    XXH64("XXH64");
+
+    private final String algorithmName;
+
+    DigestAlgorithm(String algorithmName) {
+        this.algorithmName = algorithmName;
+    }
+
+    /**
+     * @return the name reported with the digest, eg. in the completion event
+     */
+    public String getAlgorithmName() {
+        return algorithmName;
+    }
+
+    public OutputDigest newDigest() throws NoSuchAlgorithmException {
+        switch (this) {
+            case MD5:
+                return new Md5();
+            case SHA_256:
+                return new Sha256();
+            case CRC32C:
+                return new Crc32c();
+            case XXH64:
+                return new XxHash64();
+            default:
+                throw new NoSuchAlgorithmException("Unknown output digest " + this + ".");
+        }
+    }
+
+    /**
+     * Accepts both the enum constant and the algorithm name, eg. SHA_256 or SHA-256.
+     */
+    public static DigestAlgorithm fromName(String name) {
+        for (DigestAlgorithm algorithm : values()) {
+            if (algorithm.name().equalsIgnoreCase(name) || algorithm.algorithmName.equalsIgnoreCase(name)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unknown output digest algorithm " + name + ".");
+    }
+}
@@ -25,7 +25,7 @@ import java.security.NoSuchAlgorithmException;
 /**
  * @author <a href="mailto:matejonnet@gmail.com">Matej Lazar</a>
  */
-public class Md5 {
+public class Md5 implements OutputDigest {
 
     private MessageDigest md;
 
@@ -42,12 +42,19 @@ public class Md5 {
         md.update(message.getBytes("UTF-8"));
     }
 
+    @Override
     public void add(byte[] bytes) {
         md.update(bytes);
     }
 
+    @Override
     public String digest() {
         byte[] digest = md.digest();
         return CheckSum.format(digest);
     }
+
+    @Override
+    public DigestAlgorithm getAlgorithm() {
+        return DigestAlgorithm.MD5;
+    }
 }
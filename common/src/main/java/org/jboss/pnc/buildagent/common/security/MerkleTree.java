@@ -0,0 +1,64 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014-2019 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.buildagent.common.security;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Merkle tree of the process output computed by {@link MerkleTreeDigest}. Leaf i covers the output bytes from
+ * i * leafSize, only the last leaf can be shorter.
+ */
+public class MerkleTree {
+
+    public static final String ALGORITHM = "SHA-256";
+
+    private final int leafSize;
+    private final long length;
+    private final List<String> leaves;
+    private final String root;
+
+    MerkleTree(int leafSize, long length, List<String> leaves, String root) {
+        this.leafSize = leafSize;
+        this.length = length;
+        this.leaves = Collections.unmodifiableList(leaves);
+        this.root = root;
+    }
+
+    public int getLeafSize() {
+        return leafSize;
+    }
+
+    /**
+     * @return number of the output bytes covered by the tree
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return hex encoded leaf hashes in the output order
+     */
+    public List<String> getLeaves() {
+        return leaves;
+    }
+
+    public String getRoot() {
+        return root;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014-2019 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.buildagent.common.security;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Incremental Merkle tree of the output. The output is cut into fixed size leaves, each full leaf is hashed by the
+ * executor while the next one is filled, so the leaves are hashed in parallel. The tree is built when the output is
+ * complete.
+ *
+ * The hashes are SHA-256, leaf = H(0x00 || data) and node = H(0x01 || left || right), the last node of a level with
+ * an odd number of nodes is promoted to the next level. The root of an empty output is H(0x00).
+ */
+public class MerkleTreeDigest {
+
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+
+    private final int leafSize;
+    private final Executor executor;
+
+    /**
+     * Max number of the leaves waiting for the hash, the leaf buffers are not kept when the executor does not keep up.
+     */
+    private final int maxPendingLeaves;
+
+    private final List<CompletableFuture<byte[]>> leaves = new ArrayList<>();
+    private int firstPending;
+
+    private byte[] leaf;
+    private int leafPosition;
+    private long length;
+
+    public MerkleTreeDigest(int leafSize, Executor executor) {
+        this(leafSize, executor, Math.max(2, Runtime.getRuntime().availableProcessors() * 2));
+    }
+
+    public MerkleTreeDigest(int leafSize, Executor executor, int maxPendingLeaves) {
+        if (leafSize <= 0) {
+            throw new IllegalArgumentException("Leaf size must be positive.");
+        }
+        this.leafSize = leafSize;
+        this.executor = executor;
+        this.maxPendingLeaves = maxPendingLeaves;
+        this.leaf = new byte[leafSize];
+    }
+
+    public void add(byte[] bytes) {
+        int offset = 0;
+        while (offset < bytes.length) {
+            int copied = Math.min(bytes.length - offset, leafSize - leafPosition);
+            System.arraycopy(bytes, offset, leaf, leafPosition, copied);
+            leafPosition += copied;
+            offset += copied;
+            if (leafPosition == leafSize) {
+                submitLeaf(leaf, leafSize);
+                leaf = new byte[leafSize];
+                leafPosition = 0;
+            }
+        }
+        length += bytes.length;
+    }
+
+    private void submitLeaf(byte[] data, int size) {
+        leaves.add(CompletableFuture.supplyAsync(() -> hash(LEAF_PREFIX, data, 0, size), executor));
+        while (leaves.size() - firstPending > maxPendingLeaves) {
+            await(leaves.get(firstPending++));
+        }
+    }
+
+    /**
+     * Hashes the last leaf and builds the tree, the digest must not be used after.
+     */
+    public MerkleTree finish() {
+        if (leafPosition > 0) {
+            submitLeaf(leaf, leafPosition);
+        }
+        leaf = null;
+
+        List<byte[]> level = new ArrayList<>(leaves.size());
+        List<String> leafHashes = new ArrayList<>(leaves.size());
+        for (CompletableFuture<byte[]> future : leaves) {
+            byte[] hash = await(future);
+            level.add(hash);
+            leafHashes.add(CheckSum.format(hash));
+        }
+
+        byte[] root;
+        if (level.isEmpty()) {
+            root = hash(LEAF_PREFIX, new byte[0], 0, 0);
+        } else {
+            while (level.size() > 1) {
+                List<byte[]> parents = new ArrayList<>((level.size() + 1) / 2);
+                for (int i = 0; i + 1 < level.size(); i += 2) {
+                    byte[] children = new byte[level.get(i).length * 2];
+                    System.arraycopy(level.get(i), 0, children, 0, level.get(i).length);
+                    System.arraycopy(level.get(i + 1), 0, children, level.get(i).length, level.get(i + 1).length);
+                    parents.add(hash(NODE_PREFIX, children, 0, children.length));
+                }
+                if (level.size() % 2 == 1) {
+                    parents.add(level.get(level.size() - 1));
+                }
+                level = parents;
+            }
+            root = level.get(0);
+        }
+        return new MerkleTree(leafSize, length, leafHashes, CheckSum.format(root));
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing the output.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Cannot hash the output.", e.getCause());
+        }
+    }
+
+    static byte[] hash(byte prefix, byte[] data, int offset, int length) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(MerkleTree.ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        md.update(prefix);
+        md.update(data, offset, length);
+        return md.digest();
+    }
+}
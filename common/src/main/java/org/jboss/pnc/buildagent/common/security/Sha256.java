@@ -25,7 +25,7 @@ import java.security.NoSuchAlgorithmException;
 /**
  * @author <a href="mailto:matejonnet@gmail.com">Matej Lazar</a>
  */
-public class Sha256 {
+public class Sha256 implements OutputDigest {
 
     MessageDigest md;
 
@@ -42,11 +42,22 @@ public class Sha256 {
         md.update(message.getBytes("UTF-8"));
     }
 
+    @Override
+    public void add(byte[] bytes) {
+        md.update(bytes);
+    }
+
+    @Override
     public String digest() {
         byte[] digest = md.digest();
         return CheckSum.format(digest);
     }
 
+    @Override
+    public DigestAlgorithm getAlgorithm() {
+        return DigestAlgorithm.SHA_256;
+    }
+
 
 
 }
@@ -0,0 +1,160 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014-2019 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.buildagent.common.security;
+
+/**
+ * Streaming XXH64 with seed 0. The output is added in chunks of any size, the partial stripes are kept until the next
+ * chunk.
+ */
+public class XxHash64 implements OutputDigest {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE = 32;
+
+    private final byte[] buffer = new byte[STRIPE];
+    private int buffered;
+    private long totalLength;
+
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    public XxHash64() {
+        reset();
+    }
+
+    private void reset() {
+        v1 = PRIME1 + PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+        buffered = 0;
+        totalLength = 0;
+    }
+
+    @Override
+    public void add(byte[] bytes) {
+        int offset = 0;
+        int length = bytes.length;
+        totalLength += length;
+
+        if (buffered + length < STRIPE) {
+            System.arraycopy(bytes, 0, buffer, buffered, length);
+            buffered += length;
+            return;
+        }
+        if (buffered > 0) {
+            int fill = STRIPE - buffered;
+            System.arraycopy(bytes, 0, buffer, buffered, fill);
+            processStripe(buffer, 0);
+            offset = fill;
+            buffered = 0;
+        }
+        for (; offset + STRIPE <= length; offset += STRIPE) {
+            processStripe(bytes, offset);
+        }
+        buffered = length - offset;
+        System.arraycopy(bytes, offset, buffer, 0, buffered);
+    }
+
+    private void processStripe(byte[] bytes, int offset) {
+        v1 = round(v1, readLong(bytes, offset));
+        v2 = round(v2, readLong(bytes, offset + 8));
+        v3 = round(v3, readLong(bytes, offset + 16));
+        v4 = round(v4, readLong(bytes, offset + 24));
+    }
+
+    @Override
+    public String digest() {
+        long hash;
+        if (totalLength >= STRIPE) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = PRIME5;
+        }
+        hash += totalLength;
+
+        int offset = 0;
+        for (; offset + 8 <= buffered; offset += 8) {
+            hash ^= round(0, readLong(buffer, offset));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+        }
+        if (offset + 4 <= buffered) {
+            hash ^= (readInt(buffer, offset) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            offset += 4;
+        }
+        for (; offset < buffered; offset++) {
+            hash ^= (buffer[offset] & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+
+        reset();
+        return String.format("%016x", hash);
+    }
+
+    @Override
+    public DigestAlgorithm getAlgorithm() {
+        return DigestAlgorithm.XXH64;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFFL)
+                | (bytes[offset + 1] & 0xFFL) << 8
+                | (bytes[offset + 2] & 0xFFL) << 16
+                | (bytes[offset + 3] & 0xFFL) << 24
+                | (bytes[offset + 4] & 0xFFL) << 32
+                | (bytes[offset + 5] & 0xFFL) << 40
+                | (bytes[offset + 6] & 0xFFL) << 48
+                | (bytes[offset + 7] & 0xFFL) << 56;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF)
+                | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16
+                | (bytes[offset + 3] & 0xFF) << 24;
+    }
+}
@@ -66,6 +66,40 @@ public class LineConsumerTest {
 
     }
 
+    @Test
+    public void shouldPassLineSlicesWithoutCopying() {
+        byte[] chunk = "first\nsecond\nthird".getBytes(StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<>();
+        List<byte[]> arrays = new ArrayList<>();
+        LineConsumer lineConsumer = new LineConsumer((bytes, offset, length) -> {
+            lines.add(new String(bytes, offset, length, StandardCharsets.UTF_8));
+            arrays.add(bytes);
+        });
+
+        lineConsumer.append(chunk);
+        Assert.assertEquals(2, lines.size());
+        Assert.assertEquals("first\n", lines.get(0));
+        Assert.assertEquals("second\n", lines.get(1));
+        Assert.assertSame("Line contained in a chunk should not be copied.", chunk, arrays.get(0));
+        Assert.assertSame(chunk, arrays.get(1));
+
+        //a line spanning chunks, larger than the initial buffer
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longLine.append(i);
+        }
+        lineConsumer.append(longLine.toString().getBytes(StandardCharsets.UTF_8));
+        lineConsumer.append("\nlast".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals("third" + longLine + "\n", lines.get(2));
+
+        lineConsumer.flush();
+        Assert.assertEquals("last", lines.get(3));
+        Assert.assertEquals(4, lines.size());
+
+        lineConsumer.flush();
+        Assert.assertEquals("Empty buffer should not be flushed.", 4, lines.size());
+    }
+
     private List<byte[]> slicedBytes(String input, int sliceSize) {
         List<byte[]> inputs = new ArrayList<>();
         ByteBuffer inputBuffer = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
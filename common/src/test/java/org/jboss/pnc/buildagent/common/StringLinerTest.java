@@ -32,4 +32,47 @@ public class StringLinerTest {
         line = stringLiner.nextLine();
         Assert.assertEquals("dd", line);
     }
+
+    @Test
+    public void shouldHandleTerminatorsInOnePass() {
+        StringLiner stringLiner = new StringLiner();
+
+        stringLiner.append("a\nb\r\nc\rd");
+        Assert.assertEquals("a", stringLiner.nextLine());
+        Assert.assertEquals("b", stringLiner.nextLine());
+        Assert.assertEquals("c", stringLiner.nextLine());
+        Assert.assertNull(stringLiner.nextLine());
+        Assert.assertEquals("d", stringLiner.currentlyBuffered());
+
+        //CRLF split across appends is a single terminator
+        stringLiner.append("\r");
+        Assert.assertEquals("d", stringLiner.nextLine());
+        stringLiner.append("\ne\n\n");
+        Assert.assertEquals("e", stringLiner.nextLine());
+        Assert.assertEquals("", stringLiner.nextLine());
+        Assert.assertNull(stringLiner.nextLine());
+        Assert.assertEquals("", stringLiner.currentlyBuffered());
+    }
+
+    @Test
+    public void shouldBufferLongLines() {
+        StringLiner stringLiner = new StringLiner();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            String part = "part" + i + " ";
+            expected.append(part);
+            stringLiner.append(part);
+            Assert.assertNull(stringLiner.nextLine());
+        }
+        Assert.assertEquals(expected.toString(), stringLiner.currentlyBuffered());
+        stringLiner.append("end\nnext");
+        Assert.assertEquals(expected + "end", stringLiner.nextLine());
+        Assert.assertEquals("next", stringLiner.currentlyBuffered());
+
+        //wrap around the ring
+        for (int i = 0; i < 1000; i++) {
+            stringLiner.append(" " + i + "\n");
+            Assert.assertEquals((i == 0 ? "next" : "") + " " + i, stringLiner.nextLine());
+        }
+    }
 }
@@ -0,0 +1,51 @@
+package org.jboss.pnc.buildagent.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class Utf8EncoderTest {
+
+    @Test
+    public void shouldEncodeAsStringGetBytes() {
+        String string = "x对于绑定� ß 😀 end\r\n";
+        int[] codePoints = string.codePoints().toArray();
+
+        Utf8Encoder encoder = new Utf8Encoder(4);
+        byte[] bytes = encoder.encode(codePoints);
+
+        Assert.assertArrayEquals(string.getBytes(StandardCharsets.UTF_8), bytes);
+        Assert.assertFalse(encoder.hasPending());
+    }
+
+    @Test
+    public void shouldJoinSurrogatePairSplitAcrossChunks() throws IOException {
+        String string = "a😀b";
+        int[] chars = string.chars().toArray();
+
+        Utf8Encoder encoder = new Utf8Encoder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(encoder.encode(chars, 0, 2));
+        Assert.assertTrue(encoder.hasPending());
+        out.write(encoder.encode(chars, 2, 2));
+        out.write(encoder.flush());
+
+        Assert.assertEquals(string, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void shouldReplaceUnpairedSurrogates() throws IOException {
+        int[] chars = new int[] {'a', 0xDE00, 'b', 0xD83D, 'c', 0xD83D};
+
+        Utf8Encoder encoder = new Utf8Encoder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(encoder.encode(chars));
+        out.write(encoder.flush());
+
+        Assert.assertEquals("a?b?c?", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        Assert.assertEquals(0, encoder.flush().length);
+    }
+}
@@ -0,0 +1,79 @@
+package org.jboss.pnc.buildagent.common.performance;
+
+import org.jboss.pnc.buildagent.common.security.DigestAlgorithm;
+import org.jboss.pnc.buildagent.common.security.OutputDigest;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the output digest algorithms on build log shaped input: short lines in chunks of the size read from the pty.
+ */
+public class OutputDigestPerformanceTest {
+
+    private static final Logger log = LoggerFactory.getLogger(OutputDigestPerformanceTest.class);
+
+    private static final String[] LINES = {
+            "[INFO] Downloading from central: https://repo.maven.apache.org/maven2/org/apache/maven/maven-core/3.8.1/maven-core-3.8.1.pom\n",
+            "[INFO] Downloaded from central: https://repo.maven.apache.org/maven2/org/apache/maven/maven-core/3.8.1/maven-core-3.8.1.jar (626 kB at 2.1 MB/s)\n",
+            "[INFO] --- maven-compiler-plugin:3.8.1:compile (default-compile) @ build-agent-server ---\n",
+            "[WARNING] /src/main/java/org/jboss/pnc/buildagent/server/Main.java: Some input files use unchecked or unsafe operations.\n",
+            "[INFO] Tests run: 12, Failures: 0, Errors: 0, Skipped: 1, Time elapsed: 3.21 s - in org.jboss.pnc.buildagent.server.TestSuite\n",
+    };
+
+    /**
+     * Chunk sizes of the pty reads, mostly single lines and some full buffers.
+     */
+    private static final int[] CHUNK_SIZES = { 90, 130, 4096, 110, 8192, 1024 };
+
+    @Test @Ignore
+    public void digestThroughput() throws NoSuchAlgorithmException {
+        List<byte[]> chunks = buildLogChunks(64 * 1024 * 1024);
+        for (int round = 0; round < 3; round++) {
+            for (DigestAlgorithm algorithm : DigestAlgorithm.values()) {
+                measure(algorithm, chunks);
+            }
+        }
+    }
+
+    private void measure(DigestAlgorithm algorithm, List<byte[]> chunks) throws NoSuchAlgorithmException {
+        OutputDigest digest = algorithm.newDigest();
+        long bytes = 0;
+        long started = System.nanoTime();
+        for (byte[] chunk : chunks) {
+            digest.add(chunk);
+            bytes += chunk.length;
+        }
+        String value = digest.digest();
+        long tookMillis = Math.max(1, (System.nanoTime() - started) / 1000000);
+        log.info("{}: digested {} bytes in {} chunks in {} millis. Throughput: {} MB/s. Digest: {}.",
+                algorithm.getAlgorithmName(), bytes, chunks.size(), tookMillis, bytes * 1000 / tookMillis / 1024 / 1024, value);
+    }
+
+    private static List<byte[]> buildLogChunks(int size) {
+        StringBuilder log = new StringBuilder(size);
+        int line = 0;
+        while (log.length() < size) {
+            log.append(LINES[line++ % LINES.length]);
+        }
+        byte[] bytes = log.toString().getBytes(StandardCharsets.UTF_8);
+
+        List<byte[]> chunks = new ArrayList<>();
+        int offset = 0;
+        int chunk = 0;
+        while (offset < bytes.length) {
+            int length = Math.min(bytes.length - offset, CHUNK_SIZES[chunk++ % CHUNK_SIZES.length]);
+            byte[] copy = new byte[length];
+            System.arraycopy(bytes, offset, copy, 0, length);
+            chunks.add(copy);
+            offset += length;
+        }
+        return chunks;
+    }
+}
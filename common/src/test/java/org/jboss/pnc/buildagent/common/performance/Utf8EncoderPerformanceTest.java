@@ -0,0 +1,57 @@
+package org.jboss.pnc.buildagent.common.performance;
+
+import org.jboss.pnc.buildagent.common.Arrays;
+import org.jboss.pnc.buildagent.common.Utf8Encoder;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the pty output encoding with the previous stream based implementation.
+ */
+public class Utf8EncoderPerformanceTest {
+
+    private static final Logger log = LoggerFactory.getLogger(Utf8EncoderPerformanceTest.class);
+
+    private static final int[] chunk = ("[INFO] Downloaded from central: https://repo.maven.apache.org/maven2/org/"
+            + "apache/maven/maven-core/3.8.1/maven-core-3.8.1.jar (626 kB at 2.1 MB/s) 对于绑定\r\n")
+            .codePoints()
+            .toArray();
+
+    @Test @Ignore
+    public void encoderStressTest() {
+        Utf8Encoder encoder = new Utf8Encoder();
+        measure("Utf8Encoder", encoder::encode);
+        measure("Arrays.charIntstoBytes", ints -> Arrays.charIntstoBytes(ints, StandardCharsets.UTF_8));
+        measure("IntStream (previous)", Utf8EncoderPerformanceTest::streamEncode);
+    }
+
+    private void measure(String name, Function<int[], byte[]> encode) {
+        log.info("Warming up {} ...", name);
+        long written = 0;
+        for (int i = 0; i < 200000; i++) {
+            written += encode.apply(chunk).length;
+        }
+
+        long started = System.currentTimeMillis();
+        written = 0;
+        for (int i = 0; i < 2000000; i++) {
+            written += encode.apply(chunk).length;
+        }
+        long took = Math.max(1, System.currentTimeMillis() - started);
+        log.info("{}: encoded {} bytes in {} millis. Throughput: {} kB/s.", name, written, took, written / took * 1000 / 1024);
+    }
+
+    private static byte[] streamEncode(int[] ints) {
+        String string = IntStream.of(ints)
+                .mapToObj(i -> new String(Character.toChars(i)))
+                .collect(Collectors.joining());
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,102 @@
+package org.jboss.pnc.buildagent.common.security;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class MerkleTreeDigestTest {
+
+    @Test
+    public void shouldBuildTreeFromLeaves() {
+        MerkleTreeDigest digest = new MerkleTreeDigest(4, Runnable::run);
+        digest.add("aaaabb".getBytes(StandardCharsets.UTF_8));
+        digest.add("bbc".getBytes(StandardCharsets.UTF_8));
+        MerkleTree tree = digest.finish();
+
+        byte[] leaf0 = leaf("aaaa");
+        byte[] leaf1 = leaf("bbbb");
+        byte[] leaf2 = leaf("c");
+        byte[] node = node(leaf0, leaf1);
+        // the odd leaf is promoted
+        byte[] root = node(node, leaf2);
+
+        Assert.assertEquals(9, tree.getLength());
+        Assert.assertEquals(4, tree.getLeafSize());
+        Assert.assertEquals(
+                Arrays.asList(CheckSum.format(leaf0), CheckSum.format(leaf1), CheckSum.format(leaf2)),
+                tree.getLeaves());
+        Assert.assertEquals(CheckSum.format(root), tree.getRoot());
+    }
+
+    @Test
+    public void shouldHashEmptyOutput() {
+        MerkleTree tree = new MerkleTreeDigest(4, Runnable::run).finish();
+        Assert.assertTrue(tree.getLeaves().isEmpty());
+        Assert.assertEquals(CheckSum.format(leaf("")), tree.getRoot());
+    }
+
+    @Test
+    public void shouldNotDependOnChunkingAndParallelism() {
+        Random random = new Random(3);
+        byte[] output = new byte[100000];
+        random.nextBytes(output);
+
+        MerkleTreeDigest serial = new MerkleTreeDigest(1000, Runnable::run);
+        serial.add(output);
+        MerkleTree expected = serial.finish();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            MerkleTreeDigest parallel = new MerkleTreeDigest(1000, executor, 3);
+            int offset = 0;
+            while (offset < output.length) {
+                int length = Math.min(output.length - offset, random.nextInt(3000));
+                parallel.add(Arrays.copyOfRange(output, offset, offset + length));
+                offset += length;
+            }
+            MerkleTree tree = parallel.finish();
+            Assert.assertEquals(100, tree.getLeaves().size());
+            Assert.assertEquals(expected.getLeaves(), tree.getLeaves());
+            Assert.assertEquals(expected.getRoot(), tree.getRoot());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldLocateChangedLeaf() {
+        byte[] output = new byte[10000];
+        new Random(5).nextBytes(output);
+        MerkleTreeDigest original = new MerkleTreeDigest(1024, Runnable::run);
+        original.add(output);
+        MerkleTree originalTree = original.finish();
+
+        output[5000]++;
+        MerkleTreeDigest changed = new MerkleTreeDigest(1024, Runnable::run);
+        changed.add(output);
+        MerkleTree changedTree = changed.finish();
+
+        Assert.assertNotEquals(originalTree.getRoot(), changedTree.getRoot());
+        for (int i = 0; i < originalTree.getLeaves().size(); i++) {
+            boolean same = originalTree.getLeaves().get(i).equals(changedTree.getLeaves().get(i));
+            Assert.assertEquals("Leaf " + i, i != 5000 / 1024, same);
+        }
+    }
+
+    private static byte[] leaf(String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        return MerkleTreeDigest.hash((byte) 0, bytes, 0, bytes.length);
+    }
+
+    private static byte[] node(byte[] left, byte[] right) {
+        byte[] children = new byte[left.length + right.length];
+        System.arraycopy(left, 0, children, 0, left.length);
+        System.arraycopy(right, 0, children, left.length, right.length);
+        return MerkleTreeDigest.hash((byte) 1, children, 0, children.length);
+    }
+}
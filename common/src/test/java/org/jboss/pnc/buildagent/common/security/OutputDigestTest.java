@@ -0,0 +1,79 @@
+package org.jboss.pnc.buildagent.common.security;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class OutputDigestTest {
+
+    @Test
+    public void shouldMatchReferenceValues() throws NoSuchAlgorithmException {
+        Assert.assertEquals("d41d8cd98f00b204e9800998ecf8427e", digest(DigestAlgorithm.MD5, ""));
+        Assert.assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", digest(DigestAlgorithm.SHA_256, "abc"));
+        Assert.assertEquals("e3069283", digest(DigestAlgorithm.CRC32C, "123456789"));
+        Assert.assertEquals("ef46db3751d8e999", digest(DigestAlgorithm.XXH64, ""));
+        Assert.assertEquals("d24ec4f1a98c6e5b", digest(DigestAlgorithm.XXH64, "a"));
+        Assert.assertEquals("44bc2cf5ad770999", digest(DigestAlgorithm.XXH64, "abc"));
+    }
+
+    @Test
+    public void shouldNotDependOnChunking() throws NoSuchAlgorithmException {
+        Random random = new Random(42);
+        byte[] output = new byte[10000];
+        random.nextBytes(output);
+
+        for (DigestAlgorithm algorithm : DigestAlgorithm.values()) {
+            OutputDigest whole = algorithm.newDigest();
+            whole.add(output);
+            String expected = whole.digest();
+
+            OutputDigest chunked = algorithm.newDigest();
+            int offset = 0;
+            while (offset < output.length) {
+                int length = Math.min(output.length - offset, random.nextInt(70));
+                chunked.add(Arrays.copyOfRange(output, offset, offset + length));
+                offset += length;
+            }
+            Assert.assertEquals(algorithm.name(), expected, chunked.digest());
+        }
+    }
+
+    @Test
+    public void shouldResetAfterDigest() throws NoSuchAlgorithmException {
+        for (DigestAlgorithm algorithm : DigestAlgorithm.values()) {
+            OutputDigest digest = algorithm.newDigest();
+            digest.add("first command output".getBytes(StandardCharsets.UTF_8));
+            digest.digest();
+            digest.add("abc".getBytes(StandardCharsets.UTF_8));
+            Assert.assertEquals(algorithm.name(), digest(algorithm, "abc"), digest.digest());
+        }
+    }
+
+    @Test
+    public void tableCrc32cShouldMatchRuntime() {
+        byte[] output = new byte[4099];
+        new Random(7).nextBytes(output);
+        Crc32c runtime = new Crc32c();
+        runtime.add(output);
+        Crc32c.TableCrc32c table = new Crc32c.TableCrc32c();
+        table.update(output, 0, output.length);
+        Assert.assertEquals(runtime.digest(), String.format("%08x", table.getValue()));
+    }
+
+    @Test
+    public void shouldResolveAlgorithmByName() {
+        Assert.assertEquals(DigestAlgorithm.SHA_256, DigestAlgorithm.fromName("SHA-256"));
+        Assert.assertEquals(DigestAlgorithm.SHA_256, DigestAlgorithm.fromName("sha_256"));
+        Assert.assertEquals(DigestAlgorithm.XXH64, DigestAlgorithm.fromName("xxh64"));
+    }
+
+    private static String digest(DigestAlgorithm algorithm, String message) throws NoSuchAlgorithmException {
+        OutputDigest digest = algorithm.newDigest();
+        digest.add(message.getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+}
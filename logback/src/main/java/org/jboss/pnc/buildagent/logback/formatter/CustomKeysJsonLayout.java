@@ -41,6 +41,13 @@ public class CustomKeysJsonLayout extends JsonLayout {
         return customAttrNames.getOrDefault(key, key);
     }
 
+    /**
+     * @return the timestamp as formatted in the JSON map
+     */
+    String timestamp(long timeStamp) {
+        return formatTimestamp(timeStamp);
+    }
+
     public String getTimestampAttrName() {
         return customAttrNames.get(TIMESTAMP_ATTR_NAME);
     }
@@ -9,6 +9,9 @@ import ch.qos.logback.core.ConsoleAppender;
 import org.jboss.pnc.buildagent.api.logging.LogFormatter;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -16,19 +19,38 @@ import java.nio.charset.StandardCharsets;
  */
 public class LogbackFormatter implements LogFormatter {
 
+    static final String LOGGER_NAME = "org.jboss.pnc._userlog_.build-log";
+    static final String APPENDER_NAME = "STDOUT-BUILD-LOG";
+
     private final Logger logger;
     private final ConsoleAppender<ILoggingEvent> appender;
 
     public LogbackFormatter() {
         LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
-        logger = context.getLogger("org.jboss.pnc._userlog_.build-log");
-        appender = (ConsoleAppender<ILoggingEvent>) logger.getAppender("STDOUT-BUILD-LOG");
+        logger = context.getLogger(LOGGER_NAME);
+        appender = (ConsoleAppender<ILoggingEvent>) logger.getAppender(APPENDER_NAME);
     }
 
     @Override
     public String format(String message) {
+        return new String(encode(message), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the encoder output as is, without decoding it to a String.
+     */
+    @Override
+    public void formatTo(OutputStream out, CharSequence message) throws IOException {
+        out.write(encode(message.toString()));
+    }
+
+    @Override
+    public void formatTo(ByteBuffer buffer, CharSequence message) {
+        buffer.put(encode(message.toString()));
+    }
+
+    private byte[] encode(String message) {
         ILoggingEvent logEvent = new LoggingEvent(LogbackFormatter.class.getName(), logger, Level.INFO, message, null, new Object[0]);
-        byte[] encode = appender.getEncoder().encode(logEvent);
-        return new String(encode, StandardCharsets.UTF_8);
+        return appender.getEncoder().encode(logEvent);
     }
 }
@@ -10,10 +10,20 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class SequencedLayout extends CustomKeysJsonLayout {
 
+    static final String SEQUENCE_ATTR_NAME = "sequence";
+
     private static final AtomicLong sequence = new AtomicLong();
 
     protected void addCustomDataToJsonMap(Map<String, Object> map, ILoggingEvent event) {
-        map.put("sequence", sequence.getAndIncrement());
+        map.put(SEQUENCE_ATTR_NAME, nextSequence());
+    }
+
+    /**
+     * The sequence is shared with {@link StreamingLogbackFormatter}, so the numbers are unique whichever formats the
+     * line.
+     */
+    static long nextSequence() {
+        return sequence.getAndIncrement();
     }
 
 }
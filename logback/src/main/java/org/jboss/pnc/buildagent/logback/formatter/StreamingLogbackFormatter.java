@@ -0,0 +1,338 @@
+package org.jboss.pnc.buildagent.logback.formatter;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.contrib.jackson.JacksonJsonFormatter;
+import ch.qos.logback.contrib.json.JsonFormatter;
+import ch.qos.logback.contrib.json.classic.JsonLayout;
+import ch.qos.logback.core.ConsoleAppender;
+import ch.qos.logback.core.CoreConstants;
+import ch.qos.logback.core.Layout;
+import ch.qos.logback.core.encoder.Encoder;
+import ch.qos.logback.core.encoder.LayoutWrappingEncoder;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.core.util.Separators;
+import org.jboss.pnc.buildagent.api.logging.LogFormatter;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.slf4j.spi.MDCAdapter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Produces the same output as {@link LogbackFormatter} without creating the logging event and the JSON map for each
+ * line.
+ *
+ * The fields of the {@link CustomKeysJsonLayout} (including the renamed ones and the sequence of the {@link
+ * SequencedLayout}) are written by a Jackson generator straight to a reusable per-thread buffer. The formatted
+ * timestamp is reused within the same millisecond.
+ *
+ * Only the layouts of this module with the Jackson formatter are streamed, any other configuration of the build log
+ * appender is formatted by {@link LogbackFormatter}.
+ */
+public class StreamingLogbackFormatter implements LogFormatter {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(StreamingLogbackFormatter.class);
+
+    /**
+     * Larger buffers are not kept after formatting an exceptionally long line.
+     */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private final LogbackFormatter delegate;
+
+    private final CustomKeysJsonLayout layout;
+    private final JsonFactory jsonFactory;
+    private final boolean prettyPrint;
+    private final boolean sequenced;
+
+    private final String level = String.valueOf(Level.INFO);
+    private final String loggerName;
+    private final String contextName;
+    private final byte[] lineSeparator;
+
+    private final SerializableString timestampAttr;
+    private final SerializableString levelAttr;
+    private final SerializableString threadAttr;
+    private final SerializableString mdcAttr;
+    private final SerializableString loggerAttr;
+    private final SerializableString formattedMessageAttr;
+    private final SerializableString messageAttr;
+    private final SerializableString contextAttr;
+    private final SerializableString sequenceAttr = new SerializedString(SequencedLayout.SEQUENCE_ATTR_NAME);
+
+    private final ThreadLocal<Output> outputs = ThreadLocal.withInitial(Output::new);
+
+    public StreamingLogbackFormatter() {
+        delegate = new LogbackFormatter();
+
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        Logger logger = context.getLogger(LogbackFormatter.LOGGER_NAME);
+        ConsoleAppender<ILoggingEvent> appender = (ConsoleAppender<ILoggingEvent>) logger.getAppender(LogbackFormatter.APPENDER_NAME);
+        layout = streamableLayout(appender == null ? null : appender.getEncoder());
+        loggerName = logger.getName();
+        contextName = context.getName();
+
+        if (layout == null) {
+            log.info("Build log appender is not configured with a JSON layout that can be streamed, formatting each event.");
+            jsonFactory = null;
+            prettyPrint = false;
+            sequenced = false;
+            lineSeparator = null;
+            timestampAttr = levelAttr = threadAttr = mdcAttr = loggerAttr = null;
+            formattedMessageAttr = messageAttr = contextAttr = null;
+            return;
+        }
+        JacksonJsonFormatter jsonFormatter = (JacksonJsonFormatter) layout.getJsonFormatter();
+        jsonFactory = jsonFormatter.getObjectMapper().getFactory();
+        prettyPrint = jsonFormatter.isPrettyPrint();
+        sequenced = layout instanceof SequencedLayout;
+        lineSeparator = layout.isAppendLineSeparator() ? CoreConstants.LINE_SEPARATOR.getBytes(StandardCharsets.UTF_8) : null;
+
+        timestampAttr = attrName(JsonLayout.TIMESTAMP_ATTR_NAME);
+        levelAttr = attrName(JsonLayout.LEVEL_ATTR_NAME);
+        threadAttr = attrName(JsonLayout.THREAD_ATTR_NAME);
+        mdcAttr = attrName(JsonLayout.MDC_ATTR_NAME);
+        loggerAttr = attrName(JsonLayout.LOGGER_ATTR_NAME);
+        formattedMessageAttr = attrName(JsonLayout.FORMATTED_MESSAGE_ATTR_NAME);
+        messageAttr = attrName(JsonLayout.MESSAGE_ATTR_NAME);
+        contextAttr = attrName(JsonLayout.CONTEXT_ATTR_NAME);
+    }
+
+    /**
+     * @return the layout when its output can be reproduced, null otherwise
+     */
+    private static CustomKeysJsonLayout streamableLayout(Encoder<ILoggingEvent> encoder) {
+        if (!(encoder instanceof LayoutWrappingEncoder)) {
+            return null;
+        }
+        LayoutWrappingEncoder<ILoggingEvent> wrappingEncoder = (LayoutWrappingEncoder<ILoggingEvent>) encoder;
+        Charset charset = wrappingEncoder.getCharset() == null ? Charset.defaultCharset() : wrappingEncoder.getCharset();
+        Layout<ILoggingEvent> layout = wrappingEncoder.getLayout();
+        // subclasses may add custom data
+        boolean knownLayout = layout != null
+                && (layout.getClass() == CustomKeysJsonLayout.class || layout.getClass() == SequencedLayout.class);
+        if (!knownLayout || !StandardCharsets.UTF_8.equals(charset)) {
+            return null;
+        }
+        JsonFormatter jsonFormatter = ((CustomKeysJsonLayout) layout).getJsonFormatter();
+        if (jsonFormatter == null || jsonFormatter.getClass() != JacksonJsonFormatter.class) {
+            return null;
+        }
+        return (CustomKeysJsonLayout) layout;
+    }
+
+    private SerializableString attrName(String key) {
+        return new SerializedString(layout.getCustomOrDefault(key));
+    }
+
+    @Override
+    public String format(String message) {
+        Output output = layout == null ? null : render(message);
+        if (output == null) {
+            return delegate.format(message);
+        }
+        return new String(output.buffer.array(), 0, output.buffer.size(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void formatTo(OutputStream out, CharSequence message) throws IOException {
+        Output output = layout == null ? null : render(message);
+        if (output == null) {
+            delegate.formatTo(out, message);
+            return;
+        }
+        out.write(output.buffer.array(), 0, output.buffer.size());
+    }
+
+    @Override
+    public void formatTo(ByteBuffer buffer, CharSequence message) {
+        Output output = layout == null ? null : render(message);
+        if (output == null) {
+            delegate.formatTo(buffer, message);
+            return;
+        }
+        buffer.put(output.buffer.array(), 0, output.buffer.size());
+    }
+
+    /**
+     * @return the output of the current thread containing the formatted message, null when it cannot be formatted
+     */
+    private Output render(CharSequence message) {
+        Output output = outputs.get();
+        output.buffer.reset();
+        try {
+            writeEvent(output, message, System.currentTimeMillis());
+        } catch (IOException | RuntimeException e) {
+            // the generator state is unknown, start with a new one
+            outputs.remove();
+            log.warn("Cannot stream the log line, formatting the event.", e);
+            return null;
+        }
+        if (lineSeparator != null) {
+            output.buffer.write(lineSeparator, 0, lineSeparator.length);
+        }
+        return output;
+    }
+
+    /**
+     * Writes the fields in the order of {@link JsonLayout#toJsonMap}.
+     */
+    private void writeEvent(Output output, CharSequence message, long timeStamp) throws IOException {
+        JsonGenerator generator = output.generator;
+        generator.writeStartObject();
+        if (layout.isIncludeTimestamp()) {
+            String timestamp = output.timestamp(timeStamp);
+            if (timestamp != null) {
+                generator.writeFieldName(timestampAttr);
+                generator.writeString(timestamp);
+            }
+        }
+        if (layout.isIncludeLevel()) {
+            generator.writeFieldName(levelAttr);
+            generator.writeString(level);
+        }
+        if (layout.isIncludeThreadName()) {
+            generator.writeFieldName(threadAttr);
+            generator.writeString(Thread.currentThread().getName());
+        }
+        if (layout.isIncludeMDC()) {
+            writeMdc(generator);
+        }
+        if (layout.isIncludeLoggerName()) {
+            generator.writeFieldName(loggerAttr);
+            generator.writeString(loggerName);
+        }
+        // there are no arguments, the formatted message is the message
+        if (layout.isIncludeFormattedMessage()) {
+            generator.writeFieldName(formattedMessageAttr);
+            writeMessage(output, message);
+        }
+        if (layout.isIncludeMessage()) {
+            generator.writeFieldName(messageAttr);
+            writeMessage(output, message);
+        }
+        if (layout.isIncludeContextName() && contextName != null) {
+            generator.writeFieldName(contextAttr);
+            generator.writeString(contextName);
+        }
+        if (sequenced) {
+            generator.writeFieldName(sequenceAttr);
+            generator.writeNumber(SequencedLayout.nextSequence());
+        }
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    private void writeMdc(JsonGenerator generator) throws IOException {
+        Map<String, String> mdc;
+        MDCAdapter mdcAdapter = MDC.getMDCAdapter();
+        if (mdcAdapter instanceof LogbackMDCAdapter) {
+            // the same map as the logging event gets, without a copy
+            mdc = ((LogbackMDCAdapter) mdcAdapter).getPropertyMap();
+        } else {
+            mdc = MDC.getCopyOfContextMap();
+        }
+        if (mdc == null || mdc.isEmpty()) {
+            return;
+        }
+        generator.writeFieldName(mdcAttr);
+        generator.writeStartObject();
+        for (Map.Entry<String, String> entry : mdc.entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            if (entry.getValue() == null) {
+                generator.writeNull();
+            } else {
+                generator.writeString(entry.getValue());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeMessage(Output output, CharSequence message) throws IOException {
+        if (message instanceof String) {
+            output.generator.writeString((String) message);
+            return;
+        }
+        int length = message.length();
+        if (output.chars.length < length) {
+            output.chars = new char[Math.max(length, output.chars.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            output.chars[i] = message.charAt(i);
+        }
+        output.generator.writeString(output.chars, 0, length);
+    }
+
+    /**
+     * The buffer and the generator writing to it, the generator is kept open and reused for all the lines of the
+     * thread.
+     */
+    private class Output {
+
+        private final ReusableOutputStream buffer = new ReusableOutputStream(1024);
+        private final JsonGenerator generator;
+
+        private char[] chars = new char[256];
+
+        private long timestampMillis = Long.MIN_VALUE;
+        private String timestamp;
+
+        private Output() {
+            try {
+                generator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot create JSON generator.", e);
+            }
+            if (prettyPrint) {
+                generator.setPrettyPrinter(new DefaultPrettyPrinter(Separators.createDefaultInstance().withRootSeparator(null)));
+            } else {
+                generator.setRootValueSeparator(null);
+            }
+        }
+
+        private String timestamp(long millis) {
+            if (millis != timestampMillis) {
+                timestamp = layout.timestamp(millis);
+                timestampMillis = millis;
+            }
+            return timestamp;
+        }
+    }
+
+    /**
+     * Exposes the internal array, so the output is not copied, and drops it when it grows too much.
+     */
+    private static class ReusableOutputStream extends ByteArrayOutputStream {
+
+        private ReusableOutputStream(int size) {
+            super(size);
+        }
+
+        private byte[] array() {
+            return buf;
+        }
+
+        @Override
+        public synchronized void reset() {
+            super.reset();
+            if (buf.length > MAX_RETAINED_BUFFER) {
+                buf = new byte[MAX_RETAINED_BUFFER];
+            }
+        }
+    }
+}
@@ -7,7 +7,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Map;
 
@@ -36,4 +38,44 @@ public class LogbackFormatterTest {
         Assert.assertEquals("org.jboss.pnc._userlog_.build-log", map.get("loggerName"));
         Assert.assertEquals(ctx, ((Map)map.get("mapped")).get("ctx"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void streamingFormatterShouldProduceSameJson() throws IOException {
+        String message = "Ground control to \"Major Tom\" \\ \t </end>";
+        LogbackFormatter logbackFormatter = new LogbackFormatter();
+        StreamingLogbackFormatter streamingFormatter = new StreamingLogbackFormatter();
+        MDC.setContextMap(Collections.singletonMap("ctx", "12345"));
+
+        String expected = logbackFormatter.format(message);
+        String actual = streamingFormatter.format(message);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamingFormatter.formatTo(out, new StringBuilder(message));
+        String actualBytes = new String(out.toByteArray(), StandardCharsets.UTF_8);
+
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, Object> expectedMap = mapper.readValue(expected, Map.class);
+        Map<String, Object> actualMap = mapper.readValue(actual, Map.class);
+        Map<String, Object> actualBytesMap = mapper.readValue(actualBytes, Map.class);
+
+        // the sequence is shared by both formatters
+        long sequence = ((Number) expectedMap.remove("sequence")).longValue();
+        Assert.assertEquals(sequence + 1, ((Number) actualMap.remove("sequence")).longValue());
+        Assert.assertEquals(sequence + 2, ((Number) actualBytesMap.remove("sequence")).longValue());
+        // the events may be created in different milliseconds
+        Assert.assertNotNull(actualMap.remove("timestamp"));
+        Assert.assertNotNull(actualBytesMap.remove("timestamp"));
+        expectedMap.remove("timestamp");
+
+        Assert.assertEquals(expectedMap, actualMap);
+        Assert.assertEquals(expectedMap, actualBytesMap);
+        Assert.assertEquals(message, actualMap.get("message"));
+        Assert.assertEquals("12345", ((Map) actualMap.get("mapped")).get("ctx"));
+        // the same pretty printed layout
+        Assert.assertEquals(withoutVariableValues(expected), withoutVariableValues(actual));
+        Assert.assertEquals(withoutVariableValues(expected), withoutVariableValues(actualBytes));
+    }
+
+    private static String withoutVariableValues(String json) {
+        return json.replaceAll("(\"(timestamp|sequence)\" : )[^,\\n}]+", "$1_");
+    }
+}
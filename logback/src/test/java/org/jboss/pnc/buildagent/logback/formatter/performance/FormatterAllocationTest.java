@@ -0,0 +1,58 @@
+package org.jboss.pnc.buildagent.logback.formatter.performance;
+
+import org.jboss.pnc.buildagent.api.logging.LogFormatter;
+import org.jboss.pnc.buildagent.logback.formatter.LogbackFormatter;
+import org.jboss.pnc.buildagent.logback.formatter.StreamingLogbackFormatter;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+
+/**
+ * Compares the heap allocated per line and the throughput of the event based and the streaming formatter. Both write
+ * the line bytes, as the binary queue adapter does.
+ */
+public class FormatterAllocationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(FormatterAllocationTest.class);
+
+    private static final String LINE = "[INFO] Downloading from central: https://repo.maven.apache.org/maven2/org/x/y/z-1.0.jar\n";
+
+    private static final int LINES = 200000;
+
+    @Test @Ignore
+    public void allocationPerLine() throws IOException {
+        MDC.setContextMap(Collections.singletonMap("processContext", "12345"));
+        LogFormatter eventFormatter = new LogbackFormatter();
+        LogFormatter streamingFormatter = new StreamingLogbackFormatter();
+
+        for (int round = 0; round < 3; round++) {
+            measure("event", eventFormatter);
+            measure("streaming", streamingFormatter);
+        }
+    }
+
+    private void measure(String name, LogFormatter formatter) throws IOException {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long started = System.nanoTime();
+        for (int i = 0; i < LINES; i++) {
+            out.reset();
+            formatter.formatTo(out, LINE);
+        }
+        long tookNanos = System.nanoTime() - started;
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        log.info("Formatter {}: {} bytes allocated per line, {} ns per line.",
+                name, allocated / LINES, tookNanos / LINES);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends to a file through a reusable direct buffer, many small chunks end up in a single write call.
+ *
+ * The buffer is written out when it is full, when the oldest buffered data reaches the max latency and on explicit
+ * {@link #flush()}. Forcing the data to the disk is driven by the {@link FsyncPolicy}.
+ */
+public class BatchedFileWriter implements FileLogWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchedFileWriter.class);
+
+    private final Path path;
+    private final FileChannel fileChannel;
+    private final ByteBuffer buffer;
+    private final long maxLatencyNanos;
+    private final FsyncPolicy fsyncPolicy;
+
+    private final ScheduledExecutorService timer;
+
+    /**
+     * When the oldest data in the buffer was written, valid when the buffer is not empty.
+     */
+    private long firstBufferedNanos;
+
+    private boolean closed;
+
+    public BatchedFileWriter(Path path, FileLoggerOptions options) throws IOException {
+        this.path = path;
+        this.fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.buffer = ByteBuffer.allocateDirect(options.getBufferSize());
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(options.getMaxLatencyMillis());
+        this.fsyncPolicy = options.getFsyncPolicy();
+
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-writer-" + path.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkInterval = Math.max(1, options.getMaxLatencyMillis() / 2);
+        timer.scheduleWithFixedDelay(this::flushIfExpired, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+        if (fsyncPolicy == FsyncPolicy.PERIODIC) {
+            long interval = options.getFsyncIntervalMillis();
+            timer.scheduleWithFixedDelay(this::periodicSync, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes) throws IOException {
+        if (closed) {
+            throw new IOException("Writer of " + path + " is closed.");
+        }
+        if (bytes.length > buffer.remaining()) {
+            writeBuffer();
+        }
+        if (bytes.length > buffer.capacity()) {
+            writeFully(ByteBuffer.wrap(bytes));
+            return;
+        }
+        if (buffer.position() == 0) {
+            firstBufferedNanos = System.nanoTime();
+        }
+        buffer.put(bytes);
+        if (!buffer.hasRemaining()) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Writes out the buffered data, forces it to the disk when the policy is {@link FsyncPolicy#ON_COMPLETION}.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        writeBuffer();
+        if (fsyncPolicy == FsyncPolicy.ON_COMPLETION) {
+            fileChannel.force(false);
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        try {
+            writeFully(buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            fileChannel.write(source);
+        }
+    }
+
+    private synchronized void flushIfExpired() {
+        if (closed || buffer.position() == 0) {
+            return;
+        }
+        if (System.nanoTime() - firstBufferedNanos >= maxLatencyNanos) {
+            try {
+                writeBuffer();
+            } catch (IOException e) {
+                log.error("Cannot write buffered data to " + path + ".", e);
+            }
+        }
+    }
+
+    private synchronized void periodicSync() {
+        if (closed) {
+            return;
+        }
+        try {
+            writeBuffer();
+            fileChannel.force(false);
+        } catch (IOException e) {
+            log.error("Cannot sync " + path + ".", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        timer.shutdown();
+        try {
+            writeBuffer();
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                fileChannel.force(false);
+            }
+        } finally {
+            closed = true;
+            fileChannel.close();
+        }
+    }
+}
@@ -29,6 +29,8 @@ import io.undertow.servlet.Servlets;
 import io.undertow.servlet.api.DeploymentInfo;
 import io.undertow.servlet.api.DeploymentManager;
 import io.undertow.servlet.api.FilterInfo;
+import io.undertow.websockets.WebSocketConnectionCallback;
+import io.undertow.websockets.WebSocketProtocolHandshakeHandler;
 import org.jboss.pnc.buildagent.api.Constants;
 import org.jboss.pnc.buildagent.api.ResponseMode;
 import org.jboss.pnc.buildagent.api.httpinvoke.RetryConfig;
@@ -40,13 +42,19 @@ import org.jboss.pnc.buildagent.common.security.KeycloakClient;
 import org.jboss.pnc.buildagent.common.security.KeycloakClientConfiguration;
 import org.jboss.pnc.buildagent.common.security.KeycloakClientConfigurationException;
 import org.jboss.pnc.buildagent.common.security.LdapClient;
+import org.jboss.pnc.buildagent.server.httpinvoker.CommandScheduler;
 import org.jboss.pnc.buildagent.server.httpinvoker.SessionRegistry;
+import org.jboss.pnc.buildagent.server.logging.rules.LogRuleEngine;
+import org.jboss.pnc.buildagent.server.output.QueuedChannel;
+import org.jboss.pnc.buildagent.server.output.SinkStats;
+import org.jboss.pnc.buildagent.server.pty.WarmShellPool;
 import org.jboss.pnc.buildagent.server.servlet.Download;
 import org.jboss.pnc.buildagent.server.servlet.HttpInvoker;
 import org.jboss.pnc.buildagent.server.servlet.Terminal;
 import org.jboss.pnc.buildagent.server.servlet.Upload;
 import org.jboss.pnc.buildagent.server.servlet.Welcome;
 import org.jboss.pnc.buildagent.server.termserver.GeneralHeartbeatHttpHeaderProvider;
+import org.jboss.pnc.buildagent.server.termserver.ResumableWebSocketChannel;
 import org.jboss.pnc.buildagent.server.termserver.Term;
 import org.jboss.pnc.common.Strings;
 import org.slf4j.Logger;
@@ -58,8 +66,10 @@ import javax.servlet.ServletException;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -70,7 +80,9 @@ import static io.undertow.servlet.Servlets.defaultContainer;
 import static io.undertow.servlet.Servlets.deployment;
 import static io.undertow.servlet.Servlets.servlet;
 import static org.jboss.pnc.buildagent.api.Constants.HTTP_INVOKER_PATH;
+import static org.jboss.pnc.buildagent.api.Constants.OUTPUT_STREAM_PATH;
 import static org.jboss.pnc.buildagent.api.Constants.RUNNING_PROCESSES;
+import static org.jboss.pnc.buildagent.api.Constants.SINKS;
 
 /**
  * @author <a href="mailto:matejonnet@gmail.com">Matej Lazar</a>
@@ -85,6 +97,8 @@ public class BootstrapUndertow {
     private final Set<ReadOnlyChannel> readOnlyChannels;
     private final Options options;
     private HttpClient httpClient;
+    private CommandScheduler commandScheduler;
+    private final WarmShellPool shellPool;
 
     public BootstrapUndertow(
             ScheduledExecutorService executor,
@@ -94,6 +108,7 @@ public class BootstrapUndertow {
         this.executor = executor;
         this.readOnlyChannels = ioLoggerChannels;
         this.options = options;
+        this.shellPool = new WarmShellPool(options.getShellPoolOptions());
 
         bootstrap();
     }
@@ -115,7 +130,7 @@ public class BootstrapUndertow {
                                 .addMapping("/terminal/*"),
                         servlet("UploaderServlet", Upload.class)
                                 .addMapping("/upload/*"),
-                        servlet("DownloaderServlet", Download.class)
+                        servlet("DownloaderServlet", Download.class, new DownloadFactory(readOnlyChannels))
                                 .addMapping("/download/*"));
 
         configureAuthentication(options, servletBuilder, "/terminal/*");
@@ -144,6 +159,19 @@ public class BootstrapUndertow {
                 ldapClient = new LdapClient(options.getLdapClientConfigFile());
             }
 
+            LogRuleEngine logRuleEngine;
+            if (options.getLogRulesConfigFile().isEmpty()) {
+                logRuleEngine = LogRuleEngine.defaults();
+            } else {
+                try {
+                    log.info("Reading log rules from file: {}", options.getLogRulesConfigFile());
+                    logRuleEngine = LogRuleEngine.parseJson(new File(options.getLogRulesConfigFile()));
+                } catch (IOException e) {
+                    throw new BuildAgentException("Cannot read the log rules configuration file", e);
+                }
+            }
+
+            commandScheduler = new CommandScheduler(options.getSessionOptions(), executor);
             HeartbeatHttpHeaderProvider heartbeatHttpHeaderProvider = new GeneralHeartbeatHttpHeaderProvider(keycloakClient, ldapClient);
             RetryConfig retryConfig = new RetryConfig(
                     options.getCallbackMaxRetries(),
@@ -153,13 +181,19 @@ public class BootstrapUndertow {
                             HttpInvoker.class,
                             new HttpInvokerFactory(readOnlyChannels,
                                     httpClient,
-                                    new SessionRegistry(),
+                                    new SessionRegistry(options.getSessionOptions()),
+                                    commandScheduler,
+                                    shellPool,
                                     retryConfig,
                                     new HeartbeatSender(httpClient, heartbeatHttpHeaderProvider),
                                     options.getBifrostUploaderOptions(),
                                     keycloakClient,
-                                    ldapClient)
-                    ).addMapping(HTTP_INVOKER_PATH + "/*"));
+                                    ldapClient,
+                                    logRuleEngine,
+                                    options.getOutputOptions())
+                    ).addMapping(HTTP_INVOKER_PATH + "/*")
+                            // the output followers are completed asynchronously when the session completes
+                            .setAsyncSupported(true));
             configureAuthentication(options, servletBuilder, HTTP_INVOKER_PATH + "/*");
         }
 
@@ -197,6 +231,10 @@ public class BootstrapUndertow {
         if (server != null) {
             server.stop();
         }
+        if (commandScheduler != null) {
+            commandScheduler.stop();
+        }
+        shellPool.close();
         if (httpClient != null) {
             try {
                 httpClient.close();
@@ -247,7 +285,19 @@ public class BootstrapUndertow {
         log.debug("Computed invokerContext [{}] from requestPath [{}] and termPath [{}]", invokerContext, requestPath, termPath);
 
         boolean isReadOnly = requestPath.toLowerCase().endsWith("ro");
-        Term term = getTerm(invokerContext, readOnlyChannels);
+        Term term;
+        if (exchange.getQueryParameters().containsKey(Constants.OUTPUT_OFFSET_PARAMETER)) {
+            // the resumed connection continues the output of an existing term, a new one would never produce it
+            term = terms.get(invokerContext);
+            if (term == null) {
+                String reason = "Unknown context [" + invokerContext + "].";
+                WebSocketConnectionCallback reject = (webSocketExchange, webSocketChannel) -> ResumableWebSocketChannel.reject(webSocketChannel, reason);
+                new WebSocketProtocolHandshakeHandler(reject).handleRequest(exchange);
+                return;
+            }
+        } else {
+            term = getTerm(invokerContext, readOnlyChannels);
+        }
         term.getWebSocketHandler(responseMode, isReadOnly).handleRequest(exchange);
     }
 
@@ -267,7 +317,7 @@ public class BootstrapUndertow {
     private Term createNewTerm(String invokerContext, Set<ReadOnlyChannel> appendReadOnlyChannels) {
         log.info("Creating new term for context [{}].", invokerContext);
         Runnable onDestroy = () -> terms.remove(invokerContext);
-        return new Term(invokerContext, onDestroy, executor, appendReadOnlyChannels);
+        return new Term(invokerContext, onDestroy, executor, appendReadOnlyChannels, options.getOutputOptions(), shellPool);
     }
 
     public Map<String, Term> getTerms() {
@@ -289,6 +339,23 @@ public class BootstrapUndertow {
             getProcessActiveTerms().handleRequest(exchange);
             return;
         }
+        if (pathMatches(requestPath, SINKS)) {
+            log.debug("Sinks handler requested.");
+            getSinkStats().handleRequest(exchange);
+            return;
+        }
+        if (requestPath.startsWith(OUTPUT_STREAM_PATH + "/")) {
+            String invokerContext = requestPath.replace(OUTPUT_STREAM_PATH, "");
+            Term term = terms.get(invokerContext);
+            if (term == null) {
+                log.debug("No term for output stream of context [{}].", invokerContext);
+                ResponseCodeHandler.HANDLE_404.handleRequest(exchange);
+                return;
+            }
+            log.debug("Output stream handler requested for context [{}].", invokerContext);
+            term.getOutputStreamHandler().handleRequest(exchange);
+            return;
+        }
         ResponseCodeHandler.HANDLE_404.handleRequest(exchange);
     }
 
@@ -304,6 +371,23 @@ public class BootstrapUndertow {
         };
     }
 
+    private HttpHandler getSinkStats() {
+        return exchange -> {
+            List<SinkStats> stats = new ArrayList<>();
+            for (ReadOnlyChannel channel : readOnlyChannels) {
+                if (channel instanceof QueuedChannel) {
+                    stats.add(((QueuedChannel) channel).getStats());
+                }
+            }
+            for (Term term : getTerms().values()) {
+                stats.addAll(term.getSinkStats());
+            }
+            ObjectMapper mapper = new ObjectMapper();
+            String jsonString = mapper.writeValueAsString(stats);
+            exchange.getResponseSender().send(jsonString);
+        };
+    }
+
     private String getManifestInformation() {
         String result = "";
         try {
@@ -25,11 +25,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
@@ -76,16 +77,19 @@ public class BuildAgentServer {
 
         if (IoLogLogger.processLog.isInfoEnabled()) {
             log.info("Initializing Logger sink.");
-            sinkChannels.add(new IoLogLogger(logMDC));
+            sinkChannels.add(queued(IoLoggerName.LOG, new IoLogLogger(logMDC)));
         }
 
         if (logPath.isPresent()) {
             log.info("Initializing File sink.");
-            IoFileLogger fileLogger = new IoFileLogger(logPath.get(), isPrimary(primaryLoggers, IoLoggerName.FILE));
+            IoFileLogger fileLogger = new IoFileLogger(
+                    logPath.get(),
+                    isPrimary(primaryLoggers, IoLoggerName.FILE),
+                    options.getFileLoggerOptions());
             if (options.getBifrostUploaderOptions() != null) {
                 options.getBifrostUploaderOptions().setLogPath(fileLogger.getLogPath());
             }
-            sinkChannels.add(fileLogger);
+            sinkChannels.add(queued(IoLoggerName.FILE, fileLogger));
         }
 
         if (kafkaConfig.isPresent()) {
@@ -98,11 +102,38 @@ public class BuildAgentServer {
             }
             String queueTopic = properties.getProperty("pnc.queue_topic", "pnc-logs");
             long flushTimeoutMillis = Long.parseLong(properties.getProperty("pnc.flush_timeout_millis", "10000"));
+            QueueBatchOptions batchOptions = new QueueBatchOptions(
+                    Integer.parseInt(properties.getProperty("pnc.batch_max_lines", Integer.toString(QueueBatchOptions.DEFAULT_MAX_LINES))),
+                    Integer.parseInt(properties.getProperty("pnc.batch_max_bytes", Integer.toString(QueueBatchOptions.DEFAULT_MAX_BYTES))),
+                    Long.parseLong(properties.getProperty("pnc.batch_linger_millis", Long.toString(QueueBatchOptions.DEFAULT_MAX_LINGER_MILLIS))),
+                    Integer.parseInt(properties.getProperty("pnc.batch_max_in_flight", Integer.toString(QueueBatchOptions.DEFAULT_MAX_IN_FLIGHT))));
+
+            int partitionSpread = Integer.parseInt(properties.getProperty(
+                    "pnc.partition_spread", Integer.toString(KafkaQueueAdapter.DEFAULT_PARTITION_SPREAD)));
+            MdcPlacement mdcPlacement = MdcPlacement.valueOf(
+                    properties.getProperty("pnc.mdc_placement", MdcPlacement.INLINE.name()).trim().toUpperCase(Locale.ROOT));
 
             try {
-                KafkaQueueAdapter kafkaQueueAdapter = new KafkaQueueAdapter(properties, queueTopic);
-                sinkChannels.add(new IoQueueLogger(kafkaQueueAdapter, isPrimary(primaryLoggers, IoLoggerName.KAFKA), flushTimeoutMillis, logMDC));
-            } catch (InstantiationException | UnsupportedEncodingException e) {
+                KafkaQueueAdapter kafkaQueueAdapter = new KafkaQueueAdapter(
+                        properties,
+                        queueTopic,
+                        partitionSpread,
+                        logMDC,
+                        mdcPlacement);
+                QueueAdapter queueAdapter = kafkaQueueAdapter;
+                String spoolDir = properties.getProperty("pnc.spool_dir");
+                if (spoolDir != null && !spoolDir.isEmpty()) {
+                    // the completion waits only for the local spool, the records are delivered in the background
+                    queueAdapter = new SpoolingQueueAdapter(
+                            kafkaQueueAdapter,
+                            Paths.get(spoolDir),
+                            Long.parseLong(properties.getProperty("pnc.spool_segment_bytes", Long.toString(SpoolingQueueAdapter.DEFAULT_SEGMENT_BYTES))),
+                            Long.parseLong(properties.getProperty("pnc.spool_retry_delay_millis", Long.toString(SpoolingQueueAdapter.DEFAULT_RETRY_DELAY_MILLIS))));
+                    log.info("Kafka records are spooled to {}.", spoolDir);
+                }
+                IoQueueLogger queueLogger = new IoQueueLogger(queueAdapter, isPrimary(primaryLoggers, IoLoggerName.KAFKA), flushTimeoutMillis, logMDC, batchOptions);
+                sinkChannels.add(queued(IoLoggerName.KAFKA, queueLogger));
+            } catch (InstantiationException | IOException e) {
                 throw new BuildAgentException("Cannot initialize Kafka logger.", e);
             }
         }
@@ -119,6 +150,13 @@ public class BuildAgentServer {
         }
     }
 
+    /**
+     * Each sink gets its own queue and drainer thread, so the slow one does not block the others.
+     */
+    private ReadOnlyChannel queued(IoLoggerName name, ReadOnlyChannel channel) {
+        return options.getOutputOptions().queued(name.name(), name.name(), channel);
+    }
+
     private boolean isPrimary(List<IoLoggerName> primaryLoggers, IoLoggerName name) {
         if (primaryLoggers.contains(name)) {
             log.info("Logger {} is primary.", name);
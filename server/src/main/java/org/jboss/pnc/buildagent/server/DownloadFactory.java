@@ -0,0 +1,25 @@
+package org.jboss.pnc.buildagent.server;
+
+import io.undertow.servlet.api.InstanceFactory;
+import io.undertow.servlet.api.InstanceHandle;
+import io.undertow.servlet.util.ImmediateInstanceHandle;
+import org.jboss.pnc.buildagent.server.servlet.Download;
+
+import java.util.Set;
+
+/**
+ * Creates the download servlet with the file loggers, so the logs being written are served with their live output.
+ */
+public class DownloadFactory implements InstanceFactory<Download> {
+
+    private final Set<ReadOnlyChannel> readOnlyChannels;
+
+    public DownloadFactory(Set<ReadOnlyChannel> readOnlyChannels) {
+        this.readOnlyChannels = readOnlyChannels;
+    }
+
+    @Override
+    public InstanceHandle<Download> createInstance() {
+        return new ImmediateInstanceHandle<>(new Download(readOnlyChannels));
+    }
+}
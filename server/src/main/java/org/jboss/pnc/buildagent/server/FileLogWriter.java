@@ -0,0 +1,52 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Writes the output to the file log, see {@link FileLoggerMode} for the implementations.
+ */
+public interface FileLogWriter extends Closeable {
+
+    void write(byte[] bytes) throws IOException;
+
+    /**
+     * Called when the command completes. After the flush the log file must contain all the output written so far.
+     */
+    void flush() throws IOException;
+
+    /**
+     * @return number of the output bytes not kept in the log, eg. removed by the retention. The log digest differs
+     *         from the output digest when it is not 0.
+     */
+    default long getRemovedBytes() {
+        return 0;
+    }
+
+    /**
+     * @return the log content including the output not in the log file yet, null when the log file can be read as it
+     *         is
+     */
+    default InputStream openLive() throws IOException {
+        return null;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server;
+
+/**
+ * Buffering and durability of the file log.
+ */
+public class FileLoggerOptions {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final long DEFAULT_MAX_LATENCY_MILLIS = 200;
+    public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 5000;
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public static final long DEFAULT_ROTATE_SIZE = 100 * 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 20;
+    public static final int DEFAULT_HEAD_SEGMENTS = 0;
+
+    private final FileLoggerMode mode;
+    private final int bufferSize;
+    private final long maxLatencyMillis;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+    private final int segmentSize;
+    private final long rotateSize;
+    private final int maxSegments;
+    private final int headSegments;
+
+    /**
+     * @param bufferSize chunks are collected in the buffer and written when it is full
+     * @param maxLatencyMillis max time the data stays in the buffer
+     * @param fsyncPolicy when to force the data to the disk
+     * @param fsyncIntervalMillis used with {@link FsyncPolicy#PERIODIC}
+     */
+    public FileLoggerOptions(int bufferSize, long maxLatencyMillis, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis) {
+        this(FileLoggerMode.STREAM, bufferSize, maxLatencyMillis, fsyncPolicy, fsyncIntervalMillis, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public FileLoggerOptions(
+            FileLoggerMode mode,
+            int bufferSize,
+            long maxLatencyMillis,
+            FsyncPolicy fsyncPolicy,
+            long fsyncIntervalMillis,
+            int segmentSize) {
+        this(
+                mode,
+                bufferSize,
+                maxLatencyMillis,
+                fsyncPolicy,
+                fsyncIntervalMillis,
+                segmentSize,
+                DEFAULT_ROTATE_SIZE,
+                DEFAULT_MAX_SEGMENTS,
+                DEFAULT_HEAD_SEGMENTS);
+    }
+
+    /**
+     * @param mode how the log file is written
+     * @param segmentSize size of the memory-mapped segment, used with {@link FileLoggerMode#MAPPED}
+     * @param rotateSize uncompressed size of the gzip segment, used with {@link FileLoggerMode#GZIP}
+     * @param maxSegments max number of kept gzip segments of the rotation size, the kept output is bounded to
+     *        maxSegments * rotateSize bytes
+     * @param headSegments number of the first gzip segments that are never removed
+     */
+    public FileLoggerOptions(
+            FileLoggerMode mode,
+            int bufferSize,
+            long maxLatencyMillis,
+            FsyncPolicy fsyncPolicy,
+            long fsyncIntervalMillis,
+            int segmentSize,
+            long rotateSize,
+            int maxSegments,
+            int headSegments) {
+        this.mode = mode;
+        this.bufferSize = bufferSize;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.segmentSize = segmentSize;
+        this.rotateSize = rotateSize;
+        this.maxSegments = maxSegments;
+        this.headSegments = headSegments;
+    }
+
+    public static FileLoggerOptions defaults() {
+        return new FileLoggerOptions(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_LATENCY_MILLIS, FsyncPolicy.NONE, DEFAULT_FSYNC_INTERVAL_MILLIS);
+    }
+
+    public FileLoggerMode getMode() {
+        return mode;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public long getFsyncIntervalMillis() {
+        return fsyncIntervalMillis;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public long getRotateSize() {
+        return rotateSize;
+    }
+
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    public int getHeadSegments() {
+        return headSegments;
+    }
+}
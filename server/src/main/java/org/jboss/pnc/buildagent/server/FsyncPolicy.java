@@ -0,0 +1,40 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server;
+
+/**
+ * When the file logger forces the written data to the storage device.
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Leave it to the OS.
+     */
+    NONE,
+
+    /**
+     * On explicit flush (the command completion) and close.
+     */
+    ON_COMPLETION,
+
+    /**
+     * In the given interval and on close.
+     */
+    PERIODIC;
+}
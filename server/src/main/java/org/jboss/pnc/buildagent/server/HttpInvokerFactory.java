@@ -8,7 +8,11 @@ import org.jboss.pnc.buildagent.common.http.HttpClient;
 import org.jboss.pnc.buildagent.common.http.HeartbeatSender;
 import org.jboss.pnc.buildagent.common.security.KeycloakClient;
 import org.jboss.pnc.buildagent.common.security.LdapClient;
+import org.jboss.pnc.buildagent.server.httpinvoker.CommandScheduler;
 import org.jboss.pnc.buildagent.server.httpinvoker.SessionRegistry;
+import org.jboss.pnc.buildagent.server.logging.rules.LogRuleEngine;
+import org.jboss.pnc.buildagent.server.output.OutputOptions;
+import org.jboss.pnc.buildagent.server.pty.WarmShellPool;
 import org.jboss.pnc.buildagent.server.servlet.HttpInvoker;
 
 import java.security.NoSuchAlgorithmException;
@@ -23,6 +27,10 @@ public class HttpInvokerFactory implements InstanceFactory<HttpInvoker> {
 
     private final SessionRegistry sessionRegistry;
 
+    private final CommandScheduler commandScheduler;
+
+    private final WarmShellPool shellPool;
+
     private final HttpClient httpClient;
 
     private final RetryConfig retryConfig;
@@ -32,23 +40,34 @@ public class HttpInvokerFactory implements InstanceFactory<HttpInvoker> {
     private final KeycloakClient keycloakClient;
     private final LdapClient ldapClient;
 
+    private final LogRuleEngine logRuleEngine;
+    private final OutputOptions outputOptions;
+
     public HttpInvokerFactory(
             Set<ReadOnlyChannel> readOnlyChannels,
             HttpClient httpClient,
             SessionRegistry sessionRegistry,
+            CommandScheduler commandScheduler,
+            WarmShellPool shellPool,
             RetryConfig retryConfig,
             HeartbeatSender heartbeat,
             BifrostUploaderOptions bifrostUploaderOptions,
             KeycloakClient keycloakClient,
-            LdapClient ldapClient) {
+            LdapClient ldapClient,
+            LogRuleEngine logRuleEngine,
+            OutputOptions outputOptions) {
         this.readOnlyChannels = readOnlyChannels;
         this.httpClient = httpClient;
         this.sessionRegistry = sessionRegistry;
+        this.commandScheduler = commandScheduler;
+        this.shellPool = shellPool;
         this.retryConfig = retryConfig;
         this.bifrostUploaderOptions = bifrostUploaderOptions;
         this.heartbeat = heartbeat;
         this.keycloakClient = keycloakClient;
         this.ldapClient = ldapClient;
+        this.logRuleEngine = logRuleEngine;
+        this.outputOptions = outputOptions;
     }
 
     @Override
@@ -57,12 +76,16 @@ public class HttpInvokerFactory implements InstanceFactory<HttpInvoker> {
             return new ImmediateInstanceHandle<>(new HttpInvoker(
                     readOnlyChannels,
                     sessionRegistry,
+                    commandScheduler,
+                    shellPool,
                     httpClient,
                     retryConfig,
                     heartbeat,
                     bifrostUploaderOptions,
                     keycloakClient,
-                    ldapClient));
+                    ldapClient,
+                    logRuleEngine,
+                    outputOptions));
         } catch (NoSuchAlgorithmException e) {
             throw new InstantiationException("Cannot create HttpInvoker: " + e.getMessage());
         }
@@ -22,8 +22,8 @@ import org.jboss.pnc.buildagent.common.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.function.Consumer;
@@ -39,24 +39,37 @@ public class IoFileLogger implements ReadOnlyChannel {
     private Consumer<String> inputLogger;
     private Consumer<byte[]> outputLogger;
 
-    FileOutputStream stream;
+    FileLogWriter writer;
 
     private final boolean primary;
 
     private final Path logPath;
 
     public IoFileLogger(Path logFolder, boolean primary) {
+        this(logFolder, primary, FileLoggerOptions.defaults());
+    }
+
+    public IoFileLogger(Path logFolder, boolean primary, FileLoggerOptions options) {
         this.primary = primary;
         logPath = logFolder.resolve("console.log");
         try {
 
             log.info("Opening log file {}.", logPath);
-            stream = new FileOutputStream(logPath.toFile(), true);
+            switch (options.getMode()) {
+                case MAPPED:
+                    writer = new MappedSegmentWriter(logPath, options);
+                    break;
+                case GZIP:
+                    writer = new RotatingGzipWriter(logPath, options);
+                    break;
+                default:
+                    writer = new BatchedFileWriter(logPath, options);
+            }
 
             inputLogger = (line) -> {
                 try {
                     String command = "% " + line + "\r\n";
-                    stream.write(command.getBytes(charset));
+                    writer.write(command.getBytes(charset));
                 } catch (IOException e) {
                     log.error("Cannot write command line to log file.", e);
                 }
@@ -64,7 +77,7 @@ public class IoFileLogger implements ReadOnlyChannel {
 
             outputLogger = (bytes) -> {
                 try {
-                    stream.write(bytes);
+                    writer.write(bytes);
                 } catch (IOException e) {
                     String bytesAsInts = java.util.Arrays.stream(Arrays.bytesToInts(bytes))
                             .mapToObj(i -> Integer.toString(i))
@@ -79,14 +92,17 @@ public class IoFileLogger implements ReadOnlyChannel {
     }
 
 
+    /**
+     * Writes out the buffered output, called when the command completes.
+     */
     @Override
     public void flush() throws IOException {
-        stream.flush();
+        writer.flush();
     }
 
     @Override
     public void close() throws IOException {
-        stream.close();
+        writer.close();
     }
 
     @Override
@@ -99,6 +115,20 @@ public class IoFileLogger implements ReadOnlyChannel {
         return primary;
     }
 
+    /**
+     * @see FileLogWriter#getRemovedBytes()
+     */
+    public long getRemovedBytes() {
+        return writer.getRemovedBytes();
+    }
+
+    /**
+     * @see FileLogWriter#openLive()
+     */
+    public InputStream openLive() throws IOException {
+        return writer.openLive();
+    }
+
     public Path getLogPath() {
         return logPath;
     }
@@ -19,36 +19,43 @@
 package org.jboss.pnc.buildagent.server;
 
 import org.jboss.pnc.buildagent.api.logging.LogFormatter;
+import org.jboss.pnc.buildagent.common.ByteLineConsumer;
 import org.jboss.pnc.buildagent.common.LineConsumer;
-import org.jboss.pnc.buildagent.server.logging.formatters.jboss.JBossFormatter;
+import org.jboss.pnc.buildagent.server.logging.formatters.jboss.JBossTemplateFormatter;
+import org.jboss.pnc.buildagent.server.output.FlushCoordinator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 /**
+ * Sends the output lines to the queue. The logger created at the start receives the output of all the sessions, {@link
+ * #forSession(String)} creates a logger numbering the lines of a single session, see {@link RecordPosition}.
+ *
  * @author <a href="mailto:matejonnet@gmail.opecom">Matej Lazar</a>
  */
 public class IoQueueLogger implements ReadOnlyChannel {
 
     private static final Logger log = LoggerFactory.getLogger(IoQueueLogger.class);
-    private Charset charset = Charset.defaultCharset();
 
     private Consumer<byte[]> outputLogger;
 
@@ -62,34 +69,140 @@ public class IoQueueLogger implements ReadOnlyChannel {
 
     private final LineConsumer lineConsumer;
 
+    private final LogFormatter logFormatter;
+
+    private final Consumer<Exception> exceptionHandler;
+
+    /**
+     * Lines of the chunk being processed, formatted together once the chunk is split.
+     */
+    private final List<String> lines = new ArrayList<>();
+
+    /**
+     * Groups the lines to multi-line records, null when each line is sent as a record.
+     */
+    private final QueueBatcher batcher;
+
+    private final Map<String, String> logMDC;
+
+    /**
+     * The MDC seen by the formatter, empty when the adapter sends the MDC outside of the payload.
+     */
+    private final Map<String, String> formatMDC;
+
+    private final QueueBatchOptions batchOptions;
+
+    /**
+     * Null for the logger shared by all the sessions.
+     */
+    private final String sessionId;
+
+    /**
+     * Sequence of the next line and number of the next record, when the lines are sent as single records. The batcher
+     * numbers the lines of the batches.
+     */
+    private long nextSequence;
+    private final AtomicLong nextChunk = new AtomicLong();
+
     public IoQueueLogger(QueueAdapter queueAdapter, boolean primary, long flushTimeoutMillis, Map<String, String> logMDC)
             throws InstantiationException, UnsupportedEncodingException {
+        this(queueAdapter, primary, flushTimeoutMillis, logMDC, QueueBatchOptions.defaults());
+    }
+
+    public IoQueueLogger(
+            QueueAdapter queueAdapter,
+            boolean primary,
+            long flushTimeoutMillis,
+            Map<String, String> logMDC,
+            QueueBatchOptions batchOptions) throws InstantiationException, UnsupportedEncodingException {
+        this(queueAdapter, primary, flushTimeoutMillis, logMDC, batchOptions,
+                getLogFormatter(ServiceLoader.load(LogFormatter.class).iterator()), null);
+    }
+
+    IoQueueLogger(
+            QueueAdapter queueAdapter,
+            boolean primary,
+            long flushTimeoutMillis,
+            Map<String, String> logMDC,
+            QueueBatchOptions batchOptions,
+            LogFormatter logFormatter,
+            String sessionId) throws UnsupportedEncodingException {
         this.primary = primary;
         this.flushTimeoutMillis = flushTimeoutMillis;
         this.queueAdapter = queueAdapter;
+        this.logMDC = logMDC;
+        this.formatMDC = queueAdapter.isMdcInline() ? logMDC : Collections.emptyMap();
+        this.batchOptions = batchOptions;
+        this.logFormatter = logFormatter;
+        this.sessionId = sessionId;
 
-        ServiceLoader<LogFormatter> loader = ServiceLoader.load(LogFormatter.class);
-        Iterator<LogFormatter> iterator = loader.iterator();
-        LogFormatter logFormatter = getLogFormatter(iterator);
-
-        Consumer<Exception> exceptionHandler = (e) -> {
+        exceptionHandler = (e) -> {
             log.error("Error writing log.", e);
             deliveryException.compareAndSet(null, e);
         };
 
-        Consumer<String> onLine = (line)-> {
-            String messageJson = logFormatter.format(line);
-            queueAdapter.send(messageJson, exceptionHandler);
-        };
-        lineConsumer = new LineConsumer(onLine, StandardCharsets.UTF_8);
+        if (batchOptions.isEnabled()) {
+            batcher = new QueueBatcher(
+                    batchOptions,
+                    (messages, firstSequence) -> {
+                        // the batch can be sent also from the linger timer thread
+                        MDC.setContextMap(logMDC);
+                        RecordPosition position = new RecordPosition(sessionId, firstSequence, nextChunk.getAndIncrement());
+                        return queueAdapter.sendBatch(messages, position);
+                    },
+                    exceptionHandler);
+        } else {
+            batcher = null;
+        }
+        if (batcher == null && queueAdapter.isBinary()) {
+            // the line is formatted straight to the record value, no String is created on the way
+            lineConsumer = new LineConsumer(new BinaryLineSender());
+        } else {
+            lineConsumer = new LineConsumer(lines::add, StandardCharsets.UTF_8);
+        }
 
         outputLogger = (bytes) -> {
-            MDC.setContextMap(logMDC);
+            MDC.setContextMap(formatMDC);
             lineConsumer.append(bytes);
+            sendLines();
         };
     }
 
-    private LogFormatter getLogFormatter(Iterator<LogFormatter> iterator) throws InstantiationException {
+    private void sendLines() {
+        if (lines.isEmpty()) {
+            return;
+        }
+        List<String> formatted = logFormatter.formatAll(lines);
+        lines.clear();
+        for (String message : formatted) {
+            if (batcher != null) {
+                batcher.add(message);
+            } else {
+                queueAdapter.send(message, nextPosition(), exceptionHandler);
+            }
+        }
+    }
+
+    private RecordPosition nextPosition() {
+        return new RecordPosition(sessionId, nextSequence++, nextChunk.getAndIncrement());
+    }
+
+    /**
+     * Creates a logger for the output of a single session. It shares the queue adapter and the formatter, but has its
+     * own line buffer and numbering, so the lines of concurrent sessions are not mixed. Closing it does not close the
+     * adapter.
+     */
+    @Override
+    public ReadOnlyChannel forSession(String sessionId) {
+        try {
+            return new IoQueueLogger(queueAdapter, primary, flushTimeoutMillis, logMDC, batchOptions, logFormatter, sessionId);
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static LogFormatter getLogFormatter(Iterator<LogFormatter> iterator) throws InstantiationException {
         LogFormatter logFormatter = null;
         if (iterator.hasNext()) {
             logFormatter = iterator.next();
@@ -98,28 +211,24 @@ public class IoQueueLogger implements ReadOnlyChannel {
             log.warn("Multiple formatter found, using: " + logFormatter.getClass());
         }
         if (logFormatter == null) {
-            logFormatter = new JBossFormatter();
+            logFormatter = new JBossTemplateFormatter();
         }
         return logFormatter;
     }
 
     @Override
     public void flush() throws IOException {
+        MDC.setContextMap(formatMDC);
         lineConsumer.flush();
+        sendLines();
+        if (batcher != null) {
+            batcher.flush(flushTimeoutMillis);
+        }
         Exception e = deliveryException.get();
         if (e != null) {
             throw new IOException("Some messages were not written.", e);
         }
-        ExecutorService executorService = Executors.newFixedThreadPool(1);
-
-        Future<?> future = executorService.submit(() -> queueAdapter.flush());
-
-        try {
-            future.get(flushTimeoutMillis, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException | TimeoutException | ExecutionException futureException) {
-            future.cancel(true);
-            throw new IOException("Unable to flush logs.", futureException);
-        }
+        FlushCoordinator.shared().flush("queue adapter", queueAdapter::flush, flushTimeoutMillis);
     }
 
     @Override
@@ -133,13 +242,80 @@ public class IoQueueLogger implements ReadOnlyChannel {
     }
 
     public void close(Duration duration) throws IOException {
+        if (closeSession()) {
+            return;
+        }
+        if (batcher != null) {
+            batcher.close();
+        }
         queueAdapter.close(duration);
     }
 
     public void close() throws IOException {
+        if (closeSession()) {
+            return;
+        }
         log.info("Closing IoQueueLogger.");
+        if (batcher != null) {
+            batcher.close();
+        }
         queueAdapter.close();
     }
 
+    /**
+     * Sends the remaining lines of the session, the adapter stays open for the other sessions.
+     *
+     * @return false when this is not a session logger
+     */
+    private boolean closeSession() {
+        if (sessionId == null) {
+            return false;
+        }
+        MDC.setContextMap(formatMDC);
+        lineConsumer.flush();
+        sendLines();
+        if (batcher != null) {
+            batcher.close();
+        }
+        log.debug("Closed queue logger of session {}.", sessionId);
+        return true;
+    }
+
+    /**
+     * Decodes the line to a reusable buffer and formats it to the bytes sent by a binary {@link QueueAdapter}.
+     */
+    private class BinaryLineSender implements ByteLineConsumer {
+
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        private CharBuffer chars = CharBuffer.allocate(512);
+
+        private final ByteArrayOutputStream formatted = new ByteArrayOutputStream(1024);
+
+        @Override
+        public void accept(byte[] bytes, int offset, int length) {
+            // a UTF-8 byte never decodes to more than one char
+            if (chars.capacity() < length) {
+                chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+            }
+            chars.clear();
+            decoder.reset();
+            decoder.decode(ByteBuffer.wrap(bytes, offset, length), chars, true);
+            decoder.flush(chars);
+            chars.flip();
+
+            formatted.reset();
+            try {
+                logFormatter.formatTo(formatted, chars);
+            } catch (IOException e) {
+                exceptionHandler.accept(e);
+                return;
+            }
+            queueAdapter.send(formatted.toByteArray(), nextPosition(), exceptionHandler);
+        }
+    }
+
 
 }
@@ -2,15 +2,26 @@ package org.jboss.pnc.buildagent.server;
 
 import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.jboss.pnc.api.constants.MDCKeys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -32,14 +43,100 @@ public class KafkaQueueAdapter implements QueueAdapter {
     private static final String DEFAULT_KEY = String.valueOf(new Random().nextInt(8192));
     private static final Logger log = LoggerFactory.getLogger(KafkaQueueAdapter.class);
 
+    /**
+     * Record headers with the {@link RecordPosition}, the values are decimal numbers encoded to UTF-8.
+     */
+    public static final String SESSION_ID_HEADER = "session-id";
+    public static final String SEQUENCE_HEADER = "sequence";
+    public static final String CHUNK_HEADER = "chunk-id";
+
+    /**
+     * Prefix of the headers with the static MDC, eg. <code>mdc.processContext</code>.
+     */
+    public static final String MDC_HEADER_PREFIX = "mdc.";
+
+    public static final int DEFAULT_PARTITION_SPREAD = 1;
+
     private final KafkaProducer kafkaProducer;
     private final String queueTopic;
 
+    /**
+     * Number of keys the records of a process context are spread to. With 1 all the records have the same key and
+     * land in the same partition, which keeps the order but limits the throughput of a build to a single partition.
+     */
+    private final int partitionSpread;
+
+    private final MdcPlacement mdcPlacement;
+
+    /**
+     * Encoded once, the same header instances are added to all the records.
+     */
+    private final List<Header> mdcHeaders;
+
+    /**
+     * The static MDC sent as the record headers, empty when the placement has no headers.
+     */
+    private final Map<String, String> headerMdc;
+
+    /**
+     * The key used when the process context is not in the MDC of the sending thread, eg. when the lines are formatted
+     * without the MDC.
+     */
+    private final String staticKey;
+
+    private final RecordLabels staticLabels;
+
+    /**
+     * The producer is configured with the {@link ByteArraySerializer} for the values.
+     */
+    private final boolean binary;
+
     public KafkaQueueAdapter(Properties kafkaProperties, String queueTopic) {
+        this(kafkaProperties, queueTopic, DEFAULT_PARTITION_SPREAD);
+    }
+
+    /**
+     * @param partitionSpread when greater than 1, the consecutive records of a process context get different keys
+     *         (and likely partitions), the consumer restores the order from the {@link #SESSION_ID_HEADER} and
+     *         {@link #CHUNK_HEADER} headers
+     */
+    public KafkaQueueAdapter(Properties kafkaProperties, String queueTopic, int partitionSpread) {
+        this(kafkaProperties, queueTopic, partitionSpread, Collections.emptyMap(), MdcPlacement.INLINE);
+    }
+
+    /**
+     * @param staticMdc the MDC of all the lines, sent as record headers when the placement has them
+     */
+    public KafkaQueueAdapter(
+            Properties kafkaProperties,
+            String queueTopic,
+            int partitionSpread,
+            Map<String, String> staticMdc,
+            MdcPlacement mdcPlacement) {
         this.queueTopic = queueTopic;
+        this.partitionSpread = Math.max(1, partitionSpread);
+        this.mdcPlacement = mdcPlacement;
+        this.headerMdc = mdcPlacement.hasHeaders() ? staticMdc : Collections.emptyMap();
+        this.mdcHeaders = mdcHeaders(headerMdc);
+        String processContext = staticMdc.get(MDCKeys.PROCESS_CONTEXT_KEY);
+        this.staticKey = processContext == null || processContext.isEmpty() ? DEFAULT_KEY : processContext;
+        this.staticLabels = new RecordLabels(staticKey, headerMdc);
+        Object valueSerializer = kafkaProperties.get(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG);
+        binary = ByteArraySerializer.class.equals(valueSerializer)
+                || ByteArraySerializer.class.getName().equals(valueSerializer);
         kafkaProducer = new KafkaProducer<>(kafkaProperties);
     }
 
+    @Override
+    public boolean isBinary() {
+        return binary;
+    }
+
+    @Override
+    public boolean isMdcInline() {
+        return mdcPlacement.isInline();
+    }
+
     @Override
     public void flush() {
         kafkaProducer.flush();
@@ -47,15 +144,35 @@ public class KafkaQueueAdapter implements QueueAdapter {
 
     @Override
     public void send(String message, Consumer<Exception> exceptionHandler) {
+        send(message, null, exceptionHandler);
+    }
 
-        String key = MDC.get(MDCKeys.PROCESS_CONTEXT_KEY);
+    @Override
+    public void send(byte[] message, Consumer<Exception> exceptionHandler) {
+        send(message, null, exceptionHandler);
+    }
 
-        if (key == null || key.isEmpty()) {
-            // fallback key to use in case processContext is not specified in the MDC
-            key = DEFAULT_KEY;
-        }
+    @Override
+    public void send(String message, RecordPosition position, Consumer<Exception> exceptionHandler) {
+        sendValue(binary ? message.getBytes(StandardCharsets.UTF_8) : message, position, null, exceptionHandler);
+    }
 
-        ProducerRecord<String, String> producerRecord = new ProducerRecord<>(queueTopic, key, message);
+    @Override
+    public void send(byte[] message, RecordPosition position, Consumer<Exception> exceptionHandler) {
+        sendValue(binary ? message : new String(message, StandardCharsets.UTF_8), position, null, exceptionHandler);
+    }
+
+    @Override
+    public void send(byte[] message, RecordPosition position, RecordLabels labels, Consumer<Exception> exceptionHandler) {
+        sendValue(binary ? message : new String(message, StandardCharsets.UTF_8), position, labels, exceptionHandler);
+    }
+
+    private void sendValue(
+            Object value,
+            RecordPosition position,
+            RecordLabels labels,
+            Consumer<Exception> exceptionHandler) {
+        ProducerRecord<String, Object> producerRecord = newRecord(value, position, labels);
         Callback callback = (metadata, exception) -> {
             if (exception != null) {
                 exceptionHandler.accept(exception);
@@ -68,6 +185,111 @@ public class KafkaQueueAdapter implements QueueAdapter {
         kafkaProducer.send(producerRecord, callback);
     }
 
+    @Override
+    public CompletableFuture<Void> sendBatch(List<String> messages, long firstSequence) {
+        return sendBatch(messages, firstSequence, null, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendBatch(List<String> messages, RecordPosition position) {
+        return sendBatch(messages, position.getSequence(), position, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendBatch(
+            List<String> messages,
+            long firstSequence,
+            RecordPosition position,
+            RecordLabels labels) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Object value = binary
+                ? QueueBatcher.toJsonBytes(messages, firstSequence)
+                : QueueBatcher.toJson(messages, firstSequence);
+        ProducerRecord<String, Object> producerRecord = newRecord(value, position, labels);
+        Callback callback = (metadata, exception) -> {
+            if (exception != null) {
+                result.completeExceptionally(exception);
+            } else {
+                if (log.isTraceEnabled()) {
+                    log.trace("Batch of {} messages sent to Kafka. Partition:{}, timestamp {}.", messages.size(), metadata.partition(), metadata.timestamp());
+                }
+                result.complete(null);
+            }
+        };
+        try {
+            kafkaProducer.send(producerRecord, callback);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * @param labels the labels of a record created earlier, null to take the current ones
+     */
+    private ProducerRecord<String, Object> newRecord(Object value, RecordPosition position, RecordLabels labels) {
+        String baseKey = labels == null ? key() : labels.getKey();
+        List<Header> recordMdcHeaders = labels == null || labels.getMdcHeaders().equals(headerMdc)
+                ? mdcHeaders
+                : mdcHeaders(labels.getMdcHeaders());
+        if (position == null && recordMdcHeaders.isEmpty()) {
+            return new ProducerRecord<>(queueTopic, baseKey, value);
+        }
+        String key = position == null ? baseKey : spreadKey(baseKey, position, partitionSpread);
+        ProducerRecord<String, Object> producerRecord = new ProducerRecord<>(queueTopic, key, value);
+        Headers headers = producerRecord.headers();
+        for (Header mdcHeader : recordMdcHeaders) {
+            headers.add(mdcHeader);
+        }
+        if (position == null) {
+            return producerRecord;
+        }
+        if (position.getSessionId() != null) {
+            headers.add(SESSION_ID_HEADER, position.getSessionId().getBytes(StandardCharsets.UTF_8));
+        }
+        headers.add(SEQUENCE_HEADER, Long.toString(position.getSequence()).getBytes(StandardCharsets.UTF_8));
+        headers.add(CHUNK_HEADER, Long.toString(position.getChunk()).getBytes(StandardCharsets.UTF_8));
+        return producerRecord;
+    }
+
+    @Override
+    public RecordLabels currentLabels() {
+        String key = key();
+        return key.equals(staticKey) ? staticLabels : new RecordLabels(key, headerMdc);
+    }
+
+    private String key() {
+        String key = MDC.get(MDCKeys.PROCESS_CONTEXT_KEY);
+
+        if (key == null || key.isEmpty()) {
+            // fallback key to use in case processContext is not specified in the MDC
+            key = staticKey;
+        }
+        return key;
+    }
+
+    static List<Header> mdcHeaders(Map<String, String> mdc) {
+        List<Header> headers = new ArrayList<>(mdc.size());
+        for (Map.Entry<String, String> entry : mdc.entrySet()) {
+            if (entry.getValue() != null) {
+                headers.add(new RecordHeader(
+                        MDC_HEADER_PREFIX + entry.getKey(),
+                        entry.getValue().getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        return Collections.unmodifiableList(headers);
+    }
+
+    /**
+     * The consecutive chunks go round-robin to the spread keys, so the records of a session are evenly distributed.
+     */
+    static String spreadKey(String key, RecordPosition position, int partitionSpread) {
+        if (partitionSpread <= 1) {
+            return key;
+        }
+        return key + "-" + (position.getChunk() % partitionSpread);
+    }
+
     @Override
     public void close(Duration duration) {
         kafkaProducer.close(duration);
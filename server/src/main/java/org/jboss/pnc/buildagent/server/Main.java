@@ -27,7 +27,13 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.jboss.pnc.buildagent.common.BuildAgentException;
 import org.jboss.pnc.buildagent.common.RandomUtils;
+import org.jboss.pnc.buildagent.common.security.DigestAlgorithm;
+import org.jboss.pnc.buildagent.server.httpinvoker.SessionOptions;
 import org.jboss.pnc.buildagent.server.logging.Mdc;
+import org.jboss.pnc.buildagent.server.output.BackpressurePolicy;
+import org.jboss.pnc.buildagent.server.output.OutputOptions;
+import org.jboss.pnc.buildagent.server.output.SendWindow;
+import org.jboss.pnc.buildagent.server.pty.ShellPoolOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -77,6 +83,34 @@ public class Main {
         options.addOption(null, "ldapClientConfig", true, "Path to ldap client credentials file. Must be set to enable callback authentication");
         options.addOption(null, "httpReadTimeout", true, "Http client timeout for read operations. The value is number in milliseconds (default is " + DEFAULT_HTTP_READ + "ms).");
         options.addOption(null, "httpWriteTimeout", true, "Http client timeout for write operations. The value is number in milliseconds (default is " + DEFAULT_HTTP_WRITE + "ms).");
+        options.addOption(null, "sinkQueueSize", true, "Max number of output chunks queued per log sink (default is " + OutputOptions.DEFAULT_QUEUE_SIZE + ").");
+        options.addOption(null, "sinkDropPolicy", true, "What to do when the queue of a non-primary sink is full: BLOCK, DROP_NEWEST, DROP_OLDEST (default) or SPILL_TO_DISK. Primary sinks block.");
+        options.addOption(null, "sinkBackpressure", true, "Backpressure policy per sink type, overrides sinkDropPolicy. eg. --sinkBackpressure WEBSOCKET=SPILL_TO_DISK,LOG=DROP_NEWEST. Sink types: FILE, KAFKA, LOG, WEBSOCKET, HTTP_STREAM, LOG_RULES.");
+        options.addOption(null, "sinkSpillDir", true, "Folder for the output of SPILL_TO_DISK sinks that don't keep up. Default is system temp folder.");
+        options.addOption(null, "webSocketSendWindow", true, "Max bytes sent to a read only web socket connection and not yet confirmed (default is " + SendWindow.DEFAULT_MAX_IN_FLIGHT_BYTES + ").");
+        options.addOption(null, "sinkDrainTimeout", true, "How long to wait for a sink queue to drain on flush. The value is number in milliseconds (default is " + OutputOptions.DEFAULT_DRAIN_TIMEOUT_MILLIS + "ms).");
+        options.addOption(null, "outputDigest", true, "Digest of the process output reported in the completion event: MD5 (default), SHA-256, CRC32C or XXH64. MD5 is computed too when the log is uploaded to Bifrost.");
+        options.addOption(null, "outputTreeLeafSize", true, "Leaf size in bytes of the Merkle tree of the http invoked process output, the root is sent in the completion event and the leaves are served by the http invoker. 0 disables the tree (default is " + OutputOptions.DEFAULT_OUTPUT_TREE_LEAF_SIZE + ").");
+        options.addOption(null, "scrollbackSize", true, "Bytes of the output kept off heap per process, the read only connections joining a running process get them first. 0 disables the scrollback (default is " + OutputOptions.DEFAULT_SCROLLBACK_SIZE + ").");
+        options.addOption(null, "fileMode", true, "How to write the file log: STREAM (default), MAPPED (memory-mapped segments stitched into the log file on completion) or GZIP (compressed segments rotated by size).");
+        options.addOption(null, "fileRotateSize", true, "Uncompressed size of the GZIP file log segment in bytes (default is " + FileLoggerOptions.DEFAULT_ROTATE_SIZE + ").");
+        options.addOption(null, "fileMaxSegments", true, "Max number of kept GZIP file log segments of the rotate size, the oldest are removed when the kept output exceeds fileMaxSegments * fileRotateSize bytes (default is " + FileLoggerOptions.DEFAULT_MAX_SEGMENTS + ").");
+        options.addOption(null, "fileHeadSegments", true, "Number of the first GZIP file log segments that are never removed, the rest keeps the tail (default is " + FileLoggerOptions.DEFAULT_HEAD_SEGMENTS + ").");
+        options.addOption(null, "fileSegmentSize", true, "Size of the memory-mapped file log segment in bytes (default is " + FileLoggerOptions.DEFAULT_SEGMENT_SIZE + ").");
+        options.addOption(null, "fileBufferSize", true, "Size of the file log write buffer in bytes (default is " + FileLoggerOptions.DEFAULT_BUFFER_SIZE + ").");
+        options.addOption(null, "fileMaxLatency", true, "Max time the output stays in the file log buffer. The value is number in milliseconds (default is " + FileLoggerOptions.DEFAULT_MAX_LATENCY_MILLIS + "ms).");
+        options.addOption(null, "fileFsync", true, "When to force the file log to the disk: NONE (default), ON_COMPLETION or PERIODIC.");
+        options.addOption(null, "fileFsyncInterval", true, "Interval of the PERIODIC file log sync. The value is number in milliseconds (default is " + FileLoggerOptions.DEFAULT_FSYNC_INTERVAL_MILLIS + "ms).");
+        options.addOption(null, "logRulesConfig", true, "Path to the JSON file with the rules matching the output of the http invoked processes. The rules can reclassify the completion status, count the lines and tag the completion event. Default is the rule changing FAILED to SYSTEM_ERROR on a refused indy connection.");
+        options.addOption(null, "sessionTtl", true, "How long the summary of a completed http invoked session is kept for the status and cancel requests. The value is number in milliseconds (default is " + SessionOptions.DEFAULT_FINISHED_TTL_MILLIS + "ms).");
+        options.addOption(null, "maxFinishedSessions", true, "Max number of kept summaries of the completed http invoked sessions, the oldest are removed (default is " + SessionOptions.DEFAULT_MAX_FINISHED_SESSIONS + ").");
+        options.addOption(null, "maxRunningCommands", true, "Max number of concurrently running http invoked commands, the others wait in a queue. 0 means no limit (default is " + SessionOptions.DEFAULT_MAX_RUNNING_COMMANDS + ").");
+        options.addOption(null, "maxQueuedCommands", true, "Max number of http invoked commands waiting to be started, the requests over the limit are rejected with 429 (default is " + SessionOptions.DEFAULT_MAX_QUEUED_COMMANDS + ").");
+        options.addOption(null, "shellPoolSize", true, "Number of the idle shells kept started, the commands are handed to them to start faster. 0 disables the pool (default is " + ShellPoolOptions.DEFAULT_SIZE + ").");
+        options.addOption(null, "shellPoolShell", true, "Shell started for the pool (default is " + ShellPoolOptions.DEFAULT_SHELL + ").");
+        options.addOption(null, "shellPoolReset", true, "Script run by each pooled shell before it is used, eg. to reset the working directory and the environment. The output is discarded (default is none).");
+        options.addOption(null, "admissionMaxLoad", true, "No queued command is started while the 1 minute load average per cpu from /proc/loadavg is above the value, eg. 1.5. Default 0 disables the check.");
+        options.addOption(null, "admissionMinMemory", true, "No queued command is started while MemAvailable from /proc/meminfo is below the value in bytes. Default 0 disables the check.");
         options.addOption("h", false, "Print this help message.");
 
         CommandLineParser parser = new DefaultParser();
@@ -155,6 +189,7 @@ public class Main {
         String authHeaderConfigFile = getOption(cmd, "authHeaderConfig", "");
         String keycloakClientConfigFile = getOption(cmd, "keycloakClientConfig", "");
         String ldapClientConfigFile = getOption(cmd, "ldapClientConfig", "");
+        String logRulesConfigFile = getOption(cmd, "logRulesConfig", "");
 
         String httpReadTimeoutString = getOption(cmd, "httpReadTimeout", null);
         int httpReadTimeout;
@@ -182,6 +217,43 @@ public class Main {
             }
         }
 
+        Map<String, BackpressurePolicy> sinkPolicies = parseSinkPolicies(getOption(cmd, "sinkBackpressure", ""));
+        String spillDir = getOption(cmd, "sinkSpillDir", System.getProperty("java.io.tmpdir"));
+        OutputOptions outputOptions = new OutputOptions(
+                Integer.parseInt(getOption(cmd, "sinkQueueSize", Integer.toString(OutputOptions.DEFAULT_QUEUE_SIZE))),
+                parsePolicy("sinkDropPolicy", getOption(cmd, "sinkDropPolicy", BackpressurePolicy.DROP_OLDEST.name())),
+                sinkPolicies,
+                Long.parseLong(getOption(cmd, "sinkDrainTimeout", Long.toString(OutputOptions.DEFAULT_DRAIN_TIMEOUT_MILLIS))),
+                Paths.get(spillDir),
+                Integer.parseInt(getOption(cmd, "webSocketSendWindow", Integer.toString(SendWindow.DEFAULT_MAX_IN_FLIGHT_BYTES))),
+                DigestAlgorithm.fromName(getOption(cmd, "outputDigest", DigestAlgorithm.MD5.getAlgorithmName())),
+                Integer.parseInt(getOption(cmd, "outputTreeLeafSize", Integer.toString(OutputOptions.DEFAULT_OUTPUT_TREE_LEAF_SIZE))),
+                Integer.parseInt(getOption(cmd, "scrollbackSize", Integer.toString(OutputOptions.DEFAULT_SCROLLBACK_SIZE))));
+
+        FileLoggerOptions fileLoggerOptions = new FileLoggerOptions(
+                FileLoggerMode.valueOf(getOption(cmd, "fileMode", FileLoggerMode.STREAM.name())),
+                Integer.parseInt(getOption(cmd, "fileBufferSize", Integer.toString(FileLoggerOptions.DEFAULT_BUFFER_SIZE))),
+                Long.parseLong(getOption(cmd, "fileMaxLatency", Long.toString(FileLoggerOptions.DEFAULT_MAX_LATENCY_MILLIS))),
+                FsyncPolicy.valueOf(getOption(cmd, "fileFsync", FsyncPolicy.NONE.name())),
+                Long.parseLong(getOption(cmd, "fileFsyncInterval", Long.toString(FileLoggerOptions.DEFAULT_FSYNC_INTERVAL_MILLIS))),
+                Integer.parseInt(getOption(cmd, "fileSegmentSize", Integer.toString(FileLoggerOptions.DEFAULT_SEGMENT_SIZE))),
+                Long.parseLong(getOption(cmd, "fileRotateSize", Long.toString(FileLoggerOptions.DEFAULT_ROTATE_SIZE))),
+                Integer.parseInt(getOption(cmd, "fileMaxSegments", Integer.toString(FileLoggerOptions.DEFAULT_MAX_SEGMENTS))),
+                Integer.parseInt(getOption(cmd, "fileHeadSegments", Integer.toString(FileLoggerOptions.DEFAULT_HEAD_SEGMENTS))));
+
+        SessionOptions sessionOptions = new SessionOptions(
+                Long.parseLong(getOption(cmd, "sessionTtl", Long.toString(SessionOptions.DEFAULT_FINISHED_TTL_MILLIS))),
+                Integer.parseInt(getOption(cmd, "maxFinishedSessions", Integer.toString(SessionOptions.DEFAULT_MAX_FINISHED_SESSIONS))),
+                Integer.parseInt(getOption(cmd, "maxRunningCommands", Integer.toString(SessionOptions.DEFAULT_MAX_RUNNING_COMMANDS))),
+                Integer.parseInt(getOption(cmd, "maxQueuedCommands", Integer.toString(SessionOptions.DEFAULT_MAX_QUEUED_COMMANDS))),
+                Double.parseDouble(getOption(cmd, "admissionMaxLoad", "0")),
+                Long.parseLong(getOption(cmd, "admissionMinMemory", "0")));
+
+        ShellPoolOptions shellPoolOptions = new ShellPoolOptions(
+                Integer.parseInt(getOption(cmd, "shellPoolSize", Integer.toString(ShellPoolOptions.DEFAULT_SIZE))),
+                getOption(cmd, "shellPoolShell", ShellPoolOptions.DEFAULT_SHELL),
+                getOption(cmd, "shellPoolReset", ShellPoolOptions.DEFAULT_RESET_SCRIPT));
+
         org.jboss.pnc.buildagent.server.Options buildAgentOptions = new org.jboss.pnc.buildagent.server.Options(
                 host,
                 port,
@@ -195,7 +267,12 @@ public class Main {
                 keycloakClientConfigFile,
                 ldapClientConfigFile,
                 httpReadTimeout,
-                httpWriteTimeout);
+                httpWriteTimeout,
+                outputOptions,
+                fileLoggerOptions,
+                logRulesConfigFile,
+                sessionOptions,
+                shellPoolOptions);
 
         new BuildAgentServer(
                 logPath,
@@ -205,6 +282,34 @@ public class Main {
                 mdcMap);
     }
 
+    /**
+     * @param sinkBackpressure comma separated TYPE=POLICY pairs
+     */
+    static Map<String, BackpressurePolicy> parseSinkPolicies(String sinkBackpressure) throws ParseException {
+        Map<String, BackpressurePolicy> sinkPolicies = new HashMap<>();
+        for (String sinkPolicy : sinkBackpressure.split(",")) {
+            if (sinkPolicy.trim().isEmpty()) {
+                continue;
+            }
+            String[] typeAndPolicy = sinkPolicy.split("=");
+            if (typeAndPolicy.length != 2 || typeAndPolicy[0].trim().isEmpty()) {
+                throw new ParseException("Invalid --sinkBackpressure entry '" + sinkPolicy
+                        + "', expected TYPE=POLICY, eg. WEBSOCKET=SPILL_TO_DISK.");
+            }
+            sinkPolicies.put(typeAndPolicy[0].trim(), parsePolicy("sinkBackpressure", typeAndPolicy[1].trim()));
+        }
+        return sinkPolicies;
+    }
+
+    static BackpressurePolicy parsePolicy(String option, String policy) throws ParseException {
+        try {
+            return BackpressurePolicy.valueOf(policy.trim());
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Invalid --" + option + " policy '" + policy + "', expected one of "
+                    + Arrays.toString(BackpressurePolicy.values()) + ".");
+        }
+    }
+
     private static String getOption(CommandLine cmd, String opt, String defaultValue) {
         if (cmd.hasOption(opt)) {
             return cmd.getOptionValue(opt);
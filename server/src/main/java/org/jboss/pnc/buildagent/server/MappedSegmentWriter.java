@@ -0,0 +1,322 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Appends the output to pre-mapped fixed-size segment files, a write is a plain memory copy. The next segment is
+ * mapped in the background while the current one is being filled.
+ *
+ * The segments are stitched (appended) to the log file on {@link #flush()}, so once the command completes the log file
+ * is a regular file containing all the output. Until then the readers get the log file followed by the segments, see
+ * {@link #openLive()}. The stitched segments are removed and their mappings are left to the GC, so no view can outlive
+ * its mapping. A segment is never reused so a reader holding it open keeps reading the bytes it expects.
+ */
+public class MappedSegmentWriter implements FileLogWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedSegmentWriter.class);
+
+    private final Path path;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+
+    private final FileChannel logChannel;
+
+    /**
+     * Segments not yet stitched to the log file, the last one is being written.
+     */
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment current;
+    private Future<Segment> next;
+
+    private final ExecutorService mapper;
+    private int segmentSequence;
+    private boolean closed;
+
+    public MappedSegmentWriter(Path path, FileLoggerOptions options) throws IOException {
+        this.path = path;
+        this.segmentSize = options.getSegmentSize();
+        this.fsyncPolicy = options.getFsyncPolicy();
+        this.logChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.mapper = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-mapper-" + path.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        current = mapSegment(nextSegmentPath());
+        segments.add(current);
+        mapNextInBackground();
+    }
+
+    /**
+     * The files are opened under the lock, the bytes written later are not read. The removed segments are still
+     * readable through the open files.
+     *
+     * @return the log content including the output not stitched yet
+     */
+    @Override
+    public synchronized InputStream openLive() throws IOException {
+        List<InputStream> parts = new ArrayList<>(segments.size() + 1);
+        try {
+            parts.add(new BoundedInputStream(Files.newInputStream(path), logChannel.size()));
+            if (!closed) {
+                for (Segment segment : segments) {
+                    parts.add(new BoundedInputStream(Files.newInputStream(segment.path), segment.buffer.position()));
+                }
+            }
+        } catch (IOException e) {
+            for (InputStream part : parts) {
+                part.close();
+            }
+            throw e;
+        }
+        return new SequenceInputStream(Collections.enumeration(parts));
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes) throws IOException {
+        if (closed) {
+            throw new IOException("Writer of " + path + " is closed.");
+        }
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (current == null || !current.buffer.hasRemaining()) {
+                roll();
+            }
+            int length = Math.min(bytes.length - offset, current.buffer.remaining());
+            current.buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Appends the segments to the log file. The segments are removed, the writing continues in a new one.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        stitch();
+        if (fsyncPolicy != FsyncPolicy.NONE) {
+            logChannel.force(false);
+        }
+    }
+
+    /**
+     * @return copies of the output written since the last flush, in order. The mappings can be released after the
+     *         call, so no view of them is returned.
+     */
+    public synchronized List<ByteBuffer> unstitched() {
+        List<ByteBuffer> copies = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            ByteBuffer written = segment.written();
+            ByteBuffer copy = ByteBuffer.allocate(written.remaining());
+            copy.put(written);
+            copy.flip();
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private void stitch() throws IOException {
+        for (Segment segment : segments) {
+            ByteBuffer written = segment.written();
+            while (written.hasRemaining()) {
+                logChannel.write(written);
+            }
+        }
+        if (current != null && current.buffer.position() == 0 && segments.size() == 1) {
+            // nothing written, the empty segment is kept
+            return;
+        }
+        for (Segment segment : segments) {
+            segment.release();
+        }
+        segments.clear();
+        current = null;
+        if (!closed) {
+            roll();
+        }
+    }
+
+    private void roll() throws IOException {
+        try {
+            current = next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the next segment of " + path + ".", e);
+        } catch (ExecutionException e) {
+            log.warn("Cannot pre-map the next segment of {}, mapping it now.", path, e.getCause());
+            current = mapSegment(nextSegmentPath());
+        }
+        segments.add(current);
+        mapNextInBackground();
+    }
+
+    private void mapNextInBackground() {
+        Path segmentPath = nextSegmentPath();
+        next = mapper.submit(() -> mapSegment(segmentPath));
+    }
+
+    private Path nextSegmentPath() {
+        return path.resolveSibling(path.getFileName() + ".seg" + segmentSequence++);
+    }
+
+    private Segment mapSegment(Path segmentPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+                segmentPath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            return new Segment(segmentPath, buffer);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            stitch();
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                logChannel.force(false);
+            }
+        } finally {
+            logChannel.close();
+            if (current != null) {
+                current.release();
+            }
+            mapper.shutdown();
+            try {
+                next.get().release();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.debug("Next segment was not mapped.", e.getCause());
+            }
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        ByteBuffer written() {
+            ByteBuffer view = buffer.asReadOnlyBuffer();
+            view.flip();
+            return view;
+        }
+
+        /**
+         * Removes the segment file, the mapping is released by the GC once the buffer is not referenced.
+         */
+        void release() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Cannot delete log segment " + path + ".", e);
+            }
+        }
+    }
+
+    /**
+     * Reads up to the given number of bytes, the bytes appended later are not read.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        BoundedInputStream(InputStream inputStream, long length) {
+            super(inputStream);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read();
+            if (read != -1) {
+                remaining--;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(bytes, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(Math.min(count, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server;
+
+/**
+ * Where the static MDC (the one from --logMDC) goes in the queue records.
+ */
+public enum MdcPlacement {
+
+    /**
+     * In the payload, repeated by the formatter in each line. For the consumers reading the MDC from the payload.
+     */
+    INLINE,
+
+    /**
+     * In the record headers only, the payload has only the per line fields.
+     */
+    HEADERS,
+
+    /**
+     * In the payload and in the headers, while the consumers move to the headers.
+     */
+    BOTH;
+
+    /**
+     * @return true if the formatted lines contain the MDC
+     */
+    public boolean isInline() {
+        return this != HEADERS;
+    }
+
+    /**
+     * @return true if the records have the MDC headers
+     */
+    public boolean hasHeaders() {
+        return this != INLINE;
+    }
+}
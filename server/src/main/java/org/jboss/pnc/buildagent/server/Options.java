@@ -1,5 +1,9 @@
 package org.jboss.pnc.buildagent.server;
 
+import org.jboss.pnc.buildagent.server.httpinvoker.SessionOptions;
+import org.jboss.pnc.buildagent.server.output.OutputOptions;
+import org.jboss.pnc.buildagent.server.pty.ShellPoolOptions;
+
 import java.io.IOException;
 import java.net.ServerSocket;
 
@@ -25,6 +29,16 @@ public class Options {
 
     private final BifrostUploaderOptions bifrostUploaderOptions;
 
+    private final OutputOptions outputOptions;
+
+    private final FileLoggerOptions fileLoggerOptions;
+
+    private final String logRulesConfigFile;
+
+    private final SessionOptions sessionOptions;
+
+    private final ShellPoolOptions shellPoolOptions;
+
     public Options(
         String host,
         int bindPort,
@@ -39,6 +53,154 @@ public class Options {
         String ldapClientConfigFile,
         int httpReadTimeout,
         int httpWriteTimeout) {
+        this(
+            host,
+            bindPort,
+            bindPath,
+            socketInvokerEnabled,
+            httpInvokerEnabled,
+            callbackMaxRetries,
+            callbackWaitBeforeRetry,
+            bifrostUploaderOptions,
+            authHeaderConfigFile,
+            keycloakClientConfigFile,
+            ldapClientConfigFile,
+            httpReadTimeout,
+            httpWriteTimeout,
+            OutputOptions.defaults(),
+            FileLoggerOptions.defaults());
+    }
+
+    public Options(
+        String host,
+        int bindPort,
+        String bindPath,
+        boolean socketInvokerEnabled,
+        boolean httpInvokerEnabled,
+        int callbackMaxRetries,
+        long callbackWaitBeforeRetry,
+        BifrostUploaderOptions bifrostUploaderOptions,
+        String authHeaderConfigFile,
+        String keycloakClientConfigFile,
+        String ldapClientConfigFile,
+        int httpReadTimeout,
+        int httpWriteTimeout,
+        OutputOptions outputOptions,
+        FileLoggerOptions fileLoggerOptions) {
+        this(
+            host,
+            bindPort,
+            bindPath,
+            socketInvokerEnabled,
+            httpInvokerEnabled,
+            callbackMaxRetries,
+            callbackWaitBeforeRetry,
+            bifrostUploaderOptions,
+            authHeaderConfigFile,
+            keycloakClientConfigFile,
+            ldapClientConfigFile,
+            httpReadTimeout,
+            httpWriteTimeout,
+            outputOptions,
+            fileLoggerOptions,
+            "");
+    }
+
+    public Options(
+        String host,
+        int bindPort,
+        String bindPath,
+        boolean socketInvokerEnabled,
+        boolean httpInvokerEnabled,
+        int callbackMaxRetries,
+        long callbackWaitBeforeRetry,
+        BifrostUploaderOptions bifrostUploaderOptions,
+        String authHeaderConfigFile,
+        String keycloakClientConfigFile,
+        String ldapClientConfigFile,
+        int httpReadTimeout,
+        int httpWriteTimeout,
+        OutputOptions outputOptions,
+        FileLoggerOptions fileLoggerOptions,
+        String logRulesConfigFile) {
+        this(
+            host,
+            bindPort,
+            bindPath,
+            socketInvokerEnabled,
+            httpInvokerEnabled,
+            callbackMaxRetries,
+            callbackWaitBeforeRetry,
+            bifrostUploaderOptions,
+            authHeaderConfigFile,
+            keycloakClientConfigFile,
+            ldapClientConfigFile,
+            httpReadTimeout,
+            httpWriteTimeout,
+            outputOptions,
+            fileLoggerOptions,
+            logRulesConfigFile,
+            SessionOptions.defaults());
+    }
+
+    public Options(
+        String host,
+        int bindPort,
+        String bindPath,
+        boolean socketInvokerEnabled,
+        boolean httpInvokerEnabled,
+        int callbackMaxRetries,
+        long callbackWaitBeforeRetry,
+        BifrostUploaderOptions bifrostUploaderOptions,
+        String authHeaderConfigFile,
+        String keycloakClientConfigFile,
+        String ldapClientConfigFile,
+        int httpReadTimeout,
+        int httpWriteTimeout,
+        OutputOptions outputOptions,
+        FileLoggerOptions fileLoggerOptions,
+        String logRulesConfigFile,
+        SessionOptions sessionOptions) {
+        this(
+            host,
+            bindPort,
+            bindPath,
+            socketInvokerEnabled,
+            httpInvokerEnabled,
+            callbackMaxRetries,
+            callbackWaitBeforeRetry,
+            bifrostUploaderOptions,
+            authHeaderConfigFile,
+            keycloakClientConfigFile,
+            ldapClientConfigFile,
+            httpReadTimeout,
+            httpWriteTimeout,
+            outputOptions,
+            fileLoggerOptions,
+            logRulesConfigFile,
+            sessionOptions,
+            ShellPoolOptions.defaults());
+    }
+
+    public Options(
+        String host,
+        int bindPort,
+        String bindPath,
+        boolean socketInvokerEnabled,
+        boolean httpInvokerEnabled,
+        int callbackMaxRetries,
+        long callbackWaitBeforeRetry,
+        BifrostUploaderOptions bifrostUploaderOptions,
+        String authHeaderConfigFile,
+        String keycloakClientConfigFile,
+        String ldapClientConfigFile,
+        int httpReadTimeout,
+        int httpWriteTimeout,
+        OutputOptions outputOptions,
+        FileLoggerOptions fileLoggerOptions,
+        String logRulesConfigFile,
+        SessionOptions sessionOptions,
+        ShellPoolOptions shellPoolOptions) {
         this.host = host;
         this.bindPath = bindPath;
         this.socketInvokerEnabled = socketInvokerEnabled;
@@ -51,6 +213,11 @@ public class Options {
         this.ldapClientConfigFile = ldapClientConfigFile;
         this.httpReadTimeout = httpReadTimeout;
         this.httpWriteTimeout = httpWriteTimeout;
+        this.outputOptions = outputOptions;
+        this.fileLoggerOptions = fileLoggerOptions;
+        this.logRulesConfigFile = logRulesConfigFile;
+        this.sessionOptions = sessionOptions;
+        this.shellPoolOptions = shellPoolOptions;
 
         if (bindPort == 0) {
             port = findFirstFreePort();
@@ -119,4 +286,24 @@ public class Options {
         return bifrostUploaderOptions;
     }
 
+    public OutputOptions getOutputOptions() {
+        return outputOptions;
+    }
+
+    public FileLoggerOptions getFileLoggerOptions() {
+        return fileLoggerOptions;
+    }
+
+    public String getLogRulesConfigFile() {
+        return logRulesConfigFile;
+    }
+
+    public SessionOptions getSessionOptions() {
+        return sessionOptions;
+    }
+
+    public ShellPoolOptions getShellPoolOptions() {
+        return shellPoolOptions;
+    }
+
 }
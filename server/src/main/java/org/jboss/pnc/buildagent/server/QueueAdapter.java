@@ -1,6 +1,9 @@
 package org.jboss.pnc.buildagent.server;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -12,6 +15,100 @@ public interface QueueAdapter {
 
     void send(String message, Consumer<Exception> exceptionHandler);
 
+    /**
+     * @return true when the record values are bytes, the messages are then formatted to bytes and sent using {@link
+     *         #send(byte[], Consumer)}
+     */
+    default boolean isBinary() {
+        return false;
+    }
+
+    /**
+     * @return false when the adapter sends the static MDC outside of the payload, the lines are then formatted without
+     *         it
+     */
+    default boolean isMdcInline() {
+        return true;
+    }
+
+    /**
+     * Sends the UTF-8 encoded message. The array must not be modified by the caller after the call.
+     */
+    default void send(byte[] message, Consumer<Exception> exceptionHandler) {
+        send(new String(message, StandardCharsets.UTF_8), exceptionHandler);
+    }
+
+    /**
+     * Sends multiple messages as a single record. The record value is the JSON array created by {@link
+     * QueueBatcher#toJson}, each message keeps its sequence number so the consumer can split the record.
+     *
+     * The number of batches in flight is limited by the caller, see {@link QueueBatchOptions#getMaxInFlight()}.
+     *
+     * @param messages formatted messages in order
+     * @param firstSequence sequence number of the first message, the following messages are numbered consecutively
+     * @return completed when the record is acknowledged, completed exceptionally when it cannot be delivered
+     */
+    CompletableFuture<Void> sendBatch(List<String> messages, long firstSequence);
+
+    /**
+     * Sends the message with its position in the session output. The adapters which do not carry the position
+     * ignore it.
+     */
+    default void send(String message, RecordPosition position, Consumer<Exception> exceptionHandler) {
+        send(message, exceptionHandler);
+    }
+
+    /**
+     * The same as {@link #send(String, RecordPosition, Consumer)} for the UTF-8 encoded message.
+     */
+    default void send(byte[] message, RecordPosition position, Consumer<Exception> exceptionHandler) {
+        send(message, exceptionHandler);
+    }
+
+    /**
+     * Sends the batch with its position in the session output, the sequence of the position is the sequence of the
+     * first message.
+     */
+    default CompletableFuture<Void> sendBatch(List<String> messages, RecordPosition position) {
+        return sendBatch(messages, position.getSequence());
+    }
+
+    /**
+     * @return the key and the MDC headers of a record created now by the current thread, null when the adapter does
+     *         not label the records
+     */
+    default RecordLabels currentLabels() {
+        return null;
+    }
+
+    /**
+     * Sends the message with the labels taken by {@link #currentLabels()} when the record was created, instead of the
+     * current ones.
+     *
+     * @param position null when the record has no position
+     */
+    default void send(byte[] message, RecordPosition position, RecordLabels labels, Consumer<Exception> exceptionHandler) {
+        if (position == null) {
+            send(message, exceptionHandler);
+        } else {
+            send(message, position, exceptionHandler);
+        }
+    }
+
+    /**
+     * Sends the batch with the labels taken by {@link #currentLabels()} when the batch was created, instead of the
+     * current ones.
+     *
+     * @param position null when the batch has no position, the firstSequence is used then
+     */
+    default CompletableFuture<Void> sendBatch(
+            List<String> messages,
+            long firstSequence,
+            RecordPosition position,
+            RecordLabels labels) {
+        return position == null ? sendBatch(messages, firstSequence) : sendBatch(messages, position);
+    }
+
     void close(Duration duration);
 
     void close();
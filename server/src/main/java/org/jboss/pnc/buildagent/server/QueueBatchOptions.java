@@ -0,0 +1,76 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server;
+
+/**
+ * Grouping of the log lines into the queue records.
+ */
+public class QueueBatchOptions {
+
+    public static final int DEFAULT_MAX_LINES = 1;
+    public static final int DEFAULT_MAX_BYTES = 64 * 1024;
+    public static final long DEFAULT_MAX_LINGER_MILLIS = 100;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+    private final int maxLines;
+    private final int maxBytes;
+    private final long maxLingerMillis;
+    private final int maxInFlight;
+
+    /**
+     * @param maxLines the batch is sent when it has this many lines, 1 sends a record per line
+     * @param maxBytes the batch is sent when the formatted lines have this many characters
+     * @param maxLingerMillis the batch is sent at latest this long after its first line was added
+     * @param maxInFlight max number of batches sent and not yet acknowledged, the writer blocks when reached
+     */
+    public QueueBatchOptions(int maxLines, int maxBytes, long maxLingerMillis, int maxInFlight) {
+        this.maxLines = maxLines;
+        this.maxBytes = maxBytes;
+        this.maxLingerMillis = maxLingerMillis;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public static QueueBatchOptions defaults() {
+        return new QueueBatchOptions(DEFAULT_MAX_LINES, DEFAULT_MAX_BYTES, DEFAULT_MAX_LINGER_MILLIS, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @return true when multiple lines are grouped to a record
+     */
+    public boolean isEnabled() {
+        return maxLines > 1;
+    }
+
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxLingerMillis() {
+        return maxLingerMillis;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+}
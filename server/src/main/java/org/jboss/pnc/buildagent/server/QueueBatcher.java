@@ -0,0 +1,256 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Groups the formatted log lines into batches. A batch is sent when it reaches the max number of lines or bytes, or
+ * when its first line waited for the max linger time.
+ *
+ * Each line gets a sequence number, the numbers are consecutive within and across the batches.
+ */
+public class QueueBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(QueueBatcher.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final QueueBatchOptions options;
+    private final BiFunction<List<String>, Long, CompletableFuture<Void>> sender;
+    private final Consumer<Exception> exceptionHandler;
+
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService lingerTimer;
+
+    private List<String> lines;
+    private int bytes;
+    private long nextSequence;
+    private long batchFirstSequence;
+    private ScheduledFuture<?> lingerTask;
+
+    /**
+     * @param sender sends the lines starting with the given sequence number
+     * @param exceptionHandler called when a batch cannot be sent
+     */
+    public QueueBatcher(
+            QueueBatchOptions options,
+            BiFunction<List<String>, Long, CompletableFuture<Void>> sender,
+            Consumer<Exception> exceptionHandler) {
+        this.options = options;
+        this.sender = sender;
+        this.exceptionHandler = exceptionHandler;
+        this.inFlight = new Semaphore(options.getMaxInFlight());
+        this.lines = new ArrayList<>(options.getMaxLines());
+        this.lingerTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "queue-batch-linger");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public synchronized void add(String message) {
+        if (lines.isEmpty()) {
+            batchFirstSequence = nextSequence;
+            long batch = batchFirstSequence;
+            lingerTask = lingerTimer.schedule(() -> onLinger(batch), options.getMaxLingerMillis(), TimeUnit.MILLISECONDS);
+        }
+        lines.add(message);
+        bytes += message.length();
+        nextSequence++;
+        if (lines.size() >= options.getMaxLines() || bytes >= options.getMaxBytes()) {
+            sendBatch();
+        }
+    }
+
+    private synchronized void onLinger(long batch) {
+        // the batch may have been already sent and a new one started
+        if (!lines.isEmpty() && batchFirstSequence == batch) {
+            sendBatch();
+        }
+    }
+
+    private void sendBatch() {
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        List<String> batch = lines;
+        lines = new ArrayList<>(options.getMaxLines());
+        bytes = 0;
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exceptionHandler.accept(new IOException("Interrupted while waiting to send " + batch.size() + " lines.", e));
+            return;
+        }
+        CompletableFuture<Void> sent;
+        try {
+            sent = sender.apply(batch, batchFirstSequence);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            exceptionHandler.accept(e);
+            return;
+        }
+        sent.whenComplete((result, throwable) -> {
+            inFlight.release();
+            if (throwable != null) {
+                exceptionHandler.accept(throwable instanceof Exception ? (Exception) throwable : new Exception(throwable));
+            }
+        });
+    }
+
+    /**
+     * Sends the pending lines and waits until all the batches are acknowledged.
+     */
+    public void flush(long timeoutMillis) throws IOException {
+        synchronized (this) {
+            if (!lines.isEmpty()) {
+                sendBatch();
+            }
+        }
+        int permits = options.getMaxInFlight();
+        try {
+            if (!inFlight.tryAcquire(permits, timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timeout waiting for "
+                        + (permits - inFlight.availablePermits()) + " batches to be acknowledged.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the batches to be acknowledged.", e);
+        }
+        inFlight.release(permits);
+    }
+
+    /**
+     * Sends the pending lines and stops the linger timer. It does not wait for the acknowledgement.
+     */
+    public void close() {
+        synchronized (this) {
+            if (!lines.isEmpty()) {
+                sendBatch();
+            }
+        }
+        lingerTimer.shutdownNow();
+        log.debug("Batcher closed, {} lines sent.", nextSequence);
+    }
+
+    /**
+     * The record value of a batch: <code>[{"sequence":0,"message":{...}},{"sequence":1,"message":{...}}]</code>.
+     */
+    public static String toJson(List<String> messages, long firstSequence) {
+        StringWriter writer = new StringWriter(estimateJsonLength(messages));
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            writeJson(generator, messages, firstSequence);
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * The same as {@link #toJson} encoded to UTF-8, for the adapters sending bytes.
+     */
+    public static byte[] toJsonBytes(List<String> messages, long firstSequence) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(estimateJsonLength(messages));
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            writeJson(generator, messages, firstSequence);
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static int estimateJsonLength(List<String> messages) {
+        int estimated = 2;
+        for (String message : messages) {
+            estimated += message.length() + 32;
+        }
+        return estimated;
+    }
+
+    private static void writeJson(JsonGenerator generator, List<String> messages, long firstSequence)
+            throws IOException {
+        generator.writeStartArray();
+        for (int i = 0; i < messages.size(); i++) {
+            generator.writeStartObject();
+            generator.writeNumberField("sequence", firstSequence + i);
+            generator.writeFieldName("message");
+            writeMessage(generator, messages.get(i));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * The JSON formatters' lines are embedded as they are, so the batched record reads the same as a single one. Any
+     * other message, including a plain-text line starting with a bracket, is written as a string.
+     */
+    private static void writeMessage(JsonGenerator generator, String message) throws IOException {
+        if (isJsonValue(message)) {
+            generator.writeRawValue(message);
+        } else {
+            generator.writeString(message);
+        }
+    }
+
+    /**
+     * @return true when the message is exactly one JSON object or array, surrounding whitespace is allowed
+     */
+    static boolean isJsonValue(String message) {
+        int start = 0;
+        while (start < message.length() && Character.isWhitespace(message.charAt(start))) {
+            start++;
+        }
+        if (start == message.length() || (message.charAt(start) != '{' && message.charAt(start) != '[')) {
+            return false;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(message)) {
+            parser.nextToken();
+            parser.skipChildren();
+            return parser.nextToken() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of the queue records. The records are appended to segment files and read back in the same order, the
+ * position of the last delivered record is kept in a checkpoint file, so the undelivered records are read again after
+ * a restart.
+ *
+ * A record is stored as its length, the CRC32 of the content and the content. A record which does not match its CRC is
+ * skipped and counted. A record which is cut (the agent was killed during the write) ends the segment, in the segment
+ * being written the records are complete up to the write position, so a cut record there is corrupted and the written
+ * rest of the segment is skipped. Each start appends to a new segment, the existing segments are only read.
+ *
+ * The appends are thread safe, the reading is expected to be done by a single thread.
+ */
+class QueueSpool implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(QueueSpool.class);
+
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    private final Path directory;
+    private final long segmentBytes;
+
+    private final Object writeLock = new Object();
+    private long writeSegment;
+    private FileChannel writeChannel;
+    private volatile long writePosition;
+
+    /**
+     * Segment and offset of the next record to read.
+     */
+    private long readSegment;
+    private long readPosition;
+    private FileChannel readChannel;
+
+    /**
+     * Segment and offset after the last delivered record.
+     */
+    private volatile long committedSegment;
+    private volatile long committedPosition;
+
+    /**
+     * Number of the skipped corrupted records and the position after the last one, a record read again after a
+     * rewind is not counted twice.
+     */
+    private final AtomicLong corrupted = new AtomicLong();
+    private long corruptedSegment = -1;
+    private long corruptedPosition;
+
+    private final ByteBuffer readHeader = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+    private final ByteBuffer writeHeader = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+    private final CRC32 readCrc = new CRC32();
+    private final CRC32 writeCrc = new CRC32();
+
+    /**
+     * Opens the spool in the directory, the records not delivered before the previous shutdown are read first.
+     *
+     * @param segmentBytes size at which a new segment is started
+     */
+    QueueSpool(Path directory, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+
+        TreeSet<Long> segments = segments();
+        long[] checkpoint = readCheckpoint();
+        if (checkpoint != null && segments.contains(checkpoint[0])) {
+            readSegment = checkpoint[0];
+            readPosition = checkpoint[1];
+        } else if (!segments.isEmpty()) {
+            readSegment = segments.first();
+            readPosition = 0;
+        }
+        writeSegment = segments.isEmpty() ? 0 : segments.last() + 1;
+        if (segments.isEmpty()) {
+            readSegment = writeSegment;
+        }
+        writeChannel = openSegment(writeSegment);
+        writePosition = 0;
+        committedSegment = readSegment;
+        committedPosition = readPosition;
+        if (!segments.isEmpty()) {
+            log.info("Queue spool {} has undelivered records from segment {} at {}.", directory, readSegment, readPosition);
+        }
+    }
+
+    void append(byte[] record) throws IOException {
+        synchronized (writeLock) {
+            if (writePosition > 0 && writePosition + RECORD_HEADER_LENGTH + record.length > segmentBytes) {
+                roll();
+            }
+            writeCrc.reset();
+            writeCrc.update(record, 0, record.length);
+            writeHeader.clear();
+            writeHeader.putInt(record.length).putInt((int) writeCrc.getValue()).flip();
+            long position = writePosition;
+            position += writeFully(writeChannel, writeHeader, position);
+            position += writeFully(writeChannel, ByteBuffer.wrap(record), position);
+            writePosition = position;
+        }
+    }
+
+    /**
+     * Forces the appended records to the storage device.
+     */
+    void sync() throws IOException {
+        synchronized (writeLock) {
+            writeChannel.force(false);
+        }
+    }
+
+    private void roll() throws IOException {
+        writeChannel.force(false);
+        writeChannel.close();
+        writeSegment++;
+        writeChannel = openSegment(writeSegment);
+        writePosition = 0;
+    }
+
+    /**
+     * Reads the next records, the position is not committed until {@link #commit()}.
+     */
+    List<byte[]> read(int maxRecords) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        while (records.size() < maxRecords) {
+            long end;
+            long lastSegment;
+            synchronized (writeLock) {
+                lastSegment = writeSegment;
+                end = readSegment == writeSegment ? writePosition : Long.MAX_VALUE;
+            }
+            byte[] record = readRecord(end);
+            if (record != null) {
+                records.add(record);
+                continue;
+            }
+            if (readSegment >= lastSegment) {
+                break;
+            }
+            // the older segment is complete, continue with the next one
+            closeReadChannel();
+            readSegment = nextSegment(readSegment, lastSegment);
+            readPosition = 0;
+        }
+        return records;
+    }
+
+    /**
+     * @param end the write position in the segment being written, the records before it are complete
+     * @return the record at the read position or null at the end of the segment
+     */
+    private byte[] readRecord(long end) throws IOException {
+        while (true) {
+            if (end - readPosition < RECORD_HEADER_LENGTH) {
+                return null;
+            }
+            if (readChannel == null) {
+                readChannel = FileChannel.open(segmentPath(readSegment), StandardOpenOption.READ);
+            }
+            long available = Math.min(end, readChannel.size()) - readPosition;
+            if (available < RECORD_HEADER_LENGTH) {
+                return null;
+            }
+            readHeader.clear();
+            readFully(readChannel, readHeader, readPosition);
+            readHeader.flip();
+            int length = readHeader.getInt();
+            int crc = readHeader.getInt();
+            if (length < 0 || length > available - RECORD_HEADER_LENGTH) {
+                if (end == Long.MAX_VALUE) {
+                    log.warn("Skipping the cut record at {} in spool segment {}.", readPosition, readSegment);
+                    return null;
+                }
+                // the next record cannot be found without the length
+                skipCorrupted(end);
+                return null;
+            }
+            byte[] record = new byte[length];
+            readFully(readChannel, ByteBuffer.wrap(record), readPosition + RECORD_HEADER_LENGTH);
+            readCrc.reset();
+            readCrc.update(record, 0, length);
+            if ((int) readCrc.getValue() != crc) {
+                skipCorrupted(readPosition + RECORD_HEADER_LENGTH + length);
+                continue;
+            }
+            readPosition += RECORD_HEADER_LENGTH + length;
+            return record;
+        }
+    }
+
+    private void skipCorrupted(long skipTo) {
+        if (readSegment > corruptedSegment || (readSegment == corruptedSegment && readPosition >= corruptedPosition)) {
+            corrupted.incrementAndGet();
+            corruptedSegment = readSegment;
+            corruptedPosition = skipTo;
+            log.warn("Skipping the corrupted spool segment {} from {} to {}.", readSegment, readPosition, skipTo);
+        }
+        readPosition = skipTo;
+    }
+
+    /**
+     * @return number of the corrupted records skipped since the start
+     */
+    long getCorrupted() {
+        return corrupted.get();
+    }
+
+    /**
+     * Sets the read position back to the last committed record, the records are read again.
+     */
+    void rewind() throws IOException {
+        if (readSegment != committedSegment) {
+            closeReadChannel();
+        }
+        readSegment = committedSegment;
+        readPosition = committedPosition;
+    }
+
+    /**
+     * Stores the read position, the records read so far are not read again after a restart. The fully read segments
+     * are removed.
+     */
+    void commit() throws IOException {
+        if (readSegment == committedSegment && readPosition == committedPosition) {
+            return;
+        }
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel channel = FileChannel.open(
+                temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap((readSegment + " " + readPosition).getBytes(StandardCharsets.UTF_8)));
+            // the content must be on the disk before the rename, otherwise the checkpoint can be empty after a crash
+            channel.force(true);
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (long segment : segments()) {
+            if (segment < readSegment) {
+                Files.deleteIfExists(segmentPath(segment));
+            }
+        }
+        committedSegment = readSegment;
+        committedPosition = readPosition;
+    }
+
+    /**
+     * @return true when some of the appended records are not committed
+     */
+    boolean hasPending() {
+        synchronized (writeLock) {
+            return committedSegment != writeSegment || committedPosition != writePosition;
+        }
+    }
+
+    private long nextSegment(long current, long lastSegment) throws IOException {
+        Long next = segments().higher(current);
+        return next == null ? lastSegment : next;
+    }
+
+    private TreeSet<Long> segments() throws IOException {
+        TreeSet<Long> segments = new TreeSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring unexpected file {} in the queue spool.", path);
+                }
+            }
+        }
+        return segments;
+    }
+
+    private long[] readCheckpoint() throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if (!Files.exists(checkpoint)) {
+            return null;
+        }
+        String[] parts = new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8).trim().split(" ");
+        try {
+            return new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]) };
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            log.warn("Ignoring invalid queue spool checkpoint {}.", checkpoint);
+            return null;
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private FileChannel openSegment(long segment) throws IOException {
+        return FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private void closeReadChannel() throws IOException {
+        if (readChannel != null) {
+            readChannel.close();
+            readChannel = null;
+        }
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of spool segment.");
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeReadChannel();
+        synchronized (writeLock) {
+            writeChannel.force(false);
+            writeChannel.close();
+        }
+    }
+}
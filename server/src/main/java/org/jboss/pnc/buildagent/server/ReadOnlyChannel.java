@@ -18,6 +18,8 @@
 
 package org.jboss.pnc.buildagent.server;
 
+import org.jboss.pnc.buildagent.server.output.BackpressurePolicy;
+
 import java.io.Closeable;
 import java.io.IOException;
 
@@ -33,4 +35,20 @@ public interface ReadOnlyChannel extends Closeable {
     boolean isPrimary();
 
     void flush() throws IOException;
+
+    /**
+     * @return what happens with the output when the channel does not keep up with the producer. The channels writing
+     *         directly to the destination block the producer.
+     */
+    default BackpressurePolicy getBackpressurePolicy() {
+        return BackpressurePolicy.BLOCK;
+    }
+
+    /**
+     * @return the channel receiving the output of the given session only, it is closed when the session completes.
+     *         The channels writing the output of all the sessions to the same destination return themselves.
+     */
+    default ReadOnlyChannel forSession(String sessionId) {
+        return this;
+    }
 }
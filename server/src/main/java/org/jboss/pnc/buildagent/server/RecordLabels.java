@@ -0,0 +1,55 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Key and MDC headers of a queue record, resolved when the record is created. The adapters sending the record later
+ * (eg. after a restart) keep them with the record, so it is not labelled with the MDC of the sending process.
+ */
+public class RecordLabels {
+
+    private final String key;
+    private final Map<String, String> mdcHeaders;
+
+    /**
+     * @param key the record key before it is spread, see {@link KafkaQueueAdapter#spreadKey}
+     * @param mdcHeaders the MDC sent as record headers
+     */
+    public RecordLabels(String key, Map<String, String> mdcHeaders) {
+        this.key = key;
+        this.mdcHeaders = Collections.unmodifiableMap(new LinkedHashMap<>(mdcHeaders));
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Map<String, String> getMdcHeaders() {
+        return mdcHeaders;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordLabels{" + key + ", mdcHeaders=" + mdcHeaders + "}";
+    }
+}
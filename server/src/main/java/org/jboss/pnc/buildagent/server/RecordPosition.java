@@ -0,0 +1,59 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server;
+
+/**
+ * Position of a queue record in the output of a session. Records of one session can be delivered out of order (eg.
+ * when they are spread across multiple partitions), the consumer restores the order using the position.
+ *
+ * Both numbers start at 0 and have no gaps: the sequence counts the lines, the chunk counts the records. A record
+ * with multiple lines has the sequence of its first line.
+ */
+public class RecordPosition {
+
+    private final String sessionId;
+    private final long sequence;
+    private final long chunk;
+
+    /**
+     * @param sessionId the session producing the output, null when the output is not bound to a session
+     */
+    public RecordPosition(String sessionId, long sequence, long chunk) {
+        this.sessionId = sessionId;
+        this.sequence = sequence;
+        this.chunk = chunk;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getChunk() {
+        return chunk;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordPosition{" + sessionId + ", sequence=" + sequence + ", chunk=" + chunk + "}";
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server;
+
+import org.jboss.pnc.buildagent.common.security.OutputDigest;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the log written by {@link RotatingGzipWriter}. The log is stored as the numbered gzip segments next to the log
+ * path (console.log.1.gz, console.log.2.gz, ...), the segment being written has the .part suffix. It is read up to the
+ * last flush, it has no gzip trailer yet.
+ *
+ * Gzip members can be concatenated, the segments in order form a single gzip stream.
+ */
+public class RotatedLog {
+
+    static final String SEGMENT_SUFFIX = ".gz";
+    static final String PART_SUFFIX = ".part";
+
+    private RotatedLog() {
+    }
+
+    static Path segmentPath(Path logPath, int index) {
+        return logPath.resolveSibling(logPath.getFileName() + "." + index + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * @return completed segments ordered by the index
+     */
+    public static List<Path> segments(Path logPath) throws IOException {
+        return list(logPath, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * @return the segments being written ordered by the index, more than one only when a writer did not complete its
+     *         segment before a restart
+     */
+    static List<Path> openSegments(Path logPath) throws IOException {
+        return list(logPath, SEGMENT_SUFFIX + PART_SUFFIX);
+    }
+
+    private static List<Path> list(Path logPath, String suffix) throws IOException {
+        Path folder = logPath.toAbsolutePath().getParent();
+        if (folder == null || !Files.isDirectory(folder)) {
+            return Collections.emptyList();
+        }
+        Pattern pattern = Pattern.compile(Pattern.quote(logPath.getFileName().toString()) + "\\.(\\d+)" + Pattern.quote(suffix));
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(folder)) {
+            files.forEach(file -> {
+                if (pattern.matcher(file.getFileName().toString()).matches()) {
+                    segments.add(file);
+                }
+            });
+        }
+        segments.sort(Comparator.comparingLong(segment -> index(pattern, segment)));
+        return segments;
+    }
+
+    private static long index(Pattern pattern, Path segment) {
+        Matcher matcher = pattern.matcher(segment.getFileName().toString());
+        matcher.matches();
+        return Long.parseLong(matcher.group(1));
+    }
+
+    static int index(Path segment) {
+        String name = segment.getFileName().toString();
+        if (name.endsWith(PART_SUFFIX)) {
+            name = name.substring(0, name.length() - PART_SUFFIX.length());
+        }
+        String withoutSuffix = name.substring(0, name.length() - SEGMENT_SUFFIX.length());
+        return Integer.parseInt(withoutSuffix.substring(withoutSuffix.lastIndexOf('.') + 1));
+    }
+
+    /**
+     * @return true if the log is written in the rotated form.
+     */
+    public static boolean isRotated(Path logPath) throws IOException {
+        return !Files.exists(logPath) && (!segments(logPath).isEmpty() || !openSegments(logPath).isEmpty());
+    }
+
+    /**
+     * @return compressed log, the concatenation of the completed segments, the output in the segment being written is
+     *         not included
+     */
+    public static InputStream openCompressed(Path logPath) throws IOException {
+        return concat(logPath, segments(logPath), segment -> new FileInputStream(segment.toFile()));
+    }
+
+    /**
+     * @return the log content, decompressed if the log is rotated, including the output flushed to the segment being
+     *         written
+     */
+    public static InputStream open(Path logPath) throws IOException {
+        if (isRotated(logPath)) {
+            // the open segments are listed first, a segment completed meanwhile is then found by the second listing
+            Map<Integer, Path> segments = new TreeMap<>();
+            for (Path segment : openSegments(logPath)) {
+                segments.put(index(segment), segment);
+            }
+            for (Path segment : segments(logPath)) {
+                segments.put(index(segment), segment);
+            }
+            // each segment is decompressed separately, GZIPInputStream does not detect the next member reliably
+            return concat(logPath, new ArrayList<>(segments.values()), RotatedLog::decompress);
+        }
+        return new FileInputStream(logPath.toFile());
+    }
+
+    private static InputStream decompress(Path segment) throws IOException {
+        String name = segment.getFileName().toString();
+        if (!name.endsWith(PART_SUFFIX)) {
+            return new GZIPInputStream(new BufferedInputStream(new FileInputStream(segment.toFile())));
+        }
+        InputStream inputStream;
+        try {
+            inputStream = new FileInputStream(segment.toFile());
+        } catch (FileNotFoundException e) {
+            // completed meanwhile
+            Path completed = segment.resolveSibling(name.substring(0, name.length() - PART_SUFFIX.length()));
+            return new GZIPInputStream(new BufferedInputStream(new FileInputStream(completed.toFile())));
+        }
+        try {
+            return new OpenSegmentInputStream(new GZIPInputStream(new BufferedInputStream(inputStream)));
+        } catch (EOFException e) {
+            // the header is not flushed yet
+            inputStream.close();
+            return new ByteArrayInputStream(new byte[0]);
+        }
+    }
+
+    private static InputStream concat(Path logPath, List<Path> segments, SegmentOpener opener) throws IOException {
+        if (segments.isEmpty()) {
+            throw new FileNotFoundException("No log segments for " + logPath + ".");
+        }
+        Iterator<Path> iterator = segments.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                Path segment = iterator.next();
+                try {
+                    return opener.open(segment);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot read log segment " + segment + ".", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Decompresses the rotated log to a temporary file, for the consumers that require a plain file.
+     */
+    public static Path decompressToTempFile(Path logPath) throws IOException {
+        Path tempFile = Files.createTempFile(logPath.getFileName().toString(), ".tmp");
+        try (InputStream inputStream = open(logPath)) {
+            Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return tempFile;
+    }
+
+    /**
+     * Decompresses the rotated log to a temporary file and adds its content to the digest. The digest differs from
+     * the output digest when the retention removed some segments.
+     */
+    public static Path decompressToTempFile(Path logPath, OutputDigest digest) throws IOException {
+        Path tempFile = Files.createTempFile(logPath.getFileName().toString(), ".tmp");
+        try (InputStream inputStream = open(logPath);
+                OutputStream outputStream = Files.newOutputStream(tempFile)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+                digest.add(read == buffer.length ? buffer : Arrays.copyOf(buffer, read));
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return tempFile;
+    }
+
+    private interface SegmentOpener {
+        InputStream open(Path segment) throws IOException;
+    }
+
+    /**
+     * Ends at the end of the flushed output of the segment being written, instead of failing on the missing trailer.
+     */
+    private static class OpenSegmentInputStream extends FilterInputStream {
+
+        OpenSegmentInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (EOFException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            try {
+                return super.read(bytes, offset, length);
+            } catch (EOFException e) {
+                return -1;
+            }
+        }
+    }
+}
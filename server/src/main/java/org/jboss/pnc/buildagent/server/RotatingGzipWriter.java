@@ -0,0 +1,403 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Compresses the output to numbered gzip segments on a background thread, a new segment is started when the current
+ * one reaches the rotation size (uncompressed). A flush syncs the compressor, so the output written so far is readable
+ * from the open segment too.
+ *
+ * The kept output is bounded to the max segments of the rotation size, the newest completed segment is always kept.
+ * With the head retention the first segments (usually the most interesting part of a build log) are kept and the oldest
+ * segments after them are removed. A removed segment is replaced with a short marker telling how much output was
+ * removed, consecutive markers are merged. The log is then no longer the complete output and its digest differs from
+ * the output digest, see {@link #getRemovedBytes()}. The retention state is restored from the segments found on the
+ * start.
+ *
+ * Use {@link RotatedLog} to read the log.
+ */
+public class RotatingGzipWriter implements FileLogWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(RotatingGzipWriter.class);
+
+    private static final int QUEUE_SIZE = 1024;
+
+    private static final Pattern MARKER = Pattern.compile("\n% # (\\d+) bytes removed by log rotation\n");
+
+    /**
+     * Larger segments are not checked for the marker.
+     */
+    private static final long MAX_MARKER_SIZE = 256;
+
+    private final Path logPath;
+    private final long rotateSize;
+    /**
+     * Max uncompressed bytes of the completed segments, the markers are not counted.
+     */
+    private final long maxBytes;
+    private final int headSegments;
+    private final FsyncPolicy fsyncPolicy;
+
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Thread compressor;
+
+    // accessed only by the compressor thread
+    private int nextIndex = 1;
+    private SegmentOutput current;
+    private final Deque<Segment> tail = new ArrayDeque<>();
+    private int keptHead;
+    private long keptBytes;
+    private Segment lastMarker;
+
+    /**
+     * Output bytes replaced with the markers.
+     */
+    private volatile long removedBytes;
+
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    public RotatingGzipWriter(Path logPath, FileLoggerOptions options) throws IOException {
+        this.logPath = logPath;
+        this.rotateSize = options.getRotateSize();
+        int maxSegments = Math.max(1, options.getMaxSegments());
+        this.maxBytes = rotateSize > Long.MAX_VALUE / maxSegments ? Long.MAX_VALUE : rotateSize * maxSegments;
+        this.headSegments = Math.min(options.getHeadSegments(), maxSegments - 1);
+        this.fsyncPolicy = options.getFsyncPolicy();
+        restoreRetention();
+        compressor = new Thread(this::compress, "log-compressor-" + logPath.getFileName());
+        compressor.setDaemon(true);
+        compressor.start();
+    }
+
+    /**
+     * Rebuilds the head, tail and marker state from the segments written before, so the retention continues where it
+     * stopped. A segment left open by a crash is kept as it is and read after the completed ones before it.
+     */
+    private void restoreRetention() throws IOException {
+        for (Path path : RotatedLog.segments(logPath)) {
+            int index = RotatedLog.index(path);
+            nextIndex = Math.max(nextIndex, index + 1);
+            long markerBytes = readMarker(path);
+            if (markerBytes >= 0) {
+                lastMarker = new Segment(index, path, markerBytes);
+                removedBytes += markerBytes;
+                continue;
+            }
+            long size = uncompressedSize(path);
+            if (keptHead < headSegments && tail.isEmpty() && lastMarker == null) {
+                keptHead++;
+            } else {
+                tail.addLast(new Segment(index, path, size));
+            }
+            keptBytes += size;
+        }
+        for (Path path : RotatedLog.openSegments(logPath)) {
+            nextIndex = Math.max(nextIndex, RotatedLog.index(path) + 1);
+        }
+    }
+
+    /**
+     * @return number of removed bytes when the segment is a marker, -1 otherwise
+     */
+    private static long readMarker(Path segment) throws IOException {
+        if (Files.size(segment) > MAX_MARKER_SIZE) {
+            return -1;
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(segment))) {
+            byte[] buffer = new byte[(int) MAX_MARKER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+        } catch (EOFException | ZipException e) {
+            return -1;
+        }
+        Matcher matcher = MARKER.matcher(new String(content.toByteArray(), StandardCharsets.UTF_8));
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    /**
+     * @return the uncompressed size from the gzip trailer, it is stored modulo 2^32
+     */
+    private static long uncompressedSize(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            if (channel.size() < 4) {
+                return 0;
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(trailer, channel.size() - 4);
+            trailer.flip();
+            return trailer.getInt() & 0xFFFFFFFFL;
+        }
+    }
+
+    /**
+     * @return number of the output bytes removed by the retention so far, including the ones removed before a
+     *         restart. Exact after {@link #flush()}.
+     */
+    @Override
+    public long getRemovedBytes() {
+        return removedBytes;
+    }
+
+    @Override
+    public void write(byte[] bytes) throws IOException {
+        checkState();
+        put(bytes);
+    }
+
+    /**
+     * Waits until all the output written so far is compressed to the segments, the open segment is synced and not
+     * completed.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkState();
+        FlushRequest request = new FlushRequest(false);
+        put(request);
+        await(request.completion);
+    }
+
+    private void checkState() throws IOException {
+        if (closed) {
+            throw new IOException("Writer of " + logPath + " is closed.");
+        }
+        if (failure != null) {
+            throw new IOException("Compressing the log to " + logPath + " failed.", failure);
+        }
+    }
+
+    private void put(Object item) throws IOException {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing to " + logPath + ".", e);
+        }
+    }
+
+    private void await(CompletableFuture<Void> completion) throws IOException {
+        try {
+            completion.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing " + logPath + ".", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot flush " + logPath + ".", e.getCause());
+        }
+    }
+
+    private void compress() {
+        while (true) {
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (item instanceof byte[]) {
+                compress((byte[]) item);
+            } else {
+                FlushRequest request = (FlushRequest) item;
+                try {
+                    if (request.close) {
+                        completeSegment();
+                    } else if (current != null) {
+                        current.sync();
+                    }
+                    request.completion.complete(null);
+                } catch (IOException e) {
+                    failure = e;
+                    request.completion.completeExceptionally(e);
+                }
+                if (request.close) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void compress(byte[] bytes) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            if (current == null) {
+                current = new SegmentOutput(nextIndex++);
+            }
+            current.write(bytes);
+            if (current.uncompressedSize >= rotateSize) {
+                completeSegment();
+            }
+        } catch (IOException e) {
+            log.error("Cannot compress the log to " + logPath + ".", e);
+            failure = e;
+        }
+    }
+
+    private void completeSegment() throws IOException {
+        if (current == null) {
+            return;
+        }
+        Segment segment = current.finish();
+        current = null;
+        if (keptHead < headSegments) {
+            keptHead++;
+        } else {
+            tail.addLast(segment);
+        }
+        keptBytes += segment.uncompressedSize;
+        applyRetention();
+    }
+
+    /**
+     * Keeps max bytes, the markers are not counted.
+     */
+    private void applyRetention() throws IOException {
+        while (keptBytes > maxBytes && tail.size() > 1) {
+            Segment removed = tail.removeFirst();
+            Files.deleteIfExists(removed.path);
+            keptBytes -= removed.uncompressedSize;
+            this.removedBytes += removed.uncompressedSize;
+            long removedBytes = removed.uncompressedSize;
+            Path markerPath = removed.path;
+            if (lastMarker != null && lastMarker.index == removed.index - 1) {
+                // merge with the previous marker, the marker takes the place of the last removed segment
+                removedBytes += lastMarker.uncompressedSize;
+                Files.deleteIfExists(lastMarker.path);
+            }
+            lastMarker = writeMarker(removed.index, markerPath, removedBytes);
+            log.debug("Removed log segment {}, {} bytes removed in total at this position.", removed.path, removedBytes);
+        }
+    }
+
+    private Segment writeMarker(int index, Path path, long removedBytes) throws IOException {
+        String marker = "\n% # " + removedBytes + " bytes removed by log rotation\n";
+        // keep in sync with the MARKER pattern, the markers are recognized on the restart
+        try (OutputStream outputStream = new GZIPOutputStream(new FileOutputStream(path.toFile()))) {
+            outputStream.write(marker.getBytes(StandardCharsets.UTF_8));
+        }
+        return new Segment(index, path, removedBytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        FlushRequest request = new FlushRequest(true);
+        put(request);
+        await(request.completion);
+    }
+
+    private static class FlushRequest {
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private final boolean close;
+
+        FlushRequest(boolean close) {
+            this.close = close;
+        }
+    }
+
+    private class SegmentOutput {
+        private final int index;
+        private final Path partPath;
+        private final FileOutputStream fileOutputStream;
+        private final GZIPOutputStream outputStream;
+        private long uncompressedSize;
+
+        SegmentOutput(int index) throws IOException {
+            this.index = index;
+            this.partPath = RotatedLog.segmentPath(logPath, index).resolveSibling(
+                    RotatedLog.segmentPath(logPath, index).getFileName() + RotatedLog.PART_SUFFIX);
+            this.fileOutputStream = new FileOutputStream(partPath.toFile());
+            // the flush syncs the compressor, the segment is readable up to it
+            this.outputStream = new GZIPOutputStream(new BufferedOutputStream(fileOutputStream, 64 * 1024), 64 * 1024, true);
+        }
+
+        void write(byte[] bytes) throws IOException {
+            outputStream.write(bytes);
+            uncompressedSize += bytes.length;
+        }
+
+        void sync() throws IOException {
+            outputStream.flush();
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                fileOutputStream.getFD().sync();
+            }
+        }
+
+        Segment finish() throws IOException {
+            outputStream.finish();
+            outputStream.flush();
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                fileOutputStream.getFD().sync();
+            }
+            outputStream.close();
+            Path path = RotatedLog.segmentPath(logPath, index);
+            Files.move(partPath, path, StandardCopyOption.ATOMIC_MOVE);
+            return new Segment(index, path, uncompressedSize);
+        }
+    }
+
+    private static class Segment {
+        private final int index;
+        private final Path path;
+        private final long uncompressedSize;
+
+        Segment(int index, Path path, long uncompressedSize) {
+            this.index = index;
+            this.path = path;
+            this.uncompressedSize = uncompressedSize;
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Writes the records to a local {@link QueueSpool} first, a background shipper sends them to the delegate adapter.
+ *
+ * The flush only forces the spool to the disk, so a slow or unavailable broker does not fail the command completion.
+ * The shipper retries the delivery until it succeeds and the records left in the spool on shutdown are sent after the
+ * next start. A record can be delivered more than once after a failure, the consumer removes the duplicates using the
+ * {@link RecordPosition}.
+ *
+ * The {@link RecordLabels} of the delegate are taken when the record is spooled and kept with it, so the records
+ * sent after a restart keep their key and MDC headers.
+ */
+public class SpoolingQueueAdapter implements QueueAdapter {
+
+    private static final Logger log = LoggerFactory.getLogger(SpoolingQueueAdapter.class);
+
+    public static final long DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+    public static final long MAX_RETRY_DELAY_MILLIS = 30000;
+    public static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 10000;
+
+    private static final int SHIP_RECORDS = 512;
+
+    private static final byte LINE = 0;
+    private static final byte BATCH = 1;
+
+    private static final byte HAS_POSITION = 1;
+    private static final byte HAS_SESSION = 2;
+    private static final byte HAS_LABELS = 4;
+
+    private final QueueAdapter delegate;
+    private final QueueSpool spool;
+    private final long retryDelayMillis;
+
+    private final Thread shipper;
+    private volatile boolean running = true;
+
+    /**
+     * Notified when new records are spooled and when records are delivered.
+     */
+    private final Object progressLock = new Object();
+
+    private final AtomicLong delivered = new AtomicLong();
+
+    public SpoolingQueueAdapter(QueueAdapter delegate, Path directory) throws IOException {
+        this(delegate, directory, DEFAULT_SEGMENT_BYTES, DEFAULT_RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * @param directory where the spool is kept, the records found there are sent first
+     * @param segmentBytes size of the spool files
+     * @param retryDelayMillis delay before the first retry of a failed delivery, it doubles for the next retries
+     */
+    public SpoolingQueueAdapter(QueueAdapter delegate, Path directory, long segmentBytes, long retryDelayMillis)
+            throws IOException {
+        this.delegate = delegate;
+        this.spool = new QueueSpool(directory, segmentBytes);
+        this.retryDelayMillis = retryDelayMillis;
+        shipper = new Thread(this::ship, "queue-spool-shipper");
+        shipper.setDaemon(true);
+        shipper.start();
+    }
+
+    @Override
+    public boolean isBinary() {
+        return delegate.isBinary();
+    }
+
+    @Override
+    public boolean isMdcInline() {
+        return delegate.isMdcInline();
+    }
+
+    @Override
+    public void send(String message, Consumer<Exception> exceptionHandler) {
+        send(message, null, exceptionHandler);
+    }
+
+    @Override
+    public void send(byte[] message, Consumer<Exception> exceptionHandler) {
+        send(message, null, exceptionHandler);
+    }
+
+    @Override
+    public void send(String message, RecordPosition position, Consumer<Exception> exceptionHandler) {
+        send(message.getBytes(StandardCharsets.UTF_8), position, exceptionHandler);
+    }
+
+    @Override
+    public void send(byte[] message, RecordPosition position, Consumer<Exception> exceptionHandler) {
+        send(message, position, delegate.currentLabels(), exceptionHandler);
+    }
+
+    @Override
+    public void send(byte[] message, RecordPosition position, RecordLabels labels, Consumer<Exception> exceptionHandler) {
+        try {
+            append(encode(LINE, position, -1, labels, out -> out.write(message)));
+        } catch (IOException e) {
+            exceptionHandler.accept(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> sendBatch(List<String> messages, long firstSequence) {
+        return sendBatch(messages, firstSequence, null, delegate.currentLabels());
+    }
+
+    @Override
+    public CompletableFuture<Void> sendBatch(List<String> messages, RecordPosition position) {
+        return sendBatch(messages, position.getSequence(), position, delegate.currentLabels());
+    }
+
+    @Override
+    public RecordLabels currentLabels() {
+        return delegate.currentLabels();
+    }
+
+    /**
+     * @return completed when the batch is in the spool, it is not waiting for the delivery
+     */
+    @Override
+    public CompletableFuture<Void> sendBatch(
+            List<String> messages,
+            long firstSequence,
+            RecordPosition position,
+            RecordLabels labels) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            append(encode(BATCH, position, firstSequence, labels, out -> {
+                out.writeInt(messages.size());
+                for (String message : messages) {
+                    byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }));
+            result.complete(null);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private void append(byte[] record) throws IOException {
+        spool.append(record);
+        synchronized (progressLock) {
+            progressLock.notifyAll();
+        }
+    }
+
+    /**
+     * Forces the spooled records to the disk, the delivery continues in the background.
+     */
+    @Override
+    public void flush() {
+        try {
+            spool.sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot sync the queue spool.", e);
+        }
+    }
+
+    private void ship() {
+        long delay = retryDelayMillis;
+        while (running) {
+            try {
+                List<byte[]> records = spool.read(SHIP_RECORDS);
+                if (records.isEmpty()) {
+                    spool.commit();
+                    awaitRecords();
+                    continue;
+                }
+                Exception failure = deliver(records);
+                if (failure == null) {
+                    spool.commit();
+                    delivered.addAndGet(records.size());
+                    delay = retryDelayMillis;
+                    synchronized (progressLock) {
+                        progressLock.notifyAll();
+                    }
+                } else {
+                    spool.rewind();
+                    log.warn("Cannot deliver {} spooled records, retrying in {}ms.", records.size(), delay, failure);
+                    Thread.sleep(delay);
+                    delay = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException | RuntimeException e) {
+                log.error("Cannot read the queue spool.", e);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+        log.debug("Queue spool shipper stopped, {} records delivered.", delivered.get());
+    }
+
+    private void awaitRecords() throws InterruptedException {
+        synchronized (progressLock) {
+            if (running && !spool.hasPending()) {
+                progressLock.wait(100);
+            }
+        }
+    }
+
+    /**
+     * Sends the records and waits until the delegate acknowledges them.
+     *
+     * @return the first failure, null when all the records are delivered
+     */
+    private Exception deliver(List<byte[]> records) {
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Consumer<Exception> exceptionHandler = e -> failure.compareAndSet(null, e);
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        try {
+            for (byte[] record : records) {
+                try {
+                    dispatch(record, exceptionHandler, batches);
+                } catch (IOException e) {
+                    // retrying does not help, the record is lost
+                    log.error("Skipping undecodable spooled record.", e);
+                }
+            }
+            delegate.flush();
+            for (CompletableFuture<Void> batch : batches) {
+                batch.join();
+            }
+        } catch (CompletionException e) {
+            failure.compareAndSet(null, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+        return failure.get();
+    }
+
+    private void dispatch(byte[] record, Consumer<Exception> exceptionHandler, List<CompletableFuture<Void>> batches)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        byte flags = in.readByte();
+        RecordPosition position = null;
+        long firstSequence = -1;
+        if ((flags & HAS_POSITION) != 0) {
+            String sessionId = (flags & HAS_SESSION) != 0 ? in.readUTF() : null;
+            position = new RecordPosition(sessionId, in.readLong(), in.readLong());
+        } else if (type == BATCH) {
+            firstSequence = in.readLong();
+        }
+        RecordLabels labels = (flags & HAS_LABELS) != 0 ? readLabels(in) : null;
+        switch (type) {
+            case LINE:
+                byte[] message = new byte[in.available()];
+                in.readFully(message);
+                if (labels != null) {
+                    delegate.send(message, position, labels, exceptionHandler);
+                } else if (position == null) {
+                    delegate.send(message, exceptionHandler);
+                } else {
+                    delegate.send(message, position, exceptionHandler);
+                }
+                break;
+            case BATCH:
+                int count = in.readInt();
+                List<String> messages = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    messages.add(new String(bytes, StandardCharsets.UTF_8));
+                }
+                if (labels != null) {
+                    batches.add(delegate.sendBatch(messages, firstSequence, position, labels));
+                } else {
+                    batches.add(position == null
+                            ? delegate.sendBatch(messages, firstSequence)
+                            : delegate.sendBatch(messages, position));
+                }
+                break;
+            default:
+                throw new IOException("Unknown spooled record type " + type + ".");
+        }
+    }
+
+    /**
+     * The record is the type, the flags, the position (or the first sequence of a batch without it), the labels and
+     * the payload. The records spooled without the labels are sent with the current ones.
+     */
+    private static byte[] encode(
+            byte type,
+            RecordPosition position,
+            long firstSequence,
+            RecordLabels labels,
+            PayloadWriter payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        int flags = labels == null ? 0 : HAS_LABELS;
+        if (position == null) {
+            out.writeByte(flags);
+            if (type == BATCH) {
+                out.writeLong(firstSequence);
+            }
+        } else if (position.getSessionId() == null) {
+            out.writeByte(flags | HAS_POSITION);
+            out.writeLong(position.getSequence());
+            out.writeLong(position.getChunk());
+        } else {
+            out.writeByte(flags | HAS_POSITION | HAS_SESSION);
+            out.writeUTF(position.getSessionId());
+            out.writeLong(position.getSequence());
+            out.writeLong(position.getChunk());
+        }
+        if (labels != null) {
+            writeLabels(out, labels);
+        }
+        payload.write(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeLabels(DataOutputStream out, RecordLabels labels) throws IOException {
+        out.writeUTF(labels.getKey());
+        Map<String, String> mdcHeaders = labels.getMdcHeaders();
+        out.writeInt(mdcHeaders.size());
+        for (Map.Entry<String, String> entry : mdcHeaders.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue() == null ? "" : entry.getValue());
+        }
+    }
+
+    private static RecordLabels readLabels(DataInputStream in) throws IOException {
+        String key = in.readUTF();
+        int count = in.readInt();
+        Map<String, String> mdcHeaders = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            mdcHeaders.put(in.readUTF(), in.readUTF());
+        }
+        return new RecordLabels(key, mdcHeaders);
+    }
+
+    /**
+     * @return number of the records delivered since the start
+     */
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * Waits until all the spooled records are delivered.
+     *
+     * @return false if some records are still in the spool after the timeout
+     */
+    public boolean awaitDelivered(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (progressLock) {
+            while (spool.hasPending()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                progressLock.wait(Math.min(remaining, 100));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits up to the duration for the delivery of the spooled records, the rest is sent after the next start.
+     */
+    @Override
+    public void close(Duration duration) {
+        try {
+            if (!awaitDelivered(duration.toMillis())) {
+                log.warn("Closing the queue spool with undelivered records, they are sent after the next start.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+        shipper.interrupt();
+        try {
+            shipper.join(duration.toMillis());
+            spool.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("Cannot close the queue spool.", e);
+        }
+        delegate.close(duration);
+    }
+
+    @Override
+    public void close() {
+        close(Duration.ofMillis(DEFAULT_CLOSE_TIMEOUT_MILLIS));
+    }
+
+    @FunctionalInterface
+    private interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,202 @@
+package org.jboss.pnc.buildagent.server.httpinvoker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission of the http invoked commands. At most max running commands are started, the others wait in a bounded
+ * FIFO queue. With the load aware admission a command is started only when the node is not overloaded, the queue is
+ * rechecked periodically. A command is always started when nothing is running, so the queue can't get stuck.
+ */
+public class CommandScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandScheduler.class);
+
+    public static final long RECHECK_INTERVAL_MILLIS = 1000;
+
+    private final int maxRunning;
+    private final int maxQueued;
+    private final SystemLoad systemLoad;
+
+    /**
+     * Guarded by this.
+     */
+    private final Deque<QueuedCommand> queue = new ArrayDeque<>();
+    private final Set<String> running = new HashSet<>();
+
+    private final ScheduledFuture<?> recheck;
+
+    public CommandScheduler(SessionOptions options, ScheduledExecutorService executor) {
+        this(
+                options.getMaxRunningCommands(),
+                options.getMaxQueuedCommands(),
+                new SystemLoad(options.getMaxLoadPerCpu(), options.getMinAvailableMemoryBytes()),
+                executor);
+    }
+
+    /**
+     * @param maxRunning max number of the running commands, 0 means no limit
+     * @param maxQueued max number of the waiting commands, the requests over the limit are rejected
+     * @param executor used to recheck the queue when the load aware admission is enabled
+     */
+    public CommandScheduler(int maxRunning, int maxQueued, SystemLoad systemLoad, ScheduledExecutorService executor) {
+        this.maxRunning = maxRunning;
+        this.maxQueued = maxQueued;
+        this.systemLoad = systemLoad;
+        if (systemLoad.isEnabled() && executor != null) {
+            recheck = executor.scheduleWithFixedDelay(
+                    this::startAdmitted,
+                    RECHECK_INTERVAL_MILLIS,
+                    RECHECK_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            recheck = null;
+        }
+    }
+
+    /**
+     * Starts the command or puts it to the queue.
+     *
+     * @param start starts the process, called once the command is admitted
+     * @param cancel completes the session without starting it, called when a queued command is cancelled
+     * @return false when the queue is full and the command is rejected
+     */
+    public boolean submit(CommandSession session, Runnable start, Runnable cancel) {
+        QueuedCommand command = new QueuedCommand(session, start, cancel);
+        synchronized (this) {
+            if (queue.isEmpty() && admits()) {
+                markRunning(command);
+            } else if (queue.size() < maxQueued) {
+                session.setState(SessionState.QUEUED);
+                queue.addLast(command);
+                logger.info("Session {} is queued, {} commands are waiting.", session.getSessionId(), queue.size());
+                return true;
+            } else {
+                logger.warn("Rejecting session {}, {} commands are waiting.", session.getSessionId(), queue.size());
+                return false;
+            }
+        }
+        start(command);
+        return true;
+    }
+
+    /**
+     * Frees the slot of the completed command and starts the next admitted ones.
+     */
+    public void release(String sessionId) {
+        boolean released;
+        synchronized (this) {
+            released = running.remove(sessionId);
+        }
+        if (released) {
+            startAdmitted();
+        }
+    }
+
+    /**
+     * Removes the command from the queue and completes its session.
+     *
+     * @return false when the command is not queued (eg. it has been started in the meantime)
+     */
+    public boolean cancel(String sessionId) {
+        QueuedCommand cancelled = null;
+        synchronized (this) {
+            Iterator<QueuedCommand> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                QueuedCommand command = iterator.next();
+                if (command.session.getSessionId().equals(sessionId)) {
+                    iterator.remove();
+                    cancelled = command;
+                    break;
+                }
+            }
+        }
+        if (cancelled == null) {
+            return false;
+        }
+        logger.info("Cancelling queued session {}.", sessionId);
+        cancelled.cancel.run();
+        return true;
+    }
+
+    public synchronized int getRunning() {
+        return running.size();
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    public void stop() {
+        if (recheck != null) {
+            recheck.cancel(false);
+        }
+    }
+
+    private void startAdmitted() {
+        List<QueuedCommand> admitted = new ArrayList<>();
+        synchronized (this) {
+            while (!queue.isEmpty() && admits()) {
+                QueuedCommand command = queue.pollFirst();
+                markRunning(command);
+                admitted.add(command);
+            }
+        }
+        for (QueuedCommand command : admitted) {
+            start(command);
+        }
+    }
+
+    /**
+     * Must hold the lock.
+     */
+    private boolean admits() {
+        if (running.isEmpty()) {
+            return true;
+        }
+        if (maxRunning > 0 && running.size() >= maxRunning) {
+            return false;
+        }
+        return systemLoad.admits();
+    }
+
+    private void markRunning(QueuedCommand command) {
+        running.add(command.session.getSessionId());
+        command.session.setState(SessionState.RUNNING);
+    }
+
+    private void start(QueuedCommand command) {
+        String sessionId = command.session.getSessionId();
+        logger.debug("Starting session {}.", sessionId);
+        try {
+            command.start.run();
+        } catch (RuntimeException e) {
+            logger.error("Cannot start session " + sessionId + ".", e);
+            release(sessionId);
+            command.cancel.run();
+        }
+    }
+
+    private static class QueuedCommand {
+        private final CommandSession session;
+        private final Runnable start;
+        private final Runnable cancel;
+
+        QueuedCommand(CommandSession session, Runnable start, Runnable cancel) {
+            this.session = session;
+            this.start = start;
+            this.cancel = cancel;
+        }
+    }
+}
@@ -1,14 +1,24 @@
 package org.jboss.pnc.buildagent.server.httpinvoker;
 
 import io.termd.core.pty.PtyMaster;
+import org.jboss.pnc.buildagent.api.Status;
+import org.jboss.pnc.buildagent.common.Utf8Encoder;
+import org.jboss.pnc.buildagent.common.security.MerkleTree;
 import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.jboss.pnc.buildagent.server.output.FlushCoordinator;
+import org.jboss.pnc.buildagent.server.output.OutputOptions;
+import org.jboss.pnc.buildagent.server.output.ScrollbackBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.stream.Collectors;
 
 /**
  * @author <a href="mailto:matejonnet@gmail.com">Matej Lazar</a>
@@ -19,12 +29,57 @@ public class CommandSession {
 
     private final String sessionId;
     private final Set<ReadOnlyChannel> readOnlyChannels;
+    private final long flushTimeoutMillis;
+    private final ScrollbackBuffer scrollback;
+
+    /**
+     * Held while the output is written to the scrollback and the channels, and while a channel is attached, so the
+     * attached channel gets the output without a gap. The scrollback has its own lock for the readers.
+     */
+    private final Object outputLock = new Object();
+
+    /**
+     * Channels attached to the running session, they are closed when the session completes.
+     */
+    private final List<ReadOnlyChannel> attachedChannels = new ArrayList<>();
+    private boolean outputEnded;
+
     private PtyMaster ptyMaster;
+    private final Utf8Encoder stdoutEncoder = new Utf8Encoder();
+    private volatile MerkleTree outputTree;
+    private final long createdMillis = System.currentTimeMillis();
+    private volatile SessionState state = SessionState.QUEUED;
+    private volatile Status status;
+    private volatile String outputChecksum;
 
 
     public CommandSession(Set<ReadOnlyChannel> readOnlyChannels) {
-        this.sessionId = UUID.randomUUID().toString();
-        this.readOnlyChannels = readOnlyChannels;
+        this(UUID.randomUUID().toString(), readOnlyChannels);
+    }
+
+    public CommandSession(String sessionId, Set<ReadOnlyChannel> readOnlyChannels) {
+        this(sessionId, readOnlyChannels, OutputOptions.DEFAULT_DRAIN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param flushTimeoutMillis how long the close waits for all the primary channels to flush
+     */
+    public CommandSession(String sessionId, Set<ReadOnlyChannel> readOnlyChannels, long flushTimeoutMillis) {
+        this(sessionId, readOnlyChannels, flushTimeoutMillis, OutputOptions.DEFAULT_SCROLLBACK_SIZE);
+    }
+
+    /**
+     * @param scrollbackSize bytes of the output kept for the channels attached while the command is running
+     */
+    public CommandSession(
+            String sessionId,
+            Set<ReadOnlyChannel> readOnlyChannels,
+            long flushTimeoutMillis,
+            int scrollbackSize) {
+        this.sessionId = sessionId;
+        this.readOnlyChannels = new CopyOnWriteArraySet<>(readOnlyChannels);
+        this.flushTimeoutMillis = flushTimeoutMillis;
+        this.scrollback = new ScrollbackBuffer(scrollbackSize);
     }
 
     public String getSessionId() {
@@ -39,18 +94,121 @@ public class CommandSession {
         return ptyMaster;
     }
 
+    /**
+     * Encoder is stateful (it keeps split surrogate pairs), each session has its own.
+     */
+    public Utf8Encoder getStdoutEncoder() {
+        return stdoutEncoder;
+    }
+
+    /**
+     * @return Merkle tree of the output, null until the session completes or when it is not computed
+     */
+    public MerkleTree getOutputTree() {
+        return outputTree;
+    }
+
+    public void setOutputTree(MerkleTree outputTree) {
+        this.outputTree = outputTree;
+    }
+
+    public SessionState getState() {
+        return state;
+    }
+
+    public void setState(SessionState state) {
+        LOGGER.debug("Session {} is {}.", sessionId, state);
+        this.state = state;
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    /**
+     * @return the reported completion status, null until the completion is reported
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getOutputChecksum() {
+        return outputChecksum;
+    }
+
+    /**
+     * Records what was reported in the completion event, it is kept in the session summary.
+     */
+    public void setCompletion(Status status, String outputChecksum) {
+        this.status = status;
+        this.outputChecksum = outputChecksum;
+    }
+
+    /**
+     * Flushes the primary channels in parallel.
+     */
     public void close() throws IOException {
-        for (ReadOnlyChannel readOnlyChannel : readOnlyChannels) {
-            if (readOnlyChannel.isPrimary()) {
-                readOnlyChannel.flush();
+        List<ReadOnlyChannel> primaryChannels = readOnlyChannels.stream()
+                .filter(ReadOnlyChannel::isPrimary)
+                .collect(Collectors.toList());
+        FlushCoordinator.shared().flushAll(primaryChannels, flushTimeoutMillis);
+    }
+
+    public void handleOutput(byte[] buffer) {
+        synchronized (outputLock) {
+            scrollback.append(buffer);
+            for (ReadOnlyChannel readOnlyChannel : readOnlyChannels) {
+                LOGGER.trace("Writing to chanel {}; stdout: {}", readOnlyChannel, new String(buffer, StandardCharsets.UTF_8));
+                readOnlyChannel.writeOutput(buffer);
             }
         }
     }
 
-    public void handleOutput(byte[] buffer) {
-        for (ReadOnlyChannel readOnlyChannel : readOnlyChannels) {
-            LOGGER.trace("Writing to chanel {}; stdout: {}", readOnlyChannel, new String(buffer, StandardCharsets.UTF_8));
-            readOnlyChannel.writeOutput(buffer);
+    /**
+     * Adds the channel to a running session, it gets the kept tail of the output first, then the live output. The
+     * channel is closed by {@link #closeAttached()} when the session completes.
+     *
+     * @return false when the output already ended, the channel is not attached
+     */
+    public boolean attach(ReadOnlyChannel readOnlyChannel) {
+        synchronized (outputLock) {
+            if (outputEnded) {
+                return false;
+            }
+            byte[] tail = scrollback.tail();
+            if (tail.length > 0) {
+                readOnlyChannel.writeOutput(tail);
+            }
+            readOnlyChannels.add(readOnlyChannel);
+            attachedChannels.add(readOnlyChannel);
+            return true;
+        }
+    }
+
+    public void detach(ReadOnlyChannel readOnlyChannel) {
+        synchronized (outputLock) {
+            readOnlyChannels.remove(readOnlyChannel);
+            attachedChannels.remove(readOnlyChannel);
+        }
+    }
+
+    /**
+     * Ends the output of the attached channels, called after the last output of the session.
+     */
+    public void closeAttached() {
+        List<ReadOnlyChannel> channels;
+        synchronized (outputLock) {
+            outputEnded = true;
+            channels = new ArrayList<>(attachedChannels);
+            attachedChannels.clear();
+            readOnlyChannels.removeAll(channels);
+        }
+        for (ReadOnlyChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Cannot close attached channel " + channel + ".", e);
+            }
         }
     }
 }
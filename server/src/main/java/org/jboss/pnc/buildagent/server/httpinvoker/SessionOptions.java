@@ -0,0 +1,78 @@
+package org.jboss.pnc.buildagent.server.httpinvoker;
+
+/**
+ * Admission of the http invoked commands and how long the summaries of the finished sessions are kept.
+ */
+public class SessionOptions {
+
+    public static final long DEFAULT_FINISHED_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+    public static final int DEFAULT_MAX_FINISHED_SESSIONS = 1000;
+    public static final int DEFAULT_MAX_RUNNING_COMMANDS = 0;
+    public static final int DEFAULT_MAX_QUEUED_COMMANDS = 100;
+
+    private final long finishedTtlMillis;
+    private final int maxFinishedSessions;
+    private final int maxRunningCommands;
+    private final int maxQueuedCommands;
+    private final double maxLoadPerCpu;
+    private final long minAvailableMemoryBytes;
+
+    /**
+     * @param finishedTtlMillis the summary of a finished session is removed after this time
+     * @param maxFinishedSessions max number of kept summaries, the oldest are removed
+     */
+    public SessionOptions(long finishedTtlMillis, int maxFinishedSessions) {
+        this(finishedTtlMillis, maxFinishedSessions, DEFAULT_MAX_RUNNING_COMMANDS, DEFAULT_MAX_QUEUED_COMMANDS, 0, 0);
+    }
+
+    /**
+     * @param maxRunningCommands max number of concurrently running commands, 0 means no limit
+     * @param maxQueuedCommands max number of commands waiting to be started, the requests over the limit are
+     *         rejected
+     * @param maxLoadPerCpu no command is started while the 1 minute load average per cpu is above, 0 disables the
+     *         check
+     * @param minAvailableMemoryBytes no command is started while the available memory is below, 0 disables the check
+     */
+    public SessionOptions(
+            long finishedTtlMillis,
+            int maxFinishedSessions,
+            int maxRunningCommands,
+            int maxQueuedCommands,
+            double maxLoadPerCpu,
+            long minAvailableMemoryBytes) {
+        this.finishedTtlMillis = finishedTtlMillis;
+        this.maxFinishedSessions = maxFinishedSessions;
+        this.maxRunningCommands = maxRunningCommands;
+        this.maxQueuedCommands = maxQueuedCommands;
+        this.maxLoadPerCpu = maxLoadPerCpu;
+        this.minAvailableMemoryBytes = minAvailableMemoryBytes;
+    }
+
+    public static SessionOptions defaults() {
+        return new SessionOptions(DEFAULT_FINISHED_TTL_MILLIS, DEFAULT_MAX_FINISHED_SESSIONS);
+    }
+
+    public long getFinishedTtlMillis() {
+        return finishedTtlMillis;
+    }
+
+    public int getMaxFinishedSessions() {
+        return maxFinishedSessions;
+    }
+
+    public int getMaxRunningCommands() {
+        return maxRunningCommands;
+    }
+
+    public int getMaxQueuedCommands() {
+        return maxQueuedCommands;
+    }
+
+    public double getMaxLoadPerCpu() {
+        return maxLoadPerCpu;
+    }
+
+    public long getMinAvailableMemoryBytes() {
+        return minAvailableMemoryBytes;
+    }
+}
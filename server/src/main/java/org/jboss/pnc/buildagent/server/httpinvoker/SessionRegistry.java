@@ -1,21 +1,142 @@
 package org.jboss.pnc.buildagent.server.httpinvoker;
 
-import io.undertow.util.CopyOnWriteMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
 
 /**
+ * Sessions of the http invoker. The queued, running and completing sessions are kept whole, a done session is
+ * replaced by its {@link SessionSummary}, so the process and the output channels are released. The summaries are
+ * removed after the TTL or when there are more than the max count, the oldest first.
+ *
  * @author <a href="mailto:matejonnet@gmail.com">Matej Lazar</a>
  */
 public class SessionRegistry {
-    private Map<String, CommandSession> sessions = new CopyOnWriteMap<>();
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionRegistry.class);
+
+    private final Map<String, CommandSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Summaries in the completion order, guarded by itself.
+     */
+    private final LinkedHashMap<String, SessionSummary> finished = new LinkedHashMap<>();
+
+    private final long finishedTtlMillis;
+    private final int maxFinishedSessions;
+    private final LongSupplier clock;
+
+    public SessionRegistry() {
+        this(SessionOptions.defaults());
+    }
+
+    public SessionRegistry(SessionOptions options) {
+        this(options, System::currentTimeMillis);
+    }
+
+    SessionRegistry(SessionOptions options, LongSupplier clock) {
+        this.finishedTtlMillis = options.getFinishedTtlMillis();
+        this.maxFinishedSessions = options.getMaxFinishedSessions();
+        this.clock = clock;
+    }
 
     public void put(CommandSession commandSession) {
         sessions.put(commandSession.getSessionId(), commandSession);
     }
 
+    /**
+     * @return the session until it is done
+     */
     public Optional<CommandSession> get(String sessionId) {
         return Optional.ofNullable(sessions.get(sessionId));
     }
+
+    /**
+     * Forgets the session that was never started, eg. rejected by the admission.
+     */
+    public void remove(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    /**
+     * Replaces the session with its summary.
+     */
+    public void done(CommandSession commandSession) {
+        commandSession.setState(SessionState.DONE);
+        long now = clock.getAsLong();
+        SessionSummary summary = SessionSummary.of(commandSession, now);
+        synchronized (finished) {
+            finished.put(summary.getSessionId(), summary);
+            sessions.remove(commandSession.getSessionId());
+            evict(now);
+        }
+    }
+
+    /**
+     * @return summary of the session in any state, empty when the session is unknown or evicted
+     */
+    public Optional<SessionSummary> getSummary(String sessionId) {
+        CommandSession session = sessions.get(sessionId);
+        if (session != null) {
+            return Optional.of(SessionSummary.of(session, 0));
+        }
+        synchronized (finished) {
+            evict(clock.getAsLong());
+            return Optional.ofNullable(finished.get(sessionId));
+        }
+    }
+
+    /**
+     * @return summaries of the sessions not done yet and of the kept done sessions
+     */
+    public List<SessionSummary> getSummaries() {
+        List<SessionSummary> summaries = new ArrayList<>();
+        for (CommandSession session : sessions.values()) {
+            summaries.add(SessionSummary.of(session, 0));
+        }
+        synchronized (finished) {
+            evict(clock.getAsLong());
+            summaries.addAll(finished.values());
+        }
+        return summaries;
+    }
+
+    /**
+     * @return number of the sessions in the given state, the done sessions are counted while their summary is kept
+     */
+    public int count(SessionState state) {
+        if (state == SessionState.DONE) {
+            synchronized (finished) {
+                return finished.size();
+            }
+        }
+        int count = 0;
+        for (CommandSession session : sessions.values()) {
+            if (session.getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void evict(long now) {
+        Iterator<SessionSummary> iterator = finished.values().iterator();
+        while (iterator.hasNext()) {
+            SessionSummary eldest = iterator.next();
+            boolean expired = now - eldest.getCompletedMillis() > finishedTtlMillis;
+            if (!expired && finished.size() <= maxFinishedSessions) {
+                break;
+            }
+            logger.debug("Removing summary of session {}.", eldest.getSessionId());
+            iterator.remove();
+        }
+    }
 }
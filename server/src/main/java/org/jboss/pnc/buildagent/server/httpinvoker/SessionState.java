@@ -0,0 +1,31 @@
+package org.jboss.pnc.buildagent.server.httpinvoker;
+
+/**
+ * Lifecycle of a http invoked command session.
+ */
+public enum SessionState {
+
+    /**
+     * Accepted, the process is not started yet.
+     */
+    QUEUED,
+
+    /**
+     * The process is running.
+     */
+    RUNNING,
+
+    /**
+     * The process has finished, the output is being flushed and the completion is being reported.
+     */
+    COMPLETING,
+
+    /**
+     * Completed, only the summary of the session is kept.
+     */
+    DONE;
+
+    public boolean isFinished() {
+        return this == COMPLETING || this == DONE;
+    }
+}
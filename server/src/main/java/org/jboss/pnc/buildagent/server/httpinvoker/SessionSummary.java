@@ -0,0 +1,83 @@
+package org.jboss.pnc.buildagent.server.httpinvoker;
+
+import org.jboss.pnc.buildagent.api.Status;
+import org.jboss.pnc.buildagent.common.security.MerkleTree;
+
+/**
+ * What is kept of a session after it completes, the process and the output channels are released.
+ */
+public class SessionSummary {
+
+    private final String sessionId;
+    private final SessionState state;
+    private final Status status;
+    private final String outputChecksum;
+    private final MerkleTree outputTree;
+    private final long createdMillis;
+    private final long completedMillis;
+
+    SessionSummary(
+            String sessionId,
+            SessionState state,
+            Status status,
+            String outputChecksum,
+            MerkleTree outputTree,
+            long createdMillis,
+            long completedMillis) {
+        this.sessionId = sessionId;
+        this.state = state;
+        this.status = status;
+        this.outputChecksum = outputChecksum;
+        this.outputTree = outputTree;
+        this.createdMillis = createdMillis;
+        this.completedMillis = completedMillis;
+    }
+
+    static SessionSummary of(CommandSession session, long completedMillis) {
+        return new SessionSummary(
+                session.getSessionId(),
+                session.getState(),
+                session.getStatus(),
+                session.getOutputChecksum(),
+                session.getOutputTree(),
+                session.getCreatedMillis(),
+                completedMillis);
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public SessionState getState() {
+        return state;
+    }
+
+    /**
+     * @return the reported completion status, null until the session is done
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getOutputChecksum() {
+        return outputChecksum;
+    }
+
+    /**
+     * @return Merkle tree of the output, null when it is not computed
+     */
+    public MerkleTree getOutputTree() {
+        return outputTree;
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    /**
+     * @return 0 until the session is done
+     */
+    public long getCompletedMillis() {
+        return completedMillis;
+    }
+}
@@ -0,0 +1,104 @@
+package org.jboss.pnc.buildagent.server.httpinvoker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Load aware admission of the commands, reads the 1 minute load average and the available memory of the node from
+ * /proc. When the files can't be read (eg. not on Linux) the commands are admitted.
+ */
+public class SystemLoad {
+
+    private static final Logger logger = LoggerFactory.getLogger(SystemLoad.class);
+
+    private final double maxLoadPerCpu;
+    private final long minAvailableMemoryBytes;
+    private final Path loadAvg;
+    private final Path memInfo;
+    private final int cpus;
+
+    /**
+     * @param maxLoadPerCpu 1 minute load average divided by the number of cpus above which no command is started, 0
+     *         disables the check
+     * @param minAvailableMemoryBytes available memory below which no command is started, 0 disables the check
+     */
+    public SystemLoad(double maxLoadPerCpu, long minAvailableMemoryBytes) {
+        this(
+                maxLoadPerCpu,
+                minAvailableMemoryBytes,
+                Paths.get("/proc/loadavg"),
+                Paths.get("/proc/meminfo"),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    SystemLoad(double maxLoadPerCpu, long minAvailableMemoryBytes, Path loadAvg, Path memInfo, int cpus) {
+        this.maxLoadPerCpu = maxLoadPerCpu;
+        this.minAvailableMemoryBytes = minAvailableMemoryBytes;
+        this.loadAvg = loadAvg;
+        this.memInfo = memInfo;
+        this.cpus = cpus;
+    }
+
+    public boolean isEnabled() {
+        return maxLoadPerCpu > 0 || minAvailableMemoryBytes > 0;
+    }
+
+    /**
+     * @return false when the node is too busy to start another command
+     */
+    public boolean admits() {
+        if (maxLoadPerCpu > 0) {
+            double loadPerCpu = loadPerCpu();
+            if (loadPerCpu > maxLoadPerCpu) {
+                logger.debug("Load per cpu {} is above {}.", loadPerCpu, maxLoadPerCpu);
+                return false;
+            }
+        }
+        if (minAvailableMemoryBytes > 0) {
+            long available = availableMemoryBytes();
+            if (available >= 0 && available < minAvailableMemoryBytes) {
+                logger.debug("Available memory {} is below {}.", available, minAvailableMemoryBytes);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 1 minute load average per cpu, 0 when unknown
+     */
+    double loadPerCpu() {
+        try {
+            String line = new String(Files.readAllBytes(loadAvg), StandardCharsets.US_ASCII).trim();
+            return Double.parseDouble(line.split("\\s+")[0]) / cpus;
+        } catch (IOException | RuntimeException e) {
+            logger.trace("Cannot read load average.", e);
+            return 0;
+        }
+    }
+
+    /**
+     * @return MemAvailable in bytes, -1 when unknown
+     */
+    long availableMemoryBytes() {
+        try {
+            List<String> lines = Files.readAllLines(memInfo, StandardCharsets.US_ASCII);
+            for (String line : lines) {
+                if (line.startsWith("MemAvailable:")) {
+                    String kiloBytes = line.substring("MemAvailable:".length()).trim().split("\\s+")[0];
+                    return Long.parseLong(kiloBytes) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.trace("Cannot read available memory.", e);
+        }
+        return -1;
+    }
+}
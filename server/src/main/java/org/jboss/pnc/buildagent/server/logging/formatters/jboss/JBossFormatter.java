@@ -7,6 +7,7 @@ import org.jboss.pnc.buildagent.api.logging.LogFormatter;
 
 import java.io.IOException;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -18,8 +19,16 @@ import java.util.logging.Logger;
  */
 public class JBossFormatter implements LogFormatter {
 
+    static final String LOGGER_NAME = "org.jboss.pnc._userlog_.build-log";
+
     Formatter formatter;
 
+    /**
+     * Sequence of the formatted lines. It is not the global {@link LogRecord} sequence, so the numbers of a log are
+     * consecutive.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
     public JBossFormatter() throws InstantiationException {
         LogManager logManager;
         try {
@@ -60,9 +69,22 @@ public class JBossFormatter implements LogFormatter {
 
     @Override
     public String format(String message) {
+        return format(message, System.currentTimeMillis(), sequence.getAndIncrement());
+    }
+
+    String format(String message, long millis, long sequenceNumber) {
+        return formatter.format(createRecord(message, millis, sequenceNumber));
+    }
+
+    static LogRecord createRecord(String message, long millis, long sequenceNumber) {
         LogRecord record = new LogRecord(Level.INFO, message);
-        record.setLoggerName("org.jboss.pnc._userlog_.build-log");
-        record.setMillis(System.currentTimeMillis());
-        return formatter.format(record);
+        record.setLoggerName(LOGGER_NAME);
+        record.setMillis(millis);
+        record.setSequenceNumber(sequenceNumber);
+        return record;
+    }
+
+    Formatter getFormatter() {
+        return formatter;
     }
 }
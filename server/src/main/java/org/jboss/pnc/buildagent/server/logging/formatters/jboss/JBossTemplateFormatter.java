@@ -0,0 +1,567 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.logging.formatters.jboss;
+
+import org.jboss.logmanager.MDC;
+import org.jboss.logmanager.ext.formatters.StructuredFormatter;
+import org.jboss.pnc.buildagent.api.logging.LogFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+import java.util.logging.Formatter;
+
+/**
+ * Produces the same output as {@link JBossFormatter} without running the configured formatter for each line.
+ *
+ * The formatter output is split into constant segments and the slots for the message and the sequence number, by
+ * formatting a probe record with sentinel values. Everything else (logger name, MDC, host name) is in the constant
+ * segments, which are compiled once. The timestamp of the structured formatters is formatted by the same date format once
+ * per millisecond and spliced in, for the other formatters the constant segments are re-created by a new probe when the
+ * clock moves to the next millisecond. The message escaping is learned from the formatter too, per ASCII character.
+ *
+ * The template is verified against the formatter on creation. When it does not match, or the line contains characters
+ * the template cannot escape, the line is formatted by the configured formatter. The MDC is expected to be static (the
+ * one from --logMDC), it is read by the probes and the template is compiled again when it changes.
+ */
+public class JBossTemplateFormatter implements LogFormatter {
+
+    private static final Logger log = LoggerFactory.getLogger(JBossTemplateFormatter.class);
+
+    private static final String MESSAGE_START = "bA9mSgZq7Xw";
+    private static final String MESSAGE_END = "kP4eNdJv2Ry";
+    private static final long SEQUENCE_SENTINEL = 8316429075512604193L;
+    /**
+     * Moves every field of the timestamp, 400 days, 3 hours, 1 minute, 1 second and 1 millisecond.
+     */
+    private static final long TIMESTAMP_PROBE_OFFSET = 34_570_861_001L;
+
+    private static final int MESSAGE_SLOT = 0;
+    private static final int SEQUENCE_SLOT = 1;
+
+    private final JBossFormatter delegate;
+    private final Formatter formatter;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * The escaped ASCII characters, a null entry means the character is formatted by the configured formatter.
+     */
+    private final String[] asciiEscapes;
+    private final byte[][] asciiEscapeBytes;
+    /**
+     * Max bytes written for a message character.
+     */
+    private final int maxEscapeLength;
+    private final boolean nonAsciiAsIs;
+    private final boolean usable;
+
+    private final ThreadLocal<Template> templates = ThreadLocal.withInitial(Template::new);
+
+    public JBossTemplateFormatter() throws InstantiationException {
+        this(new JBossFormatter());
+    }
+
+    public JBossTemplateFormatter(Properties config) throws InstantiationException {
+        this(new JBossFormatter(config));
+    }
+
+    JBossTemplateFormatter(JBossFormatter delegate) {
+        this.delegate = delegate;
+        this.formatter = delegate.getFormatter();
+        this.asciiEscapes = learnAsciiEscapes();
+        this.asciiEscapeBytes = new byte[asciiEscapes.length][];
+        int maxLength = 3; // non-ASCII character of the basic plane in UTF-8
+        for (int c = 0; c < asciiEscapes.length; c++) {
+            if (asciiEscapes[c] != null) {
+                asciiEscapeBytes[c] = asciiEscapes[c].getBytes(UTF_8);
+                maxLength = Math.max(maxLength, asciiEscapeBytes[c].length);
+            }
+        }
+        this.maxEscapeLength = maxLength;
+        String nonAscii = "\u00e9\u20ac\u4e2d";
+        this.nonAsciiAsIs = nonAscii.equals(escapedByFormatter(nonAscii));
+        this.usable = verify();
+        if (!usable) {
+            log.warn("Cannot create the output template of {}, formatting each line.", formatter.getClass().getName());
+        }
+    }
+
+    private String[] learnAsciiEscapes() {
+        String[] escapes = new String[128];
+        for (char c = 0; c < escapes.length; c++) {
+            escapes[c] = escapedByFormatter(String.valueOf(c));
+        }
+        // the message may be further processed (eg. as a MessageFormat pattern), the characters which are not escaped
+        // one by one are left to the formatter
+        String[][] contextProbes = { { "{", "it's {0} and {" }, { "%", "100% %s %n" } };
+        for (String[] probe : contextProbes) {
+            StringBuilder expected = new StringBuilder();
+            boolean escapable = true;
+            for (char c : probe[1].toCharArray()) {
+                escapable &= escapes[c] != null;
+                expected.append(escapes[c]);
+            }
+            if (!escapable || !expected.toString().equals(escapedByFormatter(probe[1]))) {
+                escapes[probe[0].charAt(0)] = null;
+            }
+        }
+        return escapes;
+    }
+
+    /**
+     * @return the text as it appears in the formatted output, null when it cannot be found
+     */
+    private String escapedByFormatter(String text) {
+        String output;
+        try {
+            output = formatter.format(JBossFormatter.createRecord(MESSAGE_START + text + MESSAGE_END, 0, 0));
+        } catch (RuntimeException e) {
+            return null;
+        }
+        int start = output.indexOf(MESSAGE_START);
+        if (start < 0 || start != output.lastIndexOf(MESSAGE_START)) {
+            return null;
+        }
+        int end = output.indexOf(MESSAGE_END, start);
+        if (end < 0) {
+            return null;
+        }
+        return output.substring(start + MESSAGE_START.length(), end);
+    }
+
+    private boolean verify() {
+        String message = "Quote \" backslash \\ tab \t slash / <tag> & ctrl \u0001 end" + (nonAsciiAsIs ? " \u00e9\u20ac" : "");
+        long millis = System.currentTimeMillis();
+        String expected = delegate.format(message, millis, 42);
+        String actual = templates.get().render(message, millis, 42);
+        templates.remove();
+        if (!expected.equals(actual)) {
+            log.debug("Template output [{}] does not match formatter output [{}].", actual, expected);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String format(String message) {
+        return format(message, System.currentTimeMillis(), sequence.getAndIncrement());
+    }
+
+    String format(CharSequence message, long millis, long sequenceNumber) {
+        return format(usable ? currentTemplate() : null, message, millis, sequenceNumber);
+    }
+
+    /**
+     * @param template null when the template is not usable
+     */
+    private String format(Template template, CharSequence message, long millis, long sequenceNumber) {
+        if (template != null) {
+            String formatted = template.render(message, millis, sequenceNumber);
+            if (formatted != null) {
+                return formatted;
+            }
+        }
+        return delegate.format(message.toString(), millis, sequenceNumber);
+    }
+
+    @Override
+    public void formatTo(OutputStream out, CharSequence message) throws IOException {
+        formatTo(out, message, System.currentTimeMillis(), sequence.getAndIncrement());
+    }
+
+    void formatTo(OutputStream out, CharSequence message, long millis, long sequenceNumber) throws IOException {
+        if (usable) {
+            Template template = currentTemplate();
+            int length = template.renderBytes(message, millis, sequenceNumber);
+            if (length >= 0) {
+                out.write(template.bytes(), 0, length);
+                return;
+            }
+        }
+        out.write(delegate.format(message.toString(), millis, sequenceNumber).getBytes(UTF_8));
+    }
+
+    @Override
+    public void formatTo(ByteBuffer buffer, CharSequence message) {
+        long millis = System.currentTimeMillis();
+        long sequenceNumber = sequence.getAndIncrement();
+        if (usable) {
+            Template template = currentTemplate();
+            int length = template.renderBytes(message, millis, sequenceNumber);
+            if (length >= 0) {
+                buffer.put(template.bytes(), 0, length);
+                return;
+            }
+        }
+        buffer.put(delegate.format(message.toString(), millis, sequenceNumber).getBytes(UTF_8));
+    }
+
+    /**
+     * The messages share the timestamp, the sequence numbers are reserved at once.
+     */
+    @Override
+    public List<String> formatAll(List<? extends CharSequence> messages) {
+        long millis = System.currentTimeMillis();
+        long firstSequence = sequence.getAndAdd(messages.size());
+        Template template = usable ? currentTemplate() : null;
+        List<String> formatted = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            formatted.add(format(template, messages.get(i), millis, firstSequence + i));
+        }
+        return formatted;
+    }
+
+    private Template currentTemplate() {
+        Template template = templates.get();
+        Map<String, String> mdc = MDC.copy();
+        if (!mdc.equals(template.mdc)) {
+            template.compile(System.currentTimeMillis());
+        }
+        return template;
+    }
+
+    /**
+     * @return the timestamp as written by the configured formatter, null when its date format is not known, a new
+     *         instance for each template as the format may not be thread safe
+     */
+    private LongFunction<String> createTimestampFormat() {
+        if (formatter instanceof org.jboss.logmanager.formatters.StructuredFormatter) {
+            DateTimeFormatter dateTimeFormatter = ((org.jboss.logmanager.formatters.StructuredFormatter) formatter)
+                    .getDateTimeFormatter();
+            return millis -> dateTimeFormatter.format(Instant.ofEpochMilli(millis));
+        }
+        if (formatter instanceof StructuredFormatter) {
+            SimpleDateFormat dateFormat = new SimpleDateFormat(((StructuredFormatter) formatter).getDateFormat());
+            return millis -> dateFormat.format(new Date(millis));
+        }
+        return null;
+    }
+
+    /**
+     * The output of the current thread (the thread name and id may be part of the output). The constant segments are
+     * compiled once, the timestamp is formatted once per millisecond and spliced in. When the timestamp cannot be
+     * located in the output, the template is compiled again for each millisecond.
+     */
+    private class Template {
+
+        private LongFunction<String> timestampFormat = createTimestampFormat();
+        private long compiledMillis;
+        private Map<String, String> mdc;
+        private boolean valid;
+
+        /**
+         * The slots in the order of the output, there is a constant segment before each slot and one after the last.
+         */
+        private int[] slots;
+        private String[] segments;
+        private byte[][] segmentBytes;
+
+        private long timestampMillis = Long.MIN_VALUE;
+        private String timestamp;
+        private byte[] timestampBytes;
+
+        private final StringBuilder builder = new StringBuilder(1024);
+        private byte[] bytes = new byte[1024];
+        private int size;
+
+        Template() {
+            compile(System.currentTimeMillis());
+        }
+
+        /**
+         * @return the formatted line, null when the line must be formatted by the configured formatter
+         */
+        String render(CharSequence message, long millis, long sequenceNumber) {
+            if (!prepare(millis)) {
+                return null;
+            }
+            StringBuilder out = builder;
+            out.setLength(0);
+            for (int i = 0; i < slots.length; i++) {
+                out.append(segments[i]);
+                switch (slots[i]) {
+                    case MESSAGE_SLOT:
+                        if (!appendEscaped(out, message)) {
+                            return null;
+                        }
+                        break;
+                    case SEQUENCE_SLOT:
+                        out.append(sequenceNumber);
+                        break;
+                    default: // the timestamp
+                        out.append(timestamp);
+                }
+            }
+            out.append(segments[slots.length]);
+            return out.toString();
+        }
+
+        /**
+         * Renders the line as UTF-8 to the internal buffer, see {@link #bytes()}.
+         *
+         * @return number of bytes, -1 when the line must be formatted by the configured formatter
+         */
+        int renderBytes(CharSequence message, long millis, long sequenceNumber) {
+            if (!prepare(millis)) {
+                return -1;
+            }
+            size = 0;
+            for (int i = 0; i < slots.length; i++) {
+                put(segmentBytes[i]);
+                switch (slots[i]) {
+                    case MESSAGE_SLOT:
+                        if (!putEscaped(message)) {
+                            return -1;
+                        }
+                        break;
+                    case SEQUENCE_SLOT:
+                        putDecimal(sequenceNumber);
+                        break;
+                    default: // the timestamp
+                        put(timestampBytes);
+                }
+            }
+            put(segmentBytes[slots.length]);
+            return size;
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+
+        /**
+         * @return false when the line must be formatted by the configured formatter
+         */
+        private boolean prepare(long millis) {
+            if (timestampFormat == null) {
+                if (millis != compiledMillis) {
+                    compile(millis);
+                }
+            } else if (millis != timestampMillis) {
+                setTimestamp(millis);
+            }
+            return valid;
+        }
+
+        private void setTimestamp(long millis) {
+            timestampMillis = millis;
+            timestamp = timestampFormat.apply(millis);
+            timestampBytes = timestamp.getBytes(UTF_8);
+        }
+
+        private void compile(long millis) {
+            compiledMillis = millis;
+            mdc = MDC.copy();
+            String output = probe(millis);
+            if (timestampFormat != null) {
+                if (split(output, timestampFormat.apply(millis))) {
+                    // the constant segments must not depend on the time, check them with a distant timestamp
+                    long otherMillis = millis - TIMESTAMP_PROBE_OFFSET;
+                    setTimestamp(otherMillis);
+                    if (probe(otherMillis).equals(spliceProbe())) {
+                        valid = true;
+                        return;
+                    }
+                }
+                log.debug("Cannot locate the timestamp in [{}], compiling the template for each millisecond.", output);
+                timestampFormat = null;
+            }
+            valid = split(output, null);
+        }
+
+        private String probe(long millis) {
+            return formatter.format(JBossFormatter.createRecord(MESSAGE_START, millis, SEQUENCE_SENTINEL));
+        }
+
+        private String spliceProbe() {
+            StringBuilder out = new StringBuilder();
+            for (int i = 0; i < slots.length; i++) {
+                out.append(segments[i]);
+                switch (slots[i]) {
+                    case MESSAGE_SLOT:
+                        out.append(MESSAGE_START);
+                        break;
+                    case SEQUENCE_SLOT:
+                        out.append(SEQUENCE_SENTINEL);
+                        break;
+                    default: // the timestamp
+                        out.append(timestamp);
+                }
+            }
+            return out.append(segments[slots.length]).toString();
+        }
+
+        /**
+         * Splits the probe output to the constant segments and the slots.
+         *
+         * @param timestampText the probe timestamp, null when the timestamp is left in the constant segments
+         * @return false when the slots cannot be located unambiguously
+         */
+        private boolean split(String output, String timestampText) {
+            String[] texts = { MESSAGE_START, Long.toString(SEQUENCE_SENTINEL), timestampText };
+            int[] positions = new int[texts.length];
+            int count = 0;
+            for (int slot = 0; slot < texts.length; slot++) {
+                positions[slot] = texts[slot] == null || texts[slot].isEmpty() ? -1 : output.indexOf(texts[slot]);
+                if (positions[slot] >= 0 && positions[slot] != output.lastIndexOf(texts[slot])) {
+                    return false;
+                }
+                if (positions[slot] >= 0) {
+                    count++;
+                } else if (slot != SEQUENCE_SLOT) {
+                    return false;
+                }
+            }
+            int[] ordered = new int[count];
+            int next = 0;
+            for (int slot = 0; slot < texts.length; slot++) {
+                if (positions[slot] >= 0) {
+                    ordered[next++] = slot;
+                }
+            }
+            for (int i = 1; i < ordered.length; i++) {
+                for (int j = i; j > 0 && positions[ordered[j]] < positions[ordered[j - 1]]; j--) {
+                    int swapped = ordered[j];
+                    ordered[j] = ordered[j - 1];
+                    ordered[j - 1] = swapped;
+                }
+            }
+            String[] constants = new String[count + 1];
+            byte[][] constantBytes = new byte[count + 1][];
+            int from = 0;
+            for (int i = 0; i <= count; i++) {
+                int to = i < count ? positions[ordered[i]] : output.length();
+                if (to < from) {
+                    return false; // overlapping slots
+                }
+                constants[i] = output.substring(from, to);
+                constantBytes[i] = constants[i].getBytes(UTF_8);
+                if (i < count) {
+                    from = to + texts[ordered[i]].length();
+                }
+            }
+            slots = ordered;
+            segments = constants;
+            segmentBytes = constantBytes;
+            return true;
+        }
+
+        private boolean appendEscaped(StringBuilder out, CharSequence message) {
+            String[] escapes = asciiEscapes;
+            int length = message.length();
+            int plainFrom = 0;
+            for (int i = 0; i < length; i++) {
+                char c = message.charAt(i);
+                if (c < 128) {
+                    String escaped = escapes[c];
+                    if (escaped == null) {
+                        return false;
+                    }
+                    if (escaped.length() == 1 && escaped.charAt(0) == c) {
+                        continue;
+                    }
+                    out.append(message, plainFrom, i).append(escaped);
+                    plainFrom = i + 1;
+                } else if (!nonAsciiAsIs || Character.isSurrogate(c)) {
+                    return false;
+                }
+            }
+            out.append(message, plainFrom, length);
+            return true;
+        }
+
+        private boolean putEscaped(CharSequence message) {
+            int length = message.length();
+            ensureCapacity(size + length * maxEscapeLength);
+            byte[] buf = bytes;
+            int position = size;
+            for (int i = 0; i < length; i++) {
+                char c = message.charAt(i);
+                if (c < 128) {
+                    byte[] escaped = asciiEscapeBytes[c];
+                    if (escaped == null) {
+                        return false;
+                    }
+                    if (escaped.length == 1) {
+                        buf[position++] = escaped[0];
+                    } else {
+                        System.arraycopy(escaped, 0, buf, position, escaped.length);
+                        position += escaped.length;
+                    }
+                } else if (!nonAsciiAsIs || Character.isSurrogate(c)) {
+                    return false;
+                } else if (c < 0x800) {
+                    buf[position++] = (byte) (0xC0 | (c >> 6));
+                    buf[position++] = (byte) (0x80 | (c & 0x3F));
+                } else {
+                    buf[position++] = (byte) (0xE0 | (c >> 12));
+                    buf[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[position++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            size = position;
+            return true;
+        }
+
+        private void put(byte[] segment) {
+            ensureCapacity(size + segment.length);
+            System.arraycopy(segment, 0, bytes, size, segment.length);
+            size += segment.length;
+        }
+
+        private void putDecimal(long value) {
+            if (value < 0) {
+                put(Long.toString(value).getBytes(UTF_8));
+                return;
+            }
+            int digits = 1;
+            for (long rest = value / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            ensureCapacity(size + digits);
+            for (int i = size + digits - 1; i >= size; i--) {
+                bytes[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            size += digits;
+        }
+
+        private void ensureCapacity(int required) {
+            if (bytes.length < required) {
+                bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.logging.rules;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Aho-Corasick automaton, finds all the keywords in a single pass over the text regardless of the number of keywords.
+ *
+ * Each keyword carries a value which is reported on every occurrence. The automaton is immutable once built and can be
+ * shared by the threads.
+ */
+class AhoCorasick {
+
+    private final Node root = new Node();
+
+    /**
+     * @param keywords non empty keywords to search for
+     * @param values reported when the keyword at the same index is found
+     */
+    AhoCorasick(String[] keywords, int[] values) {
+        if (keywords.length != values.length) {
+            throw new IllegalArgumentException("There must be a value for each keyword.");
+        }
+        for (int i = 0; i < keywords.length; i++) {
+            add(keywords[i], values[i]);
+        }
+        linkFailures();
+    }
+
+    private void add(String keyword, int value) {
+        if (keyword.isEmpty()) {
+            throw new IllegalArgumentException("Keyword must not be empty.");
+        }
+        Node node = root;
+        for (int i = 0; i < keyword.length(); i++) {
+            node = node.children.computeIfAbsent(keyword.charAt(i), c -> new Node());
+        }
+        node.outputs = append(node.outputs, value);
+    }
+
+    /**
+     * Breadth first, so the failure target (a shorter suffix) is complete before it is used. The outputs of the failure
+     * target are merged, a node reports all the keywords ending at it.
+     */
+    private void linkFailures() {
+        Queue<Node> queue = new ArrayDeque<>();
+        root.fail = root;
+        for (Node child : root.children.values()) {
+            child.fail = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                char c = entry.getKey();
+                Node child = entry.getValue();
+                Node fail = node.fail;
+                while (fail != root && !fail.children.containsKey(c)) {
+                    fail = fail.fail;
+                }
+                Node target = fail.children.get(c);
+                child.fail = target != null ? target : root;
+                for (int output : child.fail.outputs) {
+                    child.outputs = append(child.outputs, output);
+                }
+                queue.add(child);
+            }
+            node.freeze();
+        }
+        root.freeze();
+    }
+
+    /**
+     * Calls the consumer with the value of each keyword occurrence. A keyword found multiple times is reported multiple
+     * times.
+     */
+    void search(CharSequence text, IntConsumer onMatch) {
+        Node node = root;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Node next = node.next(c);
+            while (next == null && node != root) {
+                node = node.fail;
+                next = node.next(c);
+            }
+            node = next == null ? root : next;
+            for (int output : node.outputs) {
+                onMatch.accept(output);
+            }
+        }
+    }
+
+    private static int[] append(int[] array, int value) {
+        for (int existing : array) {
+            if (existing == value) {
+                return array;
+            }
+        }
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+
+    private static class Node {
+        /**
+         * Used while building, the search uses the sorted arrays.
+         */
+        private Map<Character, Node> children = new TreeMap<>();
+        private char[] keys;
+        private Node[] next;
+
+        private Node fail;
+        private int[] outputs = new int[0];
+
+        private void freeze() {
+            keys = new char[children.size()];
+            next = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Node> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                next[i] = entry.getValue();
+                i++;
+            }
+        }
+
+        private Node next(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? next[index] : null;
+        }
+    }
+}
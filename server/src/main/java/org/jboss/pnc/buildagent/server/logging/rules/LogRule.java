@@ -0,0 +1,127 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.logging.rules;
+
+import org.jboss.pnc.buildagent.api.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rule matching the log lines. The line is a candidate when it contains any of the literals, the candidate matches
+ * when the regex is found in it. A rule without literals checks the regex on every line, a rule without regex matches
+ * every candidate.
+ */
+public class LogRule {
+
+    private String name;
+
+    private List<String> literals = new ArrayList<>();
+
+    private String regex;
+
+    private RuleAction action = RuleAction.COUNT;
+
+    /**
+     * The new status of {@link RuleAction#RECLASSIFY} rules.
+     */
+    private Status status;
+
+    /**
+     * The status that is reclassified, any status when not set.
+     */
+    private Status fromStatus;
+
+    /**
+     * The tag of {@link RuleAction#TAG} rules, the rule name is used when not set.
+     */
+    private String tag;
+
+    public LogRule() {
+    }
+
+    public LogRule(String name, List<String> literals, String regex, RuleAction action) {
+        this.name = name;
+        this.literals = literals;
+        this.regex = regex;
+        this.action = action;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<String> getLiterals() {
+        return literals;
+    }
+
+    public void setLiterals(List<String> literals) {
+        this.literals = literals;
+    }
+
+    public String getRegex() {
+        return regex;
+    }
+
+    public void setRegex(String regex) {
+        this.regex = regex;
+    }
+
+    public RuleAction getAction() {
+        return action;
+    }
+
+    public void setAction(RuleAction action) {
+        this.action = action;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public Status getFromStatus() {
+        return fromStatus;
+    }
+
+    public void setFromStatus(Status fromStatus) {
+        this.fromStatus = fromStatus;
+    }
+
+    public String getTag() {
+        return tag == null ? name : tag;
+    }
+
+    public void setTag(String tag) {
+        this.tag = tag;
+    }
+
+    @Override
+    public String toString() {
+        return "LogRule{" + name + "}";
+    }
+}
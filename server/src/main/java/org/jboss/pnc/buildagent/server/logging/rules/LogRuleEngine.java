@@ -0,0 +1,176 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.logging.rules;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jboss.pnc.buildagent.api.Status;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Matches the log lines against a set of rules.
+ *
+ * The literals of all the rules are compiled into a single {@link AhoCorasick} automaton, each line is scanned once and
+ * the (more expensive) regexes are evaluated only for the rules whose literal was found in the line. The engine is
+ * immutable and shared, the per-process state is kept in the {@link LogRuleSession}.
+ */
+public class LogRuleEngine {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final List<LogRule> rules;
+    private final Pattern[] patterns;
+    private final AhoCorasick prefilter;
+    /**
+     * Rules without literals, their regex is evaluated on every line.
+     */
+    private final int[] unfiltered;
+
+    public LogRuleEngine(List<LogRule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        patterns = new Pattern[rules.size()];
+        List<String> keywords = new ArrayList<>();
+        List<Integer> keywordRules = new ArrayList<>();
+        List<Integer> unfilteredRules = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            LogRule rule = rules.get(i);
+            validate(rule);
+            if (rule.getRegex() != null) {
+                patterns[i] = Pattern.compile(rule.getRegex());
+            }
+            if (rule.getLiterals() == null || rule.getLiterals().isEmpty()) {
+                unfilteredRules.add(i);
+            } else {
+                for (String literal : rule.getLiterals()) {
+                    keywords.add(literal);
+                    keywordRules.add(i);
+                }
+            }
+        }
+        if (keywords.isEmpty()) {
+            prefilter = null;
+        } else {
+            prefilter = new AhoCorasick(
+                    keywords.toArray(new String[0]),
+                    keywordRules.stream().mapToInt(Integer::intValue).toArray());
+        }
+        unfiltered = unfilteredRules.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void validate(LogRule rule) {
+        if (rule.getName() == null || rule.getName().isEmpty()) {
+            throw new IllegalArgumentException("Log rule must have a name.");
+        }
+        if (rule.getAction() == null) {
+            throw new IllegalArgumentException("Log rule " + rule.getName() + " must have an action.");
+        }
+        boolean noLiterals = rule.getLiterals() == null || rule.getLiterals().isEmpty();
+        if (noLiterals && rule.getRegex() == null) {
+            throw new IllegalArgumentException("Log rule " + rule.getName() + " must have literals or a regex.");
+        }
+        if (!noLiterals && rule.getLiterals().stream().anyMatch(l -> l == null || l.isEmpty())) {
+            throw new IllegalArgumentException("Log rule " + rule.getName() + " has an empty literal.");
+        }
+        if (rule.getAction() == RuleAction.RECLASSIFY && rule.getStatus() == null) {
+            throw new IllegalArgumentException("Log rule " + rule.getName() + " must define the new status.");
+        }
+    }
+
+    /**
+     * Parse a JSON file with the rules, eg.:
+     * <pre>
+     * {"rules": [{"name": "indy-down", "literals": ["Connect to indy"], "regex": "Connect to indy.* failed",
+     *             "action": "RECLASSIFY", "fromStatus": "FAILED", "status": "SYSTEM_ERROR"}]}
+     * </pre>
+     *
+     * @throws IOException if the file cannot be read or the rules are invalid
+     */
+    public static LogRuleEngine parseJson(File file) throws IOException {
+        RulesFile rulesFile = OBJECT_MAPPER.readValue(file, RulesFile.class);
+        try {
+            return new LogRuleEngine(rulesFile.getRules());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid log rules in " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The rules used when no configuration is given.
+     */
+    public static LogRuleEngine defaults() {
+        // NCL-6736: Check if we have and indy connection refused in our logs
+        LogRule indyConnectionRefused = new LogRule(
+                "indy-connection-refused",
+                Collections.singletonList("Connect to indy"),
+                "Connect to indy.* failed: Connection refused",
+                RuleAction.RECLASSIFY);
+        indyConnectionRefused.setFromStatus(Status.FAILED);
+        indyConnectionRefused.setStatus(Status.SYSTEM_ERROR);
+        return new LogRuleEngine(Collections.singletonList(indyConnectionRefused));
+    }
+
+    public LogRuleSession newSession() {
+        return new LogRuleSession(this);
+    }
+
+    public List<LogRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Increments the counts of the rules matching the line.
+     *
+     * @param candidates reusable set for the rules whose literal was found
+     * @param counts matches per rule, indexed as {@link #getRules()}
+     */
+    void match(String line, BitSet candidates, long[] counts) {
+        candidates.clear();
+        if (prefilter != null) {
+            prefilter.search(line, candidates::set);
+        }
+        for (int rule : unfiltered) {
+            candidates.set(rule);
+        }
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            Pattern pattern = patterns[i];
+            if (pattern == null || pattern.matcher(line).find()) {
+                counts[i]++;
+            }
+        }
+    }
+
+    private static class RulesFile {
+        private List<LogRule> rules = new ArrayList<>();
+
+        public List<LogRule> getRules() {
+            return rules;
+        }
+
+        public void setRules(List<LogRule> rules) {
+            this.rules = rules;
+        }
+    }
+}
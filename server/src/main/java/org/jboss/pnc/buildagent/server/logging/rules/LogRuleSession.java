@@ -0,0 +1,135 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.logging.rules;
+
+import org.jboss.pnc.buildagent.api.Status;
+import org.jboss.pnc.buildagent.common.LineConsumer;
+import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Applies the rules to the output of a single process.
+ *
+ * The session is a channel, it is meant to be wrapped in a {@link org.jboss.pnc.buildagent.server.output.QueuedChannel}
+ * so the matching runs on the drainer thread and not on the pty reader. The results are complete once the channel is
+ * flushed at the end of the process.
+ */
+public class LogRuleSession implements ReadOnlyChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(LogRuleSession.class);
+
+    private final LogRuleEngine engine;
+    private final LineConsumer lineConsumer = new LineConsumer(this::onLine);
+    private final BitSet candidates = new BitSet();
+    private final long[] counts;
+
+    LogRuleSession(LogRuleEngine engine) {
+        this.engine = engine;
+        this.counts = new long[engine.getRules().size()];
+    }
+
+    @Override
+    public synchronized void writeOutput(byte[] buffer) {
+        lineConsumer.append(buffer);
+    }
+
+    private void onLine(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        while (end > offset && (bytes[end - 1] == '\n' || bytes[end - 1] == '\r')) {
+            end--;
+        }
+        engine.match(new String(bytes, offset, end - offset, UTF_8), candidates, counts);
+    }
+
+    /**
+     * Matches also the last line without the new line, call it once the output is complete.
+     */
+    @Override
+    public synchronized void flush() {
+        lineConsumer.flush();
+    }
+
+    /**
+     * All the lines must be checked, a slow matching blocks the producer instead of skipping the lines.
+     */
+    @Override
+    public boolean isPrimary() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return the status changed by the first matching {@link RuleAction#RECLASSIFY} rule or the given status
+     */
+    public synchronized Status resolveStatus(Status status) {
+        List<LogRule> rules = engine.getRules();
+        for (int i = 0; i < rules.size(); i++) {
+            LogRule rule = rules.get(i);
+            if (rule.getAction() == RuleAction.RECLASSIFY
+                    && counts[i] > 0
+                    && (rule.getFromStatus() == null || rule.getFromStatus() == status)) {
+                log.info("Log rule {} matched, changing status from {} to {}.", rule.getName(), status, rule.getStatus());
+                return rule.getStatus();
+            }
+        }
+        return status;
+    }
+
+    /**
+     * @return tags of the matched {@link RuleAction#TAG} rules
+     */
+    public synchronized Set<String> getTags() {
+        Set<String> tags = new LinkedHashSet<>();
+        List<LogRule> rules = engine.getRules();
+        for (int i = 0; i < rules.size(); i++) {
+            if (rules.get(i).getAction() == RuleAction.TAG && counts[i] > 0) {
+                tags.add(rules.get(i).getTag());
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * @return number of matched lines by the rule name, rules without a match are not included
+     */
+    public synchronized Map<String, Long> getCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        List<LogRule> rules = engine.getRules();
+        for (int i = 0; i < rules.size(); i++) {
+            if (counts[i] > 0) {
+                result.put(rules.get(i).getName(), counts[i]);
+            }
+        }
+        return result;
+    }
+}
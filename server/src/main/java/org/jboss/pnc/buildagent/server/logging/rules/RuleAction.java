@@ -0,0 +1,41 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.logging.rules;
+
+/**
+ * What happens when a {@link LogRule} matches a log line. Matches of all the rules are counted.
+ */
+public enum RuleAction {
+
+    /**
+     * Change the completion status, eg. FAILED to SYSTEM_ERROR when the failure was caused by the environment.
+     */
+    RECLASSIFY,
+
+    /**
+     * Only count the matching lines.
+     */
+    COUNT,
+
+    /**
+     * Add the rule tag to the completion event.
+     */
+    TAG
+}
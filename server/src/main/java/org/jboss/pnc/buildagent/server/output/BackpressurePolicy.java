@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server.output;
+
+/**
+ * What to do with new output when the sink queue is full.
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Block the producer (pty reader) until there is space in the queue. No output is lost.
+     */
+    BLOCK,
+
+    /**
+     * Discard the chunk being written. A marker with the number of dropped bytes is written to the sink.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Discard the oldest queued chunks to make space for the new one. A marker with the number of dropped bytes is
+     * written to the sink.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Write the overflow to a temporary file and replay it when the sink catches up. No output is lost and the
+     * producer is not blocked, the disk space is the limit.
+     */
+    SPILL_TO_DISK;
+
+    /**
+     * @return true if the policy can lose the output
+     */
+    public boolean isLossy() {
+        return this == DROP_NEWEST || this == DROP_OLDEST;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server.output;
+
+import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Flushes the sinks concurrently, so the command completion waits for the slowest sink instead of the sum of all of
+ * them. The flush threads are shared by all the sessions.
+ */
+public class FlushCoordinator {
+
+    private static final Logger log = LoggerFactory.getLogger(FlushCoordinator.class);
+
+    private static final FlushCoordinator SHARED = new FlushCoordinator();
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "output-flush-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static FlushCoordinator shared() {
+        return SHARED;
+    }
+
+    /**
+     * Flushes all the channels in parallel and waits for them up to a single deadline.
+     *
+     * @return flush latency in milliseconds by sink name
+     * @throws IOException when some of the channels fail or do not complete before the deadline, the other failures
+     *         are suppressed by the first one. The flushes not completed before the deadline are not interrupted, they
+     *         continue in the background.
+     */
+    public Map<String, Long> flushAll(Collection<? extends ReadOnlyChannel> channels, long timeoutMillis)
+            throws IOException {
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        Map<String, Future<Long>> flushes = new LinkedHashMap<>();
+        for (ReadOnlyChannel channel : channels) {
+            flushes.put(nameOf(channel), executor.submit(() -> {
+                long flushStarted = System.nanoTime();
+                channel.flush();
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - flushStarted);
+            }));
+        }
+
+        Map<String, Long> latencies = new LinkedHashMap<>();
+        IOException failure = null;
+        for (Map.Entry<String, Future<Long>> flush : flushes.entrySet()) {
+            try {
+                latencies.put(flush.getKey(), await(flush.getKey(), flush.getValue(), deadline));
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        log.debug("Flushed {} sinks in {}ms, latency by sink: {}.",
+                flushes.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), latencies);
+        if (failure != null) {
+            throw failure;
+        }
+        return latencies;
+    }
+
+    /**
+     * Runs the flush on a shared thread and waits for it up to the timeout.
+     */
+    public void flush(String name, Runnable flush, long timeoutMillis) throws IOException {
+        Future<Long> future = executor.submit(() -> {
+            flush.run();
+            return 0L;
+        });
+        await(name, future, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    private static long await(String name, Future<Long> future, long deadline) throws IOException {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot flush " + name + ".", e.getCause());
+        } catch (TimeoutException e) {
+            // not interrupted, an interrupt closes the file channel of the sink in the middle of the write
+            future.cancel(false);
+            throw new IOException("Timeout flushing " + name + ".", e);
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing " + name + ".", e);
+        }
+    }
+
+    private static String nameOf(ReadOnlyChannel channel) {
+        if (channel instanceof QueuedChannel) {
+            return ((QueuedChannel) channel).getName();
+        }
+        return channel.toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server.output;
+
+import org.jboss.pnc.buildagent.common.security.DigestAlgorithm;
+import org.jboss.pnc.buildagent.common.security.MerkleTree;
+import org.jboss.pnc.buildagent.common.security.MerkleTreeDigest;
+import org.jboss.pnc.buildagent.common.security.OutputDigest;
+import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Computes the digests of the output of one session. It is wrapped in a {@link QueuedChannel}, so the digests are
+ * updated by the drainer thread of the queue and not by the pty reader. The channel is primary, the digest must cover
+ * all the output.
+ *
+ * The digests must be read after the queue is flushed, the flush makes the updates of the drainer visible.
+ */
+public class OutputDigestChannel implements ReadOnlyChannel {
+
+    private final Map<DigestAlgorithm, OutputDigest> digests = new EnumMap<>(DigestAlgorithm.class);
+
+    private final MerkleTreeDigest tree;
+
+    /**
+     * @param algorithms the reported digest and the digests required by the other consumers of the output (eg. MD5 for
+     *         the log upload)
+     */
+    public OutputDigestChannel(Collection<DigestAlgorithm> algorithms) throws NoSuchAlgorithmException {
+        this(algorithms, null);
+    }
+
+    /**
+     * @param tree Merkle tree of the output, null when it is not computed
+     */
+    public OutputDigestChannel(Collection<DigestAlgorithm> algorithms, MerkleTreeDigest tree) throws NoSuchAlgorithmException {
+        for (DigestAlgorithm algorithm : algorithms) {
+            digests.put(algorithm, algorithm.newDigest());
+        }
+        this.tree = tree;
+    }
+
+    @Override
+    public void writeOutput(byte[] buffer) {
+        for (OutputDigest digest : digests.values()) {
+            digest.add(buffer);
+        }
+        if (tree != null) {
+            tree.add(buffer);
+        }
+    }
+
+    /**
+     * @return hex encoded digest of the output written since the last call, the digest is reset
+     */
+    public String digest(DigestAlgorithm algorithm) {
+        OutputDigest digest = digests.get(algorithm);
+        if (digest == null) {
+            throw new IllegalArgumentException("Digest " + algorithm + " is not computed by this channel.");
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Waits for the leaf hashes and builds the tree, can be called once.
+     *
+     * @return the tree or null when it is not computed
+     */
+    public MerkleTree finishTree() {
+        return tree == null ? null : tree.finish();
+    }
+
+    @Override
+    public boolean isPrimary() {
+        return true;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        return "OutputDigestChannel" + digests.keySet();
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server.output;
+
+import org.jboss.pnc.buildagent.common.security.DigestAlgorithm;
+import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuration of the per-sink output queues.
+ */
+public class OutputOptions {
+
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+    public static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 300000;
+    public static final int DEFAULT_OUTPUT_TREE_LEAF_SIZE = 1024 * 1024;
+    public static final int DEFAULT_SCROLLBACK_SIZE = 256 * 1024;
+
+    /**
+     * Sink type of the read only web socket connections, the other sink types are named by {@link
+     * org.jboss.pnc.buildagent.server.IoLoggerName}.
+     */
+    public static final String WEBSOCKET_SINK = "WEBSOCKET";
+
+    /**
+     * Sink type of the http connections following the output.
+     */
+    public static final String HTTP_STREAM_SINK = "HTTP_STREAM";
+
+    /**
+     * Sink type of the per-process log rule matching.
+     */
+    public static final String LOG_RULES_SINK = "LOG_RULES";
+
+    /**
+     * Sink type of the per-process output digest.
+     */
+    public static final String DIGEST_SINK = "DIGEST";
+
+    private final int queueSize;
+    private final BackpressurePolicy nonPrimaryPolicy;
+    private final Map<String, BackpressurePolicy> sinkPolicies;
+    private final long drainTimeoutMillis;
+    private final Path spillDirectory;
+    private final int webSocketSendWindow;
+    private final DigestAlgorithm digestAlgorithm;
+    private final int outputTreeLeafSize;
+    private final int scrollbackSize;
+
+    /**
+     * @param queueSize max number of chunks queued per sink
+     * @param nonPrimaryPolicy what to do when the queue of a non-primary sink is full, primary sinks block
+     * @param drainTimeoutMillis how long the flush waits for the queue to drain
+     */
+    public OutputOptions(int queueSize, BackpressurePolicy nonPrimaryPolicy, long drainTimeoutMillis) {
+        this(
+                queueSize,
+                nonPrimaryPolicy,
+                Collections.emptyMap(),
+                drainTimeoutMillis,
+                Paths.get(System.getProperty("java.io.tmpdir")),
+                SendWindow.DEFAULT_MAX_IN_FLIGHT_BYTES);
+    }
+
+    /**
+     * @param sinkPolicies policies by sink type, overrides the default policy
+     * @param spillDirectory where the sinks with {@link BackpressurePolicy#SPILL_TO_DISK} policy write the overflow
+     * @param webSocketSendWindow max bytes handed to a web socket connection and not yet sent
+     */
+    public OutputOptions(
+            int queueSize,
+            BackpressurePolicy nonPrimaryPolicy,
+            Map<String, BackpressurePolicy> sinkPolicies,
+            long drainTimeoutMillis,
+            Path spillDirectory,
+            int webSocketSendWindow) {
+        this(queueSize, nonPrimaryPolicy, sinkPolicies, drainTimeoutMillis, spillDirectory, webSocketSendWindow, DigestAlgorithm.MD5);
+    }
+
+    /**
+     * @param digestAlgorithm digest of the process output reported in the completion event
+     */
+    public OutputOptions(
+            int queueSize,
+            BackpressurePolicy nonPrimaryPolicy,
+            Map<String, BackpressurePolicy> sinkPolicies,
+            long drainTimeoutMillis,
+            Path spillDirectory,
+            int webSocketSendWindow,
+            DigestAlgorithm digestAlgorithm) {
+        this(
+                queueSize,
+                nonPrimaryPolicy,
+                sinkPolicies,
+                drainTimeoutMillis,
+                spillDirectory,
+                webSocketSendWindow,
+                digestAlgorithm,
+                DEFAULT_OUTPUT_TREE_LEAF_SIZE);
+    }
+
+    /**
+     * @param outputTreeLeafSize leaf size of the Merkle tree of the http invoked process output, 0 disables the tree
+     */
+    public OutputOptions(
+            int queueSize,
+            BackpressurePolicy nonPrimaryPolicy,
+            Map<String, BackpressurePolicy> sinkPolicies,
+            long drainTimeoutMillis,
+            Path spillDirectory,
+            int webSocketSendWindow,
+            DigestAlgorithm digestAlgorithm,
+            int outputTreeLeafSize) {
+        this(
+                queueSize,
+                nonPrimaryPolicy,
+                sinkPolicies,
+                drainTimeoutMillis,
+                spillDirectory,
+                webSocketSendWindow,
+                digestAlgorithm,
+                outputTreeLeafSize,
+                DEFAULT_SCROLLBACK_SIZE);
+    }
+
+    /**
+     * @param scrollbackSize bytes of the output kept per process for the late read only connections, 0 disables it
+     */
+    public OutputOptions(
+            int queueSize,
+            BackpressurePolicy nonPrimaryPolicy,
+            Map<String, BackpressurePolicy> sinkPolicies,
+            long drainTimeoutMillis,
+            Path spillDirectory,
+            int webSocketSendWindow,
+            DigestAlgorithm digestAlgorithm,
+            int outputTreeLeafSize,
+            int scrollbackSize) {
+        this.queueSize = queueSize;
+        this.nonPrimaryPolicy = nonPrimaryPolicy;
+        this.sinkPolicies = new HashMap<>(sinkPolicies);
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        this.spillDirectory = spillDirectory;
+        this.webSocketSendWindow = webSocketSendWindow;
+        this.digestAlgorithm = digestAlgorithm;
+        this.outputTreeLeafSize = outputTreeLeafSize;
+        this.scrollbackSize = scrollbackSize;
+    }
+
+    public static OutputOptions defaults() {
+        return new OutputOptions(DEFAULT_QUEUE_SIZE, BackpressurePolicy.DROP_OLDEST, DEFAULT_DRAIN_TIMEOUT_MILLIS);
+    }
+
+    public QueuedChannel queued(String sinkType, String name, ReadOnlyChannel channel) {
+        return new QueuedChannel(name, channel, queueSize, getPolicy(sinkType, channel.isPrimary()), drainTimeoutMillis, spillDirectory);
+    }
+
+    public BackpressurePolicy getPolicy(String sinkType, boolean primary) {
+        BackpressurePolicy policy = sinkPolicies.get(sinkType);
+        if (policy != null) {
+            return policy;
+        }
+        return primary ? BackpressurePolicy.BLOCK : nonPrimaryPolicy;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public BackpressurePolicy getNonPrimaryPolicy() {
+        return nonPrimaryPolicy;
+    }
+
+    public Map<String, BackpressurePolicy> getSinkPolicies() {
+        return Collections.unmodifiableMap(sinkPolicies);
+    }
+
+    public long getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public int getWebSocketSendWindow() {
+        return webSocketSendWindow;
+    }
+
+    public DigestAlgorithm getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    public int getOutputTreeLeafSize() {
+        return outputTreeLeafSize;
+    }
+
+    public int getScrollbackSize() {
+        return scrollbackSize;
+    }
+}
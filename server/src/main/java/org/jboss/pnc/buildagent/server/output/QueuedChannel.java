@@ -0,0 +1,406 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server.output;
+
+import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decouples the output producer from a slow sink. The output is put to a bounded queue and written to the delegate by
+ * a dedicated drainer thread, so one slow sink does not stall the others.
+ *
+ * What happens when the queue is full is defined by the {@link BackpressurePolicy}. Primary channels must contain all
+ * the output, a lossy policy is replaced with {@link BackpressurePolicy#BLOCK} for them.
+ */
+public class QueuedChannel implements ReadOnlyChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(QueuedChannel.class);
+
+    private final String name;
+    private final ReadOnlyChannel delegate;
+    private final BackpressurePolicy policy;
+    private final int capacity;
+    private final long drainTimeoutMillis;
+    private final Path spillDirectory;
+
+    private final BlockingQueue<byte[]> queue;
+    private final Thread drainer;
+
+    /**
+     * Guards the delegate, so the flush does not interleave with the writes from the drainer.
+     */
+    private final Object delegateLock = new Object();
+
+    private final Object progressLock = new Object();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong droppedChunks = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+    private volatile long lastFlushMillis;
+    /**
+     * Bytes dropped since the last marker was written to the delegate.
+     */
+    private final AtomicLong unreportedDroppedBytes = new AtomicLong();
+
+    /**
+     * Guards the spill file and the spilling flag. While spilling, all the new output goes to the file to keep the
+     * order, the in-memory queue is used again once the file is replayed.
+     */
+    private final Object spillLock = new Object();
+    private final SpillFile spillFile;
+    private volatile boolean spilling;
+
+    private volatile boolean running = true;
+
+    public QueuedChannel(
+            String name,
+            ReadOnlyChannel delegate,
+            int capacity,
+            BackpressurePolicy policy,
+            long drainTimeoutMillis) {
+        this(name, delegate, capacity, policy, drainTimeoutMillis, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    public QueuedChannel(
+            String name,
+            ReadOnlyChannel delegate,
+            int capacity,
+            BackpressurePolicy policy,
+            long drainTimeoutMillis,
+            Path spillDirectory) {
+        this.name = name;
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        this.spillDirectory = spillDirectory;
+        if (delegate.isPrimary() && policy.isLossy()) {
+            log.warn("Channel {} is primary, using {} instead of {}.", name, BackpressurePolicy.BLOCK, policy);
+            this.policy = BackpressurePolicy.BLOCK;
+        } else {
+            this.policy = policy;
+        }
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.spillFile = new SpillFile(spillDirectory, name);
+
+        drainer = new Thread(this::drain, "output-drainer-" + name);
+        drainer.setDaemon(true);
+        drainer.start();
+        log.debug("Created queued channel {} with capacity {} and policy {}.", name, capacity, this.policy);
+    }
+
+    @Override
+    public void writeOutput(byte[] buffer) {
+        if (!running) {
+            log.warn("Channel {} is closed, dropping {} bytes.", name, buffer.length);
+            return;
+        }
+        switch (policy) {
+            case BLOCK:
+                try {
+                    queue.put(buffer);
+                    enqueued.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    onDropped(buffer);
+                }
+                break;
+            case DROP_NEWEST:
+                // the gap is right before this chunk, the marker goes with it
+                long dropped = unreportedDroppedBytes.getAndSet(0);
+                byte[] chunk = dropped > 0 ? concat(droppedMarker(dropped), buffer) : buffer;
+                if (queue.offer(chunk)) {
+                    enqueued.incrementAndGet();
+                } else {
+                    unreportedDroppedBytes.addAndGet(dropped);
+                    onDropped(buffer);
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(buffer)) {
+                    byte[] oldest = queue.poll();
+                    if (oldest != null) {
+                        onDropped(oldest);
+                        markCompleted();
+                    }
+                }
+                enqueued.incrementAndGet();
+                break;
+            case SPILL_TO_DISK:
+                synchronized (spillLock) {
+                    if (!spilling && queue.offer(buffer)) {
+                        enqueued.incrementAndGet();
+                        break;
+                    }
+                    try {
+                        spillFile.append(buffer);
+                        spilling = true;
+                        enqueued.incrementAndGet();
+                    } catch (IOException e) {
+                        log.error("Cannot spill output of channel " + name + " to disk.", e);
+                        onDropped(buffer);
+                    }
+                }
+                break;
+        }
+    }
+
+    private void onDropped(byte[] chunk) {
+        if (droppedChunks.getAndIncrement() == 0) {
+            log.warn("Channel {} is not keeping up with the output, dropping data.", name);
+        }
+        droppedBytes.addAndGet(chunk.length);
+        unreportedDroppedBytes.addAndGet(chunk.length);
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            byte[] chunk;
+            try {
+                chunk = nextChunk();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (chunk == null) {
+                continue;
+            }
+            try {
+                synchronized (delegateLock) {
+                    if (policy == BackpressurePolicy.DROP_OLDEST) {
+                        // the gap is right before the oldest remaining chunk
+                        writeDroppedMarker();
+                    }
+                    delegate.writeOutput(chunk);
+                }
+            } catch (RuntimeException e) {
+                log.error("Cannot write output to channel " + name + ".", e);
+            } finally {
+                markCompleted();
+            }
+        }
+        log.debug("Drainer of channel {} stopped.", name);
+    }
+
+    /**
+     * The queue holds the older data, the spill file is replayed once the queue is empty.
+     */
+    private byte[] nextChunk() throws InterruptedException {
+        byte[] chunk = queue.poll();
+        if (chunk != null) {
+            return chunk;
+        }
+        if (spilling) {
+            synchronized (spillLock) {
+                try {
+                    chunk = spillFile.poll();
+                } catch (IOException e) {
+                    log.error("Cannot read spilled output of channel " + name + ".", e);
+                    discardSpilled();
+                }
+                if (spillFile.isEmpty()) {
+                    spilling = false;
+                }
+            }
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        return queue.poll(100, TimeUnit.MILLISECONDS);
+    }
+
+    private void discardSpilled() {
+        long lostBytes = spillFile.size();
+        long lostChunks = spillFile.records();
+        try {
+            spillFile.close();
+        } catch (IOException e) {
+            log.warn("Cannot remove spill file of channel " + name + ".", e);
+        }
+        droppedChunks.addAndGet(lostChunks);
+        droppedBytes.addAndGet(lostBytes);
+        unreportedDroppedBytes.addAndGet(lostBytes);
+        // unblock the flush waiting for the lost chunks
+        completed.addAndGet(lostChunks);
+        synchronized (progressLock) {
+            progressLock.notifyAll();
+        }
+    }
+
+    private void writeDroppedMarker() {
+        long dropped = unreportedDroppedBytes.getAndSet(0);
+        if (dropped > 0) {
+            delegate.writeOutput(droppedMarker(dropped));
+        }
+    }
+
+    private static byte[] droppedMarker(long dropped) {
+        return ("\n% # " + dropped + " bytes dropped\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private void markCompleted() {
+        completed.incrementAndGet();
+        synchronized (progressLock) {
+            progressLock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until all the output queued before this call is written to the delegate and flushes the delegate.
+     */
+    @Override
+    public void flush() throws IOException {
+        long started = System.nanoTime();
+        awaitDrained();
+        synchronized (delegateLock) {
+            writeDroppedMarker();
+            delegate.flush();
+        }
+        lastFlushMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+
+    private void awaitDrained() throws IOException {
+        long target = enqueued.get();
+        long deadline = System.currentTimeMillis() + drainTimeoutMillis;
+        synchronized (progressLock) {
+            // the stopped channel discards the output, there is nothing to wait for
+            while (running && completed.get() < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IOException("Timeout waiting for channel " + name + " to drain. Queued chunks: " + queue.size() + ".");
+                }
+                try {
+                    progressLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for channel " + name + " to drain.", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isPrimary() {
+        return delegate.isPrimary();
+    }
+
+    @Override
+    public BackpressurePolicy getBackpressurePolicy() {
+        return policy;
+    }
+
+    /**
+     * When the delegate has a per session channel, it gets its own queue with the same settings.
+     */
+    @Override
+    public ReadOnlyChannel forSession(String sessionId) {
+        ReadOnlyChannel sessionDelegate = delegate.forSession(sessionId);
+        if (sessionDelegate == delegate) {
+            return this;
+        }
+        return new QueuedChannel(name + "-" + sessionId, sessionDelegate, capacity, policy, drainTimeoutMillis, spillDirectory);
+    }
+
+    /**
+     * Writes out the queued data and closes the delegate.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitDrained();
+        } finally {
+            stop();
+            delegate.close();
+        }
+    }
+
+    /**
+     * Stops the drainer without closing the delegate, the queued data is discarded. Used when the delegate is already
+     * gone (eg. the remote side of the web socket disconnected).
+     */
+    public void stop() {
+        running = false;
+        List<byte[]> discarded = new ArrayList<>();
+        queue.drainTo(discarded);
+        drainer.interrupt();
+        long discardedChunks = discarded.size();
+        synchronized (spillLock) {
+            discardedChunks += spillFile.records();
+            spilling = false;
+            try {
+                spillFile.close();
+            } catch (IOException e) {
+                log.warn("Cannot remove spill file of channel " + name + ".", e);
+            }
+        }
+        // unblock the flush waiting for the discarded chunks
+        completed.addAndGet(discardedChunks);
+        synchronized (progressLock) {
+            progressLock.notifyAll();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ReadOnlyChannel getDelegate() {
+        return delegate;
+    }
+
+    public SinkStats getStats() {
+        long spilledBytes;
+        synchronized (spillLock) {
+            spilledBytes = spillFile.size();
+        }
+        return new SinkStats(
+                name,
+                isPrimary(),
+                policy,
+                capacity,
+                queue.size(),
+                spilledBytes,
+                droppedChunks.get(),
+                droppedBytes.get(),
+                lastFlushMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "QueuedChannel{" + name + "}";
+    }
+}
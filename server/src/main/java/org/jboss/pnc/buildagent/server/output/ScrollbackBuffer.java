@@ -0,0 +1,207 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.output;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Last bytes of the output kept off heap, the read only channels connected while the process is running get them
+ * before the live output. The writer holds its own output lock while it writes the chunk to the buffer and to the
+ * channels, so the channel added under the same lock gets each byte once. The methods of the buffer are synchronized
+ * on the buffer only, the readers never wait for a writer blocked on a channel.
+ */
+public class ScrollbackBuffer {
+
+    private final int capacity;
+
+    private final ByteBuffer ring;
+
+    /**
+     * Number of bytes ever appended.
+     */
+    private long written;
+
+    /**
+     * @param capacity max number of kept bytes, 0 disables the buffer
+     */
+    public ScrollbackBuffer(int capacity) {
+        this.capacity = capacity;
+        this.ring = ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Copies the chunk to the ring, the oldest bytes are overwritten.
+     */
+    public synchronized void append(byte[] bytes) {
+        if (capacity == 0) {
+            written += bytes.length;
+            return;
+        }
+        int offset = 0;
+        int length = bytes.length;
+        if (length > capacity) {
+            offset = length - capacity;
+            length = capacity;
+        }
+        int position = (int) ((written + offset) % capacity);
+        int untilEnd = Math.min(length, capacity - position);
+        ring.position(position);
+        ring.put(bytes, offset, untilEnd);
+        if (untilEnd < length) {
+            ring.position(0);
+            ring.put(bytes, offset + untilEnd, length - untilEnd);
+        }
+        written += bytes.length;
+    }
+
+    /**
+     * @return the kept bytes, oldest first. When the oldest bytes were overwritten the cut UTF-8 sequence at the start
+     *         is skipped.
+     */
+    public synchronized byte[] tail() {
+        long oldest = getOldest();
+        byte[] tail = read(oldest, capacity);
+        if (oldest == 0) {
+            return tail;
+        }
+        int skip = 0;
+        while (skip < tail.length && (tail[skip] & 0xC0) == 0x80) {
+            skip++;
+        }
+        if (skip == 0) {
+            return tail;
+        }
+        byte[] trimmed = new byte[tail.length - skip];
+        System.arraycopy(tail, skip, trimmed, 0, trimmed.length);
+        return trimmed;
+    }
+
+    /**
+     * @param offset position in the output of the first returned byte, it must not be lower than {@link #getOldest()}
+     * @param maxLength max number of returned bytes
+     * @return the kept bytes from the offset, empty when there are no newer bytes
+     */
+    public synchronized byte[] read(long offset, int maxLength) {
+        if (offset < getOldest()) {
+            throw new IllegalArgumentException("Offset " + offset + " is no longer kept, the oldest is " + getOldest() + ".");
+        }
+        int size = (int) Math.min(Math.max(written - offset, 0), maxLength);
+        byte[] bytes = new byte[size];
+        if (size == 0) {
+            return bytes;
+        }
+        int start = (int) (offset % capacity);
+        int untilEnd = Math.min(size, capacity - start);
+        ring.position(start);
+        ring.get(bytes, 0, untilEnd);
+        if (untilEnd < size) {
+            ring.position(0);
+            ring.get(bytes, untilEnd, size - untilEnd);
+        }
+        return bytes;
+    }
+
+    /**
+     * The same as {@link #read(long, int)}, the offset older than the oldest kept byte is moved to it in the same
+     * critical section.
+     *
+     * @param offset position in the output of the first wanted byte
+     * @param maxLength max number of returned bytes
+     */
+    public synchronized Chunk readKept(long offset, int maxLength) {
+        long start = Math.max(offset, getOldest());
+        return new Chunk(start, read(start, maxLength));
+    }
+
+    /**
+     * @param lines number of the last lines, an unterminated last line is counted
+     * @return offset of the first byte of the last lines, the offset of the oldest kept whole character when fewer
+     *         lines are kept
+     */
+    public synchronized long offsetOfLastLines(int lines) {
+        long oldest = getOldest();
+        if (lines <= 0) {
+            return written;
+        }
+        long offset = written;
+        if (offset > oldest && byteAt(offset - 1) == '\n') {
+            offset--;
+        }
+        int found = 0;
+        while (offset > oldest) {
+            if (byteAt(offset - 1) == '\n' && ++found == lines) {
+                return offset;
+            }
+            offset--;
+        }
+        if (oldest > 0) {
+            // the oldest line is cut, skip the cut UTF-8 sequence
+            while (offset < written && (byteAt(offset) & 0xC0) == 0x80) {
+                offset++;
+            }
+        }
+        return offset;
+    }
+
+    private byte byteAt(long offset) {
+        return ring.get((int) (offset % capacity));
+    }
+
+    /**
+     * @return offset of the oldest kept byte
+     */
+    public synchronized long getOldest() {
+        return written - Math.min(written, capacity);
+    }
+
+    /**
+     * @return number of bytes ever appended, it is the offset of the next byte
+     */
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Bytes read from the buffer with the offset of the first one.
+     */
+    public static class Chunk {
+
+        private final long offset;
+
+        private final byte[] bytes;
+
+        Chunk(long offset, byte[] bytes) {
+            this.offset = offset;
+            this.bytes = bytes;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+}
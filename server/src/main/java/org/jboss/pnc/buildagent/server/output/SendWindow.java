@@ -0,0 +1,78 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server.output;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Limits the amount of data handed to an asynchronous sender (eg. Undertow web socket) that is not yet confirmed as
+ * sent. Without the limit the sender keeps queuing the data in memory when the remote side is slow.
+ *
+ * The caller blocks until the window has space, so the backpressure propagates to the {@link QueuedChannel} and its
+ * policy is applied.
+ */
+public class SendWindow {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT_BYTES = 1024 * 1024;
+
+    private static final long CHECK_OPEN_INTERVAL_MILLIS = 100;
+
+    private final long maxInFlightBytes;
+
+    private long inFlightBytes;
+
+    public SendWindow(long maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    /**
+     * Blocks until there is space for the given number of bytes. A single chunk larger than the window is let through
+     * when nothing else is in flight.
+     *
+     * @param isOpen checked periodically, the wait ends when the destination is closed
+     * @return false if the destination is closed or the thread is interrupted, the data should not be sent
+     */
+    public synchronized boolean acquire(int bytes, BooleanSupplier isOpen) {
+        while (inFlightBytes > 0 && inFlightBytes + bytes > maxInFlightBytes) {
+            if (!isOpen.getAsBoolean()) {
+                return false;
+            }
+            try {
+                wait(CHECK_OPEN_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        inFlightBytes += bytes;
+        return true;
+    }
+
+    /**
+     * Call when the send completes or fails.
+     */
+    public synchronized void release(int bytes) {
+        inFlightBytes -= bytes;
+        notifyAll();
+    }
+
+    public synchronized long getInFlightBytes() {
+        return inFlightBytes;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server.output;
+
+/**
+ * Snapshot of the sink queue state.
+ */
+public class SinkStats {
+
+    private final String name;
+    private final boolean primary;
+    private final BackpressurePolicy policy;
+    private final int capacity;
+    private final int queueDepth;
+    private final long spilledBytes;
+    private final long droppedChunks;
+    private final long droppedBytes;
+    private final long lastFlushMillis;
+
+    public SinkStats(
+            String name,
+            boolean primary,
+            BackpressurePolicy policy,
+            int capacity,
+            int queueDepth,
+            long spilledBytes,
+            long droppedChunks,
+            long droppedBytes,
+            long lastFlushMillis) {
+        this.name = name;
+        this.primary = primary;
+        this.policy = policy;
+        this.capacity = capacity;
+        this.queueDepth = queueDepth;
+        this.spilledBytes = spilledBytes;
+        this.droppedChunks = droppedChunks;
+        this.droppedBytes = droppedBytes;
+        this.lastFlushMillis = lastFlushMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isPrimary() {
+        return primary;
+    }
+
+    public BackpressurePolicy getPolicy() {
+        return policy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return bytes waiting in the spill file, see {@link BackpressurePolicy#SPILL_TO_DISK}
+     */
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    public long getDroppedChunks() {
+        return droppedChunks;
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    /**
+     * @return how long the last flush took, including the wait for the queue to drain
+     */
+    public long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "SinkStats{" +
+                "name='" + name + '\'' +
+                ", primary=" + primary +
+                ", policy=" + policy +
+                ", capacity=" + capacity +
+                ", queueDepth=" + queueDepth +
+                ", spilledBytes=" + spilledBytes +
+                ", droppedChunks=" + droppedChunks +
+                ", droppedBytes=" + droppedBytes +
+                ", lastFlushMillis=" + lastFlushMillis +
+                '}';
+    }
+}
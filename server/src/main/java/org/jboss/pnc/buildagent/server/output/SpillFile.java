@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server.output;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Temporary on-disk FIFO of output chunks, used when the in-memory queue of a sink overflows. Chunks are stored as
+ * length-prefixed records and read back in the same order. Once all the records are read the file is truncated, so it
+ * only grows while the consumer is behind.
+ *
+ * The class is not thread safe, the caller must synchronize the access.
+ */
+class SpillFile implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SpillFile.class);
+
+    private final Path directory;
+    private final String name;
+
+    private Path path;
+    private FileChannel fileChannel;
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+
+    private long readPosition;
+    private long writePosition;
+    private long records;
+
+    SpillFile(Path directory, String name) {
+        this.directory = directory;
+        this.name = name;
+    }
+
+    void append(byte[] chunk) throws IOException {
+        if (fileChannel == null) {
+            open();
+        }
+        lengthBuffer.clear();
+        lengthBuffer.putInt(chunk.length).flip();
+        writeFully(lengthBuffer, writePosition);
+        writeFully(ByteBuffer.wrap(chunk), writePosition + 4);
+        writePosition += 4 + chunk.length;
+        records++;
+    }
+
+    /**
+     * @return next chunk or null when all the spilled data has been read.
+     */
+    byte[] poll() throws IOException {
+        if (records == 0) {
+            return null;
+        }
+        lengthBuffer.clear();
+        readFully(lengthBuffer, readPosition);
+        lengthBuffer.flip();
+        byte[] chunk = new byte[lengthBuffer.getInt()];
+        readFully(ByteBuffer.wrap(chunk), readPosition + 4);
+        readPosition += 4 + chunk.length;
+        records--;
+        if (records == 0) {
+            fileChannel.truncate(0);
+            readPosition = 0;
+            writePosition = 0;
+        }
+        return chunk;
+    }
+
+    boolean isEmpty() {
+        return records == 0;
+    }
+
+    long records() {
+        return records;
+    }
+
+    /**
+     * @return bytes waiting in the file to be read.
+     */
+    long size() {
+        return writePosition - readPosition;
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        path = Files.createTempFile(directory, "spill-" + name.replaceAll("[^A-Za-z0-9_.-]", "_") + "-", ".seg");
+        fileChannel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        log.info("Output of sink {} is spilled to {}.", name, path);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += fileChannel.write(buffer, position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = fileChannel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of spill file " + path + ".");
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        records = 0;
+        readPosition = 0;
+        writePosition = 0;
+        if (fileChannel != null) {
+            fileChannel.close();
+            fileChannel = null;
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.pty;
+
+import io.termd.core.io.BinaryDecoder;
+import io.termd.core.pty.PtyMaster;
+import io.termd.core.pty.Status;
+import io.termd.core.util.Helper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Runs the command in a shell from the pool, the statuses and the output are reported the same way as by the
+ * {@link PtyMaster}. When there is no idle shell the command is started by the {@link PtyMaster}.
+ */
+public class PooledPtyMaster extends PtyMaster {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledPtyMaster.class);
+
+    private final String line;
+    private final Consumer<int[]> stdout;
+    private final Consumer<Void> doneHandler;
+    private final WarmShellPool shellPool;
+
+    private volatile BiConsumer<Status, Status> changeHandler;
+    private volatile Status status = Status.NEW;
+    private volatile Process process;
+    private volatile boolean interrupted;
+    /**
+     * Set when there was no idle shell and the command is run by the super class.
+     */
+    private volatile boolean notPooled;
+
+    public PooledPtyMaster(String line, Consumer<int[]> stdout, Consumer<Void> doneHandler, WarmShellPool shellPool) {
+        super(line, stdout, doneHandler);
+        this.line = line;
+        this.stdout = stdout;
+        this.doneHandler = doneHandler;
+        this.shellPool = shellPool;
+        super.setChangeHandler(this::onNotPooledStatus);
+    }
+
+    /**
+     * Creates the pooled pty when the pool is enabled.
+     */
+    public static PtyMaster create(String line, Consumer<int[]> stdout, Consumer<Void> doneHandler, WarmShellPool shellPool) {
+        if (shellPool.isEnabled()) {
+            return new PooledPtyMaster(line, stdout, doneHandler, shellPool);
+        } else {
+            return new PtyMaster(line, stdout, doneHandler);
+        }
+    }
+
+    @Override
+    public BiConsumer<Status, Status> getChangeHandler() {
+        return changeHandler;
+    }
+
+    @Override
+    public void setChangeHandler(BiConsumer<Status, Status> changeHandler) {
+        this.changeHandler = changeHandler;
+    }
+
+    /**
+     * Status change of the command run by the super class.
+     */
+    private void onNotPooledStatus(Status oldStatus, Status newStatus) {
+        if (newStatus == Status.RUNNING && interrupted) {
+            // interrupted before the super class started the process
+            super.interruptProcess();
+        }
+        BiConsumer<Status, Status> handler = changeHandler;
+        if (handler != null) {
+            handler.accept(oldStatus, newStatus);
+        }
+    }
+
+    @Override
+    public Process getProcess() {
+        return notPooled ? super.getProcess() : process;
+    }
+
+    @Override
+    public Status getStatus() {
+        return notPooled ? super.getStatus() : status;
+    }
+
+    @Override
+    public void interruptProcess() {
+        if (notPooled) {
+            interrupted = true;
+            // without the process the interrupt is forwarded once the super class reports it is running
+            if (super.getProcess() != null) {
+                super.interruptProcess();
+            }
+            return;
+        }
+        if (!interrupted) {
+            interrupted = true;
+            Process running = process;
+            if (running != null) {
+                running.destroy();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        Optional<Process> pooled = shellPool.exec(line.trim().split("\\s+"));
+        if (!pooled.isPresent()) {
+            notPooled = true;
+            super.run();
+            return;
+        }
+        process = pooled.get();
+        try {
+            setStatus(Status.RUNNING);
+            if (interrupted) {
+                // interrupted before the process was assigned
+                process.destroy();
+            }
+            pipeStdout(process.getInputStream());
+            int exitValue = process.waitFor();
+            if (exitValue == 0) {
+                setStatus(Status.COMPLETED);
+            } else if (interrupted) {
+                setStatus(Status.INTERRUPTED);
+            } else {
+                setStatus(Status.FAILED);
+            }
+        } catch (InterruptedException e) {
+            setStatus(Status.INTERRUPTED);
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("Cannot read the output of the command.", e);
+            stdout.accept(Helper.toCodePoints(e.getMessage() + "\r\n"));
+            process.destroy();
+            setStatus(Status.FAILED);
+        }
+        doneHandler.accept(null);
+    }
+
+    private void pipeStdout(InputStream in) throws IOException {
+        BinaryDecoder decoder = new BinaryDecoder(getBufferSize(), StandardCharsets.UTF_8, stdout);
+        byte[] buffer = new byte[512];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            decoder.write(buffer, 0, read);
+        }
+    }
+
+    private void setStatus(Status newStatus) {
+        Status oldStatus = status;
+        status = newStatus;
+        BiConsumer<Status, Status> handler = changeHandler;
+        if (handler != null) {
+            handler.accept(oldStatus, newStatus);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.pty;
+
+/**
+ * Pool of the pre-started shells the commands are handed to.
+ */
+public class ShellPoolOptions {
+
+    public static final int DEFAULT_SIZE = 0;
+    public static final String DEFAULT_SHELL = "/bin/sh";
+    public static final String DEFAULT_RESET_SCRIPT = "";
+
+    private final int size;
+    private final String shell;
+    private final String resetScript;
+
+    /**
+     * @param size number of the idle shells kept started, 0 disables the pool
+     * @param shell the shell started for the pool, it must read the commands from the stdin
+     * @param resetScript run by each shell before it is put to the pool, the output is discarded. Eg. "cd /tmp; unset
+     *         HISTFILE" resets the working directory and the environment left by the agent start.
+     */
+    public ShellPoolOptions(int size, String shell, String resetScript) {
+        this.size = size;
+        this.shell = shell;
+        this.resetScript = resetScript;
+    }
+
+    public static ShellPoolOptions defaults() {
+        return new ShellPoolOptions(DEFAULT_SIZE, DEFAULT_SHELL, DEFAULT_RESET_SCRIPT);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getShell() {
+        return shell;
+    }
+
+    public String getResetScript() {
+        return resetScript;
+    }
+}
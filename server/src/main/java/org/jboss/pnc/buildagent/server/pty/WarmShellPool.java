@@ -0,0 +1,179 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.pty;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the idle shells started, so the command does not wait for the fork of the agent JVM and the start of the
+ * process. The command is handed to the shell with exec, the shell is replaced by the command and it is not reused.
+ * The used shells are replaced in the background.
+ */
+public class WarmShellPool implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmShellPool.class);
+
+    private static final WarmShellPool DISABLED = new WarmShellPool(ShellPoolOptions.defaults());
+
+    private final ShellPoolOptions options;
+
+    private final LinkedBlockingQueue<Process> idle = new LinkedBlockingQueue<>();
+
+    /**
+     * Shells being started, they count to the pool size.
+     */
+    private final AtomicInteger starting = new AtomicInteger();
+
+    private final ExecutorService starter;
+
+    private volatile boolean closed;
+
+    public WarmShellPool(ShellPoolOptions options) {
+        this.options = options;
+        if (options.getSize() > 0) {
+            this.starter = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "warm-shell-starter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            replenish();
+        } else {
+            this.starter = null;
+        }
+    }
+
+    public static WarmShellPool disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return starter != null;
+    }
+
+    /**
+     * Hands the command to an idle shell.
+     *
+     * @param command the program and its arguments, they are quoted so the shell does not expand them
+     * @return the process running the command or empty when there is no idle shell
+     */
+    public Optional<Process> exec(String[] command) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        byte[] execLine = execLine(command);
+        try {
+            Process shell;
+            while ((shell = idle.poll()) != null) {
+                if (!shell.isAlive()) {
+                    log.warn("Idle shell exited with {}, skipping it.", shell.exitValue());
+                    continue;
+                }
+                try {
+                    OutputStream stdin = shell.getOutputStream();
+                    stdin.write(execLine);
+                    stdin.flush();
+                    return Optional.of(shell);
+                } catch (IOException e) {
+                    log.warn("Cannot hand the command to the idle shell.", e);
+                    shell.destroy();
+                }
+            }
+            log.debug("There is no idle shell, the command is started without the pool.");
+            return Optional.empty();
+        } finally {
+            replenish();
+        }
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    private void replenish() {
+        while (!closed) {
+            int pending = starting.get();
+            if (idle.size() + pending >= options.getSize()) {
+                return;
+            }
+            if (starting.compareAndSet(pending, pending + 1)) {
+                starter.execute(this::startShell);
+            }
+        }
+    }
+
+    private void startShell() {
+        try {
+            Process shell = new ProcessBuilder(options.getShell())
+                    .redirectErrorStream(true)
+                    .start();
+            String resetScript = options.getResetScript();
+            if (!resetScript.isEmpty()) {
+                // the reset runs while the shell is idle, its output must not mix with the output of the command
+                OutputStream stdin = shell.getOutputStream();
+                stdin.write(("{\n" + resetScript + "\n} >/dev/null 2>&1\n").getBytes(StandardCharsets.UTF_8));
+                stdin.flush();
+            }
+            idle.add(shell);
+            if (closed && idle.remove(shell)) {
+                shell.destroy();
+            }
+        } catch (IOException e) {
+            log.error("Cannot start shell " + options.getShell() + ".", e);
+        } finally {
+            starting.decrementAndGet();
+        }
+    }
+
+    static byte[] execLine(String[] command) {
+        StringBuilder line = new StringBuilder("exec");
+        for (String argument : command) {
+            line.append(" '").append(argument.replace("'", "'\\''")).append('\'');
+        }
+        line.append('\n');
+        return line.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Stops the idle shells.
+     */
+    @Override
+    public void close() {
+        if (!isEnabled()) {
+            return;
+        }
+        closed = true;
+        starter.shutdown();
+        Process shell;
+        while ((shell = idle.poll()) != null) {
+            shell.destroy();
+        }
+    }
+}
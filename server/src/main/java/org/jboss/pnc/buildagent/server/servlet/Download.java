@@ -18,6 +18,9 @@
 
 package org.jboss.pnc.buildagent.server.servlet;
 
+import org.jboss.pnc.buildagent.server.IoFileLogger;
+import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.jboss.pnc.buildagent.server.RotatedLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +32,9 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:matejonnet@gmail.com">Matej Lazar</a>
@@ -37,12 +43,34 @@ public class Download extends HttpServlet {
 
     private static Logger log = LoggerFactory.getLogger(Download.class);
 
+    private final Set<ReadOnlyChannel> readOnlyChannels;
+
+    public Download(Set<ReadOnlyChannel> readOnlyChannels) {
+        this.readOnlyChannels = readOnlyChannels;
+    }
+
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         log.debug("Download servlet requested.");
 
         String fileLocation = request.getPathInfo();
         File file = new File(fileLocation);
+        InputStream liveLog = openLive(file.toPath());
+        if (liveLog != null) {
+            log.debug("Serving log {} with the output not stitched yet.", file);
+            try (ServletOutputStream outputStream = response.getOutputStream(); InputStream inputStream = liveLog) {
+                copy(inputStream, outputStream);
+            }
+            return;
+        }
+        if (RotatedLog.isRotated(file.toPath())) {
+            log.debug("Serving rotated log {}.", file);
+            try (ServletOutputStream outputStream = response.getOutputStream();
+                    InputStream inputStream = RotatedLog.open(file.toPath())) {
+                copy(inputStream, outputStream);
+            }
+            return;
+        }
         if (file.isDirectory() || !file.exists()) {
             response.sendError(500);
             log.warn("Invalid file path {}", file);
@@ -52,13 +80,31 @@ public class Download extends HttpServlet {
 
         try (ServletOutputStream outputStream = response.getOutputStream()) {
             try (FileInputStream fileInputStream = new FileInputStream(file)) {
-                byte[] bytes = new byte[1024];
-                int read;
-                while ((read = fileInputStream.read(bytes)) != -1) {
-                    outputStream.write(bytes, 0, read);
-                }
+                copy(fileInputStream, outputStream);
             }
         }
     }
 
+    /**
+     * @return the live content of the log being written by a file logger, null when the file can be read as it is
+     */
+    private InputStream openLive(Path path) throws IOException {
+        Path logPath = path.toAbsolutePath().normalize();
+        for (ReadOnlyChannel channel : readOnlyChannels) {
+            if (channel instanceof IoFileLogger
+                    && ((IoFileLogger) channel).getLogPath().toAbsolutePath().normalize().equals(logPath)) {
+                return ((IoFileLogger) channel).openLive();
+            }
+        }
+        return null;
+    }
+
+    private void copy(InputStream inputStream, ServletOutputStream outputStream) throws IOException {
+        byte[] bytes = new byte[1024];
+        int read;
+        while ((read = inputStream.read(bytes)) != -1) {
+            outputStream.write(bytes, 0, read);
+        }
+    }
+
 }
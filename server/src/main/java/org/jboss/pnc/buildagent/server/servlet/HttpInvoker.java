@@ -12,45 +12,68 @@ import org.jboss.pnc.bifrost.upload.BifrostLogUploader;
 import org.jboss.pnc.bifrost.upload.BifrostUploadException;
 import org.jboss.pnc.bifrost.upload.LogMetadata;
 import org.jboss.pnc.bifrost.upload.TagOption;
+import org.jboss.pnc.buildagent.api.Constants;
 import org.jboss.pnc.buildagent.api.TaskStatusUpdateEvent;
 import org.jboss.pnc.buildagent.api.httpinvoke.Cancel;
 import org.jboss.pnc.buildagent.api.httpinvoke.InvokeRequest;
 import org.jboss.pnc.buildagent.api.httpinvoke.InvokeResponse;
+import org.jboss.pnc.buildagent.api.httpinvoke.OutputTree;
 import org.jboss.pnc.buildagent.api.httpinvoke.RetryConfig;
-import org.jboss.pnc.buildagent.common.Arrays;
+import org.jboss.pnc.buildagent.api.httpinvoke.SessionInfo;
 import org.jboss.pnc.buildagent.common.http.HeartbeatSender;
 import org.jboss.pnc.buildagent.common.http.HttpClient;
 import org.jboss.pnc.buildagent.common.security.KeycloakClient;
 import org.jboss.pnc.buildagent.common.security.LdapClient;
-import org.jboss.pnc.buildagent.common.security.Md5;
+import org.jboss.pnc.buildagent.common.security.MerkleTree;
+import org.jboss.pnc.buildagent.common.security.MerkleTreeDigest;
+import org.jboss.pnc.buildagent.common.security.DigestAlgorithm;
+import org.jboss.pnc.buildagent.common.security.OutputDigest;
 import org.jboss.pnc.buildagent.server.BifrostUploaderOptions;
+import org.jboss.pnc.buildagent.server.IoFileLogger;
 import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.jboss.pnc.buildagent.server.RotatedLog;
+import org.jboss.pnc.buildagent.server.httpinvoker.CommandScheduler;
 import org.jboss.pnc.buildagent.server.httpinvoker.CommandSession;
 import org.jboss.pnc.buildagent.server.httpinvoker.SessionRegistry;
-import org.jboss.pnc.buildagent.server.logging.LogMatcher;
+import org.jboss.pnc.buildagent.server.httpinvoker.SessionState;
+import org.jboss.pnc.buildagent.server.httpinvoker.SessionSummary;
+import org.jboss.pnc.buildagent.server.logging.rules.LogRuleEngine;
+import org.jboss.pnc.buildagent.server.logging.rules.LogRuleSession;
+import org.jboss.pnc.buildagent.server.output.OutputDigestChannel;
+import org.jboss.pnc.buildagent.server.output.OutputOptions;
+import org.jboss.pnc.buildagent.server.output.QueuedChannel;
+import org.jboss.pnc.buildagent.server.pty.PooledPtyMaster;
+import org.jboss.pnc.buildagent.server.pty.WarmShellPool;
 import org.jboss.pnc.buildagent.server.termserver.StatusConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static org.jboss.pnc.buildagent.api.Status.FAILED;
-import static org.jboss.pnc.buildagent.api.Status.SYSTEM_ERROR;
 
 /**
  * @author <a href="mailto:matejonnet@gmail.com">Matej Lazar</a>
@@ -65,6 +88,10 @@ public class HttpInvoker extends HttpServlet {
 
     private final SessionRegistry sessionRegistry;
 
+    private final CommandScheduler commandScheduler;
+
+    private final WarmShellPool shellPool;
+
     private final HttpClient httpClient;
 
     private final RetryConfig retryConfig;
@@ -73,35 +100,42 @@ public class HttpInvoker extends HttpServlet {
 
     private final HeartbeatSender heartbeat;
 
-    private final Md5 stdoutChecksum;
-
     private final KeycloakClient keycloakClient;
 
     private final LdapClient ldapClient;
 
-    private final LogMatcher logMatcher;
+    private final LogRuleEngine logRuleEngine;
+
+    private final OutputOptions outputOptions;
 
     public HttpInvoker(
             Set<ReadOnlyChannel> readOnlyChannels,
             SessionRegistry sessionRegistry,
+            CommandScheduler commandScheduler,
+            WarmShellPool shellPool,
             HttpClient httpClient,
             RetryConfig retryConfig,
             HeartbeatSender heartbeat,
             BifrostUploaderOptions bifrostUploaderOptions,
             KeycloakClient keycloakClient,
-            LdapClient ldapClient)
+            LdapClient ldapClient,
+            LogRuleEngine logRuleEngine,
+            OutputOptions outputOptions)
             throws NoSuchAlgorithmException {
         this.readOnlyChannels = readOnlyChannels;
         this.sessionRegistry = sessionRegistry;
+        this.commandScheduler = commandScheduler;
+        this.shellPool = shellPool;
         this.httpClient = httpClient;
         this.retryConfig = retryConfig;
         this.bifrostUploaderOptions = bifrostUploaderOptions;
         this.heartbeat = heartbeat;
-        this.stdoutChecksum = new Md5();
         this.keycloakClient = keycloakClient;
         this.ldapClient = ldapClient;
-        // NCL-6736: Check if we have and indy connection refused in our logs
-        this.logMatcher = new LogMatcher(Pattern.compile("Connect to indy.* failed: Connection refused"));
+        this.logRuleEngine = logRuleEngine;
+        this.outputOptions = outputOptions;
+        // fail on start when the runtime does not provide the digest
+        new OutputDigestChannel(digestAlgorithms());
     }
 
     @Override
@@ -109,15 +143,114 @@ public class HttpInvoker extends HttpServlet {
         Cancel cancelRequest = objectMapper.readValue(request.getInputStream(), Cancel.class);
         Optional<CommandSession> commandSession = sessionRegistry.get(cancelRequest.getSessionId());
 
-        if (commandSession.isPresent()) {
+        if (commandSession.isPresent()
+                && commandSession.get().getState() == SessionState.QUEUED
+                && commandScheduler.cancel(cancelRequest.getSessionId())) {
+            // the session is completed as interrupted without starting the process
+            response.setStatus(200);
+        } else if (commandSession.isPresent() && !commandSession.get().getState().isFinished()) {
             PtyMaster ptyMaster = commandSession.get().getPtyMaster();
             ptyMaster.interruptProcess(); //onComplete is called when the process is interrupted
             response.setStatus(200);
+        } else if (sessionRegistry.getSummary(cancelRequest.getSessionId()).isPresent()) {
+            // already finished, there is nothing to interrupt
+            response.setStatus(200);
         } else {
             response.setStatus(204);
         }
     }
 
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String pathInfo = request.getPathInfo();
+        String treePath = Constants.HTTP_INVOKER_OUTPUT_TREE_PATH + "/";
+        String sessionsPath = Constants.HTTP_INVOKER_SESSIONS_PATH + "/";
+        String outputPath = Constants.HTTP_INVOKER_OUTPUT_PATH + "/";
+        if (pathInfo != null && pathInfo.startsWith(treePath)) {
+            writeOutputTree(pathInfo.substring(treePath.length()), response);
+        } else if (pathInfo != null && pathInfo.startsWith(sessionsPath)) {
+            writeSessionInfo(pathInfo.substring(sessionsPath.length()), response);
+        } else if (pathInfo != null && pathInfo.startsWith(outputPath)) {
+            followOutput(pathInfo.substring(outputPath.length()), request, response);
+        } else {
+            response.setStatus(404);
+        }
+    }
+
+    private void writeSessionInfo(String sessionId, HttpServletResponse response) throws IOException {
+        Optional<SessionSummary> summary = sessionRegistry.getSummary(sessionId);
+        if (!summary.isPresent()) {
+            // unknown or evicted session
+            response.setStatus(404);
+            return;
+        }
+        MerkleTree outputTree = summary.get().getOutputTree();
+        SessionInfo sessionInfo = SessionInfo.newBuilder()
+                .sessionId(sessionId)
+                .state(summary.get().getState().name())
+                .status(summary.get().getStatus())
+                .outputChecksum(summary.get().getOutputChecksum())
+                .outputTreeRoot(outputTree == null ? null : outputTree.getRoot())
+                .created(summary.get().getCreatedMillis())
+                .completed(summary.get().getCompletedMillis())
+                .build();
+        response.setContentType("application/json");
+        response.getWriter().write(objectMapper.writeValueAsString(sessionInfo));
+    }
+
+    /**
+     * Attaches the response to the running session, it gets the kept tail of the output and then the live output
+     * through its own queue. The response is completed asynchronously when the session completes or the client
+     * disconnects.
+     */
+    private void followOutput(String sessionId, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Optional<CommandSession> commandSession = sessionRegistry.get(sessionId);
+        if (!commandSession.isPresent() || commandSession.get().getState().isFinished()) {
+            // unknown or completed session, the output is in the logs
+            response.setStatus(404);
+            return;
+        }
+        response.setContentType("text/plain;charset=UTF-8");
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(0);
+        String name = "http-invoker-output-" + sessionId + "@" + request.getRemoteAddr();
+        QueuedChannel[] queued = new QueuedChannel[1];
+        ServletOutputChannel outputChannel = new ServletOutputChannel(asyncContext, () -> {
+            logger.debug("Output follower {} disconnected.", name);
+            commandSession.get().detach(queued[0]);
+            queued[0].stop();
+        });
+        queued[0] = outputOptions.queued(OutputOptions.HTTP_STREAM_SINK, name, outputChannel);
+        logger.info("Adding output follower {}.", name);
+        if (!commandSession.get().attach(queued[0])) {
+            // completed meanwhile
+            queued[0].close();
+        }
+    }
+
+    /**
+     * Serves the Merkle tree of the completed session output.
+     */
+    private void writeOutputTree(String sessionId, HttpServletResponse response) throws IOException {
+        Optional<MerkleTree> tree = sessionRegistry.getSummary(sessionId).map(SessionSummary::getOutputTree);
+        if (!tree.isPresent()) {
+            // unknown session, still running or the tree is disabled
+            response.setStatus(404);
+            return;
+        }
+        OutputTree outputTree = OutputTree.newBuilder()
+                .sessionId(sessionId)
+                .algorithm(MerkleTree.ALGORITHM)
+                .leafSize(tree.get().getLeafSize())
+                .length(tree.get().getLength())
+                .root(tree.get().getRoot())
+                .leaves(tree.get().getLeaves())
+                .build();
+        response.setContentType("application/json");
+        response.getWriter().write(objectMapper.writeValueAsString(outputTree));
+    }
+
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
         String requestString = request.getReader().lines().collect(Collectors.joining());
@@ -126,63 +259,187 @@ public class HttpInvoker extends HttpServlet {
 
         String command = invokeRequest.getCommand();
 
-        CommandSession commandSession = new CommandSession(readOnlyChannels);
-        String sessionId = commandSession.getSessionId();
+        String sessionId = UUID.randomUUID().toString();
+        // the rules are matched by the drainer thread of the queue, not by the pty reader
+        LogRuleSession logRules = logRuleEngine.newSession();
+        QueuedChannel logRulesChannel = outputOptions.queued(OutputOptions.LOG_RULES_SINK, "log-rules-" + sessionId, logRules);
+        Set<ReadOnlyChannel> sessionChannels = new HashSet<>();
+        // the channels created for this session only, eg. the queue numbering the lines of the session
+        List<ReadOnlyChannel> ownChannels = new ArrayList<>();
+        for (ReadOnlyChannel readOnlyChannel : readOnlyChannels) {
+            ReadOnlyChannel sessionChannel = readOnlyChannel.forSession(sessionId);
+            sessionChannels.add(sessionChannel);
+            if (sessionChannel != readOnlyChannel) {
+                ownChannels.add(sessionChannel);
+            }
+        }
+        sessionChannels.add(logRulesChannel);
+        // the digests are computed by the drainer thread of the queue, each session has its own
+        OutputDigestChannel digests;
+        try {
+            digests = new OutputDigestChannel(digestAlgorithms(), newOutputTree());
+        } catch (NoSuchAlgorithmException e) {
+            closeSessionChannels(ownChannels);
+            closeLogRules(logRulesChannel);
+            throw new IOException("Cannot compute output digest.", e);
+        }
+        QueuedChannel digestChannel = outputOptions.queued(OutputOptions.DIGEST_SINK, "digest-" + sessionId, digests);
+        sessionChannels.add(digestChannel);
+        ownChannels.add(digestChannel);
+        CommandSession commandSession = new CommandSession(
+                sessionId,
+                sessionChannels,
+                outputOptions.getDrainTimeoutMillis(),
+                outputOptions.getScrollbackSize());
 
         HeartbeatConfig heartbeatConfig = invokeRequest.getHeartbeatConfig();
         Optional<Future<?>> heartbeatFuture;
         if (heartbeatConfig != null) {
-            heartbeatFuture = Optional.of(heartbeat.start(heartbeatConfig));
+            // tells the orchestrator when the command waits for admission
+            heartbeatFuture = Optional.of(heartbeat.start(heartbeatConfig, () -> sessionStateHeaders(commandSession)));
         } else {
             heartbeatFuture = Optional.empty();
         }
 
-        PtyMaster ptyMaster = new PtyMaster(command, stdOut -> handleOutput(commandSession, stdOut), (nul) -> {});
+        PtyMaster ptyMaster = PooledPtyMaster.create(
+                command,
+                stdOut -> handleOutput(commandSession, stdOut),
+                (nul) -> {},
+                shellPool);
+        Consumer<Status> complete = newStatus -> {
+            commandSession.setState(SessionState.COMPLETING);
+            flushOutput(commandSession);
+            onComplete(commandSession, logRules, digests, newStatus, invokeRequest.getCallback());
+            closeLogRules(logRulesChannel);
+            closeSessionChannels(ownChannels);
+            commandSession.closeAttached();
+            heartbeatFuture.ifPresent(heartbeat::stop);
+            sessionRegistry.done(commandSession);
+            commandScheduler.release(sessionId);
+        };
         ptyMaster.setChangeHandler((oldStatus, newStatus) -> {
             if (newStatus.isFinal()) {
-                onComplete(commandSession, newStatus, invokeRequest.getCallback());
-                heartbeatFuture.ifPresent(heartbeat::stop);
+                complete.accept(newStatus);
             }
         });
         commandSession.setPtyMaster(ptyMaster);
         sessionRegistry.put(commandSession);
 
-        ptyMaster.start();
+        boolean admitted = commandScheduler.submit(
+                commandSession,
+                ptyMaster::start,
+                () -> complete.accept(Status.INTERRUPTED));
+        if (!admitted) {
+            heartbeatFuture.ifPresent(heartbeat::stop);
+            closeLogRules(logRulesChannel);
+            closeSessionChannels(ownChannels);
+            sessionRegistry.remove(sessionId);
+            response.setStatus(429);
+            response.getWriter().write("Too many commands waiting to be started, try again later.");
+            return;
+        }
 
         //write response
         InvokeResponse invokeResponse = new InvokeResponse(sessionId);
         response.getWriter().write(objectMapper.writeValueAsString(invokeResponse));
     }
 
+    private List<Request.Header> sessionStateHeaders(CommandSession commandSession) {
+        return Collections.singletonList(
+                new Request.Header(Constants.SESSION_STATE_HEADER, commandSession.getState().name()));
+    }
+
     private void handleOutput(CommandSession commandSession, int[] stdOut) {
-        byte[] buffer = Arrays.charIntstoBytes(stdOut, StandardCharsets.UTF_8);
-        stdoutChecksum.add(buffer);
-        logMatcher.append(Arrays.charIntsToString(stdOut));
+        byte[] buffer = commandSession.getStdoutEncoder().encode(stdOut);
         commandSession.handleOutput(buffer);
     }
 
-    private void onComplete(CommandSession commandSession, Status newStatus, Request callback) {
+    private void flushOutput(CommandSession commandSession) {
+        if (commandSession.getStdoutEncoder().hasPending()) {
+            byte[] remaining = commandSession.getStdoutEncoder().flush();
+            commandSession.handleOutput(remaining);
+        }
+    }
+
+    /**
+     * The reported digest, plus MD5 when the log is uploaded, the log storage verifies the upload with it.
+     */
+    private EnumSet<DigestAlgorithm> digestAlgorithms() {
+        EnumSet<DigestAlgorithm> algorithms = EnumSet.of(outputOptions.getDigestAlgorithm());
+        if (bifrostUploaderOptions != null) {
+            algorithms.add(DigestAlgorithm.MD5);
+        }
+        return algorithms;
+    }
+
+    /**
+     * The leaves are hashed by the common pool, the drainer only copies the output to the leaf buffer.
+     */
+    private MerkleTreeDigest newOutputTree() {
+        int leafSize = outputOptions.getOutputTreeLeafSize();
+        if (leafSize <= 0) {
+            return null;
+        }
+        return new MerkleTreeDigest(leafSize, ForkJoinPool.commonPool());
+    }
+
+    private void closeLogRules(QueuedChannel logRulesChannel) {
+        try {
+            logRulesChannel.close();
+        } catch (IOException e) {
+            logger.warn("Cannot close log rules channel.", e);
+        }
+    }
+
+    private void closeSessionChannels(List<ReadOnlyChannel> ownChannels) {
+        for (ReadOnlyChannel channel : ownChannels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Cannot close session channel " + channel + ".", e);
+            }
+        }
+    }
+
+    private void onComplete(
+            CommandSession commandSession,
+            LogRuleSession logRules,
+            OutputDigestChannel digests,
+            Status newStatus,
+            Request callback) {
 
         // some requests like startSshd don't come with a callback.
         if (callback == null) {
             logger.info("No callback with the request. Skipping onComplete");
+            commandSession.setCompletion(StatusConverter.fromTermdStatus(newStatus), null);
             return;
         }
 
         TaskStatusUpdateEvent.Builder updateEventBuilder = TaskStatusUpdateEvent.newBuilder();
         updateEventBuilder.context(callback.getAttachment());
-        String md5;
         try {
-            md5 = stdoutChecksum.digest();
+            // flushes the digest queue too
             commandSession.close();
+            DigestAlgorithm digestAlgorithm = outputOptions.getDigestAlgorithm();
             updateEventBuilder
                     .taskId(commandSession.getSessionId())
-                    .newStatus(resolveStatus(newStatus))
-                    .outputChecksum(md5);
+                    .newStatus(resolveStatus(newStatus, logRules))
+                    .tags(logRules.getTags())
+                    .counters(logRules.getCounts())
+                    .outputChecksum(digests.digest(digestAlgorithm))
+                    .outputChecksumAlgorithm(digestAlgorithm.getAlgorithmName());
+            MerkleTree outputTree = digests.finishTree();
+            if (outputTree != null) {
+                commandSession.setOutputTree(outputTree);
+                updateEventBuilder.outputTreeRoot(outputTree.getRoot());
+            }
 
             if(bifrostUploaderOptions != null) {
-                uploadLogsToBifrost(md5);
+                flushFileLog();
+                uploadLogsToBifrost(digests.digest(DigestAlgorithm.MD5));
             }
+            // the file log is flushed when it is uploaded or when it is primary
+            updateEventBuilder.tags(completionTags(logRules));
         } catch (IOException e) {
             logger.error("Unable to flush stdout.", e);
             updateEventBuilder
@@ -197,9 +454,12 @@ public class HttpInvoker extends HttpServlet {
                     .message("Unable to upload logs: " + e.getMessage());
         }
 
+        TaskStatusUpdateEvent completionEvent = updateEventBuilder.build();
+        commandSession.setCompletion(completionEvent.getNewStatus(), completionEvent.getOutputChecksum());
+
         //notify completion via callback
         try {
-            String data = objectMapper.writeValueAsString(updateEventBuilder.build());
+            String data = objectMapper.writeValueAsString(completionEvent);
             authenticateCallback(callback);
             httpClient.invoke(
                     callback,
@@ -222,17 +482,54 @@ public class HttpInvoker extends HttpServlet {
         }
     }
 
-    private org.jboss.pnc.buildagent.api.Status resolveStatus(Status newStatus) {
+    /**
+     * The session must be closed first, so all the output has been matched.
+     */
+    private org.jboss.pnc.buildagent.api.Status resolveStatus(Status newStatus, LogRuleSession logRules) {
         org.jboss.pnc.buildagent.api.Status status = StatusConverter.fromTermdStatus(newStatus);
         logger.info("Build status is " + status);
-        if (status == FAILED && logMatcher.isMatched()) {
-            logger.info("Found error message in log, changing status from FAILED to SYSTEM_ERROR");
-            status = SYSTEM_ERROR;
+        return logRules.resolveStatus(status);
+    }
+
+    /**
+     * The upload reads the log file, it must be complete also when the file sink is not primary.
+     */
+    private void flushFileLog() throws IOException {
+        for (ReadOnlyChannel readOnlyChannel : readOnlyChannels) {
+            if (!readOnlyChannel.isPrimary()
+                    && readOnlyChannel instanceof QueuedChannel
+                    && ((QueuedChannel) readOnlyChannel).getDelegate() instanceof IoFileLogger) {
+                readOnlyChannel.flush();
+            }
+        }
+    }
+
+    /**
+     * The tags of the log rules, plus {@link Constants#LOG_TRUNCATED_TAG} when the file log does not keep all the
+     * output, its content does not match the output checksum then.
+     */
+    private Set<String> completionTags(LogRuleSession logRules) {
+        long removedBytes = 0;
+        for (ReadOnlyChannel readOnlyChannel : readOnlyChannels) {
+            ReadOnlyChannel delegate = readOnlyChannel instanceof QueuedChannel
+                    ? ((QueuedChannel) readOnlyChannel).getDelegate()
+                    : readOnlyChannel;
+            if (delegate instanceof IoFileLogger) {
+                removedBytes += ((IoFileLogger) delegate).getRemovedBytes();
+            }
+        }
+        Set<String> tags = logRules.getTags();
+        if (removedBytes > 0) {
+            logger.warn("The file log does not keep {} bytes of the output.", removedBytes);
+            tags.add(Constants.LOG_TRUNCATED_TAG);
         }
-        return status;
+        return tags;
     }
 
-    private void uploadLogsToBifrost(String md5) {
+    /**
+     * @param md5 digest of the output, used when the log is not rotated
+     */
+    private void uploadLogsToBifrost(String md5) throws IOException {
         BifrostLogUploader logUploader = null;
         if (ldapClient != null) {
             logUploader = new BifrostLogUploader(URI.create(bifrostUploaderOptions.getBifrostURL()),
@@ -257,7 +554,24 @@ public class HttpInvoker extends HttpServlet {
                 .tmp(mdc.get(MDCKeys.TMP_KEY))
                 .requestContext(mdc.get(MDCKeys.REQUEST_CONTEXT_KEY))
                 .build();
-        logUploader.uploadFile(bifrostUploaderOptions.getLogPath().toFile(), logMetadata, md5);
+        Path logPath = bifrostUploaderOptions.getLogPath();
+        if (RotatedLog.isRotated(logPath)) {
+            // the uploader reads a plain file, the storage verifies it with the digest of the kept segments
+            OutputDigest keptDigest;
+            try {
+                keptDigest = DigestAlgorithm.MD5.newDigest();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("Cannot compute the log digest.", e);
+            }
+            Path decompressed = RotatedLog.decompressToTempFile(logPath, keptDigest);
+            try {
+                logUploader.uploadFile(decompressed.toFile(), logMetadata, keptDigest.digest());
+            } finally {
+                Files.deleteIfExists(decompressed);
+            }
+        } else {
+            logUploader.uploadFile(logPath.toFile(), logMetadata, md5);
+        }
     }
 
     private void authenticateCallback(Request original) {
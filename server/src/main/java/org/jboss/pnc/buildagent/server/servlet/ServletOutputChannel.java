@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.pnc.buildagent.server.servlet;
+
+import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Output followed over an asynchronous servlet response as chunked text. The writes block, the channel is used behind
+ * a {@link org.jboss.pnc.buildagent.server.output.QueuedChannel} so they never block the producer.
+ */
+class ServletOutputChannel implements ReadOnlyChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServletOutputChannel.class);
+
+    private final AsyncContext asyncContext;
+
+    private final Runnable onDisconnect;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param onDisconnect called once when the client is gone, the response is completed afterwards
+     */
+    ServletOutputChannel(AsyncContext asyncContext, Runnable onDisconnect) {
+        this.asyncContext = asyncContext;
+        this.onDisconnect = onDisconnect;
+    }
+
+    @Override
+    public void writeOutput(byte[] buffer) {
+        if (closed.get()) {
+            return;
+        }
+        try {
+            asyncContext.getResponse().getOutputStream().write(buffer);
+            asyncContext.getResponse().getOutputStream().flush();
+        } catch (IOException e) {
+            logger.debug("Cannot write the output, the client disconnected.", e);
+            if (closed.compareAndSet(false, true)) {
+                onDisconnect.run();
+                asyncContext.complete();
+            }
+        }
+    }
+
+    @Override
+    public boolean isPrimary() {
+        return false;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            asyncContext.complete();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.termserver;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import org.jboss.pnc.buildagent.api.Constants;
+import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.jboss.pnc.buildagent.server.output.SendWindow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSinkChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Output followed over a plain http response, as chunked text or as server-sent events. The writes do not block the
+ * IO thread, the data not yet written to the connection is limited by the send window, so the backpressure
+ * propagates to the {@link org.jboss.pnc.buildagent.server.output.QueuedChannel} of the subscriber.
+ *
+ * Each event carries one output chunk, the data of the consecutive events is concatenated without a separator. The
+ * event id is the offset of the next output byte, the client reconnects with it in the Last-Event-ID header. Once
+ * the queue dropped some output the offsets are no longer known and the ids are not sent. The data lines are split
+ * on CR, LF and CRLF, the line terminators of the event stream, so the client gets them as LF. A client which needs
+ * the exact bytes (eg. the carriage returns of the progress redraws) uses the chunked text.
+ */
+public class HttpStreamChannel implements ReadOnlyChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpStreamChannel.class);
+
+    private static final HttpString OUTPUT_OFFSET_HEADER = new HttpString(Constants.OUTPUT_OFFSET_HEADER);
+
+    private static final byte[] ID = "id: ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DATA = "data: ".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServerExchange exchange;
+
+    private final boolean eventStream;
+
+    private final SendWindow sendWindow;
+
+    private final Runnable onClose;
+
+    private StreamSinkChannel sink;
+
+    /**
+     * Offset of the next output byte, updated by the single writer.
+     */
+    private long nextOffset;
+
+    private volatile LongSupplier droppedBytes = () -> 0;
+
+    /**
+     * The data handed to the IO thread, accessed from the IO thread only.
+     */
+    private final Deque<Pending> pending = new ArrayDeque<>();
+
+    private boolean closing;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param eventStream true for server-sent events, false for chunked text
+     * @param onClose called once when the response ends or the connection is lost
+     */
+    public HttpStreamChannel(HttpServerExchange exchange, boolean eventStream, SendWindow sendWindow, Runnable onClose) {
+        this.exchange = exchange;
+        this.eventStream = eventStream;
+        this.sendWindow = sendWindow;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Sends the response headers, the output written next starts at the given offset.
+     */
+    public void start(long offset) {
+        nextOffset = offset;
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE,
+                eventStream ? Constants.EVENT_STREAM_CONTENT_TYPE : "text/plain; charset=UTF-8");
+        exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "no-cache");
+        exchange.getResponseHeaders().put(OUTPUT_OFFSET_HEADER, offset);
+        exchange.addExchangeCompleteListener((completed, nextListener) -> {
+            closed();
+            nextListener.proceed();
+        });
+        exchange.getConnection().addCloseListener(connection -> closed());
+        sink = exchange.getResponseChannel();
+        sink.getWriteSetter().set(channel -> writePending());
+        sink.getIoThread().execute(this::writePending);
+    }
+
+    /**
+     * @param droppedBytes number of bytes the queue of this channel dropped
+     */
+    public void setDroppedBytes(LongSupplier droppedBytes) {
+        this.droppedBytes = droppedBytes;
+    }
+
+    @Override
+    public void writeOutput(byte[] buffer) {
+        if (!sendWindow.acquire(buffer.length, sink::isOpen)) {
+            log.debug("Connection closed, dropping {} bytes.", buffer.length);
+            return;
+        }
+        nextOffset += buffer.length;
+        ByteBuffer data;
+        if (eventStream) {
+            data = event(buffer, droppedBytes.getAsLong() == 0 ? nextOffset : -1);
+        } else {
+            data = ByteBuffer.wrap(buffer);
+        }
+        sink.getIoThread().execute(() -> {
+            pending.add(new Pending(data, buffer.length));
+            writePending();
+        });
+    }
+
+    private void writePending() {
+        if (closed.get()) {
+            releasePending();
+            return;
+        }
+        try {
+            while (!pending.isEmpty()) {
+                Pending next = pending.peek();
+                sink.write(next.data);
+                if (next.data.hasRemaining()) {
+                    sink.resumeWrites();
+                    return;
+                }
+                pending.poll();
+                sendWindow.release(next.bytes);
+            }
+            if (!sink.flush()) {
+                sink.resumeWrites();
+                return;
+            }
+            sink.suspendWrites();
+            if (closing) {
+                exchange.endExchange();
+            }
+        } catch (IOException e) {
+            log.debug("Cannot write the output to {}, closing the connection.", exchange.getSourceAddress(), e);
+            releasePending();
+            IoUtils.safeClose(exchange.getConnection());
+            closed();
+        }
+    }
+
+    private void releasePending() {
+        Pending dropped;
+        while ((dropped = pending.poll()) != null) {
+            sendWindow.release(dropped.bytes);
+        }
+    }
+
+    private void closed() {
+        if (closed.compareAndSet(false, true)) {
+            onClose.run();
+        }
+    }
+
+    static ByteBuffer event(byte[] buffer, long id) {
+        ByteArrayOutputStream event = new ByteArrayOutputStream(buffer.length + 32);
+        if (id >= 0) {
+            event.write(ID, 0, ID.length);
+            byte[] offset = Long.toString(id).getBytes(StandardCharsets.UTF_8);
+            event.write(offset, 0, offset.length);
+            event.write('\n');
+        }
+        int lineStart = 0;
+        for (int i = 0; i < buffer.length; i++) {
+            if (buffer[i] == '\n' || buffer[i] == '\r') {
+                dataLine(event, buffer, lineStart, i);
+                if (buffer[i] == '\r' && i + 1 < buffer.length && buffer[i + 1] == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        dataLine(event, buffer, lineStart, buffer.length);
+        event.write('\n');
+        return ByteBuffer.wrap(event.toByteArray());
+    }
+
+    private static void dataLine(ByteArrayOutputStream event, byte[] buffer, int from, int to) {
+        event.write(DATA, 0, DATA.length);
+        event.write(buffer, from, to - from);
+        event.write('\n');
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    @Override
+    public boolean isPrimary() {
+        return false;
+    }
+
+    /**
+     * The output handed to the IO thread is written as soon as the connection allows.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Ends the response once the pending output is written.
+     */
+    @Override
+    public void close() {
+        if (sink == null || closed.get()) {
+            return;
+        }
+        sink.getIoThread().execute(() -> {
+            closing = true;
+            writePending();
+        });
+    }
+
+    private static class Pending {
+        private final ByteBuffer data;
+        private final int bytes;
+
+        Pending(ByteBuffer data, int bytes) {
+            this.data = data;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.termserver;
+
+import io.termd.core.pty.PtyMaster;
+import io.termd.core.readline.Function;
+import io.termd.core.readline.Keymap;
+import io.termd.core.readline.Readline;
+import io.termd.core.tty.TtyConnection;
+import io.termd.core.tty.TtyEvent;
+import io.termd.core.util.Helper;
+import org.jboss.pnc.buildagent.server.pty.PooledPtyMaster;
+import org.jboss.pnc.buildagent.server.pty.WarmShellPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Same as the termd {@link io.termd.core.pty.TtyBridge}, the commands read from the terminal are run in the shells
+ * of the pool.
+ */
+public class PooledTtyBridge {
+
+    private final Logger log = LoggerFactory.getLogger(PooledTtyBridge.class);
+
+    private final TtyConnection conn;
+    private final WarmShellPool shellPool;
+    private Consumer<PtyMaster> processListener;
+    private Consumer<int[]> processStdoutListener;
+    private Consumer<String> processStdinListener;
+
+    public PooledTtyBridge(TtyConnection conn, WarmShellPool shellPool) {
+        this.conn = conn;
+        this.shellPool = shellPool;
+    }
+
+    public PooledTtyBridge setProcessListener(Consumer<PtyMaster> processListener) {
+        this.processListener = processListener;
+        return this;
+    }
+
+    public PooledTtyBridge setProcessStdoutListener(Consumer<int[]> processStdoutListener) {
+        this.processStdoutListener = processStdoutListener;
+        return this;
+    }
+
+    public PooledTtyBridge setProcessStdinListener(Consumer<String> processStdinListener) {
+        this.processStdinListener = processStdinListener;
+        return this;
+    }
+
+    public PooledTtyBridge readline() {
+        InputStream inputrc = Keymap.class.getResourceAsStream("inputrc");
+        Keymap keymap = new Keymap(inputrc);
+        Readline readline = new Readline(keymap);
+        for (Function function : Helper.loadServices(Thread.currentThread().getContextClassLoader(), Function.class)) {
+            log.trace("Server is adding function to readline: {}", function);
+            readline.addFunction(function);
+        }
+        conn.setTerminalTypeHandler(term -> {});
+        conn.stdoutHandler().accept(Helper.toCodePoints("Welcome sir\n"));
+        read(conn, readline);
+        return this;
+    }
+
+    private void read(TtyConnection conn, Readline readline) {
+        readline.readline(conn, "%", line -> onNewLine(conn, readline, line));
+    }
+
+    private void onNewLine(TtyConnection conn, Readline readline, String line) {
+        if (processStdinListener != null) {
+            processStdinListener.accept(line);
+        }
+        if (line == null) {
+            conn.close();
+            return;
+        }
+        PtyMaster task = PooledPtyMaster.create(
+                line,
+                buffer -> onStdOut(conn, buffer),
+                empty -> doneHandler(conn, readline),
+                shellPool);
+        conn.setEventHandler((event, key) -> {
+            if (event == TtyEvent.INTR) {
+                task.interruptProcess();
+            }
+        });
+        if (processListener != null) {
+            processListener.accept(task);
+        }
+        task.start();
+    }
+
+    private void doneHandler(TtyConnection conn, Readline readline) {
+        conn.setEventHandler(null);
+        conn.execute(() -> read(conn, readline));
+    }
+
+    private void onStdOut(TtyConnection conn, int[] buffer) {
+        conn.execute(() -> conn.stdoutHandler().accept(buffer));
+        if (processStdoutListener != null) {
+            processStdoutListener.accept(buffer);
+        }
+    }
+}
@@ -18,9 +18,13 @@
 
 package org.jboss.pnc.buildagent.server.termserver;
 
+import io.undertow.websockets.core.WebSocketCallback;
 import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.core.WebSockets;
 import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.jboss.pnc.buildagent.server.output.SendWindow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -30,15 +34,42 @@ import java.nio.ByteBuffer;
  */
 public class ReadOnlyWebSocketChannel implements ReadOnlyChannel {
 
+    private static final Logger log = LoggerFactory.getLogger(ReadOnlyWebSocketChannel.class);
+
     private WebSocketChannel webSocketChannel;
 
+    /**
+     * Undertow queues unsent frames without a limit, the window blocks the writer instead.
+     */
+    private final SendWindow sendWindow;
+
     public ReadOnlyWebSocketChannel(WebSocketChannel webSocketChannel) {
+        this(webSocketChannel, new SendWindow(SendWindow.DEFAULT_MAX_IN_FLIGHT_BYTES));
+    }
+
+    public ReadOnlyWebSocketChannel(WebSocketChannel webSocketChannel, SendWindow sendWindow) {
         this.webSocketChannel = webSocketChannel;
+        this.sendWindow = sendWindow;
     }
 
     @Override
     public void writeOutput(byte[] buffer) {
-        WebSockets.sendBinary(ByteBuffer.wrap(buffer), webSocketChannel, null);
+        if (!sendWindow.acquire(buffer.length, webSocketChannel::isOpen)) {
+            log.debug("Connection closed, dropping {} bytes.", buffer.length);
+            return;
+        }
+        WebSockets.sendBinary(ByteBuffer.wrap(buffer), webSocketChannel, new WebSocketCallback<Void>() {
+            @Override
+            public void complete(WebSocketChannel channel, Void context) {
+                sendWindow.release(buffer.length);
+            }
+
+            @Override
+            public void onError(WebSocketChannel channel, Void context, Throwable throwable) {
+                sendWindow.release(buffer.length);
+                log.error("Error sending to WebSocket channel.", throwable);
+            }
+        });
     }
 
     @Override
@@ -23,6 +23,7 @@ import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.core.WebSockets;
 import org.jboss.pnc.buildagent.common.StringLiner;
 import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.jboss.pnc.buildagent.server.output.SendWindow;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,8 +40,18 @@ public class ReadOnlyWebSocketTextChannel implements ReadOnlyChannel {
     private WebSocketChannel webSocketChannel;
     private final StringLiner stringLiner = new StringLiner();
 
+    /**
+     * Undertow queues unsent frames without a limit, the window blocks the writer instead.
+     */
+    private final SendWindow sendWindow;
+
     public ReadOnlyWebSocketTextChannel(WebSocketChannel webSocketChannel) {
+        this(webSocketChannel, new SendWindow(SendWindow.DEFAULT_MAX_IN_FLIGHT_BYTES));
+    }
+
+    public ReadOnlyWebSocketTextChannel(WebSocketChannel webSocketChannel, SendWindow sendWindow) {
         this.webSocketChannel = webSocketChannel;
+        this.sendWindow = sendWindow;
     }
 
     @Override
@@ -51,7 +62,12 @@ public class ReadOnlyWebSocketTextChannel implements ReadOnlyChannel {
         String line;
         while ((line = stringLiner.nextLine()) != null) {
             log.trace("Sending message [{}]", line);
-            WebSockets.sendText(line, webSocketChannel, new WebSocketCallbackHandler());
+            int size = line.length();
+            if (!sendWindow.acquire(size, webSocketChannel::isOpen)) {
+                log.debug("Connection closed, dropping message.");
+                continue;
+            }
+            WebSockets.sendText(line, webSocketChannel, new WebSocketCallbackHandler(sendWindow, size));
         }
     }
 
@@ -71,12 +87,22 @@ public class ReadOnlyWebSocketTextChannel implements ReadOnlyChannel {
     }
 
     private static class WebSocketCallbackHandler implements WebSocketCallback  {
+        private final SendWindow sendWindow;
+        private final int size;
+
+        WebSocketCallbackHandler(SendWindow sendWindow, int size) {
+            this.sendWindow = sendWindow;
+            this.size = size;
+        }
+
         @Override
         public void complete(WebSocketChannel webSocketChannel, Object o) {
+            sendWindow.release(size);
         }
 
         @Override
         public void onError(WebSocketChannel webSocketChannel, Object o, Throwable throwable) {
+            sendWindow.release(size);
             log.error("Error sending to WebSocket channel.", throwable);
         }
     }
@@ -0,0 +1,185 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.termserver;
+
+import io.undertow.websockets.core.WebSocketCallback;
+import io.undertow.websockets.core.WebSocketChannel;
+import io.undertow.websockets.core.WebSockets;
+import org.jboss.pnc.buildagent.api.Constants;
+import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.jboss.pnc.buildagent.server.output.ScrollbackBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Binary web socket connection resumed from an output offset. The output is not queued, the connection reads it from
+ * the scrollback buffer one frame at a time, so nothing is dropped while the client keeps up with the buffer. Each
+ * frame starts with the offset of its first output byte, the client reconnects from the offset after the last
+ * received byte.
+ */
+public class ResumableWebSocketChannel implements ReadOnlyChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableWebSocketChannel.class);
+
+    static final int MAX_FRAME_SIZE = 64 * 1024;
+
+    private final WebSocketChannel webSocketChannel;
+
+    private final ScrollbackBuffer scrollback;
+
+    /**
+     * Offset of the next byte to send.
+     */
+    private volatile long nextOffset;
+
+    /**
+     * Set while a frame is being sent or the loop is reading the next one, the writers skip the wake up then.
+     */
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    /**
+     * Set by the loop while it hands a frame to the connection, accessed from the IO thread only.
+     */
+    private boolean handingOver;
+
+    /**
+     * Set when the frame was sent before the hand over returned, the loop then sends the next one instead of the
+     * callback. Accessed from the IO thread only.
+     */
+    private boolean sentDuringHandOver;
+
+    /**
+     * @param from offset of the first byte to send, it must not be after the end of the output
+     */
+    public ResumableWebSocketChannel(WebSocketChannel webSocketChannel, ScrollbackBuffer scrollback, long from) {
+        long written = scrollback.getWritten();
+        if (from > written) {
+            throw new IllegalArgumentException("Offset " + from + " is after the end of the output " + written + ".");
+        }
+        this.webSocketChannel = webSocketChannel;
+        this.scrollback = scrollback;
+        this.nextOffset = from;
+    }
+
+    /**
+     * Closes the resumed connection with {@link Constants#OUTPUT_OFFSET_REJECTED_CLOSE_CODE}, the client does not
+     * retry.
+     */
+    public static void reject(WebSocketChannel webSocketChannel, String reason) {
+        log.info("Rejecting resumed connection from {}. {}", webSocketChannel.getSourceAddress(), reason);
+        WebSockets.sendClose(Constants.OUTPUT_OFFSET_REJECTED_CLOSE_CODE, reason, webSocketChannel, null);
+    }
+
+    /**
+     * Sends the output written so far.
+     */
+    public void start() {
+        webSocketChannel.getIoThread().execute(this::sendNext);
+    }
+
+    /**
+     * The output is already in the scrollback buffer, the connection is only woken up.
+     */
+    @Override
+    public void writeOutput(byte[] buffer) {
+        if (!sending.get()) {
+            webSocketChannel.getIoThread().execute(this::sendNext);
+        }
+    }
+
+    private void sendNext() {
+        if (sending.compareAndSet(false, true)) {
+            sendLoop();
+        }
+    }
+
+    /**
+     * Sends the frames until the output is sent or a frame is not sent immediately, its callback continues then.
+     * Runs on the IO thread with the sending flag set, the buffer is read through its own lock only.
+     */
+    private void sendLoop() {
+        while (webSocketChannel.isOpen()) {
+            ScrollbackBuffer.Chunk chunk = scrollback.readKept(nextOffset, MAX_FRAME_SIZE);
+            long offset = chunk.getOffset();
+            byte[] bytes = chunk.getBytes();
+            if (bytes.length == 0) {
+                sending.set(false);
+                if (scrollback.getWritten() > nextOffset && sending.compareAndSet(false, true)) {
+                    // written after the read, its wake up was skipped while sending
+                    continue;
+                }
+                return;
+            }
+            if (offset > nextOffset) {
+                log.warn("Output from offset {} to {} is no longer kept, the client was too slow.", nextOffset, offset);
+            }
+            ByteBuffer header = ByteBuffer.allocate(Constants.OUTPUT_OFFSET_LENGTH);
+            header.putLong(0, offset);
+            ByteBuffer[] frame = new ByteBuffer[] { header, ByteBuffer.wrap(bytes) };
+            handingOver = true;
+            sentDuringHandOver = false;
+            WebSockets.sendBinary(frame, webSocketChannel, new WebSocketCallback<Void>() {
+                @Override
+                public void complete(WebSocketChannel channel, Void context) {
+                    nextOffset = offset + bytes.length;
+                    if (handingOver) {
+                        sentDuringHandOver = true;
+                    } else {
+                        sendLoop();
+                    }
+                }
+
+                @Override
+                public void onError(WebSocketChannel channel, Void context, Throwable throwable) {
+                    sending.set(false);
+                    log.error("Error sending to WebSocket channel.", throwable);
+                }
+            });
+            handingOver = false;
+            if (!sentDuringHandOver) {
+                return;
+            }
+        }
+        sending.set(false);
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    @Override
+    public boolean isPrimary() {
+        return false;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        webSocketChannel.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        webSocketChannel.sendClose();
+    }
+}
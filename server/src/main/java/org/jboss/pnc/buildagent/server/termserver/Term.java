@@ -22,31 +22,49 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.termd.core.pty.PtyMaster;
 import io.termd.core.pty.Status;
-import io.termd.core.pty.TtyBridge;
 import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import io.undertow.util.StatusCodes;
 import io.undertow.websockets.WebSocketConnectionCallback;
 import io.undertow.websockets.WebSocketProtocolHandshakeHandler;
 import io.undertow.websockets.core.CloseMessage;
 import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.core.WebSockets;
+import io.undertow.websockets.spi.WebSocketHttpExchange;
+import org.jboss.pnc.buildagent.api.Constants;
 import org.jboss.pnc.buildagent.api.ResponseMode;
 import org.jboss.pnc.buildagent.api.TaskStatusUpdateEvent;
-import org.jboss.pnc.buildagent.common.Arrays;
-import org.jboss.pnc.buildagent.common.function.ThrowingConsumer;
-import org.jboss.pnc.buildagent.common.security.Md5;
+import org.jboss.pnc.buildagent.common.Utf8Encoder;
+import org.jboss.pnc.buildagent.common.security.DigestAlgorithm;
 import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.jboss.pnc.buildagent.server.output.FlushCoordinator;
+import org.jboss.pnc.buildagent.server.output.OutputDigestChannel;
+import org.jboss.pnc.buildagent.server.output.OutputOptions;
+import org.jboss.pnc.buildagent.server.output.QueuedChannel;
+import org.jboss.pnc.buildagent.server.output.ScrollbackBuffer;
+import org.jboss.pnc.buildagent.server.output.SendWindow;
+import org.jboss.pnc.buildagent.server.output.SinkStats;
+import org.jboss.pnc.buildagent.server.pty.WarmShellPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
@@ -56,6 +74,8 @@ public class Term {
 
     private Logger log = LoggerFactory.getLogger(Term.class);
 
+    private static final HttpString LAST_EVENT_ID = new HttpString("Last-Event-ID");
+
     final String context;
     private Runnable onDestroy;
     final Set<TaskStatusUpdateListener> statusUpdateListeners = new CopyOnWriteArraySet<>();
@@ -63,34 +83,100 @@ public class Term {
     private boolean activeCommand;
 
     CompleteHandler completeHandle = new CompleteHandler();
-    private Md5 stdoutChecksum;
+    /**
+     * Digest of the output, updated by the drainer thread of its own queue.
+     */
+    private final OutputDigestChannel outputDigest;
+    private final QueuedChannel outputDigestChannel;
+    private final Utf8Encoder stdoutEncoder = new Utf8Encoder();
 
 
     private final Set<ReadOnlyChannel> readOnlyChannels = new CopyOnWriteArraySet<>();
 
+    /**
+     * Read only web socket connections of this term, each is wrapped in its own output queue.
+     */
+    private final Set<QueuedChannel> webSocketChannels = new CopyOnWriteArraySet<>();
+
+    /**
+     * Http connections following the output, each is wrapped in its own output queue.
+     */
+    private final Set<QueuedChannel> outputStreams = new CopyOnWriteArraySet<>();
+
+    /**
+     * Tail of the output for the read only connections joining a running command.
+     */
+    private final ScrollbackBuffer scrollback;
+
+    /**
+     * Held while the output is written to the scrollback and the read only channels, and while a channel is attached,
+     * so the channel gets the output without a gap. The writes may block on the full channel queues, the lock is never
+     * taken on an IO thread. The scrollback has its own lock for the readers.
+     */
+    private final Object outputLock = new Object();
+
+    private final OutputOptions outputOptions;
+
+    private final WarmShellPool shellPool;
+
+    private final ScheduledExecutorService executor;
+
     public Term(String context, Runnable onDestroy, ScheduledExecutorService executor, Set<ReadOnlyChannel> readOnlyChannels) {
+        this(context, onDestroy, executor, readOnlyChannels, OutputOptions.defaults());
+    }
+
+    public Term(
+            String context,
+            Runnable onDestroy,
+            ScheduledExecutorService executor,
+            Set<ReadOnlyChannel> readOnlyChannels,
+            OutputOptions outputOptions) {
+        this(context, onDestroy, executor, readOnlyChannels, outputOptions, WarmShellPool.disabled());
+    }
+
+    /**
+     * @param shellPool the commands are started in the shells of the pool
+     */
+    public Term(
+            String context,
+            Runnable onDestroy,
+            ScheduledExecutorService executor,
+            Set<ReadOnlyChannel> readOnlyChannels,
+            OutputOptions outputOptions,
+            WarmShellPool shellPool) {
         this.context = context;
         this.onDestroy = onDestroy;
+        this.outputOptions = outputOptions;
+        this.shellPool = shellPool;
+        this.executor = executor;
+        this.scrollback = new ScrollbackBuffer(outputOptions.getScrollbackSize());
         this.readOnlyChannels.addAll(readOnlyChannels);
 
         Runnable onStdOutCompleted = () -> {
             completeHandle.setStdoutCompletedAndRun();
         };
-        webSocketTtyConnection = new WebSocketTtyConnection(executor, onStdOutCompleted);
+        webSocketTtyConnection = new WebSocketTtyConnection(executor, onStdOutCompleted, outputOptions.getScrollbackSize());
         try {
-            stdoutChecksum = new Md5();
+            outputDigest = new OutputDigestChannel(EnumSet.of(outputOptions.getDigestAlgorithm()));
         } catch (NoSuchAlgorithmException e) {
-            log.error("Cannot instantiate new Term.", e);
+            throw new IllegalStateException("Cannot instantiate new Term, the output digest is not available.", e);
         }
+        outputDigestChannel = outputOptions.queued(OutputOptions.DIGEST_SINK, "digest-" + context, outputDigest);
         log.debug("Created new Term: {}.", this);
     }
 
     private volatile Boolean ttyBridgeInitialized = false;
 
+    /**
+     * A newer Term can be registered under the same context once this one is destroyed, it must not be removed by the
+     * close tasks of the connections of this one.
+     */
+    private final AtomicBoolean destroyed = new AtomicBoolean();
+
     private void initializeTtyBridge() {
         synchronized (this) {
             if (!ttyBridgeInitialized) {
-                TtyBridge ttyBridge = new TtyBridge(webSocketTtyConnection);
+                PooledTtyBridge ttyBridge = new PooledTtyBridge(webSocketTtyConnection, shellPool);
                 ttyBridge
                     .setProcessListener(onTaskCreated())
                     .setProcessStdoutListener(ints -> onStdOut(ints))
@@ -117,32 +203,52 @@ public class Term {
             ptyMaster.setChangeHandler((oldStatus, newStatus) -> {
                 String logDigest;
                 if (newStatus.isFinal()) {
+                    flushStdOutEncoder();
                     writeCompletedToReadonlyChannel(newStatus);
-                    logDigest = stdoutChecksum.digest();
+                    logDigest = digestOutput();
                 } else {
                     logDigest = "";
                 }
                 notifyStatusUpdated(
-                        new TaskStatusUpdateEvent(
-                                "" + ptyMaster.getId(),
-                                StatusConverter.fromTermdStatus(oldStatus),
-                                StatusConverter.fromTermdStatus(newStatus),
-                                context,
-                                logDigest)
+                        TaskStatusUpdateEvent.newBuilder()
+                                .taskId("" + ptyMaster.getId())
+                                .oldStatus(StatusConverter.fromTermdStatus(oldStatus))
+                                .newStatus(StatusConverter.fromTermdStatus(newStatus))
+                                .context(context)
+                                .outputChecksum(logDigest)
+                                .outputChecksumAlgorithm(outputOptions.getDigestAlgorithm().getAlgorithmName())
+                                .message("")
+                                .build()
                 );
             });
         };
     }
 
+    /**
+     * Waits for the digest queue to catch up with the output, the digest is reset for the next command.
+     */
+    private String digestOutput() {
+        DigestAlgorithm algorithm = outputOptions.getDigestAlgorithm();
+        try {
+            outputDigestChannel.flush();
+        } catch (IOException e) {
+            log.error("Cannot compute output " + algorithm.getAlgorithmName() + " digest.", e);
+            outputDigest.digest(algorithm);
+            return "";
+        }
+        return outputDigest.digest(algorithm);
+    }
+
     void notifyStatusUpdated(TaskStatusUpdateEvent event) {
         if (event.getNewStatus().isFinal()) {
             activeCommand = false;
             log.debug("Command [context:{} taskId:{}] execution completed with status {}.", event.getContext(), event.getTaskId(), event.getNewStatus());
 
             try {
-                readOnlyChannels.stream()
-                        .filter(ch -> ch.isPrimary())
-                        .forEach(ThrowingConsumer.wrap(ch -> ch.flush()));
+                List<ReadOnlyChannel> primaryChannels = readOnlyChannels.stream()
+                        .filter(ReadOnlyChannel::isPrimary)
+                        .collect(Collectors.toList());
+                FlushCoordinator.shared().flushAll(primaryChannels, outputOptions.getDrainTimeoutMillis());
             } catch (Exception e) {
                 log.error("Cannot flush primary RO channel.", e);
                 event = TaskStatusUpdateEvent.newBuilder()
@@ -179,40 +285,65 @@ public class Term {
     }
 
     private void destroyIfInactiveAndDisconnected() {
-        if (!activeCommand && !webSocketTtyConnection.isOpen()) {
+        if (!activeCommand && !webSocketTtyConnection.isOpen() && destroyed.compareAndSet(false, true)) {
             log.info("Destroying Term as there is no running command and no active connection.");
+            outputDigestChannel.stop();
+            closeOutputStreams();
             onDestroy.run();
         }
     }
 
     public HttpHandler getWebSocketHandler(ResponseMode responseMode, boolean readOnly) {
         WebSocketConnectionCallback onWebSocketConnected = (exchange, webSocketChannel) -> {
+            Long from = resumeFrom(exchange);
+            long written = readOnly ? scrollback.getWritten() : webSocketTtyConnection.getWritten();
+            if (from != null && from > written) {
+                // the output was sent by another Term of the same context, it is not here
+                ResumableWebSocketChannel.reject(webSocketChannel, "Offset " + from + " is after the end of the output " + written + ".");
+                return;
+            }
             if (!readOnly) {
                 if (webSocketTtyConnection.isOpen()) {
                     rejectDueToAlreadyActive(webSocketChannel);
                     return;
                 }
                 log.info("Adding new master connection from remote address {} to context [{}].", webSocketChannel.getSourceAddress().toString(), context);
-                webSocketTtyConnection.setWebSocketChannel(webSocketChannel, responseMode);
+                webSocketTtyConnection.setWebSocketChannel(webSocketChannel, responseMode, from);
                 webSocketChannel.addCloseTask((task) -> {
                     log.debug("Master connection closed.");
                     webSocketTtyConnection.removeWebSocketChannel();
                     destroyIfInactiveAndDisconnected();
                 });
                 initializeTtyBridge();
+            } else if (from != null && ResponseMode.BINARY.equals(responseMode) && scrollback.getCapacity() > 0) {
+                log.info("Resuming readonly binary consumer connection from remote address {} to context [{}] from offset {}.", webSocketChannel.getSourceAddress().toString(), context, from);
+                ResumableWebSocketChannel readOnlyChannel = new ResumableWebSocketChannel(webSocketChannel, scrollback, from);
+                readOnlyChannels.add(readOnlyChannel);
+                readOnlyChannel.start();
+                webSocketChannel.addCloseTask((task) -> {
+                    log.debug("Removing RO channel: {}.", readOnlyChannel);
+                    readOnlyChannels.remove(readOnlyChannel);
+                    destroyIfInactiveAndDisconnected();
+                });
             } else {
-                ReadOnlyChannel readOnlyChannel;
+                ReadOnlyChannel webSocketReadOnlyChannel;
+                SendWindow sendWindow = new SendWindow(outputOptions.getWebSocketSendWindow());
                 if (responseMode.equals(ResponseMode.TEXT)) {
                     log.info("Adding new readonly text consumer connection from remote address {} to context [{}].", webSocketChannel.getSourceAddress().toString(), context);
-                    readOnlyChannel = new ReadOnlyWebSocketTextChannel(webSocketChannel);
+                    webSocketReadOnlyChannel = new ReadOnlyWebSocketTextChannel(webSocketChannel, sendWindow);
                 } else {
                     log.info("Adding new readonly binary consumer connection from remote address {} to context [{}].", webSocketChannel.getSourceAddress().toString(), context);
-                    readOnlyChannel = new ReadOnlyWebSocketChannel(webSocketChannel);
+                    webSocketReadOnlyChannel = new ReadOnlyWebSocketChannel(webSocketChannel, sendWindow);
                 }
-                readOnlyChannels.add(readOnlyChannel);
+                String name = "ws" + context + "@" + webSocketChannel.getSourceAddress();
+                QueuedChannel readOnlyChannel = outputOptions.queued(OutputOptions.WEBSOCKET_SINK, name, webSocketReadOnlyChannel);
+                webSocketChannels.add(readOnlyChannel);
+                executor.execute(() -> attachWithScrollback(readOnlyChannel, webSocketChannel));
                 webSocketChannel.addCloseTask((task) -> {
                     log.debug("Removing RO channel: {}.", readOnlyChannel);
                     readOnlyChannels.remove(readOnlyChannel);
+                    webSocketChannels.remove(readOnlyChannel);
+                    readOnlyChannel.stop();
                     destroyIfInactiveAndDisconnected();
                 });
             }
@@ -220,6 +351,115 @@ public class Term {
         return new WebSocketProtocolHandshakeHandler(onWebSocketConnected);
     }
 
+    /**
+     * @return the output offset the client resumes from, null when the connection is not resumed
+     */
+    private Long resumeFrom(WebSocketHttpExchange exchange) {
+        List<String> from = exchange.getRequestParameters().get(Constants.OUTPUT_OFFSET_PARAMETER);
+        if (from == null || from.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(from.get(0));
+        } catch (NumberFormatException e) {
+            log.warn("Invalid output offset {}, the connection is not resumed.", from.get(0));
+            return null;
+        }
+    }
+
+    /**
+     * Follows the output over a plain http response, see {@link Constants#OUTPUT_STREAM_PATH}. The connection is a
+     * read only channel with its own output queue, the response is written without blocking the IO thread.
+     */
+    public HttpHandler getOutputStreamHandler() {
+        return exchange -> {
+            Long from;
+            Long tail;
+            try {
+                from = longParameter(exchange, Constants.OUTPUT_OFFSET_PARAMETER);
+                tail = longParameter(exchange, Constants.OUTPUT_TAIL_PARAMETER);
+            } catch (NumberFormatException e) {
+                exchange.setStatusCode(StatusCodes.BAD_REQUEST);
+                exchange.getResponseSender().send("Invalid number: " + e.getMessage());
+                return;
+            }
+            String accept = exchange.getRequestHeaders().getFirst(Headers.ACCEPT);
+            boolean eventStream = accept != null && accept.contains(Constants.EVENT_STREAM_CONTENT_TYPE);
+            String lastEventId = exchange.getRequestHeaders().getFirst(LAST_EVENT_ID);
+            if (from == null && eventStream && lastEventId != null) {
+                try {
+                    from = Long.parseLong(lastEventId.trim());
+                } catch (NumberFormatException e) {
+                    log.warn("Invalid last event id {}, the stream is not resumed.", lastEventId);
+                }
+            }
+            Long requestedFrom = from;
+            // the output writer holds the output lock while it writes to the blocking channels
+            exchange.dispatch(() -> attachOutputStream(exchange, eventStream, requestedFrom, tail));
+        };
+    }
+
+    private void attachOutputStream(HttpServerExchange exchange, boolean eventStream, Long from, Long tail) {
+        String name = "http" + context + "@" + exchange.getSourceAddress();
+        QueuedChannel[] queued = new QueuedChannel[1];
+        Runnable onClose = () -> {
+            log.debug("Removing output stream: {}.", queued[0]);
+            readOnlyChannels.remove(queued[0]);
+            outputStreams.remove(queued[0]);
+            queued[0].stop();
+            destroyIfInactiveAndDisconnected();
+        };
+        SendWindow sendWindow = new SendWindow(outputOptions.getWebSocketSendWindow());
+        HttpStreamChannel outputStream = new HttpStreamChannel(exchange, eventStream, sendWindow, onClose);
+        queued[0] = outputOptions.queued(OutputOptions.HTTP_STREAM_SINK, name, outputStream);
+        outputStream.setDroppedBytes(() -> queued[0].getStats().getDroppedBytes());
+        outputStreams.add(queued[0]);
+        synchronized (outputLock) {
+            long start;
+            if (from != null) {
+                long written = scrollback.getWritten();
+                if (from > written) {
+                    log.warn("Requested offset {} is after the end of the output {}, streaming from the end.", from, written);
+                }
+                start = Math.min(Math.max(from, scrollback.getOldest()), written);
+            } else if (tail != null) {
+                start = scrollback.offsetOfLastLines((int) Math.min(tail, Integer.MAX_VALUE));
+            } else {
+                start = scrollback.getOldest();
+            }
+            log.info("Adding new output stream from remote address {} to context [{}] from offset {}.", exchange.getSourceAddress(), context, start);
+            outputStream.start(start);
+            byte[] kept = scrollback.read(start, Integer.MAX_VALUE);
+            if (kept.length > 0) {
+                queued[0].writeOutput(kept);
+            }
+            readOnlyChannels.add(queued[0]);
+        }
+    }
+
+    private Long longParameter(HttpServerExchange exchange, String name) {
+        Deque<String> values = exchange.getQueryParameters().get(name);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        return Long.parseLong(values.getFirst());
+    }
+
+    /**
+     * Ends the output stream responses once their queued output is written.
+     */
+    private void closeOutputStreams() {
+        for (QueuedChannel outputStream : outputStreams) {
+            executor.execute(() -> {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    log.warn("Cannot close output stream " + outputStream.getName() + ".", e);
+                }
+            });
+        }
+    }
+
     public HttpHandler webSocketStatusUpdateHandler() {
         WebSocketConnectionCallback webSocketConnectionCallback = (exchange, webSocketChannel) -> {
             Consumer<TaskStatusUpdateEvent> eventConsumer = event -> {
@@ -262,25 +502,64 @@ public class Term {
     }
 
     private void onStdOut(int[] stdOut) {
-        byte[] buffer = Arrays.charIntstoBytes(stdOut, StandardCharsets.UTF_8);
+        byte[] buffer = stdoutEncoder.encode(stdOut);
         writeToChannels(buffer);
     }
 
+    private void flushStdOutEncoder() {
+        if (stdoutEncoder.hasPending()) {
+            writeToChannels(stdoutEncoder.flush());
+        }
+    }
+
     private void writeToChannels(byte[] bytes) {
-        stdoutChecksum.add(bytes);
+        outputDigestChannel.writeOutput(bytes);
         if (log.isTraceEnabled()) {
             log.trace("Writing data: {}", new String(bytes, StandardCharsets.UTF_8));
         }
-        for (ReadOnlyChannel readOnlyChannel : readOnlyChannels) {
-            if (log.isTraceEnabled()) {
-                log.trace("   to chanel {}", readOnlyChannel);
+        synchronized (outputLock) {
+            scrollback.append(bytes);
+            for (ReadOnlyChannel readOnlyChannel : readOnlyChannels) {
+                if (log.isTraceEnabled()) {
+                    log.trace("   to chanel {}", readOnlyChannel);
+                }
+                readOnlyChannel.writeOutput(bytes);
+            }
+        }
+    }
+
+    /**
+     * The channel gets the kept tail of the output, then the live output. Runs on the executor, the output lock may be
+     * held by a writer blocked on a full queue.
+     */
+    private void attachWithScrollback(ReadOnlyChannel readOnlyChannel, WebSocketChannel webSocketChannel) {
+        synchronized (outputLock) {
+            byte[] tail = scrollback.tail();
+            if (tail.length > 0) {
+                readOnlyChannel.writeOutput(tail);
             }
-            readOnlyChannel.writeOutput(bytes);
+            readOnlyChannels.add(readOnlyChannel);
+        }
+        if (!webSocketChannel.isOpen()) {
+            // closed before the attach, the close task did not find the channel
+            readOnlyChannels.remove(readOnlyChannel);
         }
     }
 
+    /**
+     * @return queue stats of the read only web socket connections and of the output streams, the shared sinks are not
+     *         included.
+     */
+    public List<SinkStats> getSinkStats() {
+        return Stream.concat(webSocketChannels.stream(), outputStreams.stream())
+                .map(QueuedChannel::getStats)
+                .collect(Collectors.toList());
+    }
+
     public void close() {
         log.info("Closing Term {}.", context);
+        outputDigestChannel.stop();
+        closeOutputStreams();
         webSocketTtyConnection.close();
     }
 
@@ -27,6 +27,8 @@ import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.core.WebSockets;
 import org.jboss.pnc.buildagent.api.ResponseMode;
 import org.jboss.pnc.buildagent.common.BuildAgentException;
+import org.jboss.pnc.buildagent.server.output.OutputOptions;
+import org.jboss.pnc.buildagent.server.output.ScrollbackBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnio.ChannelListener;
@@ -54,14 +56,36 @@ public class WebSocketTtyConnection extends HttpTtyConnection implements TtyConn
 
     private boolean logged;
 
+    /**
+     * Output of the master connection, kept while the connection is being resumed.
+     */
+    private final ScrollbackBuffer scrollback;
+
+    /**
+     * Set when the master connection is resumed from an offset.
+     */
+    private volatile ResumableWebSocketChannel resumable;
+
     public WebSocketTtyConnection(ScheduledExecutorService executor, Runnable onStdOutCompleted) {
+        this(executor, onStdOutCompleted, OutputOptions.DEFAULT_SCROLLBACK_SIZE);
+    }
+
+    /**
+     * @param scrollbackSize bytes of the master output kept for the resumed connections
+     */
+    public WebSocketTtyConnection(ScheduledExecutorService executor, Runnable onStdOutCompleted, int scrollbackSize) {
         super(StandardCharsets.UTF_8, new Vector(Integer.MAX_VALUE, Integer.MAX_VALUE));
         this.executor = executor;
         this.onStdOutCompleted = onStdOutCompleted;
+        this.scrollback = new ScrollbackBuffer(scrollbackSize);
     }
 
     protected void write(byte[] buffer) {
-        if (isOpen()) {
+        scrollback.append(buffer);
+        ResumableWebSocketChannel resumableChannel = resumable;
+        if (resumableChannel != null) {
+            resumableChannel.writeOutput(buffer);
+        } else if (isOpen()) {
             if (ResponseMode.TEXT.equals(responseMode)) {
                 WebSockets.sendText(new String(buffer, StandardCharsets.UTF_8), webSocketChannel, null);
             } else if (ResponseMode.BINARY.equals(responseMode)) {
@@ -132,14 +156,36 @@ public class WebSocketTtyConnection extends HttpTtyConnection implements TtyConn
     }
 
     public void setWebSocketChannel(WebSocketChannel webSocketChannel, ResponseMode responseMode) {
+        setWebSocketChannel(webSocketChannel, responseMode, null);
+    }
+
+    /**
+     * @param from the output is sent from this offset with the offset in each frame, null sends only the new output
+     *         without the offsets. It is used by the binary connections only.
+     */
+    public void setWebSocketChannel(WebSocketChannel webSocketChannel, ResponseMode responseMode, Long from) {
         this.webSocketChannel = webSocketChannel;
         this.responseMode = responseMode;
+        if (from != null && ResponseMode.BINARY.equals(responseMode) && scrollback.getCapacity() > 0) {
+            log.info("Resuming master connection from offset {}.", from);
+            ResumableWebSocketChannel resumableChannel = new ResumableWebSocketChannel(webSocketChannel, scrollback, from);
+            resumable = resumableChannel;
+            resumableChannel.start();
+        }
         registerWebSocketChannelListener(webSocketChannel);
         webSocketChannel.resumeReceives();
     }
 
+    /**
+     * @return number of bytes ever written to the master connection, the offset of the next byte
+     */
+    public long getWritten() {
+        return scrollback.getWritten();
+    }
+
     public void removeWebSocketChannel() {
         webSocketChannel = null;
+        resumable = null;
     }
 
     @Override
@@ -0,0 +1,84 @@
+package org.jboss.pnc.buildagent.server;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class BatchedFileWriterTest {
+
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("batched-writer", ".log");
+    }
+
+    @After
+    public void removeFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void shouldBufferUntilFlush() throws IOException {
+        FileLoggerOptions options = new FileLoggerOptions(1024, 60000, FsyncPolicy.ON_COMPLETION, 1000);
+        try (BatchedFileWriter writer = new BatchedFileWriter(file, options)) {
+            writer.write(bytes("Hello "));
+            writer.write(bytes("world."));
+            Assert.assertEquals("", read());
+
+            writer.flush();
+            Assert.assertEquals("Hello world.", read());
+        }
+    }
+
+    @Test
+    public void shouldWriteWhenBufferIsFull() throws IOException {
+        FileLoggerOptions options = new FileLoggerOptions(8, 60000, FsyncPolicy.NONE, 1000);
+        try (BatchedFileWriter writer = new BatchedFileWriter(file, options)) {
+            writer.write(bytes("1234"));
+            writer.write(bytes("5678"));
+            Assert.assertEquals("12345678", read());
+
+            writer.write(bytes("abc"));
+            //larger than the buffer, the buffered data goes first
+            writer.write(bytes("0123456789"));
+            Assert.assertEquals("12345678abc0123456789", read());
+        }
+    }
+
+    @Test
+    public void shouldWriteAfterMaxLatency() throws Exception {
+        FileLoggerOptions options = new FileLoggerOptions(1024, 50, FsyncPolicy.PERIODIC, 50);
+        try (BatchedFileWriter writer = new BatchedFileWriter(file, options)) {
+            writer.write(bytes("line\n"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (read().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals("line\n", read());
+        }
+    }
+
+    @Test
+    public void shouldAppendToExistingFileAndWriteOutOnClose() throws IOException {
+        Files.write(file, bytes("existing\n"));
+        BatchedFileWriter writer = new BatchedFileWriter(file, FileLoggerOptions.defaults());
+        writer.write(bytes("appended\n"));
+        writer.close();
+        Assert.assertEquals("existing\nappended\n", read());
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String read() throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
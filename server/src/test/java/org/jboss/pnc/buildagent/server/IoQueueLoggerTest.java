@@ -0,0 +1,244 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.buildagent.server;
+
+import org.apache.kafka.common.header.Header;
+import org.jboss.pnc.buildagent.api.logging.LogFormatter;
+import org.jboss.pnc.buildagent.server.logging.formatters.jboss.JBossTemplateFormatter;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+public class IoQueueLoggerTest {
+
+    private static final Logger log = LoggerFactory.getLogger(IoQueueLoggerTest.class);
+
+    private static final int LINES = 100;
+
+    @Test
+    public void shouldNumberLinesPerSession() throws Exception {
+        RecordingQueueAdapter adapter = new RecordingQueueAdapter();
+        IoQueueLogger shared = newLogger(adapter, QueueBatchOptions.defaults());
+        ReadOnlyChannel first = shared.forSession("first");
+        ReadOnlyChannel second = shared.forSession("second");
+
+        first.writeOutput(bytes("a1\na2\n"));
+        second.writeOutput(bytes("b1\nb"));
+        first.writeOutput(bytes("a3\n"));
+        second.writeOutput(bytes("2\n"));
+        first.close();
+        second.close();
+
+        Assert.assertEquals(5, adapter.positions.size());
+        assertPositions(adapter, "first", "a1\n", "a2\n", "a3\n");
+        assertPositions(adapter, "second", "b1\n", "b2\n");
+        // the session loggers do not close the shared adapter
+        Assert.assertFalse(adapter.closed);
+    }
+
+    @Test
+    public void shouldNumberBatchesPerSession() throws Exception {
+        RecordingQueueAdapter adapter = new RecordingQueueAdapter();
+        IoQueueLogger shared = newLogger(adapter, new QueueBatchOptions(2, 1024, 60000, 4));
+        ReadOnlyChannel session = shared.forSession("session");
+
+        session.writeOutput(bytes("1\n2\n3\n4\n5\n"));
+        session.flush();
+        session.close();
+
+        Assert.assertEquals(3, adapter.positions.size());
+        for (int chunk = 0; chunk < 3; chunk++) {
+            RecordPosition position = adapter.positions.get(chunk);
+            Assert.assertEquals("session", position.getSessionId());
+            Assert.assertEquals(chunk, position.getChunk());
+            Assert.assertEquals(chunk * 2, position.getSequence());
+        }
+    }
+
+    @Test
+    public void shouldSpreadConsecutiveChunks() {
+        Assert.assertEquals("ctx", KafkaQueueAdapter.spreadKey("ctx", new RecordPosition("s", 5, 5), 1));
+        Assert.assertEquals("ctx-0", KafkaQueueAdapter.spreadKey("ctx", new RecordPosition("s", 0, 0), 3));
+        Assert.assertEquals("ctx-1", KafkaQueueAdapter.spreadKey("ctx", new RecordPosition("s", 1, 1), 3));
+        Assert.assertEquals("ctx-0", KafkaQueueAdapter.spreadKey("ctx", new RecordPosition("s", 9, 3), 3));
+    }
+
+    @Test
+    public void shouldLeaveStaticMdcOutOfPayload() throws Exception {
+        Map<String, String> mdc = new LinkedHashMap<>();
+        mdc.put("processContext", "build-AB3D5F7H9JKLM");
+        mdc.put("processContextVariant", "default");
+        mdc.put("requestContext", "a0b1c2d3e4f5a6b7c8d9e0f1a2b3c4d5");
+        mdc.put("buildId", "AB3D5F7H9JKLM");
+        mdc.put("tmp", "false");
+        mdc.put("exp", "2026-12-31T23:59:59.999Z");
+        mdc.put("userId", "1234");
+
+        Properties properties = new Properties();
+        properties.load(getClass().getClassLoader().getResourceAsStream("process-logging.properties"));
+        LogFormatter formatter = new JBossTemplateFormatter(properties);
+
+        long inlineBytes = payloadBytes(new RecordingQueueAdapter(true), mdc, formatter, "processContext");
+        long headersBytes = payloadBytes(new RecordingQueueAdapter(false), mdc, formatter, null);
+        log.info("Payload of {} lines with inline MDC: {} bytes, with MDC in headers: {} bytes.", LINES, inlineBytes, headersBytes);
+
+        int mdcBytes = 0;
+        for (Map.Entry<String, String> entry : mdc.entrySet()) {
+            mdcBytes += entry.getKey().length() + entry.getValue().length();
+        }
+        Assert.assertTrue(inlineBytes - headersBytes >= (long) LINES * mdcBytes);
+    }
+
+    @Test
+    public void shouldEncodeMdcHeaders() {
+        Map<String, String> mdc = new LinkedHashMap<>();
+        mdc.put("processContext", "ctx");
+        mdc.put("tmp", "true");
+
+        List<Header> headers = KafkaQueueAdapter.mdcHeaders(mdc);
+
+        Assert.assertEquals(2, headers.size());
+        Assert.assertEquals("mdc.processContext", headers.get(0).key());
+        Assert.assertEquals("ctx", new String(headers.get(0).value(), StandardCharsets.UTF_8));
+        Assert.assertEquals("mdc.tmp", headers.get(1).key());
+    }
+
+    private static long payloadBytes(
+            RecordingQueueAdapter adapter,
+            Map<String, String> mdc,
+            LogFormatter formatter,
+            String expectedMdcKey) throws IOException {
+        IoQueueLogger queueLogger = new IoQueueLogger(adapter, true, 1000, mdc, QueueBatchOptions.defaults(), formatter, null);
+        for (int i = 0; i < LINES; i++) {
+            queueLogger.writeOutput(bytes("[INFO] Downloading from central: https://repo.maven.apache.org/x/y-" + i + ".jar\n"));
+        }
+        queueLogger.flush();
+
+        Assert.assertEquals(LINES, adapter.messages.size());
+        long bytes = 0;
+        for (String message : adapter.messages) {
+            Assert.assertEquals(expectedMdcKey != null, message.contains("processContext"));
+            bytes += message.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return bytes;
+    }
+
+    private static void assertPositions(RecordingQueueAdapter adapter, String sessionId, String... lines) {
+        List<String> sessionMessages = new ArrayList<>();
+        long expected = 0;
+        for (int i = 0; i < adapter.positions.size(); i++) {
+            RecordPosition position = adapter.positions.get(i);
+            if (sessionId.equals(position.getSessionId())) {
+                Assert.assertEquals(expected, position.getSequence());
+                Assert.assertEquals(expected, position.getChunk());
+                sessionMessages.add(adapter.messages.get(i));
+                expected++;
+            }
+        }
+        List<String> expectedMessages = new ArrayList<>();
+        Collections.addAll(expectedMessages, lines);
+        Assert.assertEquals(expectedMessages, sessionMessages);
+    }
+
+    private static IoQueueLogger newLogger(QueueAdapter adapter, QueueBatchOptions batchOptions) throws IOException {
+        return new IoQueueLogger(
+                adapter,
+                true,
+                1000,
+                Collections.singletonMap("processContext", "test"),
+                batchOptions,
+                message -> message,
+                null);
+    }
+
+    private static byte[] bytes(String output) {
+        return output.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class RecordingQueueAdapter implements QueueAdapter {
+
+        private final List<String> messages = new ArrayList<>();
+        private final List<RecordPosition> positions = new ArrayList<>();
+        private final boolean mdcInline;
+        private volatile boolean closed;
+
+        RecordingQueueAdapter() {
+            this(true);
+        }
+
+        RecordingQueueAdapter(boolean mdcInline) {
+            this.mdcInline = mdcInline;
+        }
+
+        @Override
+        public boolean isMdcInline() {
+            return mdcInline;
+        }
+
+        @Override
+        public synchronized void send(String message, RecordPosition position, Consumer<Exception> exceptionHandler) {
+            messages.add(message);
+            positions.add(position);
+        }
+
+        @Override
+        public synchronized CompletableFuture<Void> sendBatch(List<String> messages, RecordPosition position) {
+            this.messages.add(String.join("\n", messages));
+            positions.add(position);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void send(String message, Consumer<Exception> exceptionHandler) {
+            Assert.fail("The position must be sent.");
+        }
+
+        @Override
+        public CompletableFuture<Void> sendBatch(List<String> messages, long firstSequence) {
+            Assert.fail("The position must be sent.");
+            return null;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close(Duration duration) {
+            closed = true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
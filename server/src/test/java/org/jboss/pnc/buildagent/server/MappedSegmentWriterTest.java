@@ -0,0 +1,126 @@
+package org.jboss.pnc.buildagent.server;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class MappedSegmentWriterTest {
+
+    private Path folder;
+    private Path logFile;
+
+    @Before
+    public void createFolder() throws IOException {
+        folder = Files.createTempDirectory("mapped-writer");
+        logFile = folder.resolve("console.log");
+    }
+
+    @After
+    public void removeFolder() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void shouldStitchSegmentsOnFlush() throws IOException {
+        FileLoggerOptions options = new FileLoggerOptions(FileLoggerMode.MAPPED, 1024, 200, FsyncPolicy.NONE, 1000, 16);
+        try (MappedSegmentWriter writer = new MappedSegmentWriter(logFile, options)) {
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                String line = "line " + i + "\n";
+                expected.append(line);
+                writer.write(bytes(line));
+            }
+            Assert.assertEquals("", read());
+            Assert.assertEquals(expected.toString(), toString(writer.unstitched()));
+
+            writer.flush();
+            Assert.assertEquals(expected.toString(), read());
+            Assert.assertEquals("", toString(writer.unstitched()));
+
+            //next command is appended to the same log
+            writer.write(bytes("next command\n"));
+            writer.flush();
+            Assert.assertEquals(expected + "next command\n", read());
+        }
+        try (Stream<Path> files = Files.list(folder)) {
+            Assert.assertEquals("Segments should be removed.", 1, files.count());
+        }
+    }
+
+    @Test
+    public void shouldStitchOnClose() throws IOException {
+        FileLoggerOptions options = new FileLoggerOptions(FileLoggerMode.MAPPED, 1024, 200, FsyncPolicy.ON_COMPLETION, 1000, 1024);
+        MappedSegmentWriter writer = new MappedSegmentWriter(logFile, options);
+        writer.write(bytes("Hello world."));
+        writer.close();
+        Assert.assertEquals("Hello world.", read());
+    }
+
+    @Test
+    public void shouldReadLogWhileWriting() throws IOException {
+        FileLoggerOptions options = new FileLoggerOptions(FileLoggerMode.MAPPED, 1024, 200, FsyncPolicy.NONE, 1000, 16);
+        try (MappedSegmentWriter writer = new MappedSegmentWriter(logFile, options)) {
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                String line = "line " + i + "\n";
+                expected.append(line);
+                writer.write(bytes(line));
+            }
+            Assert.assertEquals(expected.toString(), readLive(writer));
+
+            try (InputStream opened = writer.openLive()) {
+                // the stitched segments are removed and new output is written, the opened stream is not affected
+                writer.flush();
+                writer.write(bytes("next command\n"));
+                Assert.assertEquals(expected.toString(), read(opened));
+            }
+            Assert.assertEquals(expected + "next command\n", readLive(writer));
+        }
+    }
+
+    private static String readLive(MappedSegmentWriter writer) throws IOException {
+        try (InputStream inputStream = writer.openLive()) {
+            return read(inputStream);
+        }
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+        }
+        return new String(content.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String toString(List<ByteBuffer> buffers) {
+        StringBuilder result = new StringBuilder();
+        for (ByteBuffer buffer : buffers) {
+            result.append(StandardCharsets.UTF_8.decode(buffer));
+        }
+        return result.toString();
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String read() throws IOException {
+        return new String(Files.readAllBytes(logFile), StandardCharsets.UTF_8);
+    }
+}
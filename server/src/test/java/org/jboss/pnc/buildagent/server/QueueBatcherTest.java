@@ -0,0 +1,135 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class QueueBatcherTest {
+
+    @Test
+    public void shouldGroupLinesByCountAndBytes() throws IOException {
+        List<List<String>> batches = new ArrayList<>();
+        List<Long> sequences = new ArrayList<>();
+        QueueBatcher batcher = new QueueBatcher(
+                new QueueBatchOptions(3, 10, 60000, 4),
+                (messages, first) -> {
+                    batches.add(messages);
+                    sequences.add(first);
+                    return CompletableFuture.completedFuture(null);
+                },
+                e -> Assert.fail(e.getMessage()));
+
+        for (String line : Arrays.asList("a", "b", "c", "d", "0123456789", "e")) {
+            batcher.add(line);
+        }
+        batcher.flush(1000);
+        batcher.close();
+
+        Assert.assertEquals(Arrays.asList(
+                Arrays.asList("a", "b", "c"),
+                Arrays.asList("d", "0123456789"),
+                Collections.singletonList("e")), batches);
+        Assert.assertEquals(Arrays.asList(0L, 3L, 5L), sequences);
+    }
+
+    @Test
+    public void shouldSendAfterLinger() throws Exception {
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+        QueueBatcher batcher = new QueueBatcher(
+                new QueueBatchOptions(100, 1024, 50, 4),
+                (messages, first) -> {
+                    batches.add(messages);
+                    return CompletableFuture.completedFuture(null);
+                },
+                e -> Assert.fail(e.getMessage()));
+
+        batcher.add("lonely line");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (batches.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        batcher.close();
+
+        Assert.assertEquals(Collections.singletonList(Collections.singletonList("lonely line")), batches);
+    }
+
+    @Test
+    public void shouldFailFlushWhenBatchIsNotAcknowledged() {
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        QueueBatcher batcher = new QueueBatcher(
+                new QueueBatchOptions(2, 1024, 60000, 2),
+                (messages, first) -> {
+                    CompletableFuture<Void> future = new CompletableFuture<>();
+                    pending.add(future);
+                    return future;
+                },
+                failure::set);
+
+        batcher.add("a");
+        batcher.add("b");
+        try {
+            batcher.flush(50);
+            Assert.fail("Flush must wait for the acknowledgement.");
+        } catch (IOException expected) {
+        }
+
+        pending.get(0).completeExceptionally(new IOException("Broker is down."));
+        batcher.close();
+        Assert.assertEquals("Broker is down.", failure.get().getMessage());
+    }
+
+    @Test
+    public void shouldKeepSequencePerLine() throws IOException {
+        String json = QueueBatcher.toJson(Arrays.asList("{\"message\":\"one\"}\n", "two"), 41);
+        JsonNode records = new ObjectMapper().readTree(json);
+
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals(41, records.get(0).get("sequence").asLong());
+        // the formatted line is embedded, not encoded again
+        Assert.assertEquals("one", records.get(0).get("message").get("message").asText());
+        Assert.assertEquals(42, records.get(1).get("sequence").asLong());
+        Assert.assertEquals("two", records.get(1).get("message").asText());
+    }
+
+    @Test
+    public void shouldWritePlainTextLinesAsStrings() throws IOException {
+        List<String> messages = Arrays.asList("[INFO] Building pnc-build-agent\n", "{\n", "[1, 2]\n");
+        byte[] json = QueueBatcher.toJsonBytes(messages, 0);
+        JsonNode records = new ObjectMapper().readTree(json);
+
+        Assert.assertEquals(3, records.size());
+        Assert.assertEquals("[INFO] Building pnc-build-agent\n", records.get(0).get("message").asText());
+        Assert.assertEquals("{\n", records.get(1).get("message").asText());
+        Assert.assertTrue(records.get(2).get("message").isArray());
+    }
+}
@@ -0,0 +1,164 @@
+package org.jboss.pnc.buildagent.server;
+
+import org.jboss.pnc.buildagent.common.security.Md5;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+public class RotatingGzipWriterTest {
+
+    private Path folder;
+    private Path logFile;
+
+    @Before
+    public void createFolder() throws IOException {
+        folder = Files.createTempDirectory("gzip-writer");
+        logFile = folder.resolve("console.log");
+    }
+
+    @After
+    public void removeFolder() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void shouldReadAllSegmentsAsSingleLog() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        try (RotatingGzipWriter writer = new RotatingGzipWriter(logFile, options(1, 1000, 0))) {
+            for (int i = 0; i < 20; i++) {
+                String line = "line " + i + "\n";
+                expected.append(line);
+                writer.write(bytes(line));
+            }
+            writer.flush();
+            Assert.assertTrue(RotatedLog.isRotated(logFile));
+            Assert.assertEquals(20, RotatedLog.segments(logFile).size());
+            Assert.assertEquals(expected.toString(), read());
+
+            writer.write(bytes("next command\n"));
+            writer.flush();
+            Assert.assertEquals(expected + "next command\n", read());
+        }
+    }
+
+    @Test
+    public void shouldReadOpenSegmentAfterFlush() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        try (RotatingGzipWriter writer = new RotatingGzipWriter(logFile, options(1024, 2, 0))) {
+            for (int i = 0; i < 30; i++) {
+                String line = "command " + i + "\n";
+                expected.append(line);
+                writer.write(bytes(line));
+                writer.flush();
+                Assert.assertTrue(RotatedLog.isRotated(logFile));
+                Assert.assertEquals(expected.toString(), read());
+            }
+            Assert.assertEquals(0, RotatedLog.segments(logFile).size());
+            Assert.assertEquals(0, writer.getRemovedBytes());
+        }
+        Assert.assertEquals(1, RotatedLog.segments(logFile).size());
+        Assert.assertEquals(expected.toString(), read());
+    }
+
+    @Test
+    public void shouldKeepHeadAndTail() throws IOException {
+        try (RotatingGzipWriter writer = new RotatingGzipWriter(logFile, options(7, 3, 1))) {
+            for (int i = 0; i < 10; i++) {
+                writer.write(bytes("line " + i + "\n"));
+            }
+            writer.flush();
+        }
+        // one head segment, a merged marker and two tail segments
+        Assert.assertEquals(4, RotatedLog.segments(logFile).size());
+        Assert.assertEquals("line 0\n\n% # 49 bytes removed by log rotation\nline 8\nline 9\n", read());
+    }
+
+    @Test
+    public void shouldReportDigestOfKeptLog() throws Exception {
+        Md5 outputDigest = new Md5();
+        try (RotatingGzipWriter writer = new RotatingGzipWriter(logFile, options(7, 3, 1))) {
+            for (int i = 0; i < 10; i++) {
+                byte[] line = bytes("line " + i + "\n");
+                outputDigest.add(line);
+                writer.write(line);
+            }
+            writer.flush();
+            Assert.assertEquals(49, writer.getRemovedBytes());
+        }
+
+        Md5 keptDigest = new Md5();
+        Path decompressed = RotatedLog.decompressToTempFile(logFile, keptDigest);
+        try {
+            String kept = new String(Files.readAllBytes(decompressed), StandardCharsets.UTF_8);
+            Assert.assertEquals(read(), kept);
+            Md5 stitchedDigest = new Md5();
+            stitchedDigest.add(bytes(kept));
+            String reported = keptDigest.digest();
+            Assert.assertEquals(stitchedDigest.digest(), reported);
+            Assert.assertNotEquals(outputDigest.digest(), reported);
+        } finally {
+            Files.delete(decompressed);
+        }
+    }
+
+    @Test
+    public void shouldContinueRetentionAfterRestart() throws IOException {
+        try (RotatingGzipWriter writer = new RotatingGzipWriter(logFile, options(7, 3, 1))) {
+            for (int i = 0; i < 10; i++) {
+                writer.write(bytes("line " + i + "\n"));
+            }
+        }
+        try (RotatingGzipWriter writer = new RotatingGzipWriter(logFile, options(7, 3, 1))) {
+            Assert.assertEquals(49, writer.getRemovedBytes());
+            for (int i = 10; i < 13; i++) {
+                writer.write(bytes("line " + i + "\n"));
+            }
+            writer.flush();
+            // the longer lines leave room for a single tail segment
+            Assert.assertEquals(79, writer.getRemovedBytes());
+        }
+        Assert.assertEquals(3, RotatedLog.segments(logFile).size());
+        Assert.assertEquals("line 0\n\n% # 79 bytes removed by log rotation\nline 12\n", read());
+    }
+
+    private static FileLoggerOptions options(long rotateSize, int maxSegments, int headSegments) {
+        return new FileLoggerOptions(
+                FileLoggerMode.GZIP,
+                1024,
+                200,
+                FsyncPolicy.NONE,
+                1000,
+                1024,
+                rotateSize,
+                maxSegments,
+                headSegments);
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String read() throws IOException {
+        try (InputStream inputStream = RotatedLog.open(logFile)) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
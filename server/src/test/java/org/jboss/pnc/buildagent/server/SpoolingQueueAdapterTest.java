@@ -0,0 +1,324 @@
+package org.jboss.pnc.buildagent.server;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+public class SpoolingQueueAdapterTest {
+
+    private Path folder;
+
+    @Before
+    public void createFolder() throws IOException {
+        folder = Files.createTempDirectory("queue-spool");
+    }
+
+    @After
+    public void removeFolder() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void shouldDeliverAllRecordsDespiteFailures() throws Exception {
+        FlakyQueueAdapter broker = new FlakyQueueAdapter(1, 3);
+        SpoolingQueueAdapter adapter = new SpoolingQueueAdapter(broker, folder, 4096, 10);
+
+        for (int i = 0; i < 500; i++) {
+            adapter.send("line " + i, new RecordPosition("session", i, i), e -> Assert.fail(e.getMessage()));
+        }
+        adapter.sendBatch(Arrays.asList("a", "b"), new RecordPosition("session", 500, 500)).get(1, TimeUnit.SECONDS);
+        adapter.flush();
+
+        Assert.assertTrue(adapter.awaitDelivered(30000));
+        adapter.close(Duration.ofSeconds(1));
+
+        TreeMap<Long, String> byChunk = broker.deliveredByChunk();
+        Assert.assertEquals(501, byChunk.size());
+        for (long chunk = 0; chunk < 500; chunk++) {
+            Assert.assertEquals("line " + chunk, byChunk.get(chunk));
+        }
+        Assert.assertEquals("a\nb", byChunk.get(500L));
+        Assert.assertTrue("Expected redelivery after the failures.", broker.failedFlushes.get() > 0);
+    }
+
+    @Test
+    public void shouldFlushWithoutWaitingForDelivery() throws Exception {
+        CountDownLatch brokerAvailable = new CountDownLatch(1);
+        FlakyQueueAdapter broker = new FlakyQueueAdapter(0, 0) {
+            @Override
+            public void flush() {
+                try {
+                    brokerAvailable.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.flush();
+            }
+        };
+        SpoolingQueueAdapter adapter = new SpoolingQueueAdapter(broker, folder);
+
+        adapter.send("line", new RecordPosition("session", 0, 0), e -> Assert.fail(e.getMessage()));
+        long started = System.currentTimeMillis();
+        adapter.flush();
+        Assert.assertTrue(System.currentTimeMillis() - started < 5000);
+        Assert.assertFalse(adapter.awaitDelivered(100));
+
+        brokerAvailable.countDown();
+        Assert.assertTrue(adapter.awaitDelivered(5000));
+        adapter.close();
+    }
+
+    @Test
+    public void shouldDeliverSpooledRecordsAfterRestart() throws Exception {
+        FlakyQueueAdapter unavailable = new FlakyQueueAdapter(0, Integer.MAX_VALUE);
+        SpoolingQueueAdapter adapter = new SpoolingQueueAdapter(unavailable, folder, 256, 10);
+        for (int i = 0; i < 50; i++) {
+            adapter.send("line " + i, new RecordPosition("session", i, i), e -> Assert.fail(e.getMessage()));
+        }
+        adapter.flush();
+        adapter.close(Duration.ofMillis(100));
+        Assert.assertTrue(unavailable.closed);
+
+        FlakyQueueAdapter broker = new FlakyQueueAdapter(0, 0);
+        SpoolingQueueAdapter restarted = new SpoolingQueueAdapter(broker, folder, 256, 10);
+        Assert.assertTrue(restarted.awaitDelivered(5000));
+        restarted.close();
+
+        Assert.assertEquals(50, broker.deliveredByChunk().size());
+        Assert.assertEquals(50, broker.delivered.size());
+    }
+
+    @Test
+    public void shouldKeepLabelsOfSpooledRecordsAfterRestart() throws Exception {
+        FlakyQueueAdapter unavailable = new FlakyQueueAdapter(0, Integer.MAX_VALUE);
+        unavailable.labels = new RecordLabels("build-1", Collections.singletonMap("processContext", "build-1"));
+        SpoolingQueueAdapter adapter = new SpoolingQueueAdapter(unavailable, folder, 256, 10);
+        adapter.send("line", new RecordPosition("session", 0, 0), e -> Assert.fail(e.getMessage()));
+        adapter.sendBatch(Arrays.asList("a", "b"), new RecordPosition("session", 1, 1)).get(1, TimeUnit.SECONDS);
+        adapter.flush();
+        adapter.close(Duration.ofMillis(100));
+
+        FlakyQueueAdapter broker = new FlakyQueueAdapter(0, 0);
+        broker.labels = new RecordLabels("build-2", Collections.singletonMap("processContext", "build-2"));
+        SpoolingQueueAdapter restarted = new SpoolingQueueAdapter(broker, folder, 256, 10);
+        Assert.assertTrue(restarted.awaitDelivered(5000));
+        restarted.close();
+
+        Assert.assertEquals(2, broker.delivered.size());
+        for (String[] record : broker.delivered) {
+            Assert.assertEquals("build-1", record[2]);
+            Assert.assertEquals("{processContext=build-1}", record[3]);
+        }
+    }
+
+    @Test
+    public void shouldSkipCutRecordOnRecovery() throws Exception {
+        try (QueueSpool spool = new QueueSpool(folder, 1024 * 1024)) {
+            spool.append("first".getBytes(StandardCharsets.UTF_8));
+            spool.append("second".getBytes(StandardCharsets.UTF_8));
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(folder)) {
+            segment = files.filter(path -> path.toString().endsWith(".spool")).findFirst().get();
+        }
+        // a record header claiming more data than was written before the crash
+        Files.write(segment, new byte[] { 0, 0, 1, 0, 1, 2, 3, 4, 's' }, StandardOpenOption.APPEND);
+
+        try (QueueSpool spool = new QueueSpool(folder, 1024 * 1024)) {
+            spool.append("third".getBytes(StandardCharsets.UTF_8));
+            List<String> records = new ArrayList<>();
+            for (byte[] record : spool.read(10)) {
+                records.add(new String(record, StandardCharsets.UTF_8));
+            }
+            Assert.assertEquals(Arrays.asList("first", "second", "third"), records);
+            spool.commit();
+            Assert.assertFalse(spool.hasPending());
+        }
+    }
+
+    @Test
+    public void shouldSkipCorruptedRecordInSegmentBeingWritten() throws Exception {
+        try (QueueSpool spool = new QueueSpool(folder, 1024 * 1024)) {
+            spool.append("first".getBytes(StandardCharsets.UTF_8));
+            spool.append("second".getBytes(StandardCharsets.UTF_8));
+            spool.append("third".getBytes(StandardCharsets.UTF_8));
+            Path segment;
+            try (Stream<Path> files = Files.list(folder)) {
+                segment = files.filter(path -> path.toString().endsWith(".spool")).findFirst().get();
+            }
+            // the first content byte of the second record, after the first record and the second header
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[] { 'S' }), 8 + 5 + 8);
+            }
+
+            List<String> records = new ArrayList<>();
+            for (byte[] record : spool.read(10)) {
+                records.add(new String(record, StandardCharsets.UTF_8));
+            }
+            Assert.assertEquals(Arrays.asList("first", "third"), records);
+            Assert.assertEquals(1, spool.getCorrupted());
+
+            spool.rewind();
+            Assert.assertEquals(2, spool.read(10).size());
+            Assert.assertEquals(1, spool.getCorrupted());
+        }
+    }
+
+    /**
+     * Stand-in for the broker: each send takes some time and the first flushes fail all the records sent before them.
+     */
+    private static class FlakyQueueAdapter implements QueueAdapter {
+
+        private final long latencyMillis;
+        private final AtomicInteger failuresLeft;
+        private final AtomicInteger failedFlushes = new AtomicInteger();
+
+        private final List<Consumer<Exception>> pendingHandlers = new ArrayList<>();
+        private final List<CompletableFuture<Void>> pendingBatches = new ArrayList<>();
+        private final List<String[]> pending = new ArrayList<>();
+        private final List<String[]> delivered = new ArrayList<>();
+        private volatile boolean closed;
+        private volatile RecordLabels labels;
+
+        FlakyQueueAdapter(long latencyMillis, int failures) {
+            this.latencyMillis = latencyMillis;
+            this.failuresLeft = new AtomicInteger(failures);
+        }
+
+        @Override
+        public synchronized void send(String message, RecordPosition position, Consumer<Exception> exceptionHandler) {
+            sleep();
+            pending.add(new String[] { Long.toString(position.getChunk()), message });
+            pendingHandlers.add(exceptionHandler);
+        }
+
+        @Override
+        public void send(byte[] message, RecordPosition position, Consumer<Exception> exceptionHandler) {
+            send(new String(message, StandardCharsets.UTF_8), position, exceptionHandler);
+        }
+
+        @Override
+        public synchronized void send(
+                byte[] message,
+                RecordPosition position,
+                RecordLabels labels,
+                Consumer<Exception> exceptionHandler) {
+            sleep();
+            pending.add(new String[] {
+                    Long.toString(position.getChunk()),
+                    new String(message, StandardCharsets.UTF_8),
+                    labels.getKey(),
+                    labels.getMdcHeaders().toString() });
+            pendingHandlers.add(exceptionHandler);
+        }
+
+        @Override
+        public synchronized CompletableFuture<Void> sendBatch(List<String> messages, RecordPosition position) {
+            return sendBatch(messages, position.getSequence(), position, null);
+        }
+
+        @Override
+        public synchronized CompletableFuture<Void> sendBatch(
+                List<String> messages,
+                long firstSequence,
+                RecordPosition position,
+                RecordLabels labels) {
+            sleep();
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            pending.add(new String[] {
+                    Long.toString(position.getChunk()),
+                    String.join("\n", messages),
+                    labels == null ? null : labels.getKey(),
+                    labels == null ? null : labels.getMdcHeaders().toString() });
+            pendingHandlers.add(result::completeExceptionally);
+            pendingBatches.add(result);
+            return result;
+        }
+
+        @Override
+        public RecordLabels currentLabels() {
+            return labels;
+        }
+
+        @Override
+        public synchronized void flush() {
+            if (failuresLeft.getAndDecrement() > 0) {
+                failedFlushes.incrementAndGet();
+                for (Consumer<Exception> handler : pendingHandlers) {
+                    handler.accept(new IOException("Broker not available."));
+                }
+            } else {
+                delivered.addAll(pending);
+                for (CompletableFuture<Void> batch : pendingBatches) {
+                    batch.complete(null);
+                }
+            }
+            pending.clear();
+            pendingHandlers.clear();
+            pendingBatches.clear();
+        }
+
+        synchronized TreeMap<Long, String> deliveredByChunk() {
+            TreeMap<Long, String> byChunk = new TreeMap<>();
+            for (String[] record : delivered) {
+                byChunk.put(Long.parseLong(record[0]), record[1]);
+            }
+            return byChunk;
+        }
+
+        private void sleep() {
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void send(String message, Consumer<Exception> exceptionHandler) {
+            Assert.fail("The position must be sent.");
+        }
+
+        @Override
+        public CompletableFuture<Void> sendBatch(List<String> messages, long firstSequence) {
+            Assert.fail("The position must be sent.");
+            return null;
+        }
+
+        @Override
+        public void close(Duration duration) {
+            closed = true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
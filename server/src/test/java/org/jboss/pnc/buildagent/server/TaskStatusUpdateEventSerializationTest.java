@@ -49,4 +49,22 @@ public class TaskStatusUpdateEventSerializationTest {
 
         Assert.assertEquals(taskId, deserializedTaskStatusUpdateEvent.getTaskId());
     }
+
+    @Test
+    public void shouldSerializeOutputChecksumAlgorithm() throws IOException {
+        TaskStatusUpdateEvent event = TaskStatusUpdateEvent.newBuilder()
+                .taskId("123456")
+                .newStatus(Status.COMPLETED)
+                .outputChecksum("44bc2cf5ad770999")
+                .outputChecksumAlgorithm("XXH64")
+                .build();
+
+        ObjectMapper mapper = new ObjectMapper();
+        TaskStatusUpdateEvent deserialized = mapper.readValue(event.toString(), TaskStatusUpdateEvent.class);
+
+        Assert.assertEquals("44bc2cf5ad770999", deserialized.getOutputChecksum());
+        Assert.assertEquals("XXH64", deserialized.getOutputChecksumAlgorithm());
+        Assert.assertFalse(new TaskStatusUpdateEvent("123456", Status.NEW, Status.RUNNING, "ctx").toString()
+                .contains("outputChecksumAlgorithm"));
+    }
 }
@@ -0,0 +1,96 @@
+package org.jboss.pnc.buildagent.server.httpinvoker;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CommandSchedulerTest {
+
+    private final List<String> started = new ArrayList<>();
+    private final List<String> cancelled = new ArrayList<>();
+
+    @Test
+    public void shouldQueueOverMaxRunningAndStartInOrder() {
+        CommandScheduler scheduler = new CommandScheduler(2, 10, new SystemLoad(0, 0), null);
+        CommandSession a = submit(scheduler, "a");
+        submit(scheduler, "b");
+        CommandSession c = submit(scheduler, "c");
+        submit(scheduler, "d");
+
+        Assert.assertEquals(Arrays.asList("a", "b"), started);
+        Assert.assertEquals(SessionState.RUNNING, a.getState());
+        Assert.assertEquals(SessionState.QUEUED, c.getState());
+        Assert.assertEquals(2, scheduler.getQueued());
+
+        scheduler.release("a");
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), started);
+        Assert.assertEquals(SessionState.RUNNING, c.getState());
+        Assert.assertEquals(2, scheduler.getRunning());
+        Assert.assertEquals(1, scheduler.getQueued());
+    }
+
+    @Test
+    public void shouldRejectWhenQueueIsFull() {
+        CommandScheduler scheduler = new CommandScheduler(1, 1, new SystemLoad(0, 0), null);
+        Assert.assertTrue(scheduler.submit(newSession("a"), () -> started.add("a"), () -> { }));
+        Assert.assertTrue(scheduler.submit(newSession("b"), () -> started.add("b"), () -> { }));
+        Assert.assertFalse(scheduler.submit(newSession("c"), () -> started.add("c"), () -> { }));
+        Assert.assertEquals(Collections.singletonList("a"), started);
+    }
+
+    @Test
+    public void shouldCancelQueuedCommand() {
+        CommandScheduler scheduler = new CommandScheduler(1, 10, new SystemLoad(0, 0), null);
+        submit(scheduler, "a");
+        submit(scheduler, "b");
+        submit(scheduler, "c");
+
+        Assert.assertTrue(scheduler.cancel("b"));
+        Assert.assertFalse("Running command is not in the queue.", scheduler.cancel("a"));
+        Assert.assertEquals(Collections.singletonList("b"), cancelled);
+
+        // releasing the slot of a command that was never started does not start another
+        scheduler.release("b");
+        Assert.assertEquals(Collections.singletonList("a"), started);
+
+        scheduler.release("a");
+        Assert.assertEquals(Arrays.asList("a", "c"), started);
+    }
+
+    @Test
+    public void shouldWaitForLoadButNotWhenIdle() {
+        OverloadedSystem system = new OverloadedSystem();
+        CommandScheduler scheduler = new CommandScheduler(0, 10, system, null);
+        submit(scheduler, "a");
+        submit(scheduler, "b");
+        Assert.assertEquals("The first command starts despite the load.", Collections.singletonList("a"), started);
+
+        scheduler.release("a");
+        Assert.assertEquals(Arrays.asList("a", "b"), started);
+    }
+
+    private CommandSession submit(CommandScheduler scheduler, String sessionId) {
+        CommandSession session = newSession(sessionId);
+        Assert.assertTrue(scheduler.submit(session, () -> started.add(sessionId), () -> cancelled.add(sessionId)));
+        return session;
+    }
+
+    private static CommandSession newSession(String sessionId) {
+        return new CommandSession(sessionId, Collections.emptySet());
+    }
+
+    private static class OverloadedSystem extends SystemLoad {
+        OverloadedSystem() {
+            super(1, 0);
+        }
+
+        @Override
+        public boolean admits() {
+            return false;
+        }
+    }
+}
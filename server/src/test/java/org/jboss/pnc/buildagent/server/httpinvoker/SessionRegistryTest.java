@@ -0,0 +1,85 @@
+package org.jboss.pnc.buildagent.server.httpinvoker;
+
+import org.jboss.pnc.buildagent.api.Status;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SessionRegistryTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+
+    @Test
+    public void shouldReplaceDoneSessionWithSummary() {
+        SessionRegistry registry = new SessionRegistry(new SessionOptions(60000, 10), now::get);
+        CommandSession session = newSession("a");
+        registry.put(session);
+        session.setState(SessionState.RUNNING);
+
+        Assert.assertEquals(SessionState.RUNNING, registry.getSummary("a").get().getState());
+        Assert.assertEquals(1, registry.count(SessionState.RUNNING));
+
+        session.setState(SessionState.COMPLETING);
+        session.setCompletion(Status.COMPLETED, "abc");
+        registry.done(session);
+
+        Assert.assertFalse("The session must be released.", registry.get("a").isPresent());
+        SessionSummary summary = registry.getSummary("a").get();
+        Assert.assertEquals(SessionState.DONE, summary.getState());
+        Assert.assertEquals(Status.COMPLETED, summary.getStatus());
+        Assert.assertEquals("abc", summary.getOutputChecksum());
+        Assert.assertEquals(1000, summary.getCompletedMillis());
+        Assert.assertEquals(0, registry.count(SessionState.RUNNING));
+        Assert.assertEquals(1, registry.count(SessionState.DONE));
+    }
+
+    @Test
+    public void shouldEvictSummariesAfterTtl() {
+        SessionRegistry registry = new SessionRegistry(new SessionOptions(60000, 10), now::get);
+        complete(registry, "a");
+        now.addAndGet(30000);
+        complete(registry, "b");
+
+        now.addAndGet(30001);
+        Assert.assertFalse(registry.getSummary("a").isPresent());
+        Assert.assertTrue(registry.getSummary("b").isPresent());
+        Assert.assertEquals(1, registry.getSummaries().size());
+    }
+
+    @Test
+    public void shouldEvictOldestSummariesOverMaxCount() {
+        SessionRegistry registry = new SessionRegistry(new SessionOptions(60000, 2), now::get);
+        complete(registry, "a");
+        complete(registry, "b");
+        complete(registry, "c");
+
+        Assert.assertFalse(registry.getSummary("a").isPresent());
+        Assert.assertTrue(registry.getSummary("b").isPresent());
+        Assert.assertTrue(registry.getSummary("c").isPresent());
+    }
+
+    @Test
+    public void shouldKeepRunningSessionsOverMaxCount() {
+        SessionRegistry registry = new SessionRegistry(new SessionOptions(0, 0), now::get);
+        CommandSession running = newSession("running");
+        running.setState(SessionState.RUNNING);
+        registry.put(running);
+        complete(registry, "done");
+
+        Assert.assertTrue(registry.get("running").isPresent());
+        Assert.assertFalse(registry.getSummary("done").isPresent());
+    }
+
+    private void complete(SessionRegistry registry, String sessionId) {
+        CommandSession session = newSession(sessionId);
+        registry.put(session);
+        session.setCompletion(Status.COMPLETED, null);
+        registry.done(session);
+    }
+
+    private static CommandSession newSession(String sessionId) {
+        return new CommandSession(sessionId, Collections.emptySet());
+    }
+}
@@ -0,0 +1,55 @@
+package org.jboss.pnc.buildagent.server.httpinvoker;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class SystemLoadTest {
+
+    private Path loadAvg;
+    private Path memInfo;
+
+    @Before
+    public void createFiles() throws IOException {
+        loadAvg = Files.createTempFile("loadavg", "");
+        memInfo = Files.createTempFile("meminfo", "");
+        Files.write(loadAvg, "6.00 3.50 2.00 3/512 12345\n".getBytes(StandardCharsets.US_ASCII));
+        Files.write(memInfo, ("MemTotal:       16000000 kB\n"
+                + "MemFree:         1000000 kB\n"
+                + "MemAvailable:    2000000 kB\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @After
+    public void removeFiles() throws IOException {
+        Files.delete(loadAvg);
+        Files.delete(memInfo);
+    }
+
+    @Test
+    public void shouldCheckLoadPerCpu() {
+        Assert.assertEquals(1.5, new SystemLoad(2, 0, loadAvg, memInfo, 4).loadPerCpu(), 0.001);
+        Assert.assertTrue(new SystemLoad(2, 0, loadAvg, memInfo, 4).admits());
+        Assert.assertFalse(new SystemLoad(1, 0, loadAvg, memInfo, 4).admits());
+    }
+
+    @Test
+    public void shouldCheckAvailableMemory() {
+        Assert.assertEquals(2000000L * 1024, new SystemLoad(0, 1, loadAvg, memInfo, 4).availableMemoryBytes());
+        Assert.assertTrue(new SystemLoad(0, 1024L * 1024 * 1024, loadAvg, memInfo, 4).admits());
+        Assert.assertFalse(new SystemLoad(0, 4L * 1024 * 1024 * 1024, loadAvg, memInfo, 4).admits());
+    }
+
+    @Test
+    public void shouldAdmitWhenProcIsMissing() {
+        Path missing = loadAvg.resolveSibling("missing-" + System.nanoTime());
+        SystemLoad systemLoad = new SystemLoad(0.1, Long.MAX_VALUE, missing, missing, 1);
+        Assert.assertTrue(systemLoad.isEnabled());
+        Assert.assertTrue(systemLoad.admits());
+    }
+}
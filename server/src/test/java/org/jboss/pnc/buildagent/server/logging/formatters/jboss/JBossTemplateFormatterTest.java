@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.logging.formatters.jboss;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+public class JBossTemplateFormatterTest {
+
+    private static final List<String> MESSAGES = Arrays.asList(
+                "[INFO] BUILD SUCCESS",
+                "",
+                "Quote \" and backslash \\ and tab \t and ctrl \u0007",
+                "{\"json\": [1, 2]} it's {0}",
+                "100% done %s %n",
+                "</script> & <b>",
+                "Unicode é€中 and emoji 😀");
+
+    @Test
+    public void shouldProduceSameOutputAsConfiguredFormatter() throws IOException, InstantiationException {
+        JBossFormatter formatter = createFormatter();
+        JBossTemplateFormatter templateFormatter = new JBossTemplateFormatter(formatter);
+
+        long millis = System.currentTimeMillis();
+        for (int sequence = 0; sequence < 3; sequence++) {
+            for (String message : MESSAGES) {
+                Assert.assertEquals(
+                        formatter.format(message, millis + sequence, sequence),
+                        templateFormatter.format(message, millis + sequence, sequence));
+            }
+        }
+    }
+
+    @Test
+    public void shouldWriteSameBytesAsConfiguredFormatter() throws IOException, InstantiationException {
+        JBossFormatter formatter = createFormatter();
+        JBossTemplateFormatter templateFormatter = new JBossTemplateFormatter(formatter);
+
+        long millis = System.currentTimeMillis();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int sequence = 0; sequence < 3; sequence++) {
+            for (String message : MESSAGES) {
+                out.reset();
+                templateFormatter.formatTo(out, CharBuffer.wrap(message), millis + sequence, sequence);
+                Assert.assertArrayEquals(
+                        formatter.format(message, millis + sequence, sequence).getBytes(StandardCharsets.UTF_8),
+                        out.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void shouldSpliceTimestampOfAnyTime() throws IOException, InstantiationException {
+        JBossFormatter formatter = createFormatter();
+        JBossTemplateFormatter templateFormatter = new JBossTemplateFormatter(formatter);
+
+        long millis = System.currentTimeMillis();
+        long[] offsets = { 0, 1, 999, 1000, 59_999, 3_600_000, 86_400_001, -31_536_000_000L, 400_000_000_000L };
+        for (long offset : offsets) {
+            Assert.assertEquals(
+                    formatter.format("line", millis + offset, 7),
+                    templateFormatter.format("line", millis + offset, 7));
+        }
+    }
+
+    @Test
+    public void shouldNumberBatchConsecutively() throws InstantiationException, IOException {
+        JBossTemplateFormatter templateFormatter = new JBossTemplateFormatter(createFormatter());
+        templateFormatter.format("first");
+
+        List<String> formatted = templateFormatter.formatAll(MESSAGES);
+
+        Assert.assertEquals(MESSAGES.size(), formatted.size());
+        for (int i = 0; i < formatted.size(); i++) {
+            Pattern sequence = Pattern.compile("\"sequence\":\\s*" + (i + 1) + "\\D");
+            Assert.assertTrue(formatted.get(i), sequence.matcher(formatted.get(i)).find());
+        }
+    }
+
+    private JBossFormatter createFormatter() throws IOException, InstantiationException {
+        Properties properties = new Properties();
+        properties.load(getClass().getClassLoader().getResourceAsStream("process-logging.properties"));
+        MDC.setContextMap(Collections.singletonMap("processContext", "12345"));
+        return new JBossFormatter(properties);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.logging.performance;
+
+import org.jboss.pnc.buildagent.api.logging.LogFormatter;
+import org.jboss.pnc.buildagent.server.logging.formatters.jboss.JBossFormatter;
+import org.jboss.pnc.buildagent.server.logging.formatters.jboss.JBossTemplateFormatter;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Properties;
+
+/**
+ * Compares the configured JBoss formatter with the template compiled from it.
+ */
+public class FormatterTest {
+    private static final Logger log = LoggerFactory.getLogger(FormatterTest.class);
+
+    private static final String LINE = "[INFO] Downloading from central: https://repo.maven.apache.org/maven2/org/jboss/pnc/pnc-api/2.0.0/pnc-api-2.0.0.jar";
+
+    @Test @Ignore
+    public void formatterThroughput() throws IOException, InstantiationException {
+        Properties properties = new Properties();
+        properties.load(getClass().getClassLoader().getResourceAsStream("process-logging.properties"));
+        MDC.setContextMap(Collections.singletonMap("processContext", "12345"));
+
+        LogFormatter formatter = new JBossFormatter(properties);
+        LogFormatter templateFormatter = new JBossTemplateFormatter(properties);
+        for (int round = 0; round < 5; round++) {
+            measure("formatter", formatter);
+            measure("template", templateFormatter);
+        }
+    }
+
+    private void measure(String name, LogFormatter formatter) {
+        int lines = 500000;
+        long length = 0;
+        long started = System.nanoTime();
+        for (int i = 0; i < lines; i++) {
+            length += formatter.format(LINE).length();
+        }
+        long took = Math.max(1, (System.nanoTime() - started) / 1000000);
+        log.info("{}: formatted {} lines ({} chars) in {} millis, {} lines/s.", name, lines, length, took, lines * 1000L / took);
+    }
+}
@@ -1,8 +1,11 @@
 package org.jboss.pnc.buildagent.server.logging.performance;
 
 import org.jboss.pnc.buildagent.server.QueueAdapter;
+import org.jboss.pnc.buildagent.server.QueueBatcher;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -10,6 +13,24 @@ import java.util.function.Consumer;
  */
 public class NoOpQueueAdapter implements QueueAdapter {
 
+    private final boolean binary;
+
+    public NoOpQueueAdapter() {
+        this(false);
+    }
+
+    /**
+     * @param binary the adapter accepts the messages as bytes, as the Kafka adapter with the byte array serializer
+     */
+    public NoOpQueueAdapter(boolean binary) {
+        this.binary = binary;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return binary;
+    }
+
     @Override
     public void flush() {
 
@@ -20,6 +41,18 @@ public class NoOpQueueAdapter implements QueueAdapter {
 
     }
 
+    @Override
+    public void send(byte[] message, Consumer<Exception> exceptionHandler) {
+
+    }
+
+    @Override
+    public CompletableFuture<Void> sendBatch(List<String> messages, long firstSequence) {
+        // the record value is created as the real adapter does
+        QueueBatcher.toJson(messages, firstSequence);
+        return CompletableFuture.completedFuture(null);
+    }
+
     @Override
     public void close(Duration duration) {
 
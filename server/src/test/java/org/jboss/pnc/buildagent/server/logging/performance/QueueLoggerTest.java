@@ -2,6 +2,7 @@ package org.jboss.pnc.buildagent.server.logging.performance;
 
 import org.jboss.pnc.buildagent.server.IoQueueLogger;
 import org.jboss.pnc.buildagent.server.QueueAdapter;
+import org.jboss.pnc.buildagent.server.QueueBatchOptions;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -46,4 +47,57 @@ public class QueueLoggerTest {
         long speed = written / took * 1000 / 1024;
         log.info("Throughput: {} kB/s.", speed);
     }
+
+    /**
+     * Compares a record per line with the multi-line records, the lines are terminated so they are formatted and sent.
+     */
+    @Test @Ignore
+    public void kafkaLoggerBatchStressTest() throws InstantiationException, IOException {
+        byte[] line = "0123456789012345678901234567890123456789012345678\n".getBytes(StandardCharsets.UTF_8);
+        QueueBatchOptions perLine = QueueBatchOptions.defaults();
+        QueueBatchOptions batched = new QueueBatchOptions(500, 64 * 1024, 100, 16);
+        for (QueueBatchOptions batchOptions : new QueueBatchOptions[] { perLine, batched, perLine, batched }) {
+            QueueAdapter queueAdapter = new NoOpQueueAdapter();
+            IoQueueLogger queueLogger = new IoQueueLogger(queueAdapter, true, 10000, Collections.singletonMap("test", "true"), batchOptions);
+
+            long started = System.currentTimeMillis();
+            long written = 0;
+            for (int i = 0; i < 100000; i++) {
+                queueLogger.writeOutput(line);
+                written += line.length;
+            }
+            queueLogger.flush();
+            long took = Math.max(1, System.currentTimeMillis() - started);
+            queueLogger.close();
+
+            log.info("Max lines per record {}: written {} byte in {} millis, throughput: {} kB/s.",
+                    batchOptions.getMaxLines(), written, took, written / took * 1000 / 1024);
+        }
+    }
+
+    /**
+     * Compares the lines formatted to Strings with the lines formatted to bytes, as sent to the Kafka producer with
+     * the byte array serializer.
+     */
+    @Test @Ignore
+    public void kafkaLoggerBinaryStressTest() throws InstantiationException, IOException {
+        byte[] line = "0123456789012345678901234567890123456789012345678\n".getBytes(StandardCharsets.UTF_8);
+        for (boolean binary : new boolean[] { false, true, false, true }) {
+            QueueAdapter queueAdapter = new NoOpQueueAdapter(binary);
+            IoQueueLogger queueLogger = new IoQueueLogger(queueAdapter, true, 10000, Collections.singletonMap("test", "true"));
+
+            long started = System.currentTimeMillis();
+            long written = 0;
+            for (int i = 0; i < 100000; i++) {
+                queueLogger.writeOutput(line);
+                written += line.length;
+            }
+            queueLogger.flush();
+            long took = Math.max(1, System.currentTimeMillis() - started);
+            queueLogger.close();
+
+            log.info("Binary {}: written {} byte in {} millis, throughput: {} kB/s.",
+                    binary, written, took, written / took * 1000 / 1024);
+        }
+    }
 }
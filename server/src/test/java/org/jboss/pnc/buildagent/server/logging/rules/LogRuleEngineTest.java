@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.pnc.buildagent.server.logging.rules;
+
+import org.jboss.pnc.buildagent.api.Status;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class LogRuleEngineTest {
+
+    @Test
+    public void shouldFindOverlappingKeywords() {
+        AhoCorasick automaton = new AhoCorasick(new String[] { "he", "she", "his", "hers" }, new int[] { 0, 1, 2, 3 });
+        List<Integer> found = new ArrayList<>();
+        automaton.search("ushers", found::add);
+        Collections.sort(found);
+        Assert.assertEquals(Arrays.asList(0, 1, 3), found);
+    }
+
+    @Test
+    public void shouldReclassifyFailedStatusWhenIndyConnectionIsRefused() {
+        LogRuleSession session = LogRuleEngine.defaults().newSession();
+        write(session, "Downloading from indy\n[ERROR] Connect to in");
+        write(session, "dy:80 [indy/10.0.0.1] failed: Connection refused\nBUILD FAILURE\n");
+        session.flush();
+
+        Assert.assertEquals(Status.SYSTEM_ERROR, session.resolveStatus(Status.FAILED));
+        Assert.assertEquals(Status.COMPLETED, session.resolveStatus(Status.COMPLETED));
+    }
+
+    @Test
+    public void shouldConfirmCandidatesWithRegex() {
+        LogRuleSession session = LogRuleEngine.defaults().newSession();
+        write(session, "Connect to indy:80 succeeded\n");
+        session.flush();
+
+        Assert.assertEquals(Status.FAILED, session.resolveStatus(Status.FAILED));
+        Assert.assertTrue(session.getCounts().isEmpty());
+    }
+
+    @Test
+    public void shouldCountAndTag() {
+        LogRule warnings = new LogRule("warnings", Collections.singletonList("[WARNING]"), null, RuleAction.COUNT);
+        LogRule oom = new LogRule("oom", Collections.singletonList("OutOfMemoryError"), null, RuleAction.TAG);
+        oom.setTag("out-of-memory");
+        LogRule tests = new LogRule("tests", Collections.emptyList(), "Tests run: \\d+, Failures: [1-9]", RuleAction.TAG);
+        LogRuleSession session = new LogRuleEngine(Arrays.asList(warnings, oom, tests)).newSession();
+
+        write(session, "[WARNING] one\n[INFO] two\n[WARNING] three\nTests run: 5, Failures: 0\n");
+        write(session, "java.lang.OutOfMemoryError: Java heap space");
+        session.flush();
+
+        Map<String, Long> counts = session.getCounts();
+        Assert.assertEquals(Long.valueOf(2), counts.get("warnings"));
+        Assert.assertEquals(Long.valueOf(1), counts.get("oom"));
+        Assert.assertFalse(counts.containsKey("tests"));
+        Assert.assertEquals(Collections.singleton("out-of-memory"), session.getTags());
+    }
+
+    @Test
+    public void shouldParseRulesFile() throws Exception {
+        File file = File.createTempFile("log-rules", ".json");
+        try {
+            String json = "{\"rules\": [{\"name\": \"timeout\", \"literals\": [\"Read timed out\", \"connect timed out\"], "
+                    + "\"action\": \"RECLASSIFY\", \"status\": \"SYSTEM_ERROR\"}]}";
+            Files.write(file.toPath(), json.getBytes(UTF_8));
+            LogRuleSession session = LogRuleEngine.parseJson(file).newSession();
+            write(session, "java.net.SocketTimeoutException: connect timed out\n");
+            session.flush();
+
+            Assert.assertEquals(Status.SYSTEM_ERROR, session.resolveStatus(Status.INTERRUPTED));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectReclassifyRuleWithoutStatus() {
+        new LogRuleEngine(Collections.singletonList(
+                new LogRule("broken", Collections.singletonList("x"), null, RuleAction.RECLASSIFY)));
+    }
+
+    private static void write(LogRuleSession session, String output) {
+        session.writeOutput(output.getBytes(UTF_8));
+    }
+}
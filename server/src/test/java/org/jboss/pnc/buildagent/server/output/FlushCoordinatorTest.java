@@ -0,0 +1,107 @@
+package org.jboss.pnc.buildagent.server.output;
+
+import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+public class FlushCoordinatorTest {
+
+    @Test
+    public void shouldWaitForSlowestSinkOnly() throws IOException {
+        SlowChannel file = new SlowChannel("file", 300, null);
+        SlowChannel kafka = new SlowChannel("kafka", 400, null);
+
+        long started = System.currentTimeMillis();
+        Map<String, Long> latencies = FlushCoordinator.shared().flushAll(Arrays.asList(file, kafka), 10000);
+        long took = System.currentTimeMillis() - started;
+
+        Assert.assertTrue("Sinks were not flushed in parallel, took " + took + "ms.", took < 650);
+        Assert.assertTrue(file.flushed);
+        Assert.assertTrue(kafka.flushed);
+        Assert.assertTrue(latencies.get("file") >= 300);
+        Assert.assertTrue(latencies.get("kafka") >= 400);
+    }
+
+    @Test
+    public void shouldReportAllFailures() {
+        SlowChannel ok = new SlowChannel("ok", 0, null);
+        SlowChannel broken = new SlowChannel("broken", 0, new IOException("Disk full."));
+        SlowChannel stuck = new SlowChannel("stuck", 10000, null);
+
+        try {
+            FlushCoordinator.shared().flushAll(Arrays.asList(ok, broken, stuck), 200);
+            Assert.fail("The flush should fail.");
+        } catch (IOException e) {
+            Assert.assertEquals("Cannot flush broken.", e.getMessage());
+            Assert.assertEquals("Disk full.", e.getCause().getMessage());
+            Assert.assertEquals(1, e.getSuppressed().length);
+            Assert.assertEquals("Timeout flushing stuck.", e.getSuppressed()[0].getMessage());
+        }
+        Assert.assertTrue(ok.flushed);
+    }
+
+    @Test
+    public void shouldNotInterruptTimedOutFlush() throws Exception {
+        SlowChannel slow = new SlowChannel("slow", 400, null);
+        try {
+            FlushCoordinator.shared().flushAll(Arrays.asList(slow), 100);
+            Assert.fail("The flush should time out.");
+        } catch (IOException e) {
+            Assert.assertEquals("Timeout flushing slow.", e.getMessage());
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!slow.flushed && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue("The timed out flush must complete.", slow.flushed);
+    }
+
+    private static class SlowChannel implements ReadOnlyChannel {
+        private final String name;
+        private final long flushMillis;
+        private final IOException failure;
+        private volatile boolean flushed;
+
+        SlowChannel(String name, long flushMillis, IOException failure) {
+            this.name = name;
+            this.flushMillis = flushMillis;
+            this.failure = failure;
+        }
+
+        @Override
+        public void writeOutput(byte[] buffer) {
+        }
+
+        @Override
+        public boolean isPrimary() {
+            return true;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                Thread.sleep(flushMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            flushed = true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
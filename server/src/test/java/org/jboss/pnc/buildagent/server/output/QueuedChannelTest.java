@@ -0,0 +1,217 @@
+package org.jboss.pnc.buildagent.server.output;
+
+import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class QueuedChannelTest {
+
+    @Test
+    public void primaryChannelShouldNotLoseData() throws Exception {
+        CollectingChannel sink = new CollectingChannel(true, null);
+        QueuedChannel channel = new QueuedChannel("primary", sink, 2, BackpressurePolicy.DROP_OLDEST, 10000);
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String line = "line " + i + "\n";
+            expected.append(line);
+            channel.writeOutput(line.getBytes());
+        }
+        channel.flush();
+
+        Assert.assertEquals(expected.toString(), sink.getOutput());
+        Assert.assertTrue(sink.flushed);
+        SinkStats stats = channel.getStats();
+        Assert.assertEquals(BackpressurePolicy.BLOCK, stats.getPolicy());
+        Assert.assertEquals(0, stats.getDroppedChunks());
+        Assert.assertEquals(0, stats.getQueueDepth());
+        channel.close();
+        Assert.assertTrue(sink.closed);
+    }
+
+    @Test
+    public void slowNonPrimaryChannelShouldDropOldest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CollectingChannel sink = new CollectingChannel(false, release);
+        QueuedChannel channel = new QueuedChannel("slow", sink, 2, BackpressurePolicy.DROP_OLDEST, 10000);
+
+        channel.writeOutput("0".getBytes());
+        //wait for the drainer to pick up the first chunk and block on the sink
+        Assert.assertTrue(sink.writeStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 10; i++) {
+            channel.writeOutput(Integer.toString(i).getBytes());
+        }
+        SinkStats stats = channel.getStats();
+        Assert.assertEquals(2, stats.getQueueDepth());
+        Assert.assertEquals(7, stats.getDroppedChunks());
+        Assert.assertEquals(7, stats.getDroppedBytes());
+
+        release.countDown();
+        channel.flush();
+        Assert.assertEquals("0\n% # 7 bytes dropped\n89", sink.getOutput());
+        channel.close();
+    }
+
+    @Test
+    public void slowNonPrimaryChannelShouldDropNewest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CollectingChannel sink = new CollectingChannel(false, release);
+        QueuedChannel channel = new QueuedChannel("slow", sink, 2, BackpressurePolicy.DROP_NEWEST, 10000);
+
+        channel.writeOutput("0".getBytes());
+        Assert.assertTrue(sink.writeStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 10; i++) {
+            channel.writeOutput(Integer.toString(i).getBytes());
+        }
+        Assert.assertEquals(7, channel.getStats().getDroppedChunks());
+
+        release.countDown();
+        channel.flush();
+        Assert.assertEquals("012\n% # 7 bytes dropped\n", sink.getOutput());
+
+        channel.writeOutput("end".getBytes());
+        channel.flush();
+        Assert.assertEquals("012\n% # 7 bytes dropped\nend", sink.getOutput());
+        channel.close();
+    }
+
+    @Test
+    public void slowChannelShouldSpillToDiskAndReplay() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CollectingChannel sink = new CollectingChannel(false, release);
+        Path spillDir = Files.createTempDirectory("spill-test");
+        QueuedChannel channel = new QueuedChannel("spill", sink, 2, BackpressurePolicy.SPILL_TO_DISK, 10000, spillDir);
+
+        channel.writeOutput("0".getBytes());
+        Assert.assertTrue(sink.writeStarted.await(5, TimeUnit.SECONDS));
+        StringBuilder expected = new StringBuilder("0");
+        for (int i = 1; i < 100; i++) {
+            String chunk = Integer.toString(i);
+            expected.append(chunk);
+            channel.writeOutput(chunk.getBytes());
+        }
+        SinkStats stats = channel.getStats();
+        Assert.assertEquals(2, stats.getQueueDepth());
+        Assert.assertTrue(stats.getSpilledBytes() > 0);
+        Assert.assertEquals(0, stats.getDroppedChunks());
+
+        release.countDown();
+        channel.flush();
+        Assert.assertEquals(expected.toString(), sink.getOutput());
+        Assert.assertEquals(0, channel.getStats().getSpilledBytes());
+
+        //the queue is used again once the spilled data is replayed
+        channel.writeOutput("end".getBytes());
+        channel.flush();
+        Assert.assertEquals(expected + "end", sink.getOutput());
+        channel.close();
+        try (Stream<Path> files = Files.list(spillDir)) {
+            Assert.assertEquals(0, files.count());
+        }
+        Files.delete(spillDir);
+    }
+
+    @Test
+    public void primaryChannelShouldNotUseLossyPolicy() throws Exception {
+        QueuedChannel channel = new QueuedChannel("primary", new CollectingChannel(true, null), 2, BackpressurePolicy.DROP_NEWEST, 10000);
+        Assert.assertEquals(BackpressurePolicy.BLOCK, channel.getBackpressurePolicy());
+        channel.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void flushShouldTimeOutWhenSinkIsStuck() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CollectingChannel sink = new CollectingChannel(true, release);
+        QueuedChannel channel = new QueuedChannel("stuck", sink, 2, BackpressurePolicy.BLOCK, 100);
+        try {
+            channel.writeOutput("0".getBytes());
+            channel.flush();
+        } finally {
+            release.countDown();
+            channel.stop();
+        }
+    }
+
+    @Test
+    public void stopShouldReleaseWaitingFlush() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CollectingChannel sink = new CollectingChannel(true, release);
+        QueuedChannel channel = new QueuedChannel("stopped", sink, 4, BackpressurePolicy.BLOCK, 300000);
+        for (int i = 0; i < 3; i++) {
+            channel.writeOutput(Integer.toString(i).getBytes());
+        }
+        Assert.assertTrue(sink.writeStarted.await(5, TimeUnit.SECONDS));
+        CountDownLatch flushed = new CountDownLatch(1);
+        Thread flusher = new Thread(() -> {
+            try {
+                channel.flush();
+            } catch (IOException e) {
+                Assert.fail(e.getMessage());
+            }
+            flushed.countDown();
+        });
+        flusher.start();
+
+        channel.stop();
+        Assert.assertTrue("The flush must not wait for the discarded chunks.", flushed.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    private static class CollectingChannel implements ReadOnlyChannel {
+        private final boolean primary;
+        private final CountDownLatch release;
+        private final CountDownLatch writeStarted = new CountDownLatch(1);
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private volatile boolean flushed;
+        private volatile boolean closed;
+
+        CollectingChannel(boolean primary, CountDownLatch release) {
+            this.primary = primary;
+            this.release = release;
+        }
+
+        @Override
+        public void writeOutput(byte[] buffer) {
+            writeStarted.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (output) {
+                output.write(buffer, 0, buffer.length);
+            }
+        }
+
+        String getOutput() {
+            synchronized (output) {
+                return new String(output.toByteArray());
+            }
+        }
+
+        @Override
+        public boolean isPrimary() {
+            return primary;
+        }
+
+        @Override
+        public void flush() {
+            flushed = true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.jboss.pnc.buildagent.server.output;
+
+import org.jboss.pnc.buildagent.server.ReadOnlyChannel;
+import org.jboss.pnc.buildagent.server.httpinvoker.CommandSession;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+public class ScrollbackBufferTest {
+
+    @Test
+    public void shouldKeepLastBytes() {
+        ScrollbackBuffer scrollback = new ScrollbackBuffer(8);
+        scrollback.append(bytes("abc"));
+        Assert.assertEquals("abc", string(scrollback.tail()));
+
+        scrollback.append(bytes("defgh"));
+        scrollback.append(bytes("ijk"));
+        Assert.assertEquals("defghijk", string(scrollback.tail()));
+
+        scrollback.append(bytes("0123456789"));
+        Assert.assertEquals("23456789", string(scrollback.tail()));
+        Assert.assertEquals(21, scrollback.getWritten());
+    }
+
+    @Test
+    public void shouldSkipCutCharacter() {
+        ScrollbackBuffer scrollback = new ScrollbackBuffer(4);
+        // the euro sign is 3 bytes, the first one is overwritten
+        scrollback.append(bytes("a€bc"));
+        Assert.assertEquals("bc", string(scrollback.tail()));
+    }
+
+    @Test
+    public void shouldReadFromOffset() {
+        ScrollbackBuffer scrollback = new ScrollbackBuffer(8);
+        scrollback.append(bytes("abcdef"));
+        Assert.assertEquals("cd", string(scrollback.read(2, 2)));
+        Assert.assertEquals(0, scrollback.read(6, 10).length);
+
+        scrollback.append(bytes("ghij"));
+        Assert.assertEquals(2, scrollback.getOldest());
+        Assert.assertEquals("cdefghij", string(scrollback.read(2, 100)));
+        Assert.assertEquals("ij", string(scrollback.read(8, 100)));
+        try {
+            scrollback.read(1, 100);
+            Assert.fail("The overwritten bytes must not be read.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void shouldFindLastLines() {
+        ScrollbackBuffer scrollback = new ScrollbackBuffer(14);
+        scrollback.append(bytes("one\ntwo\nthree\n"));
+        Assert.assertEquals("three\n", string(scrollback.read(scrollback.offsetOfLastLines(1), 100)));
+        Assert.assertEquals("two\nthree\n", string(scrollback.read(scrollback.offsetOfLastLines(2), 100)));
+        Assert.assertEquals(0, scrollback.offsetOfLastLines(5));
+        Assert.assertEquals(14, scrollback.offsetOfLastLines(0));
+
+        scrollback.append(bytes("fo"));
+        Assert.assertEquals("three\nfo", string(scrollback.read(scrollback.offsetOfLastLines(2), 100)));
+
+        scrollback.append(bytes("ur\n"));
+        // "one\n" and the "t" of "two" are overwritten, the cut line is the oldest kept one
+        Assert.assertEquals("wo\nthree\nfour\n", string(scrollback.read(scrollback.offsetOfLastLines(5), 100)));
+    }
+
+    @Test
+    public void shouldReadFromOldestKeptByte() {
+        ScrollbackBuffer scrollback = new ScrollbackBuffer(4);
+        scrollback.append(bytes("abcdef"));
+
+        ScrollbackBuffer.Chunk chunk = scrollback.readKept(0, 3);
+        Assert.assertEquals(2, chunk.getOffset());
+        Assert.assertEquals("cde", string(chunk.getBytes()));
+
+        chunk = scrollback.readKept(5, 3);
+        Assert.assertEquals(5, chunk.getOffset());
+        Assert.assertEquals("f", string(chunk.getBytes()));
+        Assert.assertEquals(0, scrollback.readKept(6, 3).getBytes().length);
+    }
+
+    @Test
+    public void shouldKeepNothingWhenDisabled() {
+        ScrollbackBuffer scrollback = new ScrollbackBuffer(0);
+        scrollback.append(bytes("abc"));
+        Assert.assertEquals(0, scrollback.tail().length);
+        // the offsets are counted even when nothing is kept
+        Assert.assertEquals(3, scrollback.getWritten());
+        Assert.assertEquals(3, scrollback.getOldest());
+    }
+
+    @Test
+    public void shouldHandTailAndLiveOutputWithoutGap() throws InterruptedException {
+        int lines = 20000;
+        CommandSession session = new CommandSession("session", Collections.emptySet(), 1000, 1024 * 1024);
+        CountDownLatch running = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < lines; i++) {
+                session.handleOutput(bytes(i + "\n"));
+                if (i == 1000) {
+                    running.countDown();
+                }
+            }
+        });
+        writer.start();
+        running.await();
+        CollectingChannel late = new CollectingChannel();
+        Assert.assertTrue(session.attach(late));
+        writer.join();
+
+        String[] received = string(late.output.toByteArray()).split("\n");
+        Assert.assertEquals(lines, received.length);
+        for (int i = 0; i < lines; i++) {
+            Assert.assertEquals(Integer.toString(i), received[i]);
+        }
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class CollectingChannel implements ReadOnlyChannel {
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void writeOutput(byte[] buffer) {
+            output.write(buffer, 0, buffer.length);
+        }
+
+        @Override
+        public boolean isPrimary() {
+            return false;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
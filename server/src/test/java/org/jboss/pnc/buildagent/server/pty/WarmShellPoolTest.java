@@ -0,0 +1,130 @@
+package org.jboss.pnc.buildagent.server.pty;
+
+import io.termd.core.pty.PtyMaster;
+import io.termd.core.pty.Status;
+import io.termd.core.util.Helper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class WarmShellPoolTest {
+
+    private WarmShellPool pool;
+
+    @After
+    public void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void shouldRunCommandInPooledShell() throws Exception {
+        pool = new WarmShellPool(new ShellPoolOptions(2, ShellPoolOptions.DEFAULT_SHELL, ""));
+        awaitIdle(2);
+
+        Result result = run("echo it's $HOME", pool);
+
+        Assert.assertEquals(Status.COMPLETED, result.status.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Status.NEW, result.firstOldStatus.get());
+        // the arguments are not expanded by the shell, the same as without the pool
+        Assert.assertEquals("it's $HOME\n", result.output.toString());
+        awaitIdle(2);
+    }
+
+    @Test
+    public void shouldResetShellBeforeUse() throws Exception {
+        pool = new WarmShellPool(new ShellPoolOptions(1, ShellPoolOptions.DEFAULT_SHELL, "echo reset; cd /tmp"));
+        awaitIdle(1);
+
+        Result result = run("pwd", pool);
+
+        Assert.assertEquals(Status.COMPLETED, result.status.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("/tmp\n", result.output.toString());
+    }
+
+    @Test
+    public void shouldReportFailureAndInterruption() throws Exception {
+        pool = new WarmShellPool(new ShellPoolOptions(2, ShellPoolOptions.DEFAULT_SHELL, ""));
+        awaitIdle(2);
+
+        Result failed = run("false", pool);
+        Assert.assertEquals(Status.FAILED, failed.status.get(5, TimeUnit.SECONDS));
+
+        awaitIdle(2);
+        Result interrupted = run("sleep 30", pool);
+        awaitRunning(interrupted.ptyMaster);
+        interrupted.ptyMaster.interruptProcess();
+        Assert.assertEquals(Status.INTERRUPTED, interrupted.status.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldInterruptCommandStartedWithoutIdleShell() throws Exception {
+        // the shell cannot be started, there is never an idle one
+        pool = new WarmShellPool(new ShellPoolOptions(1, "/nonexistent/shell", ""));
+        PtyMaster ptyMaster = PooledPtyMaster.create("sleep 30", stdout -> {}, nul -> {}, pool);
+        CompletableFuture<Status> status = new CompletableFuture<>();
+        ptyMaster.setChangeHandler((oldStatus, newStatus) -> {
+            if (newStatus.isFinal()) {
+                status.complete(newStatus);
+            }
+        });
+        ptyMaster.interruptProcess();
+        ptyMaster.start();
+        Assert.assertEquals(Status.INTERRUPTED, status.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldStartWithoutPoolWhenDisabled() throws Exception {
+        Result result = run("echo started", WarmShellPool.disabled());
+
+        Assert.assertFalse(result.ptyMaster instanceof PooledPtyMaster);
+        Assert.assertEquals(Status.COMPLETED, result.status.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("started\n", result.output.toString());
+    }
+
+    private Result run(String command, WarmShellPool shellPool) {
+        Result result = new Result();
+        result.ptyMaster = PooledPtyMaster.create(
+                command,
+                stdout -> result.output.append(Helper.fromCodePoints(stdout)),
+                nul -> {},
+                shellPool);
+        Assert.assertEquals(Status.NEW, result.ptyMaster.getStatus());
+        result.ptyMaster.setChangeHandler((oldStatus, newStatus) -> {
+            result.firstOldStatus.compareAndSet(null, oldStatus);
+            if (newStatus.isFinal()) {
+                result.status.complete(newStatus);
+            }
+        });
+        result.ptyMaster.start();
+        return result;
+    }
+
+    private void awaitIdle(int idle) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getIdle() < idle) {
+            Assert.assertTrue("Shells were not started.", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void awaitRunning(PtyMaster ptyMaster) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ptyMaster.getStatus() != Status.RUNNING) {
+            Assert.assertTrue("Command was not started.", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static class Result {
+        private final StringBuffer output = new StringBuffer();
+        private final CompletableFuture<Status> status = new CompletableFuture<>();
+        private final AtomicReference<Status> firstOldStatus = new AtomicReference<>();
+        private PtyMaster ptyMaster;
+    }
+}
@@ -0,0 +1,60 @@
+package org.jboss.pnc.buildagent.server.pty.performance;
+
+import io.termd.core.pty.PtyMaster;
+import org.jboss.pnc.buildagent.server.pty.PooledPtyMaster;
+import org.jboss.pnc.buildagent.server.pty.ShellPoolOptions;
+import org.jboss.pnc.buildagent.server.pty.WarmShellPool;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time to the first byte of the command output with and without the pool of the started shells.
+ */
+public class TimeToFirstByteTest {
+
+    private static final Logger log = LoggerFactory.getLogger(TimeToFirstByteTest.class);
+
+    private static final int COMMANDS = 200;
+
+    @Test @Ignore
+    public void timeToFirstByte() throws Exception {
+        WarmShellPool pool = new WarmShellPool(new ShellPoolOptions(4, ShellPoolOptions.DEFAULT_SHELL, ""));
+        try {
+            for (int round = 0; round < 3; round++) {
+                measure("no pool", WarmShellPool.disabled());
+                measure("pool", pool);
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    private void measure(String name, WarmShellPool pool) throws Exception {
+        long[] nanos = new long[COMMANDS];
+        for (int i = 0; i < COMMANDS; i++) {
+            // one command at a time, the pool is replenished between them as between the builds
+            Thread.sleep(20);
+            CompletableFuture<Long> firstByte = new CompletableFuture<>();
+            CountDownLatch done = new CountDownLatch(1);
+            long started = System.nanoTime();
+            PtyMaster ptyMaster = PooledPtyMaster.create(
+                    "echo x",
+                    stdout -> firstByte.complete(System.nanoTime()),
+                    nul -> done.countDown(),
+                    pool);
+            ptyMaster.start();
+            nanos[i] = firstByte.get(10, TimeUnit.SECONDS) - started;
+            done.await(10, TimeUnit.SECONDS);
+        }
+        Arrays.sort(nanos);
+        log.info("Time to first byte {}: p50 {} us, p99 {} us.",
+                name, nanos[COMMANDS / 2] / 1000, nanos[COMMANDS * 99 / 100] / 1000);
+    }
+}
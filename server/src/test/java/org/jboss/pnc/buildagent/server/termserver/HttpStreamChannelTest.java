@@ -0,0 +1,25 @@
+package org.jboss.pnc.buildagent.server.termserver;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class HttpStreamChannelTest {
+
+    @Test
+    public void shouldSendEachLineAsData() {
+        Assert.assertEquals("id: 12\ndata: one\ndata: two\ndata: \n\n", event("one\r\ntwo\n", 12));
+        Assert.assertEquals("data: partial\n\n", event("partial", -1));
+        // a lone CR terminates the line of the event stream too
+        Assert.assertEquals("data: 10%\ndata: 20%\n\n", event("10%\r20%", -1));
+        Assert.assertEquals("data: a\ndata: \ndata: b\n\n", event("a\r\rb", -1));
+        Assert.assertEquals("id: 3\ndata: €\n\n", event("€", 3));
+    }
+
+    private static String event(String chunk, long id) {
+        ByteBuffer event = HttpStreamChannel.event(chunk.getBytes(StandardCharsets.UTF_8), id);
+        return StandardCharsets.UTF_8.decode(event).toString();
+    }
+}